@@ -0,0 +1,238 @@
+package com.logistock.agenda;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Árbol de intervalos semiabiertos [inicio, fin) identificados por un id
+ *
+ * Árbol AVL ordenado por (inicio, id) en el que cada nodo guarda además el mayor fin de su
+ * subárbol: una consulta de solape descarta los subárboles que terminan antes del intervalo
+ * buscado o empiezan después, de modo que saber si hay solape cuesta O(log n) y listar los
+ * k solapes O(log n + k). No es seguro para hilos; lo sincroniza quien lo usa.
+ */
+public class ArbolIntervalos {
+
+    private Nodo raiz;
+    private int tamano;
+
+    public void insertar(String id, long inicio, long fin) {
+        if (fin <= inicio) {
+            throw new IllegalArgumentException("Intervalo vacío: [" + inicio + ", " + fin + ")");
+        }
+        raiz = insertar(raiz, new Intervalo(id, inicio, fin));
+        tamano++;
+    }
+
+    /**
+     * @return true si el intervalo estaba en el árbol
+     */
+    public boolean eliminar(String id, long inicio) {
+        int antes = tamano;
+        raiz = eliminar(raiz, id, inicio);
+        return tamano < antes;
+    }
+
+    /**
+     * Primer intervalo que se solapa con [inicio, fin), sin contar el id excluido
+     * @return el intervalo, o null si no hay solape
+     */
+    public Intervalo primerSolape(long inicio, long fin, String excluido) {
+        return primerSolape(raiz, inicio, fin, excluido);
+    }
+
+    /**
+     * Intervalos que se solapan con [inicio, fin), ordenados por inicio
+     */
+    public List<Intervalo> solapados(long inicio, long fin) {
+        List<Intervalo> resultado = new ArrayList<>();
+        solapados(raiz, inicio, fin, resultado);
+        return resultado;
+    }
+
+    public int tamano() {
+        return tamano;
+    }
+
+    public boolean isVacio() {
+        return tamano == 0;
+    }
+
+    private static Intervalo primerSolape(Nodo nodo, long inicio, long fin, String excluido) {
+        if (nodo == null || nodo.maxFin <= inicio) {
+            return null;
+        }
+        Intervalo izquierda = primerSolape(nodo.izquierdo, inicio, fin, excluido);
+        if (izquierda != null) {
+            return izquierda;
+        }
+        if (nodo.intervalo.inicio >= fin) {
+            return null;
+        }
+        if (nodo.intervalo.fin > inicio && !nodo.intervalo.id.equals(excluido)) {
+            return nodo.intervalo;
+        }
+        return primerSolape(nodo.derecho, inicio, fin, excluido);
+    }
+
+    private static void solapados(Nodo nodo, long inicio, long fin, List<Intervalo> resultado) {
+        if (nodo == null || nodo.maxFin <= inicio) {
+            return;
+        }
+        solapados(nodo.izquierdo, inicio, fin, resultado);
+        if (nodo.intervalo.inicio >= fin) {
+            return;
+        }
+        if (nodo.intervalo.fin > inicio) {
+            resultado.add(nodo.intervalo);
+        }
+        solapados(nodo.derecho, inicio, fin, resultado);
+    }
+
+    private static Nodo insertar(Nodo nodo, Intervalo intervalo) {
+        if (nodo == null) {
+            return new Nodo(intervalo);
+        }
+        if (comparar(intervalo.inicio, intervalo.id, nodo.intervalo) < 0) {
+            nodo.izquierdo = insertar(nodo.izquierdo, intervalo);
+        } else {
+            nodo.derecho = insertar(nodo.derecho, intervalo);
+        }
+        return balancear(nodo);
+    }
+
+    private Nodo eliminar(Nodo nodo, String id, long inicio) {
+        if (nodo == null) {
+            return null;
+        }
+        int comparacion = comparar(inicio, id, nodo.intervalo);
+        if (comparacion < 0) {
+            nodo.izquierdo = eliminar(nodo.izquierdo, id, inicio);
+        } else if (comparacion > 0) {
+            nodo.derecho = eliminar(nodo.derecho, id, inicio);
+        } else {
+            tamano--;
+            if (nodo.izquierdo == null) {
+                return nodo.derecho;
+            }
+            if (nodo.derecho == null) {
+                return nodo.izquierdo;
+            }
+            // Reemplazar por el sucesor (el menor del subárbol derecho)
+            Nodo sucesor = nodo.derecho;
+            while (sucesor.izquierdo != null) {
+                sucesor = sucesor.izquierdo;
+            }
+            nodo.derecho = quitarMenor(nodo.derecho);
+            sucesor.derecho = nodo.derecho;
+            sucesor.izquierdo = nodo.izquierdo;
+            return balancear(sucesor);
+        }
+        return balancear(nodo);
+    }
+
+    private static Nodo quitarMenor(Nodo nodo) {
+        if (nodo.izquierdo == null) {
+            return nodo.derecho;
+        }
+        nodo.izquierdo = quitarMenor(nodo.izquierdo);
+        return balancear(nodo);
+    }
+
+    private static int comparar(long inicio, String id, Intervalo intervalo) {
+        int porInicio = Long.compare(inicio, intervalo.inicio);
+        return porInicio != 0 ? porInicio : id.compareTo(intervalo.id);
+    }
+
+    private static Nodo balancear(Nodo nodo) {
+        actualizar(nodo);
+        int factor = altura(nodo.izquierdo) - altura(nodo.derecho);
+        if (factor > 1) {
+            if (altura(nodo.izquierdo.izquierdo) < altura(nodo.izquierdo.derecho)) {
+                nodo.izquierdo = rotarIzquierda(nodo.izquierdo);
+            }
+            return rotarDerecha(nodo);
+        }
+        if (factor < -1) {
+            if (altura(nodo.derecho.derecho) < altura(nodo.derecho.izquierdo)) {
+                nodo.derecho = rotarDerecha(nodo.derecho);
+            }
+            return rotarIzquierda(nodo);
+        }
+        return nodo;
+    }
+
+    private static Nodo rotarDerecha(Nodo nodo) {
+        Nodo nuevo = nodo.izquierdo;
+        nodo.izquierdo = nuevo.derecho;
+        nuevo.derecho = nodo;
+        actualizar(nodo);
+        actualizar(nuevo);
+        return nuevo;
+    }
+
+    private static Nodo rotarIzquierda(Nodo nodo) {
+        Nodo nuevo = nodo.derecho;
+        nodo.derecho = nuevo.izquierdo;
+        nuevo.izquierdo = nodo;
+        actualizar(nodo);
+        actualizar(nuevo);
+        return nuevo;
+    }
+
+    private static void actualizar(Nodo nodo) {
+        nodo.altura = 1 + Math.max(altura(nodo.izquierdo), altura(nodo.derecho));
+        long maxFin = nodo.intervalo.fin;
+        if (nodo.izquierdo != null) {
+            maxFin = Math.max(maxFin, nodo.izquierdo.maxFin);
+        }
+        if (nodo.derecho != null) {
+            maxFin = Math.max(maxFin, nodo.derecho.maxFin);
+        }
+        nodo.maxFin = maxFin;
+    }
+
+    private static int altura(Nodo nodo) {
+        return nodo != null ? nodo.altura : 0;
+    }
+
+    private static final class Nodo {
+        private final Intervalo intervalo;
+        private Nodo izquierdo;
+        private Nodo derecho;
+        private int altura = 1;
+        private long maxFin;
+
+        Nodo(Intervalo intervalo) {
+            this.intervalo = intervalo;
+            this.maxFin = intervalo.fin;
+        }
+    }
+
+    /**
+     * Intervalo [inicio, fin) del árbol
+     */
+    public static final class Intervalo {
+        private final String id;
+        private final long inicio;
+        private final long fin;
+
+        Intervalo(String id, long inicio, long fin) {
+            this.id = id;
+            this.inicio = inicio;
+            this.fin = fin;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public long getInicio() {
+            return inicio;
+        }
+
+        public long getFin() {
+            return fin;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.logistock.config;
+
+import com.logistock.ruteo.ProveedorDistancias;
+import com.logistock.ruteo.ProveedorHaversine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Configuración del cálculo de distancias para el ruteo
+ */
+@Configuration
+public class RuteoConfig {
+
+    /**
+     * Estimación local por defecto; un bean ProveedorDistancias propio (por ejemplo un
+     * cliente de un motor de ruteo) la reemplaza
+     */
+    @Bean
+    @ConditionalOnMissingBean(ProveedorDistancias.class)
+    public ProveedorDistancias proveedorDistancias(
+            @Value("${app.rutas.optimizacion.factor-desvio:1.3}") double factorDesvio,
+            @Value("${app.rutas.optimizacion.velocidad-kmh:40}") double velocidadKmh) {
+        return new ProveedorHaversine(factorDesvio, velocidadKmh);
+    }
+}
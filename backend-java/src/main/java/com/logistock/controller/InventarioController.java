@@ -1,6 +1,10 @@
 package com.logistock.controller;
 
+import com.logistock.dto.ResultadoImportacion;
 import com.logistock.model.Product;
+import com.logistock.model.MovimientoStock;
+import com.logistock.service.ImportacionProductoService;
+import com.logistock.service.MovimientoStockService;
 import com.logistock.service.ProductService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -12,10 +16,18 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -31,6 +43,8 @@ import java.util.Map;
 public class InventarioController {
 
     private final ProductService productService;
+    private final MovimientoStockService movimientoStockService;
+    private final ImportacionProductoService importacionProductoService;
 
     /**
      * Obtener todos los productos
@@ -175,6 +189,13 @@ public class InventarioController {
             errorResponse.put("message", e.getMessage());
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(errorResponse);
             
+        } catch (IllegalStateException e) {
+            log.warn("Conflicto al actualizar producto {}: {}", id, e.getMessage());
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("error", "Conflicto");
+            errorResponse.put("message", e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(errorResponse);
+            
         } catch (Exception e) {
             log.error("Error al actualizar producto {}: {}", id, e.getMessage());
             Map<String, Object> errorResponse = new HashMap<>();
@@ -218,6 +239,95 @@ public class InventarioController {
         }
     }
 
+    /**
+     * Activar o desactivar el modo de stock caliente
+     */
+    @PutMapping("/{id}/hot-sku")
+    @Operation(summary = "Modo stock caliente", description = "Lleva el stock del producto en memoria con volcado periódico, para productos de alta demanda")
+    public ResponseEntity<Map<String, Object>> setHotSku(
+            @Parameter(description = "ID del producto") @PathVariable String id,
+            @Parameter(description = "Activar o desactivar") @RequestParam boolean activo) {
+        
+        try {
+            log.info("PUT /inventario/{}/hot-sku - activo: {}", id, activo);
+            
+            Product product = productService.marcarHotSku(id, activo);
+            
+            Map<String, Object> response = new HashMap<>();
+            response.put("message", activo ? "Modo stock caliente activado" : "Modo stock caliente desactivado");
+            response.put("product", product);
+            
+            return ResponseEntity.ok(response);
+            
+        } catch (IllegalArgumentException e) {
+            log.warn("Error al cambiar modo de stock del producto {}: {}", id, e.getMessage());
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("error", "Producto no encontrado");
+            errorResponse.put("message", e.getMessage());
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(errorResponse);
+            
+        } catch (Exception e) {
+            log.error("Error al cambiar modo de stock del producto {}: {}", id, e.getMessage());
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("error", "Error interno del servidor");
+            errorResponse.put("message", e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(errorResponse);
+        }
+    }
+
+    /**
+     * Movimientos de stock de un producto
+     */
+    @GetMapping("/{id}/movimientos")
+    @Operation(summary = "Movimientos de stock", description = "Retorna el libro de movimientos de un producto, del más reciente al más antiguo")
+    public ResponseEntity<Map<String, Object>> getMovimientos(
+            @Parameter(description = "ID del producto") @PathVariable String id,
+            @Parameter(description = "Fecha inicial (ISO)") @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime desde,
+            @Parameter(description = "Fecha final (ISO)") @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime hasta,
+            @Parameter(description = "Máximo de movimientos") @RequestParam(defaultValue = "100") int limite) {
+        
+        try {
+            log.info("GET /inventario/{}/movimientos - desde: {}, hasta: {}", id, desde, hasta);
+            
+            List<MovimientoStock> movimientos = movimientoStockService.listar(id, desde, hasta, Math.min(Math.max(limite, 1), 1000));
+            
+            Map<String, Object> response = new HashMap<>();
+            response.put("movimientos", movimientos);
+            response.put("total", movimientos.size());
+            
+            return ResponseEntity.ok(response);
+            
+        } catch (Exception e) {
+            log.error("Error al obtener movimientos del producto {}: {}", id, e.getMessage());
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("error", "Error interno del servidor");
+            errorResponse.put("message", e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(errorResponse);
+        }
+    }
+
+    /**
+     * Stock de un producto a una fecha
+     */
+    @GetMapping("/{id}/stock-historico")
+    @Operation(summary = "Stock histórico", description = "Retorna el stock que tenía un producto en una fecha, calculado desde el libro de movimientos")
+    public ResponseEntity<Map<String, Object>> getStockHistorico(
+            @Parameter(description = "ID del producto") @PathVariable String id,
+            @Parameter(description = "Fecha de consulta (ISO)") @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime fecha) {
+        
+        try {
+            log.info("GET /inventario/{}/stock-historico - fecha: {}", id, fecha);
+            return ResponseEntity.ok(movimientoStockService.stockEn(id, fecha));
+            
+        } catch (Exception e) {
+            log.error("Error al calcular stock histórico del producto {}: {}", id, e.getMessage());
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("error", "Error interno del servidor");
+            errorResponse.put("message", e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(errorResponse);
+        }
+    }
+
     /**
      * Obtener productos con stock bajo
      */
@@ -285,4 +395,70 @@ public class InventarioController {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(errorResponse);
         }
     }
+
+    /**
+     * Importar productos desde un archivo XLSX o CSV
+     */
+    @PostMapping(value = "/importar", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    @Operation(summary = "Importar productos", description = "Crea o actualiza productos por código desde un XLSX (primera hoja) o un CSV UTF-8 con encabezado, en lotes de escritura masiva")
+    public ResponseEntity<Map<String, Object>> importProducts(
+            @Parameter(description = "Archivo .xlsx o .csv") @RequestParam("archivo") MultipartFile archivo,
+            @Parameter(description = "Separador de columnas del CSV") @RequestParam(defaultValue = ",") char separador) {
+        
+        String nombre = archivo.getOriginalFilename() != null ? archivo.getOriginalFilename().toLowerCase() : "";
+        Path temporal = null;
+        try {
+            log.info("POST /inventario/importar - archivo: {} ({} bytes)", nombre, archivo.getSize());
+            
+            ResultadoImportacion resultado;
+            if (nombre.endsWith(".xlsx")) {
+                // El lector de eventos de POI necesita un archivo para no cargar el paquete en memoria
+                temporal = Files.createTempFile("importacion-", ".xlsx");
+                archivo.transferTo(temporal);
+                resultado = importacionProductoService.importarXlsx(temporal.toFile());
+            } else if (nombre.endsWith(".csv")) {
+                try (InputStream entrada = archivo.getInputStream()) {
+                    resultado = importacionProductoService.importarCsv(entrada, separador);
+                }
+            } else {
+                throw new IllegalArgumentException("Formato no soportado: se acepta .xlsx o .csv");
+            }
+            
+            Map<String, Object> response = new HashMap<>();
+            response.put("message", "Importación finalizada");
+            response.put("resultado", resultado);
+            
+            return ResponseEntity.ok(response);
+            
+        } catch (IllegalArgumentException e) {
+            log.warn("Error de validación al importar productos: {}", e.getMessage());
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("error", "Error de validación");
+            errorResponse.put("message", e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(errorResponse);
+            
+        } catch (IOException e) {
+            log.warn("Archivo de importación inválido: {}", e.getMessage());
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("error", "Archivo inválido");
+            errorResponse.put("message", e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(errorResponse);
+            
+        } catch (Exception e) {
+            log.error("Error al importar productos: {}", e.getMessage());
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("error", "Error interno del servidor");
+            errorResponse.put("message", e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(errorResponse);
+            
+        } finally {
+            if (temporal != null) {
+                try {
+                    Files.deleteIfExists(temporal);
+                } catch (IOException e) {
+                    log.warn("No se pudo eliminar el archivo temporal {}: {}", temporal, e.getMessage());
+                }
+            }
+        }
+    }
 }
\ No newline at end of file
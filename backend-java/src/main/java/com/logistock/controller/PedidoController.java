@@ -2,21 +2,32 @@ package com.logistock.controller;
 
 import com.logistock.dto.ActualizarEstadoRequest;
 import com.logistock.dto.CrearPedidoRequest;
+import com.logistock.dto.ResultadoPedidoLote;
 import com.logistock.dto.StockValidationResult;
 import com.logistock.model.EstadoPedido;
+import com.logistock.model.Product;
 import com.logistock.model.Pedido;
 import com.logistock.model.ProductoPedido;
+import com.logistock.model.ReservaStock;
 import com.logistock.model.User;
 import com.logistock.service.PedidoService;
 import com.logistock.service.ProductService;
+import com.logistock.service.ReservaStockService;
 import com.logistock.service.UserService;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -34,6 +45,15 @@ public class PedidoController {
     @Autowired
     private UserService userService;
 
+    @Autowired
+    private ReservaStockService reservaStockService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${app.pedidos.lote.tamano-bloque:500}")
+    private int tamanoBloque;
+
     // ==================== ENDPOINTS ADMIN ====================
 
     /**
@@ -59,16 +79,9 @@ public class PedidoController {
     @PreAuthorize("hasRole('ADMIN')")
     public ResponseEntity<?> crearPedido(@RequestBody CrearPedidoRequest request) {
         try {
-            Pedido pedido = new Pedido();
-            pedido.setClienteId(request.getClienteId());
-            pedido.setClienteNombre(request.getClienteNombre());
-            pedido.setClienteDireccion(request.getClienteDireccion());
-            pedido.setClienteTelefono(request.getClienteTelefono());
-            pedido.setProductos(request.getProductos());
-            pedido.setDireccionEntrega(request.getDireccionEntrega());
-            pedido.setObservaciones(request.getObservaciones());
-
-            Pedido nuevoPedido = pedidoService.crearPedido(pedido);
+            Pedido pedido = mapearPedido(request);
+
+            Pedido nuevoPedido = pedidoService.crearPedido(pedido, request.getReservaId());
             return ResponseEntity.status(HttpStatus.CREATED).body(nuevoPedido);
         } catch (Exception e) {
             return ResponseEntity.badRequest()
@@ -76,6 +89,122 @@ public class PedidoController {
         }
     }
 
+    /**
+     * Crear pedidos en lote (ADMIN)
+     * Acepta un arreglo JSON o NDJSON (un pedido por línea). Los pedidos se leen en
+     * streaming y se procesan en bloques; cada bloque usa una lectura de productos,
+     * una escritura masiva de stock y un insert masivo de pedidos.
+     */
+    @PostMapping(value = "/lote", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> crearPedidosEnLote(HttpServletRequest httpRequest) {
+        List<ResultadoPedidoLote> resultados = new ArrayList<>();
+        try (MappingIterator<CrearPedidoRequest> iterador = objectMapper
+                .readerFor(CrearPedidoRequest.class)
+                .readValues(httpRequest.getInputStream())) {
+
+            List<Pedido> bloque = new ArrayList<>(tamanoBloque);
+            int indiceBloque = 0;
+            while (iterador.hasNextValue()) {
+                CrearPedidoRequest request = iterador.nextValue();
+                if (request.getProductos() == null || request.getProductos().isEmpty()) {
+                    resultados.add(ResultadoPedidoLote.error(indiceBloque + bloque.size(), "El pedido no tiene productos"));
+                    bloque.add(null);
+                } else {
+                    bloque.add(mapearPedido(request));
+                }
+                if (bloque.size() == tamanoBloque) {
+                    agregarResultados(resultados, pedidoService.crearPedidosEnLote(bloque, indiceBloque));
+                    indiceBloque += bloque.size();
+                    bloque = new ArrayList<>(tamanoBloque);
+                }
+            }
+            if (!bloque.isEmpty()) {
+                agregarResultados(resultados, pedidoService.crearPedidosEnLote(bloque, indiceBloque));
+            }
+        } catch (Exception e) {
+            Map<String, Object> error = new LinkedHashMap<>();
+            error.put("error", "Error al procesar la carga: " + e.getMessage());
+            error.put("procesados", resultados.size());
+            error.put("resultados", resultados);
+            return ResponseEntity.badRequest().body(error);
+        }
+
+        resultados.sort((a, b) -> Integer.compare(a.getIndice(), b.getIndice()));
+        long creados = resultados.stream().filter(ResultadoPedidoLote::isExito).count();
+        Map<String, Object> respuesta = new LinkedHashMap<>();
+        respuesta.put("total", resultados.size());
+        respuesta.put("creados", creados);
+        respuesta.put("fallidos", resultados.size() - creados);
+        respuesta.put("resultados", resultados);
+        return ResponseEntity.status(creados == resultados.size() ? HttpStatus.CREATED : HttpStatus.OK).body(respuesta);
+    }
+
+    /**
+     * Reservar stock temporalmente para un carrito (ADMIN)
+     * La reserva vence a los N minutos; se consume enviando su ID en reservaId al crear el pedido
+     */
+    @PostMapping("/reservas")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> crearReserva(
+            @RequestBody List<ProductoPedido> productos,
+            @RequestParam(required = false) Integer minutos,
+            Authentication authentication) {
+        try {
+            ReservaStock reserva = reservaStockService.crear(productos, minutos, authentication.getName());
+            return ResponseEntity.status(HttpStatus.CREATED).body(reserva);
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    /**
+     * Obtener una reserva de stock activa (ADMIN)
+     */
+    @GetMapping("/reservas/{id}")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> obtenerReserva(@PathVariable String id) {
+        Optional<ReservaStock> reserva = reservaStockService.obtener(id);
+        if (reserva.isPresent()) {
+            return ResponseEntity.ok(reserva.get());
+        }
+        return ResponseEntity.notFound().build();
+    }
+
+    /**
+     * Liberar una reserva de stock antes de su vencimiento (ADMIN)
+     */
+    @DeleteMapping("/reservas/{id}")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> liberarReserva(@PathVariable String id) {
+        if (reservaStockService.liberar(id)) {
+            return ResponseEntity.ok(Map.of("message", "Reserva liberada correctamente"));
+        }
+        return ResponseEntity.notFound().build();
+    }
+
+    /**
+     * Disponible para prometer de un producto: stock menos reservas activas (ADMIN)
+     */
+    @GetMapping("/disponibilidad/{productoId}")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> obtenerDisponibilidad(@PathVariable String productoId) {
+        Optional<Product> producto = productService.findById(productoId);
+        if (producto.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        Map<String, Object> respuesta = new LinkedHashMap<>();
+        respuesta.put("productoId", productoId);
+        respuesta.put("stock", producto.get().getStock());
+        respuesta.put("reservado", reservaStockService.reservado(productoId));
+        respuesta.put("disponible", reservaStockService.disponibleParaPrometer(producto.get()));
+        return ResponseEntity.ok(respuesta);
+    }
+
     /**
      * Obtener todos los pedidos (ADMIN)
      */
@@ -247,4 +376,25 @@ public class PedidoController {
                     .body(Map.of("error", e.getMessage()));
         }
     }
+
+    private Pedido mapearPedido(CrearPedidoRequest request) {
+        Pedido pedido = new Pedido();
+        pedido.setClienteId(request.getClienteId());
+        pedido.setClienteNombre(request.getClienteNombre());
+        pedido.setClienteDireccion(request.getClienteDireccion());
+        pedido.setClienteTelefono(request.getClienteTelefono());
+        pedido.setProductos(request.getProductos());
+        pedido.setDireccionEntrega(request.getDireccionEntrega());
+        pedido.setUbicacion(request.getUbicacion());
+        pedido.setObservaciones(request.getObservaciones());
+        return pedido;
+    }
+
+    private void agregarResultados(List<ResultadoPedidoLote> resultados, List<ResultadoPedidoLote> resultadosBloque) {
+        for (ResultadoPedidoLote resultado : resultadosBloque) {
+            if (resultado != null) {
+                resultados.add(resultado);
+            }
+        }
+    }
 }
@@ -1,17 +1,35 @@
 package com.logistock.controller;
 
+import com.logistock.dto.SolicitudReporteRequest;
+import com.logistock.report.FiltroReporte;
+import com.logistock.report.FormatoReporte;
+import com.logistock.report.TrabajoReporte;
+import com.logistock.service.CacheReporteService;
+import com.logistock.service.GuiaRemisionService;
 import com.logistock.service.ReportService;
+import com.logistock.service.TrabajoReporteService;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
 
 @RestController
 @RequestMapping("/reports")
@@ -20,176 +38,276 @@ public class ReportController {
     @Autowired
     private ReportService reportService;
 
+    @Autowired
+    private TrabajoReporteService trabajoReporteService;
+
+    @Autowired
+    private CacheReporteService cacheReporteService;
+
+    @Autowired
+    private GuiaRemisionService guiaRemisionService;
+
     @GetMapping("/inventory/pdf")
-    public ResponseEntity<InputStreamResource> inventoryReportPdf() {
-        ByteArrayInputStream bis = reportService.generateInventoryPdf();
+    public ResponseEntity<?> inventoryReportPdf(FiltroReporte filtro, WebRequest request) throws IOException {
+        return pdf("inventory", "inventario.pdf", filtro, request);
+    }
+
+    @GetMapping("/inventory/excel")
+    public ResponseEntity<?> inventoryReportExcel(FiltroReporte filtro, WebRequest request) throws IOException {
+        return excel("inventory", "inventario.xlsx", filtro, request);
+    }
+
+    @GetMapping("/routes/pdf")
+    public ResponseEntity<?> routesReportPdf(FiltroReporte filtro, WebRequest request) throws IOException {
+        return pdf("routes", "rutas.pdf", filtro, request);
+    }
+
+    @GetMapping("/routes/excel")
+    public ResponseEntity<?> routesReportExcel(FiltroReporte filtro, WebRequest request) throws IOException {
+        return excel("routes", "rutas.xlsx", filtro, request);
+    }
+
+    // --- CLIENTES ---
+
+    @GetMapping("/clients/pdf")
+    public ResponseEntity<?> clientsReportPdf(FiltroReporte filtro, WebRequest request) throws IOException {
+        return pdf("clients", "clientes.pdf", filtro, request);
+    }
 
+    @GetMapping("/clients/excel")
+    public ResponseEntity<?> clientsReportExcel(FiltroReporte filtro, WebRequest request) throws IOException {
+        return excel("clients", "clientes.xlsx", filtro, request);
+    }
+
+    // --- PROVEEDORES ---
+
+    @GetMapping("/suppliers/pdf")
+    public ResponseEntity<?> suppliersReportPdf(FiltroReporte filtro, WebRequest request) throws IOException {
+        return pdf("suppliers", "proveedores.pdf", filtro, request);
+    }
+
+    @GetMapping("/suppliers/excel")
+    public ResponseEntity<?> suppliersReportExcel(FiltroReporte filtro, WebRequest request) throws IOException {
+        return excel("suppliers", "proveedores.xlsx", filtro, request);
+    }
+
+    // --- PEDIDOS ---
+
+    @GetMapping("/orders/pdf")
+    public ResponseEntity<?> ordersReportPdf(FiltroReporte filtro, WebRequest request) throws IOException {
+        return pdf("orders", "pedidos.pdf", filtro, request);
+    }
+
+    @GetMapping("/orders/excel")
+    public ResponseEntity<?> ordersReportExcel(FiltroReporte filtro, WebRequest request) throws IOException {
+        return excel("orders", "pedidos.xlsx", filtro, request);
+    }
+
+    /**
+     * Guías de remisión (un PDF por pedido) en un ZIP, p. ej. ?estado=ASIGNADO&desde=2024-05-10&hasta=2024-05-10
+     */
+    @GetMapping("/orders/delivery-notes")
+    public ResponseEntity<?> ordersDeliveryNotes(FiltroReporte filtro) {
+        try {
+            guiaRemisionService.validarFiltro(filtro);
+        } catch (IllegalArgumentException e) {
+            return filtroInvalido(e);
+        }
         HttpHeaders headers = new HttpHeaders();
-        headers.add("Content-Disposition", "inline; filename=inventario.pdf");
+        headers.add("Content-Disposition", "attachment; filename=guias-remision.zip");
 
+        StreamingResponseBody cuerpo = out -> guiaRemisionService.generarZip(filtro, out);
         return ResponseEntity
                 .ok()
                 .headers(headers)
-                .contentType(MediaType.APPLICATION_PDF)
-                .body(new InputStreamResource(bis));
+                .contentType(MediaType.parseMediaType("application/zip"))
+                .body(cuerpo);
     }
 
-    @GetMapping("/inventory/excel")
-    public ResponseEntity<InputStreamResource> inventoryReportExcel() throws IOException {
-        System.out.println("ReportController: Received request for Excel report");
+    // --- LIBRO CONSOLIDADO ---
+
+    /**
+     * Todas las entidades en un único libro, una hoja por entidad. Solo admite el rango
+     * de fechas (desde, hasta); no pasa por la caché porque depende de todas las colecciones.
+     */
+    @GetMapping("/consolidated/excel")
+    public ResponseEntity<?> consolidatedReportExcel(FiltroReporte filtro) {
         try {
-            ByteArrayInputStream bis = reportService.generateInventoryExcel();
-
-            HttpHeaders headers = new HttpHeaders();
-            headers.add("Content-Disposition", "attachment; filename=inventario.xlsx");
-
-            return ResponseEntity
-                    .ok()
-                    .headers(headers)
-                    .contentType(MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"))
-                    .body(new InputStreamResource(bis));
-        } catch (Throwable e) {
-            System.err.println("ReportController: Critical error generating Excel report: " + e.getMessage());
-            e.printStackTrace();
-            return ResponseEntity.internalServerError().build();
+            reportService.validar(ReportService.CONSOLIDADO, FormatoReporte.EXCEL, filtro);
+        } catch (IllegalArgumentException e) {
+            return filtroInvalido(e);
         }
-    }
-
-    @GetMapping("/routes/pdf")
-    public ResponseEntity<InputStreamResource> routesReportPdf() {
-        ByteArrayInputStream bis = reportService.generateRoutesPdf();
-
         HttpHeaders headers = new HttpHeaders();
-        headers.add("Content-Disposition", "inline; filename=rutas.pdf");
+        headers.add("Content-Disposition", "attachment; filename=consolidado.xlsx");
 
+        StreamingResponseBody cuerpo = out ->
+                reportService.generar(ReportService.CONSOLIDADO, FormatoReporte.EXCEL, filtro, out);
         return ResponseEntity
                 .ok()
                 .headers(headers)
-                .contentType(MediaType.APPLICATION_PDF)
-                .body(new InputStreamResource(bis));
+                .contentType(FormatoReporte.EXCEL.getTipoContenido())
+                .body(cuerpo);
     }
 
-    @GetMapping("/routes/excel")
-    public ResponseEntity<InputStreamResource> routesReportExcel() throws IOException {
+    // --- EXPORTACIONES EN CRUDO ---
+
+    @GetMapping("/{entity}/csv")
+    public ResponseEntity<?> exportCsv(@PathVariable String entity, FiltroReporte filtro,
+                                       @RequestParam(defaultValue = "false") boolean gzip) {
+        return exportacion(entity, FormatoReporte.CSV, filtro, gzip);
+    }
+
+    @GetMapping("/{entity}/ndjson")
+    public ResponseEntity<?> exportNdjson(@PathVariable String entity, FiltroReporte filtro,
+                                          @RequestParam(defaultValue = "false") boolean gzip) {
+        return exportacion(entity, FormatoReporte.NDJSON, filtro, gzip);
+    }
+
+    // --- TRABAJOS EN SEGUNDO PLANO ---
+
+    @PostMapping("/jobs")
+    public ResponseEntity<?> submitJob(@RequestBody SolicitudReporteRequest request) {
         try {
-            ByteArrayInputStream bis = reportService.generateRoutesExcel();
-
-            HttpHeaders headers = new HttpHeaders();
-            headers.add("Content-Disposition", "attachment; filename=rutas.xlsx");
-
-            return ResponseEntity
-                    .ok()
-                    .headers(headers)
-                    .contentType(MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"))
-                    .body(new InputStreamResource(bis));
-        } catch (Throwable e) {
-            e.printStackTrace();
-            return ResponseEntity.internalServerError().build();
+            TrabajoReporte trabajo = trabajoReporteService.solicitar(request.getEntidad(),
+                    FormatoReporte.desde(request.getFormato()), request.isGzip(), request.getFiltro());
+            return ResponseEntity.accepted()
+                    .location(ServletUriComponentsBuilder.fromCurrentRequest()
+                            .path("/{id}").buildAndExpand(trabajo.getId()).toUri())
+                    .body(trabajo);
+        } catch (IllegalArgumentException e) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", "Solicitud inválida");
+            error.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(error);
+        } catch (IllegalStateException e) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", "Servicio ocupado");
+            error.put("message", e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(error);
         }
     }
 
-    // --- CLIENTES ---
+    @GetMapping("/jobs/{id}")
+    public ResponseEntity<TrabajoReporte> getJob(@PathVariable String id) {
+        return trabajoReporteService.obtener(id)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
 
-    @GetMapping("/clients/pdf")
-    public ResponseEntity<InputStreamResource> clientsReportPdf() {
-        ByteArrayInputStream bis = reportService.generateClientsPdf();
+    /**
+     * Descarga del resultado; Spring atiende las cabeceras Range sobre el recurso (206)
+     */
+    @GetMapping("/jobs/{id}/download")
+    public ResponseEntity<?> downloadJob(@PathVariable String id) {
+        TrabajoReporte trabajo = trabajoReporteService.obtener(id).orElse(null);
+        if (trabajo == null) {
+            return ResponseEntity.notFound().build();
+        }
+        if (trabajo.getEstado() != TrabajoReporte.Estado.COMPLETADO) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", "Reporte no disponible");
+            error.put("message", "El trabajo está en estado " + trabajo.getEstado());
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(error);
+        }
 
         HttpHeaders headers = new HttpHeaders();
-        headers.add("Content-Disposition", "inline; filename=clientes.pdf");
+        headers.add("Content-Disposition", "attachment; filename=" + trabajoReporteService.nombreArchivo(trabajo));
 
         return ResponseEntity
                 .ok()
                 .headers(headers)
-                .contentType(MediaType.APPLICATION_PDF)
-                .body(new InputStreamResource(bis));
+                .contentType(trabajo.isGzip() ? FormatoReporte.GZIP : trabajo.getFormato().getTipoContenido())
+                .body(new FileSystemResource(trabajo.getArchivo()));
     }
 
-    @GetMapping("/clients/excel")
-    public ResponseEntity<InputStreamResource> clientsReportExcel() throws IOException {
+    /**
+     * Respuesta que escribe la exportación en la salida HTTP fila a fila, opcionalmente
+     * comprimida con gzip al vuelo (se descarga como .gz)
+     */
+    private ResponseEntity<?> exportacion(String entity, FormatoReporte formato, FiltroReporte filtro, boolean gzip) {
+        String nombre;
         try {
-            ByteArrayInputStream bis = reportService.generateClientsExcel();
-
-            HttpHeaders headers = new HttpHeaders();
-            headers.add("Content-Disposition", "attachment; filename=clientes.xlsx");
-
-            return ResponseEntity
-                    .ok()
-                    .headers(headers)
-                    .contentType(MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"))
-                    .body(new InputStreamResource(bis));
-        } catch (Throwable e) {
-            e.printStackTrace();
-            return ResponseEntity.internalServerError().build();
+            nombre = reportService.nombreArchivo(entity);
+        } catch (IllegalArgumentException e) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", "Entidad no encontrada");
+            error.put("message", e.getMessage());
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(error);
+        }
+        try {
+            reportService.validar(entity, formato, filtro);
+        } catch (IllegalArgumentException e) {
+            return filtroInvalido(e);
         }
-    }
-
-    // --- PROVEEDORES ---
-
-    @GetMapping("/suppliers/pdf")
-    public ResponseEntity<InputStreamResource> suppliersReportPdf() {
-        ByteArrayInputStream bis = reportService.generateSuppliersPdf();
 
+        StreamingResponseBody generador = out -> reportService.generar(entity, formato, filtro, out);
+        String filename = nombre + "." + formato.getExtension() + (gzip ? ".gz" : "");
         HttpHeaders headers = new HttpHeaders();
-        headers.add("Content-Disposition", "inline; filename=proveedores.pdf");
+        headers.add("Content-Disposition", "attachment; filename=" + filename);
+
+        StreamingResponseBody cuerpo = generador;
+        if (gzip) {
+            cuerpo = out -> {
+                GZIPOutputStream comprimido = new GZIPOutputStream(out, 64 * 1024);
+                generador.writeTo(comprimido);
+                comprimido.finish();
+            };
+        }
 
         return ResponseEntity
                 .ok()
                 .headers(headers)
-                .contentType(MediaType.APPLICATION_PDF)
-                .body(new InputStreamResource(bis));
+                .contentType(gzip ? FormatoReporte.GZIP : formato.getTipoContenido())
+                .body(cuerpo);
     }
 
-    @GetMapping("/suppliers/excel")
-    public ResponseEntity<InputStreamResource> suppliersReportExcel() throws IOException {
-        try {
-            ByteArrayInputStream bis = reportService.generateSuppliersExcel();
-
-            HttpHeaders headers = new HttpHeaders();
-            headers.add("Content-Disposition", "attachment; filename=proveedores.xlsx");
-
-            return ResponseEntity
-                    .ok()
-                    .headers(headers)
-                    .contentType(MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"))
-                    .body(new InputStreamResource(bis));
-        } catch (Throwable e) {
-            e.printStackTrace();
-            return ResponseEntity.internalServerError().build();
-        }
+    /**
+     * Reporte PDF servido desde la caché de reportes (se muestra en el navegador)
+     */
+    private ResponseEntity<?> pdf(String entidad, String filename, FiltroReporte filtro, WebRequest request) throws IOException {
+        return cacheado(entidad, FormatoReporte.PDF, filtro, "inline; filename=" + filename, request);
     }
 
-    // --- PEDIDOS ---
+    /**
+     * Libro Excel servido desde la caché de reportes (se descarga)
+     */
+    private ResponseEntity<?> excel(String entidad, String filename, FiltroReporte filtro, WebRequest request) throws IOException {
+        return cacheado(entidad, FormatoReporte.EXCEL, filtro, "attachment; filename=" + filename, request);
+    }
 
-    @GetMapping("/orders/pdf")
-    public ResponseEntity<InputStreamResource> ordersReportPdf() {
-        ByteArrayInputStream bis = reportService.generateOrdersPdf();
+    /**
+     * Si el cliente ya tiene la versión actual (If-None-Match) se responde 304 sin generar
+     * nada; si no, se envía el archivo en caché o, si los datos cambiaron, se genera
+     * enviándolo a la vez que se guarda en caché
+     */
+    private ResponseEntity<?> cacheado(String entidad, FormatoReporte formato, FiltroReporte filtro, String disposition,
+                                       WebRequest request) throws IOException {
+        try {
+            reportService.validarFiltro(entidad, filtro);
+        } catch (IllegalArgumentException e) {
+            return filtroInvalido(e);
+        }
+        CacheReporteService.EnvioReporte envio = cacheReporteService.preparar(entidad, formato, filtro);
+        if (request.checkNotModified(envio.getEtag())) {
+            return null;
+        }
 
         HttpHeaders headers = new HttpHeaders();
-        headers.add("Content-Disposition", "inline; filename=pedidos.pdf");
+        headers.add("Content-Disposition", disposition);
 
         return ResponseEntity
                 .ok()
                 .headers(headers)
-                .contentType(MediaType.APPLICATION_PDF)
-                .body(new InputStreamResource(bis));
+                .eTag(envio.getEtag())
+                .cacheControl(CacheControl.noCache())
+                .contentType(formato.getTipoContenido())
+                .body((StreamingResponseBody) envio::escribir);
     }
 
-    @GetMapping("/orders/excel")
-    public ResponseEntity<InputStreamResource> ordersReportExcel() throws IOException {
-        try {
-            ByteArrayInputStream bis = reportService.generateOrdersExcel();
-
-            HttpHeaders headers = new HttpHeaders();
-            headers.add("Content-Disposition", "attachment; filename=pedidos.xlsx");
-
-            return ResponseEntity
-                    .ok()
-                    .headers(headers)
-                    .contentType(MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"))
-                    .body(new InputStreamResource(bis));
-        } catch (Throwable e) {
-            e.printStackTrace();
-            return ResponseEntity.internalServerError().build();
-        }
+    private ResponseEntity<Map<String, String>> filtroInvalido(IllegalArgumentException e) {
+        Map<String, String> error = new HashMap<>();
+        error.put("error", "Filtro inválido");
+        error.put("message", e.getMessage());
+        return ResponseEntity.badRequest().body(error);
     }
 }
@@ -1,6 +1,11 @@
 package com.logistock.controller;
 
 import com.logistock.model.Ruta;
+import com.logistock.dto.FiltroRutas;
+import com.logistock.dto.SolicitudPlanificacionRequest;
+import com.logistock.service.AgendaRutasService;
+import com.logistock.service.EtaService;
+import com.logistock.service.PlanificacionRutasService;
 import com.logistock.service.RutaService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -9,10 +14,13 @@ import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -28,12 +36,15 @@ import java.util.Map;
 public class RutasController {
 
     private final RutaService rutaService;
+    private final PlanificacionRutasService planificacionRutasService;
+    private final AgendaRutasService agendaRutasService;
+    private final EtaService etaService;
 
     /**
      * Obtener todas las rutas
      */
     @GetMapping
-    @Operation(summary = "Obtener todas las rutas", description = "Retorna la lista de todas las rutas activas con filtros opcionales")
+    @Operation(summary = "Obtener todas las rutas", description = "Retorna las rutas activas paginadas; los filtros se combinan entre sí. Ordenable por fechaPlanificada, codigo, estado, prioridad o createdAt")
     public ResponseEntity<Map<String, Object>> getAllRutas(
             @Parameter(description = "Número de página (0-indexed)") @RequestParam(defaultValue = "0") int page,
             @Parameter(description = "Tamaño de página") @RequestParam(defaultValue = "10") int size,
@@ -42,64 +53,36 @@ public class RutasController {
             @Parameter(description = "Estado para filtrar") @RequestParam(required = false) String estado,
             @Parameter(description = "Prioridad para filtrar") @RequestParam(required = false) String prioridad,
             @Parameter(description = "Texto para búsqueda") @RequestParam(required = false) String search,
-            @Parameter(description = "Vehículo asignado") @RequestParam(required = false) String vehiculo,
-            @Parameter(description = "Conductor asignado") @RequestParam(required = false) String conductor) {
+            @Parameter(description = "Vehículo asignado (o su comienzo)") @RequestParam(required = false) String vehiculo,
+            @Parameter(description = "Conductor asignado (o su comienzo)") @RequestParam(required = false) String conductor) {
         
         try {
-            log.info("GET /rutas - página: {}, tamaño: {}, estado: {}, búsqueda: {}", page, size, estado, search);
+            log.info("GET /rutas - página: {}, tamaño: {}, estado: {}, prioridad: {}, búsqueda: {}, vehículo: {}, conductor: {}",
+                    page, size, estado, prioridad, search, vehiculo, conductor);
             
-            List<Ruta> rutas;
-            Map<String, Object> response = new HashMap<>();
+            FiltroRutas filtro = FiltroRutas.builder()
+                    .search(search)
+                    .estado(estado)
+                    .prioridad(prioridad)
+                    .vehiculo(vehiculo)
+                    .conductor(conductor)
+                    .build();
+            Page<Ruta> pageResult = rutaService.findAll(filtro, page, size, sortBy, sortDirection);
             
-            // Aplicar filtros
-            if (search != null && !search.trim().isEmpty()) {
-                rutas = rutaService.searchByText(search.trim());
-                response.put("rutas", rutas);
-                response.put("total", rutas.size());
-                response.put("page", 0);
-                response.put("size", rutas.size());
-                response.put("totalPages", 1);
-            } else if (estado != null && !estado.trim().isEmpty()) {
-                rutas = rutaService.findByEstado(estado.trim());
-                response.put("rutas", rutas);
-                response.put("total", rutas.size());
-                response.put("page", 0);
-                response.put("size", rutas.size());
-                response.put("totalPages", 1);
-            } else if (prioridad != null && !prioridad.trim().isEmpty()) {
-                rutas = rutaService.findByPrioridad(prioridad.trim());
-                response.put("rutas", rutas);
-                response.put("total", rutas.size());
-                response.put("page", 0);
-                response.put("size", rutas.size());
-                response.put("totalPages", 1);
-            } else if (vehiculo != null && !vehiculo.trim().isEmpty()) {
-                rutas = rutaService.findByVehiculo(vehiculo.trim());
-                response.put("rutas", rutas);
-                response.put("total", rutas.size());
-                response.put("page", 0);
-                response.put("size", rutas.size());
-                response.put("totalPages", 1);
-            } else if (conductor != null && !conductor.trim().isEmpty()) {
-                rutas = rutaService.findByConductor(conductor.trim());
-                response.put("rutas", rutas);
-                response.put("total", rutas.size());
-                response.put("page", 0);
-                response.put("size", rutas.size());
-                response.put("totalPages", 1);
-            } else {
-                // Sin filtros - usar paginación
-                Page<Ruta> pageResult = rutaService.findAll(page, size, sortBy, sortDirection);
-                response.put("rutas", pageResult.getContent());
-                response.put("total", pageResult.getTotalElements());
-                response.put("page", pageResult.getNumber());
-                response.put("size", pageResult.getSize());
-                response.put("totalPages", pageResult.getTotalPages());
-            }
+            Map<String, Object> response = new HashMap<>();
+            response.put("rutas", pageResult.getContent());
+            response.put("total", pageResult.getTotalElements());
+            response.put("page", pageResult.getNumber());
+            response.put("size", pageResult.getSize());
+            response.put("totalPages", pageResult.getTotalPages());
             
             log.info("Rutas encontradas: {}", response.get("total"));
             return ResponseEntity.ok(response);
             
+        } catch (IllegalArgumentException e) {
+            log.warn("Parámetros de listado inválidos: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(Map.of("error", e.getMessage()));
         } catch (Exception e) {
             log.error("Error al obtener rutas", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -146,6 +129,10 @@ public class RutasController {
             log.warn("Error de validación al crear ruta: {}", e.getMessage());
             return ResponseEntity.status(HttpStatus.BAD_REQUEST)
                     .body(Map.of("error", e.getMessage()));
+        } catch (IllegalStateException e) {
+            log.warn("Conflicto de agenda al crear ruta: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(Map.of("error", e.getMessage()));
         } catch (Exception e) {
             log.error("Error al crear ruta", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -177,6 +164,10 @@ public class RutasController {
             log.warn("Ruta no encontrada: {}", id);
             return ResponseEntity.status(HttpStatus.NOT_FOUND)
                     .body(Map.of("error", e.getMessage()));
+        } catch (IllegalStateException e) {
+            log.warn("Conflicto de agenda al actualizar ruta: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(Map.of("error", e.getMessage()));
         } catch (Exception e) {
             log.error("Error al actualizar ruta: {}", id, e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -208,6 +199,10 @@ public class RutasController {
             log.warn("Ruta no encontrada: {}", id);
             return ResponseEntity.status(HttpStatus.NOT_FOUND)
                     .body(Map.of("error", e.getMessage()));
+        } catch (IllegalStateException e) {
+            log.warn("Conflicto de agenda al cambiar estado: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(Map.of("error", e.getMessage()));
         } catch (Exception e) {
             log.error("Error al cambiar estado de ruta: {}", id, e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -215,6 +210,215 @@ public class RutasController {
         }
     }
 
+    /**
+     * Registrar la llegada de una parada
+     */
+    @PatchMapping("/{id}/paradas/{indice}/llegada")
+    @Operation(summary = "Llegada a parada", description = "Registra la hora de llegada a la parada de una ruta en proceso, sin reescribir la ruta")
+    public ResponseEntity<?> registrarLlegada(
+            @PathVariable String id,
+            @Parameter(description = "Posición de la parada en la ruta, desde 0") @PathVariable int indice,
+            @Parameter(description = "Hora de llegada (yyyy-MM-ddTHH:mm:ss); por defecto la actual") @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime hora) {
+        try {
+            log.info("PATCH /rutas/{}/paradas/{}/llegada", id, indice);
+            
+            return ResponseEntity.ok(rutaService.registrarLlegada(id, indice, hora));
+            
+        } catch (IllegalStateException e) {
+            log.warn("No se puede registrar la llegada en la ruta {}: {}", id, e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(Map.of("error", e.getMessage()));
+        } catch (java.util.NoSuchElementException e) {
+            log.warn("Parada no encontrada: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            log.error("Error al registrar la llegada en la ruta: {}", id, e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "Error al registrar la llegada: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Registrar la salida de una parada
+     */
+    @PatchMapping("/{id}/paradas/{indice}/salida")
+    @Operation(summary = "Salida de parada", description = "Registra la hora de salida de la parada de una ruta en proceso y la marca como completada, sin reescribir la ruta")
+    public ResponseEntity<?> registrarSalida(
+            @PathVariable String id,
+            @Parameter(description = "Posición de la parada en la ruta, desde 0") @PathVariable int indice,
+            @Parameter(description = "Hora de salida (yyyy-MM-ddTHH:mm:ss); por defecto la actual") @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime hora) {
+        try {
+            log.info("PATCH /rutas/{}/paradas/{}/salida", id, indice);
+            
+            return ResponseEntity.ok(rutaService.registrarSalida(id, indice, hora));
+            
+        } catch (IllegalStateException e) {
+            log.warn("No se puede registrar la salida en la ruta {}: {}", id, e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(Map.of("error", e.getMessage()));
+        } catch (java.util.NoSuchElementException e) {
+            log.warn("Parada no encontrada: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            log.error("Error al registrar la salida en la ruta: {}", id, e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "Error al registrar la salida: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Optimizar el orden de las paradas de la ruta
+     */
+    @PostMapping("/{id}/optimizar")
+    @Operation(summary = "Optimizar paradas", description = "Reordena las paradas para minimizar el recorrido y recalcula distancia, tiempo estimado y costo de combustible. Requiere coordenadas de origen y de cada parada")
+    public ResponseEntity<?> optimizarParadas(
+            @PathVariable String id,
+            @Parameter(description = "false para obtener la propuesta sin guardarla") @RequestParam(defaultValue = "true") boolean aplicar) {
+        try {
+            log.info("POST /rutas/{}/optimizar - aplicar: {}", id, aplicar);
+            
+            return ResponseEntity.ok(rutaService.optimizarParadas(id, aplicar));
+            
+        } catch (IllegalArgumentException e) {
+            log.warn("No se puede optimizar la ruta {}: {}", id, e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(Map.of("error", e.getMessage()));
+        } catch (IllegalStateException e) {
+            log.warn("No se puede optimizar la ruta {}: {}", id, e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(Map.of("error", e.getMessage()));
+        } catch (java.util.NoSuchElementException e) {
+            log.warn("Ruta no encontrada: {}", id);
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            log.error("Error al optimizar ruta: {}", id, e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "Error al optimizar ruta: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Optimizar todas las rutas planificadas de un día
+     */
+    @PostMapping("/planificacion")
+    @Operation(summary = "Planificar el día", description = "Optimiza en paralelo las paradas de todas las rutas planificadas para la fecha y guarda los cambios en una sola escritura. Devuelve los km y minutos ahorrados")
+    public ResponseEntity<?> planificarDia(
+            @Parameter(description = "Fecha (yyyy-MM-dd)") @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate fecha,
+            @Parameter(description = "false para obtener el resumen sin guardar") @RequestParam(defaultValue = "true") boolean aplicar) {
+        try {
+            log.info("POST /rutas/planificacion - fecha: {}, aplicar: {}", fecha, aplicar);
+            
+            return ResponseEntity.ok(rutaService.planificarDia(fecha, aplicar));
+            
+        } catch (Exception e) {
+            log.error("Error al planificar el día {}", fecha, e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "Error al planificar el día: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Crear las rutas del día a partir de los pedidos disponibles
+     */
+    @PostMapping("/planificacion/automatica")
+    @Operation(summary = "Planificación automática", description = "Agrupa los pedidos DISPONIBLE con coordenadas y sin ruta en rutas que respetan la capacidad y la jornada de cada vehículo. Con incremental=true inserta primero los pedidos nuevos en las rutas automáticas ya planificadas del día")
+    public ResponseEntity<?> planificarAutomatica(
+            @Valid @RequestBody SolicitudPlanificacionRequest solicitud,
+            @Parameter(description = "Insertar en las rutas ya planificadas antes de crear rutas nuevas") @RequestParam(defaultValue = "false") boolean incremental) {
+        try {
+            log.info("POST /rutas/planificacion/automatica - fecha: {}, vehículos: {}, incremental: {}",
+                    solicitud.getFecha(), solicitud.getVehiculos().size(), incremental);
+            
+            return ResponseEntity.ok(planificacionRutasService.planificar(solicitud, incremental));
+            
+        } catch (Exception e) {
+            log.error("Error en la planificación automática del {}", solicitud.getFecha(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "Error en la planificación automática: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Estimar la duración de una ruta con el modelo aprendido
+     */
+    @GetMapping("/eta")
+    @Operation(summary = "Estimar duración", description = "Duración estimada en minutos según distancia, paradas, prioridad y hora de salida, aprendida de las rutas completadas. Es null mientras el modelo no tenga muestras suficientes")
+    public ResponseEntity<?> estimarDuracion(
+            @RequestParam double distanciaKm,
+            @RequestParam(defaultValue = "0") int paradas,
+            @RequestParam(defaultValue = "Media") String prioridad,
+            @Parameter(description = "Hora de salida (yyyy-MM-ddTHH:mm); por defecto la actual") @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime fechaPlanificada) {
+        try {
+            return ResponseEntity.ok(etaService.estimar(distanciaKm, paradas, prioridad, fechaPlanificada));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            log.error("Error al estimar la duración", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "Error al estimar la duración: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Estado del modelo de duración
+     */
+    @GetMapping("/eta/modelo")
+    @Operation(summary = "Modelo de duración", description = "Muestras, error medio y coeficientes del modelo de duración de rutas")
+    public ResponseEntity<?> modeloEta() {
+        return ResponseEntity.ok(etaService.estado());
+    }
+
+    /**
+     * Franjas libres de un vehículo y/o conductor
+     */
+    @GetMapping("/agenda/disponibilidad")
+    @Operation(summary = "Disponibilidad", description = "Franjas libres de al menos la duración indicada entre desde y hasta, en las que el vehículo y el conductor (uno o ambos) no tienen rutas asignadas")
+    public ResponseEntity<?> disponibilidad(
+            @RequestParam(required = false) String vehiculo,
+            @RequestParam(required = false) String conductor,
+            @Parameter(description = "Inicio de la ventana (yyyy-MM-ddTHH:mm)") @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime desde,
+            @Parameter(description = "Fin de la ventana (yyyy-MM-ddTHH:mm)") @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime hasta,
+            @Parameter(description = "Duración mínima de la franja en minutos") @RequestParam(defaultValue = "60") int duracionMinutos) {
+        try {
+            log.info("GET /rutas/agenda/disponibilidad - vehículo: {}, conductor: {}, {} a {}", vehiculo, conductor, desde, hasta);
+            
+            return ResponseEntity.ok(agendaRutasService.disponibilidad(vehiculo, conductor, desde, hasta, duracionMinutos));
+            
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(Map.of("error", e.getMessage()));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            log.error("Error al consultar disponibilidad", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "Error al consultar disponibilidad: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Dobles asignaciones de vehículos y conductores en toda la flota
+     */
+    @GetMapping("/agenda/conflictos")
+    @Operation(summary = "Conflictos de agenda", description = "Pares de rutas activas cuyo vehículo o conductor se superpone en el horario")
+    public ResponseEntity<?> conflictosAgenda() {
+        try {
+            return ResponseEntity.ok(agendaRutasService.conflictos());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            log.error("Error al verificar la agenda", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "Error al verificar la agenda: " + e.getMessage()));
+        }
+    }
+
     /**
      * Eliminar ruta (soft delete)
      */
@@ -0,0 +1,81 @@
+package com.logistock.controller;
+
+import com.logistock.dto.LotePosicionesRequest;
+import com.logistock.service.TelemetriaService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+/**
+ * Controlador REST para la telemetría GPS de los vehículos
+ */
+@RestController
+@RequestMapping("/telemetria")
+@RequiredArgsConstructor
+@Slf4j
+@Tag(name = "Telemetría", description = "APIs para el seguimiento en vivo de los vehículos")
+public class TelemetriaController {
+
+    private final TelemetriaService telemetriaService;
+
+    /**
+     * Recibir un lote de posiciones
+     */
+    @PostMapping("/posiciones")
+    @Operation(summary = "Enviar posiciones", description = "Recibe un lote de posiciones GPS de uno o más vehículos. Las posiciones se escriben en segundo plano; la respuesta informa cuántas se aceptaron, rechazaron (datos inválidos) o descartaron (sin lugar)")
+    public ResponseEntity<?> registrarPosiciones(@Valid @RequestBody LotePosicionesRequest lote) {
+        try {
+            log.debug("POST /telemetria/posiciones - {} posiciones", lote.getPosiciones().size());
+            
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(telemetriaService.registrar(lote.getPosiciones()));
+            
+        } catch (Exception e) {
+            log.error("Error al recibir posiciones", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "Error al recibir posiciones: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Última posición de cada vehículo
+     */
+    @GetMapping("/posiciones")
+    @Operation(summary = "Posiciones actuales", description = "Última posición conocida de cada vehículo con telemetría reciente")
+    public ResponseEntity<?> getUltimasPosiciones() {
+        try {
+            return ResponseEntity.ok(telemetriaService.ultimasPosiciones());
+        } catch (Exception e) {
+            log.error("Error al obtener posiciones", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "Error al obtener posiciones: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Última posición de un vehículo
+     */
+    @GetMapping("/posiciones/{vehiculo}")
+    @Operation(summary = "Posición de un vehículo", description = "Última posición conocida del vehículo")
+    public ResponseEntity<?> getUltimaPosicion(@PathVariable String vehiculo) {
+        return telemetriaService.ultimaPosicion(vehiculo)
+                .<ResponseEntity<?>>map(ResponseEntity::ok)
+                .orElse(ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(Map.of("error", "Sin posiciones recientes del vehículo: " + vehiculo)));
+    }
+
+    /**
+     * Contadores de la ingesta
+     */
+    @GetMapping("/estadisticas")
+    @Operation(summary = "Estadísticas de telemetría", description = "Vehículos en memoria, posiciones pendientes de escritura y totales aceptados, rechazados, descartados y escritos")
+    public ResponseEntity<?> getEstadisticas() {
+        return ResponseEntity.ok(telemetriaService.estadisticas());
+    }
+}
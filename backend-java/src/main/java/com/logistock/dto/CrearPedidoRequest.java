@@ -1,6 +1,7 @@
 package com.logistock.dto;
 
 import com.logistock.model.ProductoPedido;
+import com.logistock.model.Ubicacion;
 
 import java.util.List;
 
@@ -11,7 +12,9 @@ public class CrearPedidoRequest {
     private String clienteTelefono;
     private List<ProductoPedido> productos;
     private String direccionEntrega;
+    private Ubicacion ubicacion;
     private String observaciones;
+    private String reservaId;
 
     // Constructor vacío
     public CrearPedidoRequest() {
@@ -66,6 +69,14 @@ public class CrearPedidoRequest {
         this.direccionEntrega = direccionEntrega;
     }
 
+    public Ubicacion getUbicacion() {
+        return ubicacion;
+    }
+
+    public void setUbicacion(Ubicacion ubicacion) {
+        this.ubicacion = ubicacion;
+    }
+
     public String getObservaciones() {
         return observaciones;
     }
@@ -73,4 +84,12 @@ public class CrearPedidoRequest {
     public void setObservaciones(String observaciones) {
         this.observaciones = observaciones;
     }
+
+    public String getReservaId() {
+        return reservaId;
+    }
+
+    public void setReservaId(String reservaId) {
+        this.reservaId = reservaId;
+    }
 }
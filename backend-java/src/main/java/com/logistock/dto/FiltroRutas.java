@@ -0,0 +1,26 @@
+package com.logistock.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Filtros combinables del listado de rutas; los vacíos no se aplican
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class FiltroRutas {
+
+    // Texto contenido en el código o el nombre
+    private String search;
+
+    private String estado;
+    private String prioridad;
+
+    // Comienzo del vehículo o del conductor asignado (distingue mayúsculas)
+    private String vehiculo;
+    private String conductor;
+}
@@ -0,0 +1,37 @@
+package com.logistock.dto;
+
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * DTO para enviar en lote las posiciones GPS de uno o más vehículos.
+ * Las posiciones no se validan una a una con Bean Validation: las inválidas se descartan
+ * y se informan en la respuesta, sin rechazar el resto del lote.
+ */
+@Data
+public class LotePosicionesRequest {
+
+    @NotEmpty(message = "Debe enviar al menos una posición")
+    @Size(max = 10000, message = "El lote no puede tener más de 10000 posiciones")
+    private List<Posicion> posiciones;
+
+    @Data
+    public static class Posicion {
+        private String vehiculo;
+
+        // Ruta en proceso del vehículo, si el dispositivo la conoce
+        private String rutaId;
+
+        private Double latitud;
+        private Double longitud;
+        private Double velocidadKmh;
+        private Double rumbo;
+
+        // Hora de la lectura en el dispositivo (por defecto la de recepción)
+        private LocalDateTime fecha;
+    }
+}
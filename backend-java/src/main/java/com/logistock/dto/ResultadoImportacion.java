@@ -0,0 +1,96 @@
+package com.logistock.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * DTO con el resumen de una importación masiva de productos. Los errores por fila se
+ * guardan hasta un máximo; el resto solo se cuenta en fallidos.
+ */
+public class ResultadoImportacion {
+    private long total;
+    private long insertados;
+    private long actualizados;
+    private long fallidos;
+    private boolean erroresTruncados;
+    private final List<ErrorFila> errores = new ArrayList<>();
+
+    private final int maximoErrores;
+
+    public ResultadoImportacion(int maximoErrores) {
+        this.maximoErrores = maximoErrores;
+    }
+
+    public void contarFila() {
+        total++;
+    }
+
+    public void sumarInsertados(long cantidad) {
+        insertados += cantidad;
+    }
+
+    public void sumarActualizados(long cantidad) {
+        actualizados += cantidad;
+    }
+
+    public void registrarError(int fila, String codigo, String error) {
+        fallidos++;
+        if (errores.size() < maximoErrores) {
+            errores.add(new ErrorFila(fila, codigo, error));
+        } else {
+            erroresTruncados = true;
+        }
+    }
+
+    // Getters
+    public long getTotal() {
+        return total;
+    }
+
+    public long getInsertados() {
+        return insertados;
+    }
+
+    public long getActualizados() {
+        return actualizados;
+    }
+
+    public long getFallidos() {
+        return fallidos;
+    }
+
+    public boolean isErroresTruncados() {
+        return erroresTruncados;
+    }
+
+    public List<ErrorFila> getErrores() {
+        return errores;
+    }
+
+    /**
+     * Error de una fila del archivo
+     */
+    public static class ErrorFila {
+        private final int fila;
+        private final String codigo;
+        private final String error;
+
+        public ErrorFila(int fila, String codigo, String error) {
+            this.fila = fila;
+            this.codigo = codigo;
+            this.error = error;
+        }
+
+        public int getFila() {
+            return fila;
+        }
+
+        public String getCodigo() {
+            return codigo;
+        }
+
+        public String getError() {
+            return error;
+        }
+    }
+}
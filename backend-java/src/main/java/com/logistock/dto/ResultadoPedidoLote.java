@@ -0,0 +1,63 @@
+package com.logistock.dto;
+
+/**
+ * DTO con el resultado de cada pedido de una carga masiva
+ */
+public class ResultadoPedidoLote {
+    private int indice;
+    private boolean exito;
+    private String pedidoId;
+    private String error;
+
+    public ResultadoPedidoLote() {
+    }
+
+    public static ResultadoPedidoLote exito(int indice, String pedidoId) {
+        ResultadoPedidoLote resultado = new ResultadoPedidoLote();
+        resultado.indice = indice;
+        resultado.exito = true;
+        resultado.pedidoId = pedidoId;
+        return resultado;
+    }
+
+    public static ResultadoPedidoLote error(int indice, String error) {
+        ResultadoPedidoLote resultado = new ResultadoPedidoLote();
+        resultado.indice = indice;
+        resultado.exito = false;
+        resultado.error = error;
+        return resultado;
+    }
+
+    // Getters y Setters
+    public int getIndice() {
+        return indice;
+    }
+
+    public void setIndice(int indice) {
+        this.indice = indice;
+    }
+
+    public boolean isExito() {
+        return exito;
+    }
+
+    public void setExito(boolean exito) {
+        this.exito = exito;
+    }
+
+    public String getPedidoId() {
+        return pedidoId;
+    }
+
+    public void setPedidoId(String pedidoId) {
+        this.pedidoId = pedidoId;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+}
@@ -0,0 +1,58 @@
+package com.logistock.dto;
+
+import com.logistock.model.Ubicacion;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import lombok.Data;
+import org.springframework.format.annotation.DateTimeFormat;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.List;
+
+/**
+ * DTO para planificar automáticamente las rutas de un día a partir de los pedidos disponibles
+ */
+@Data
+public class SolicitudPlanificacionRequest {
+
+    @NotNull(message = "La fecha es obligatoria")
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+    private LocalDate fecha;
+
+    // Hora de salida de las rutas (por defecto 08:00)
+    private LocalTime horaInicio;
+
+    @NotBlank(message = "La dirección del depósito es obligatoria")
+    private String deposito;
+
+    @NotNull(message = "Las coordenadas del depósito son obligatorias")
+    @Valid
+    private Ubicacion ubicacionDeposito;
+
+    @NotEmpty(message = "Debe indicar al menos un vehículo")
+    @Valid
+    private List<Vehiculo> vehiculos;
+
+    // Tiempo máximo de búsqueda local de todo el plan (ms); por defecto el configurado
+    private Long presupuestoMs;
+
+    @Data
+    public static class Vehiculo {
+        @NotBlank(message = "El vehículo es obligatorio")
+        private String vehiculo;
+
+        private String conductor;
+
+        @NotNull(message = "La capacidad del vehículo es obligatoria")
+        @Min(value = 1, message = "La capacidad debe ser al menos 1 unidad")
+        private Integer capacidadUnidades;
+
+        @NotNull(message = "La jornada del vehículo es obligatoria")
+        @Min(value = 1, message = "La jornada debe ser al menos 1 minuto")
+        private Integer jornadaMinutos;
+    }
+}
@@ -0,0 +1,49 @@
+package com.logistock.dto;
+
+import com.logistock.report.FiltroReporte;
+
+/**
+ * DTO para solicitar la generación de un reporte en segundo plano
+ */
+public class SolicitudReporteRequest {
+    private String entidad;
+    private String formato;
+    private boolean gzip;
+    private FiltroReporte filtro;
+
+    public SolicitudReporteRequest() {
+    }
+
+    // Getters y Setters
+    public String getEntidad() {
+        return entidad;
+    }
+
+    public void setEntidad(String entidad) {
+        this.entidad = entidad;
+    }
+
+    public String getFormato() {
+        return formato;
+    }
+
+    public void setFormato(String formato) {
+        this.formato = formato;
+    }
+
+    public boolean isGzip() {
+        return gzip;
+    }
+
+    public void setGzip(boolean gzip) {
+        this.gzip = gzip;
+    }
+
+    public FiltroReporte getFiltro() {
+        return filtro;
+    }
+
+    public void setFiltro(FiltroReporte filtro) {
+        this.filtro = filtro;
+    }
+}
@@ -0,0 +1,92 @@
+package com.logistock.importacion;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lector CSV en streaming (RFC 4180): campos entre comillas con separadores, comillas
+ * dobles y saltos de línea. Lee carácter a carácter con un buffer fijo, por lo que la
+ * memoria solo depende de la fila más larga. Ignora el BOM UTF-8 y las filas vacías.
+ * Cada fila se entrega con la línea física en la que empieza (un campo entre comillas
+ * puede ocupar varias líneas), que es la que ve quien abre el archivo.
+ */
+public final class LectorCsv {
+
+    private final char separador;
+
+    public LectorCsv(char separador) {
+        this.separador = separador;
+    }
+
+    public void leer(InputStream entrada, ManejadorFilas manejador) throws IOException {
+        Reader lector = new BufferedReader(new InputStreamReader(entrada, StandardCharsets.UTF_8), 64 * 1024);
+        List<String> valores = new ArrayList<>();
+        StringBuilder campo = new StringBuilder();
+        boolean entreComillas = false;
+        boolean campoIniciado = false;
+        // Línea física actual (\n, \r\n o \r) y línea en la que empezó la fila en curso
+        int linea = 1;
+        int inicio = 0;
+        char anterior = 0;
+        int c = lector.read();
+        if (c == '\uFEFF') {
+            c = lector.read();
+        }
+        while (c != -1) {
+            char caracter = (char) c;
+            if (anterior == '\r' && caracter != '\n' || anterior == '\n') {
+                linea++;
+            }
+            anterior = caracter;
+            if (inicio == 0 && caracter != '\n' && caracter != '\r') {
+                inicio = linea;
+            }
+            if (entreComillas) {
+                if (caracter == '"') {
+                    int siguiente = lector.read();
+                    if (siguiente == '"') {
+                        campo.append('"');
+                    } else {
+                        entreComillas = false;
+                        c = siguiente;
+                        continue;
+                    }
+                } else {
+                    campo.append(caracter);
+                }
+            } else if (caracter == '"' && campo.length() == 0) {
+                entreComillas = true;
+                campoIniciado = true;
+            } else if (caracter == separador) {
+                valores.add(campo.toString());
+                campo.setLength(0);
+                campoIniciado = true;
+            } else if (caracter == '\n' || caracter == '\r') {
+                if (campoIniciado || campo.length() > 0) {
+                    valores.add(campo.toString());
+                    manejador.fila(inicio, valores);
+                    valores = new ArrayList<>(valores.size());
+                    campo.setLength(0);
+                    campoIniciado = false;
+                    inicio = 0;
+                }
+            } else {
+                campo.append(caracter);
+            }
+            c = lector.read();
+        }
+        if (entreComillas) {
+            throw new IOException("CSV inválido: comillas sin cerrar en la fila que empieza en la línea " + inicio);
+        }
+        if (campoIniciado || campo.length() > 0) {
+            valores.add(campo.toString());
+            manejador.fila(inicio, valores);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.logistock.importacion;
+
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Lector XLSX con el modelo de eventos de POI: la primera hoja se recorre con SAX y cada
+ * fila se entrega al terminar de leerla, sin construir el libro en memoria. El paquete se
+ * abre desde un archivo (no desde un stream) para que POI no descomprima todo en memoria.
+ *
+ * Los números se entregan sin el formato de la celda (sin separadores de miles ni
+ * símbolos de moneda) para poder convertirlos sin depender de la configuración regional.
+ */
+public final class LectorXlsx {
+
+    public void leer(File archivo, ManejadorFilas manejador) throws IOException {
+        try (OPCPackage paquete = OPCPackage.open(archivo, PackageAccess.READ)) {
+            XSSFReader lector = new XSSFReader(paquete);
+            ReadOnlySharedStringsTable textos = new ReadOnlySharedStringsTable(paquete, false);
+            StylesTable estilos = lector.getStylesTable();
+            Iterator<InputStream> hojas = lector.getSheetsData();
+            if (!hojas.hasNext()) {
+                throw new IOException("El libro no tiene hojas");
+            }
+            try (InputStream hoja = hojas.next()) {
+                XMLReader parser = XMLHelper.newXMLReader();
+                parser.setContentHandler(new XSSFSheetXMLHandler(estilos, null, textos,
+                        new Filas(manejador), new FormatoCrudo(), false));
+                parser.parse(new InputSource(hoja));
+            }
+        } catch (OpenXML4JException | SAXException | ParserConfigurationException e) {
+            throw new IOException("Archivo XLSX inválido: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Acumula las celdas de la fila actual por índice de columna
+     */
+    private static class Filas implements XSSFSheetXMLHandler.SheetContentsHandler {
+        private final ManejadorFilas manejador;
+        private List<String> valores = new ArrayList<>();
+
+        Filas(ManejadorFilas manejador) {
+            this.manejador = manejador;
+        }
+
+        @Override
+        public void startRow(int fila) {
+            valores = new ArrayList<>(valores.size());
+        }
+
+        @Override
+        public void endRow(int fila) {
+            if (!valores.isEmpty()) {
+                manejador.fila(fila + 1, valores);
+            }
+        }
+
+        @Override
+        public void cell(String referencia, String valor, XSSFComment comentario) {
+            int columna = new CellReference(referencia).getCol();
+            while (valores.size() < columna) {
+                valores.add(null);
+            }
+            valores.add(valor);
+        }
+    }
+
+    /**
+     * Números sin formato; las fechas conservan el formato de la celda
+     */
+    private static class FormatoCrudo extends DataFormatter {
+        @Override
+        public String formatRawCellContents(double valor, int indiceFormato, String formato) {
+            if (DateUtil.isADateFormat(indiceFormato, formato)) {
+                return super.formatRawCellContents(valor, indiceFormato, formato);
+            }
+            return BigDecimal.valueOf(valor).stripTrailingZeros().toPlainString();
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.logistock.importacion;
+
+import java.util.List;
+
+/**
+ * Receptor de las filas que entrega un lector en streaming. La primera fila es el encabezado.
+ */
+@FunctionalInterface
+public interface ManejadorFilas {
+
+    /**
+     * @param numero Número de fila en el archivo, tal como lo ve quien lo abre: en un CSV, la
+     *               línea en la que empieza la fila (1 = encabezado)
+     * @param valores Valores de las celdas por posición de columna; null o "" si la celda está vacía
+     */
+    void fila(int numero, List<String> valores);
+}
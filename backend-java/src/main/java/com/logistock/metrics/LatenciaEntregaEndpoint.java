@@ -0,0 +1,65 @@
+package com.logistock.metrics;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Endpoint de Actuator con los percentiles de duración de cada tramo de entrega.
+ *
+ * GET /actuator/entregas                       → resumen global
+ * GET /actuator/entregas/conductores           → por conductor
+ * GET /actuator/entregas/dias                  → por día
+ * GET /actuator/entregas/conductores/{id}      → un conductor
+ * GET /actuator/entregas/dias/{yyyy-MM-dd}     → un día
+ */
+@Component
+@Endpoint(id = "entregas")
+@RequiredArgsConstructor
+public class LatenciaEntregaEndpoint {
+
+    private final LatenciaEntregaTracker tracker;
+
+    @ReadOperation
+    public Map<String, Object> resumen() {
+        Map<String, Object> respuesta = new LinkedHashMap<>();
+        respuesta.put("unidad", "minutos");
+        respuesta.put("global", tracker.resumenGlobal());
+        return respuesta;
+    }
+
+    @ReadOperation
+    public Map<String, Object> porDimension(@Selector String dimension) {
+        switch (dimension) {
+            case "conductores":
+                return tracker.resumenPorConductor();
+            case "dias":
+                return tracker.resumenPorDia();
+            default:
+                return null;
+        }
+    }
+
+    @ReadOperation
+    public Map<String, Object> detalle(@Selector String dimension, @Selector String clave) {
+        switch (dimension) {
+            case "conductores":
+                return tracker.resumenConductor(clave);
+            case "dias":
+                try {
+                    return tracker.resumenDia(LocalDate.parse(clave));
+                } catch (DateTimeParseException e) {
+                    return null;
+                }
+            default:
+                return null;
+        }
+    }
+}
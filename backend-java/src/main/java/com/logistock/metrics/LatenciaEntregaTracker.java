@@ -0,0 +1,203 @@
+package com.logistock.metrics;
+
+import com.logistock.model.Pedido;
+import com.logistock.model.TransicionEstado;
+import com.logistock.repository.PedidoRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Histogramas en memoria de la duración de cada tramo de entrega
+ * (creación→asignación, asignación→en camino, en camino→entregado),
+ * agregados globalmente, por conductor y por día.
+ *
+ * Los valores se registran en segundos con HdrHistogram, de modo que registrar
+ * una transición es O(1) y los percentiles se calculan sin recorrer pedidos.
+ */
+@Component
+@Slf4j
+public class LatenciaEntregaTracker {
+
+    private static final long MAX_SEGUNDOS = TimeUnit.DAYS.toSeconds(90);
+    private static final int DIGITOS_SIGNIFICATIVOS = 2;
+    private static final double[] PERCENTILES = {50.0, 75.0, 90.0, 95.0, 99.0};
+
+    private final PedidoRepository pedidoRepository;
+    private final int retencionDias;
+
+    private final Map<TramoEntrega, Histogram> global = nuevoGrupo();
+    private final ConcurrentMap<String, Map<TramoEntrega, Histogram>> porConductor = new ConcurrentHashMap<>();
+    private final ConcurrentMap<LocalDate, Map<TramoEntrega, Histogram>> porDia = new ConcurrentHashMap<>();
+
+    public LatenciaEntregaTracker(PedidoRepository pedidoRepository,
+                                  @Value("${app.metrics.entregas.retencion-dias:30}") int retencionDias) {
+        this.pedidoRepository = pedidoRepository;
+        this.retencionDias = retencionDias;
+    }
+
+    /**
+     * Registrar la última transición agregada al historial del pedido.
+     * Si la transición cierra un tramo medido, se calcula su duración.
+     */
+    public void registrarTransicion(Pedido pedido) {
+        List<TransicionEstado> historial = pedido.getHistorialEstados();
+        if (!historial.isEmpty()) {
+            registrar(pedido, historial, historial.size() - 1);
+        }
+    }
+
+    /**
+     * Reconstruir los histogramas a partir del historial de los pedidos recientes
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void reconstruir() {
+        LocalDateTime desde = LocalDate.now().minusDays(retencionDias).atStartOfDay();
+        try {
+            List<Pedido> pedidos = pedidoRepository.findByFechaActualizacionAfter(desde);
+            int transiciones = 0;
+            for (Pedido pedido : pedidos) {
+                List<TransicionEstado> historial = pedido.getHistorialEstados();
+                for (int i = 0; i < historial.size(); i++) {
+                    if (registrar(pedido, historial, i)) {
+                        transiciones++;
+                    }
+                }
+            }
+            log.info("Histogramas de entrega reconstruidos: {} pedidos, {} tramos", pedidos.size(), transiciones);
+        } catch (Exception e) {
+            log.warn("No se pudieron reconstruir los histogramas de entrega: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Descartar los histogramas diarios fuera del período de retención
+     */
+    @Scheduled(cron = "0 15 0 * * ?")
+    public void purgarDiasAntiguos() {
+        LocalDate limite = LocalDate.now().minusDays(retencionDias);
+        porDia.keySet().removeIf(dia -> dia.isBefore(limite));
+    }
+
+    public Map<String, Object> resumenGlobal() {
+        return resumir(global);
+    }
+
+    public Map<String, Object> resumenPorConductor() {
+        Map<String, Object> resultado = new TreeMap<>();
+        porConductor.forEach((conductor, grupo) -> resultado.put(conductor, resumir(grupo)));
+        return resultado;
+    }
+
+    public Map<String, Object> resumenPorDia() {
+        Map<String, Object> resultado = new TreeMap<>();
+        porDia.forEach((dia, grupo) -> resultado.put(dia.toString(), resumir(grupo)));
+        return resultado;
+    }
+
+    public Map<String, Object> resumenConductor(String conductorId) {
+        Map<TramoEntrega, Histogram> grupo = porConductor.get(conductorId);
+        return grupo != null ? resumir(grupo) : null;
+    }
+
+    public Map<String, Object> resumenDia(LocalDate dia) {
+        Map<TramoEntrega, Histogram> grupo = porDia.get(dia);
+        return grupo != null ? resumir(grupo) : null;
+    }
+
+    private boolean registrar(Pedido pedido, List<TransicionEstado> historial, int indice) {
+        TransicionEstado transicion = historial.get(indice);
+        TramoEntrega tramo = TramoEntrega.terminaEn(transicion.getEstadoNuevo());
+        if (tramo == null || transicion.getEstadoAnterior() != tramo.getDesde() || transicion.getFecha() == null) {
+            return false;
+        }
+
+        LocalDateTime inicio = inicioTramo(pedido, historial, indice, tramo);
+        if (inicio == null || inicio.isAfter(transicion.getFecha())) {
+            return false;
+        }
+
+        long segundos = Math.min(Duration.between(inicio, transicion.getFecha()).getSeconds(), MAX_SEGUNDOS);
+        String conductor = transicion.getUsuarioId() != null ? transicion.getUsuarioId() : pedido.getUsuarioAsignadoId();
+
+        global.get(tramo).recordValue(segundos);
+        porDia.computeIfAbsent(transicion.getFecha().toLocalDate(), d -> nuevoGrupo()).get(tramo).recordValue(segundos);
+        if (conductor != null) {
+            porConductor.computeIfAbsent(conductor, c -> nuevoGrupo()).get(tramo).recordValue(segundos);
+        }
+        return true;
+    }
+
+    /**
+     * El tramo empieza en la última entrada previa al estado de origen.
+     * Para pedidos anteriores al historial se usan las fechas del documento.
+     */
+    private LocalDateTime inicioTramo(Pedido pedido, List<TransicionEstado> historial, int indice, TramoEntrega tramo) {
+        for (int i = indice - 1; i >= 0; i--) {
+            if (historial.get(i).getEstadoNuevo() == tramo.getDesde()) {
+                return historial.get(i).getFecha();
+            }
+        }
+        switch (tramo) {
+            case CREACION_ASIGNACION:
+                return pedido.getFechaCreacion();
+            case ASIGNACION_EN_CAMINO:
+                return pedido.getFechaAsignacion();
+            default:
+                return null;
+        }
+    }
+
+    private static Map<TramoEntrega, Histogram> nuevoGrupo() {
+        Map<TramoEntrega, Histogram> grupo = new EnumMap<>(TramoEntrega.class);
+        for (TramoEntrega tramo : TramoEntrega.values()) {
+            grupo.put(tramo, new ConcurrentHistogram(MAX_SEGUNDOS, DIGITOS_SIGNIFICATIVOS));
+        }
+        return grupo;
+    }
+
+    private static Map<String, Object> resumir(Map<TramoEntrega, Histogram> grupo) {
+        Map<String, Object> resultado = new LinkedHashMap<>();
+        grupo.forEach((tramo, histograma) -> resultado.put(tramo.name(), resumir(histograma)));
+        return resultado;
+    }
+
+    /**
+     * Resumen de un histograma en minutos
+     */
+    static Map<String, Object> resumir(Histogram histograma) {
+        Map<String, Object> resumen = new LinkedHashMap<>();
+        long total = histograma.getTotalCount();
+        resumen.put("total", total);
+        if (total == 0) {
+            return resumen;
+        }
+        resumen.put("promedioMinutos", redondear(histograma.getMean() / 60.0));
+        for (double percentil : PERCENTILES) {
+            resumen.put("p" + (int) percentil, redondear(histograma.getValueAtPercentile(percentil) / 60.0));
+        }
+        resumen.put("maximoMinutos", redondear(histograma.getMaxValue() / 60.0));
+        return resumen;
+    }
+
+    private static double redondear(double valor) {
+        return Math.round(valor * 100.0) / 100.0;
+    }
+}
@@ -0,0 +1,40 @@
+package com.logistock.metrics;
+
+import com.logistock.model.EstadoPedido;
+
+/**
+ * Tramos del ciclo de vida de un pedido cuya duración se mide
+ */
+public enum TramoEntrega {
+    CREACION_ASIGNACION(EstadoPedido.DISPONIBLE, EstadoPedido.ASIGNADO),
+    ASIGNACION_EN_CAMINO(EstadoPedido.ASIGNADO, EstadoPedido.EN_CAMINO),
+    EN_CAMINO_ENTREGA(EstadoPedido.EN_CAMINO, EstadoPedido.ENTREGADO);
+
+    private final EstadoPedido desde;
+    private final EstadoPedido hasta;
+
+    TramoEntrega(EstadoPedido desde, EstadoPedido hasta) {
+        this.desde = desde;
+        this.hasta = hasta;
+    }
+
+    public EstadoPedido getDesde() {
+        return desde;
+    }
+
+    public EstadoPedido getHasta() {
+        return hasta;
+    }
+
+    /**
+     * Tramo que termina al entrar en el estado indicado, o null si no se mide
+     */
+    public static TramoEntrega terminaEn(EstadoPedido estado) {
+        for (TramoEntrega tramo : values()) {
+            if (tramo.hasta == estado) {
+                return tramo;
+            }
+        }
+        return null;
+    }
+}
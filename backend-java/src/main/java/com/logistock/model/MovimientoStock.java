@@ -0,0 +1,38 @@
+package com.logistock.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * Entidad MovimientoStock - Entrada del libro de movimientos de stock.
+ * Los movimientos solo se insertan, nunca se modifican: el stock de un producto
+ * en cualquier instante es la suma de sus movimientos hasta ese instante.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Document(collection = "movimientos_stock")
+public class MovimientoStock {
+
+    @Id
+    private String id;
+
+    private String productoId;
+
+    // Positivo = entrada, negativo = salida
+    private int cantidad;
+
+    private TipoMovimiento tipo;
+
+    // Pedido u otra entidad que originó el movimiento
+    private String referencia;
+
+    private LocalDateTime fecha;
+}
@@ -5,6 +5,8 @@ import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.data.mongodb.core.mapping.DBRef;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 @Document(collection = "pedidos")
@@ -21,7 +23,11 @@ public class Pedido {
     private List<ProductoPedido> productos;
     
     private String direccionEntrega;
+    private Ubicacion ubicacion;
     private String observaciones;
+
+    // Ruta que lo entrega (la asigna la planificación de rutas)
+    private String rutaId;
     
     private EstadoPedido estado;
     
@@ -35,6 +41,9 @@ public class Pedido {
     
     private double total;
 
+    // Historial de cambios de estado (solo se agregan entradas)
+    private List<TransicionEstado> historialEstados = new ArrayList<>();
+
     public Pedido() {
         this.fechaCreacion = LocalDateTime.now();
         this.fechaActualizacion = LocalDateTime.now();
@@ -99,6 +108,22 @@ public class Pedido {
         this.direccionEntrega = direccionEntrega;
     }
 
+    public Ubicacion getUbicacion() {
+        return ubicacion;
+    }
+
+    public void setUbicacion(Ubicacion ubicacion) {
+        this.ubicacion = ubicacion;
+    }
+
+    public String getRutaId() {
+        return rutaId;
+    }
+
+    public void setRutaId(String rutaId) {
+        this.rutaId = rutaId;
+    }
+
     public String getObservaciones() {
         return observaciones;
     }
@@ -172,6 +197,43 @@ public class Pedido {
         this.total = total;
     }
 
+    public List<TransicionEstado> getHistorialEstados() {
+        return historialEstados != null ? Collections.unmodifiableList(historialEstados) : Collections.emptyList();
+    }
+
+    public void setHistorialEstados(List<TransicionEstado> historialEstados) {
+        this.historialEstados = historialEstados != null ? new ArrayList<>(historialEstados) : new ArrayList<>();
+    }
+
+    /**
+     * Agrega una transición al historial. Las entradas existentes no se modifican.
+     */
+    public TransicionEstado registrarTransicion(EstadoPedido estadoAnterior, EstadoPedido estadoNuevo,
+                                                String usuarioId, LocalDateTime fecha) {
+        if (historialEstados == null) {
+            historialEstados = new ArrayList<>();
+        }
+        TransicionEstado transicion = new TransicionEstado(estadoAnterior, estadoNuevo, usuarioId, fecha);
+        historialEstados.add(transicion);
+        return transicion;
+    }
+
+    /**
+     * Fecha de la última transición hacia el estado indicado, si existe en el historial
+     */
+    public LocalDateTime fechaUltimaTransicionA(EstadoPedido estado) {
+        if (historialEstados == null) {
+            return null;
+        }
+        for (int i = historialEstados.size() - 1; i >= 0; i--) {
+            TransicionEstado t = historialEstados.get(i);
+            if (t.getEstadoNuevo() == estado) {
+                return t.getFecha();
+            }
+        }
+        return null;
+    }
+
     private void calcularTotal() {
         if (productos != null) {
             this.total = productos.stream()
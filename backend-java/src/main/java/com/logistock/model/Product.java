@@ -1,5 +1,6 @@
 package com.logistock.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.LastModifiedDate;
@@ -28,6 +29,13 @@ public class Product {
     private String location = "Almacén Principal";
     private Boolean isActive = true;
 
+    // Producto de alta demanda: el stock disponible se lleva en memoria (ver StockCalienteService)
+    private Boolean hotSku = false;
+
+    // Último lote del diario de stock caliente aplicado a este documento (evita aplicarlo dos veces)
+    @JsonIgnore
+    private Long ultimoLoteCaliente;
+
     @CreatedDate
     private LocalDateTime createdAt;
 
@@ -71,6 +79,12 @@ public class Product {
     public Boolean getIsActive() { return isActive; }
     public void setIsActive(Boolean isActive) { this.isActive = isActive; }
 
+    public Boolean getHotSku() { return hotSku; }
+    public void setHotSku(Boolean hotSku) { this.hotSku = hotSku; }
+
+    public Long getUltimoLoteCaliente() { return ultimoLoteCaliente; }
+    public void setUltimoLoteCaliente(Long ultimoLoteCaliente) { this.ultimoLoteCaliente = ultimoLoteCaliente; }
+
     public LocalDateTime getCreatedAt() { return createdAt; }
     public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
 
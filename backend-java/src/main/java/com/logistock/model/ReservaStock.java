@@ -0,0 +1,35 @@
+package com.logistock.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Entidad ReservaStock - Stock apartado temporalmente para un pedido en preparación.
+ * La colección tiene un índice TTL sobre expiraEn, de modo que Mongo elimina
+ * las reservas vencidas aunque la aplicación no esté corriendo.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Document(collection = "reservas_stock")
+public class ReservaStock {
+
+    @Id
+    private String id;
+
+    private List<ProductoPedido> productos;
+
+    private String usuario;
+
+    private LocalDateTime creadaEn;
+
+    private LocalDateTime expiraEn;
+}
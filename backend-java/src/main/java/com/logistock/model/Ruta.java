@@ -10,6 +10,7 @@ import org.springframework.data.annotation.LastModifiedDate;
 import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.data.mongodb.core.index.Indexed;
 
+import jakarta.validation.Valid;
 import jakarta.validation.constraints.*;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
@@ -48,6 +49,13 @@ public class Ruta {
     @Size(max = 200, message = "El destino no puede tener más de 200 caracteres")
     private String destino;
 
+    // Coordenadas de origen y destino (opcionales; necesarias para optimizar las paradas)
+    @Valid
+    private Ubicacion ubicacionOrigen;
+
+    @Valid
+    private Ubicacion ubicacionDestino;
+
     // Paradas intermedias
     private List<Parada> paradas;
 
@@ -60,6 +68,9 @@ public class Ruta {
     @Min(value = 1, message = "El tiempo estimado debe ser al menos 1 minuto")
     private Integer tiempoEstimadoMinutos;
 
+    // Duración estimada por el modelo aprendido de las rutas completadas (la calcula el servidor)
+    private Integer tiempoEstimadoPredichoMinutos;
+
     @NotBlank(message = "El estado es obligatorio")
     @Pattern(regexp = "^(Planificada|En Proceso|Completada|Suspendida|Cancelada)$", 
              message = "El estado debe ser: Planificada, En Proceso, Completada, Suspendida o Cancelada")
@@ -81,6 +92,15 @@ public class Ruta {
     @Size(max = 100, message = "El conductor asignado no puede tener más de 100 caracteres")
     private String conductorAsignado;
 
+    // Límites del vehículo y carga planificada (unidades de producto); los completa la planificación automática
+    @Min(value = 1, message = "La capacidad debe ser al menos 1 unidad")
+    private Integer capacidadUnidades;
+
+    private Integer cargaUnidades;
+
+    @Min(value = 1, message = "La jornada debe ser al menos 1 minuto")
+    private Integer jornadaMinutos;
+
     // Costos asociados
     @DecimalMin(value = "0.0", message = "El costo de combustible no puede ser negativo")
     @Builder.Default
@@ -131,6 +151,12 @@ public class Ruta {
         @Size(max = 300, message = "Las notas no pueden tener más de 300 caracteres")
         private String notas;
 
+        @Valid
+        private Ubicacion ubicacion;
+
+        // Pedido que se entrega en la parada, si la generó la planificación automática
+        private String pedidoId;
+
         @Builder.Default
         private Boolean completada = false;
 
@@ -145,8 +171,9 @@ public class Ruta {
 
     public Integer getTiempoTotalConParadas() {
         int tiempoParadas = paradas != null ? 
-            paradas.stream().mapToInt(Parada::getTiempoEstimadoMinutos).sum() : 0;
-        return tiempoEstimadoMinutos + tiempoParadas;
+            paradas.stream().filter(p -> p.getTiempoEstimadoMinutos() != null)
+                .mapToInt(Parada::getTiempoEstimadoMinutos).sum() : 0;
+        return (tiempoEstimadoMinutos != null ? tiempoEstimadoMinutos : 0) + tiempoParadas;
     }
 
     public boolean isEnProceso() {
@@ -0,0 +1,32 @@
+package com.logistock.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * Entidad SnapshotStock - Stock consolidado de un producto a una fecha de corte.
+ * Equivale al snapshot anterior más los movimientos hasta el corte, de modo que
+ * una consulta histórica solo suma los movimientos posteriores al snapshot.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Document(collection = "snapshots_stock")
+public class SnapshotStock {
+
+    @Id
+    private String id;
+
+    private String productoId;
+
+    private int stock;
+
+    private LocalDateTime fecha;
+}
@@ -0,0 +1,54 @@
+package com.logistock.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Entidad TelemetriaVehiculo - Posiciones GPS de un vehículo en un intervalo de tiempo.
+ * Cada documento agrupa las posiciones de un vehículo en un bloque fijo (por defecto una
+ * hora); el id es vehículo|inicio del bloque, de modo que los volcados agregan con $push
+ * al documento del bloque en lugar de insertar un documento por posición.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Document(collection = "telemetria")
+public class TelemetriaVehiculo {
+
+    @Id
+    private String id;
+
+    private String vehiculo;
+
+    // Inicio del bloque
+    private LocalDateTime inicio;
+
+    // Primera y última posición recibidas en el bloque
+    private LocalDateTime primera;
+    private LocalDateTime ultima;
+
+    private Integer cantidad;
+
+    private List<Punto> posiciones;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @Builder
+    public static class Punto {
+        private LocalDateTime fecha;
+        private Double latitud;
+        private Double longitud;
+        private Double velocidadKmh;
+        private Double rumbo;
+        private String rutaId;
+    }
+}
@@ -0,0 +1,9 @@
+package com.logistock.model;
+
+public enum TipoMovimiento {
+    INICIAL,        // Stock existente al crear el producto o al iniciar el libro
+    PEDIDO,         // Salida por creación de pedido
+    CANCELACION,    // Devolución por cancelación de pedido
+    AJUSTE_MANUAL,  // Corrección manual desde inventario
+    IMPORTACION     // Alta o ajuste por importación masiva de catálogo
+}
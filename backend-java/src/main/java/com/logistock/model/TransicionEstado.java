@@ -0,0 +1,57 @@
+package com.logistock.model;
+
+import java.time.LocalDateTime;
+
+/**
+ * Registro inmutable de un cambio de estado de un pedido.
+ * Se acumula en el historial del pedido y nunca se modifica una vez agregado.
+ */
+public class TransicionEstado {
+    private EstadoPedido estadoAnterior;
+    private EstadoPedido estadoNuevo;
+    private String usuarioId;
+    private LocalDateTime fecha;
+
+    public TransicionEstado() {
+    }
+
+    public TransicionEstado(EstadoPedido estadoAnterior, EstadoPedido estadoNuevo, String usuarioId, LocalDateTime fecha) {
+        this.estadoAnterior = estadoAnterior;
+        this.estadoNuevo = estadoNuevo;
+        this.usuarioId = usuarioId;
+        this.fecha = fecha;
+    }
+
+    // Getters y Setters
+    public EstadoPedido getEstadoAnterior() {
+        return estadoAnterior;
+    }
+
+    public void setEstadoAnterior(EstadoPedido estadoAnterior) {
+        this.estadoAnterior = estadoAnterior;
+    }
+
+    public EstadoPedido getEstadoNuevo() {
+        return estadoNuevo;
+    }
+
+    public void setEstadoNuevo(EstadoPedido estadoNuevo) {
+        this.estadoNuevo = estadoNuevo;
+    }
+
+    public String getUsuarioId() {
+        return usuarioId;
+    }
+
+    public void setUsuarioId(String usuarioId) {
+        this.usuarioId = usuarioId;
+    }
+
+    public LocalDateTime getFecha() {
+        return fecha;
+    }
+
+    public void setFecha(LocalDateTime fecha) {
+        this.fecha = fecha;
+    }
+}
@@ -0,0 +1,68 @@
+package com.logistock.report;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Columna de un reporte: título, valor extraído de cada fila y formato.
+ * Las mismas definiciones sirven para cualquier formato de salida. Cada columna declara
+ * los campos del documento que lee, para que la consulta proyecte solo esos campos.
+ *
+ * @param <T> Tipo de las filas
+ */
+public class ColumnaReporte<T> {
+
+    public enum Formato {
+        TEXTO,
+        NUMERO,
+        MONEDA
+    }
+
+    private final String titulo;
+    private final Function<T, Object> valor;
+    private final Formato formato;
+    private final List<String> campos;
+
+    private ColumnaReporte(String titulo, Function<T, Object> valor, Formato formato, List<String> campos) {
+        this.titulo = titulo;
+        this.valor = valor;
+        this.formato = formato;
+        this.campos = campos;
+    }
+
+    public static <T> ColumnaReporte<T> texto(String titulo, Function<T, Object> valor, String... campos) {
+        return new ColumnaReporte<>(titulo, valor, Formato.TEXTO, List.of(campos));
+    }
+
+    public static <T> ColumnaReporte<T> numero(String titulo, Function<T, Object> valor, String... campos) {
+        return new ColumnaReporte<>(titulo, valor, Formato.NUMERO, List.of(campos));
+    }
+
+    public static <T> ColumnaReporte<T> moneda(String titulo, Function<T, Object> valor, String... campos) {
+        return new ColumnaReporte<>(titulo, valor, Formato.MONEDA, List.of(campos));
+    }
+
+    /**
+     * Columna de exportación en crudo: el título es el nombre del campo del documento
+     * y el valor se escribe sin formatear
+     */
+    public static <T> ColumnaReporte<T> campo(String campo, Function<T, Object> valor) {
+        return new ColumnaReporte<>(campo, valor, Formato.TEXTO, List.of(campo));
+    }
+
+    public String getTitulo() {
+        return titulo;
+    }
+
+    public Formato getFormato() {
+        return formato;
+    }
+
+    public List<String> getCampos() {
+        return campos;
+    }
+
+    public Object valor(T fila) {
+        return valor.apply(fila);
+    }
+}
@@ -0,0 +1,149 @@
+package com.logistock.report;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.IndexedColors;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Escritor de libros Excel en streaming (SXSSF).
+ *
+ * Solo se mantiene en memoria una ventana de filas; el resto se vuelca a archivos
+ * temporales comprimidos que se eliminan al cerrar. El ancho de cada columna se estima
+ * con las primeras filas en lugar de autoSizeColumn, que necesita todas las filas.
+ */
+public class ExcelStreamWriter implements Closeable {
+
+    private static final int VENTANA_FILAS = 100;
+    private static final int FILAS_MUESTRA = 500;
+    private static final int ANCHO_MAXIMO = 60;
+
+    private final SXSSFWorkbook workbook;
+    private final CellStyle estiloEncabezado;
+    private final CellStyle estiloMoneda;
+
+    public ExcelStreamWriter() {
+        workbook = new SXSSFWorkbook(VENTANA_FILAS);
+        workbook.setCompressTempFiles(true);
+
+        Font fuenteEncabezado = workbook.createFont();
+        fuenteEncabezado.setBold(true);
+        fuenteEncabezado.setColor(IndexedColors.BLUE.getIndex());
+        estiloEncabezado = workbook.createCellStyle();
+        estiloEncabezado.setFont(fuenteEncabezado);
+
+        estiloMoneda = workbook.createCellStyle();
+        estiloMoneda.setDataFormat(workbook.createDataFormat().getFormat("$#,##0.00"));
+    }
+
+    /**
+     * Agregar una hoja con las filas del iterador
+     * @return Cantidad de filas de datos escritas
+     */
+    public <T> long hoja(String nombre, List<ColumnaReporte<T>> columnas, Iterator<T> filas) {
+        Hoja<T> hoja = abrirHoja(nombre, columnas);
+        while (filas.hasNext()) {
+            hoja.agregar(filas.next());
+        }
+        return hoja.terminar();
+    }
+
+    /**
+     * Crear una hoja que se completa fila a fila. Permite intercalar filas de varias hojas
+     * abiertas; todas las llamadas deben hacerse desde un mismo hilo.
+     */
+    public <T> Hoja<T> abrirHoja(String nombre, List<ColumnaReporte<T>> columnas) {
+        return new Hoja<>(workbook.createSheet(nombre), columnas);
+    }
+
+    public void write(OutputStream out) throws IOException {
+        workbook.write(out);
+    }
+
+    @Override
+    public void close() throws IOException {
+        workbook.dispose();
+        workbook.close();
+    }
+
+    /**
+     * Hoja en escritura
+     */
+    public class Hoja<T> {
+        private final SXSSFSheet sheet;
+        private final List<ColumnaReporte<T>> columnas;
+        private final int[] anchos;
+        private int rowIdx = 1;
+
+        private Hoja(SXSSFSheet sheet, List<ColumnaReporte<T>> columnas) {
+            this.sheet = sheet;
+            this.columnas = columnas;
+            this.anchos = new int[columnas.size()];
+
+            Row encabezado = sheet.createRow(0);
+            for (int i = 0; i < columnas.size(); i++) {
+                Cell cell = encabezado.createCell(i);
+                cell.setCellValue(columnas.get(i).getTitulo());
+                cell.setCellStyle(estiloEncabezado);
+                anchos[i] = columnas.get(i).getTitulo().length();
+            }
+        }
+
+        public void agregar(T item) {
+            Row row = sheet.createRow(rowIdx);
+            for (int i = 0; i < columnas.size(); i++) {
+                ColumnaReporte<T> columna = columnas.get(i);
+                Object valor = columna.valor(item);
+                Cell cell = row.createCell(i);
+                if (valor instanceof Number) {
+                    cell.setCellValue(((Number) valor).doubleValue());
+                } else {
+                    cell.setCellValue(valor != null ? valor.toString() : "");
+                }
+                if (columna.getFormato() == ColumnaReporte.Formato.MONEDA) {
+                    cell.setCellStyle(estiloMoneda);
+                }
+                if (rowIdx <= FILAS_MUESTRA) {
+                    anchos[i] = Math.max(anchos[i], largo(valor, columna));
+                }
+            }
+            rowIdx++;
+        }
+
+        /**
+         * Filas de datos escritas hasta el momento
+         */
+        public long getFilas() {
+            return rowIdx - 1L;
+        }
+
+        /**
+         * Aplicar los anchos de columna estimados
+         * @return Cantidad de filas de datos escritas
+         */
+        public long terminar() {
+            for (int i = 0; i < anchos.length; i++) {
+                sheet.setColumnWidth(i, Math.min(anchos[i] + 2, ANCHO_MAXIMO) * 256);
+            }
+            return rowIdx - 1L;
+        }
+    }
+
+    private static int largo(Object valor, ColumnaReporte<?> columna) {
+        if (valor == null) {
+            return 0;
+        }
+        int largo = valor.toString().length();
+        // Separadores de miles y símbolo de moneda
+        return columna.getFormato() == ColumnaReporte.Formato.MONEDA ? largo + largo / 3 + 2 : largo;
+    }
+}
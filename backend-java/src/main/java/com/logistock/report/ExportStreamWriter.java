@@ -0,0 +1,109 @@
+package com.logistock.report;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Escritor de exportaciones en crudo (CSV y NDJSON) en streaming.
+ *
+ * Cada fila se escribe campo por campo directamente sobre un buffer de salida, sin
+ * armar mapas ni objetos intermedios por fila, de modo que la memoria no depende del
+ * total de filas. Ninguno de los métodos cierra el stream de salida.
+ */
+public final class ExportStreamWriter {
+
+    private static final int BUFFER = 64 * 1024;
+
+    private ExportStreamWriter() {
+    }
+
+    /**
+     * CSV (RFC 4180) con encabezado, separado por comas y en UTF-8
+     * @return Cantidad de filas escritas
+     */
+    public static <T> long csv(OutputStream out, List<ColumnaReporte<T>> columnas, Iterator<T> filas) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER);
+        for (int i = 0; i < columnas.size(); i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            escribirCsv(writer, columnas.get(i).getTitulo());
+        }
+        writer.write("\r\n");
+
+        long total = 0;
+        while (filas.hasNext()) {
+            T fila = filas.next();
+            for (int i = 0; i < columnas.size(); i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                Object valor = columnas.get(i).valor(fila);
+                if (valor != null) {
+                    escribirCsv(writer, valor instanceof BigDecimal ? ((BigDecimal) valor).toPlainString() : valor.toString());
+                }
+            }
+            writer.write("\r\n");
+            total++;
+        }
+        writer.flush();
+        return total;
+    }
+
+    /**
+     * NDJSON: un objeto JSON por línea con los campos de las columnas. Los valores se
+     * serializan con el ObjectMapper de la aplicación (fechas ISO, enums por nombre).
+     * @return Cantidad de filas escritas
+     */
+    public static <T> long ndjson(OutputStream out, ObjectMapper objectMapper, List<ColumnaReporte<T>> columnas,
+                                  Iterator<T> filas) throws IOException {
+        long total = 0;
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.setRootValueSeparator(null);
+            while (filas.hasNext()) {
+                T fila = filas.next();
+                generator.writeStartObject();
+                for (ColumnaReporte<T> columna : columnas) {
+                    generator.writeFieldName(columna.getTitulo());
+                    generator.writeObject(columna.valor(fila));
+                }
+                generator.writeEndObject();
+                generator.writeRaw('\n');
+                total++;
+            }
+        }
+        return total;
+    }
+
+    private static void escribirCsv(Writer writer, String valor) throws IOException {
+        boolean comillas = false;
+        for (int i = 0; i < valor.length() && !comillas; i++) {
+            char c = valor.charAt(i);
+            comillas = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!comillas) {
+            writer.write(valor);
+            return;
+        }
+        writer.write('"');
+        for (int i = 0; i < valor.length(); i++) {
+            char c = valor.charAt(i);
+            if (c == '"') {
+                writer.write('"');
+            }
+            writer.write(c);
+        }
+        writer.write('"');
+    }
+}
@@ -0,0 +1,55 @@
+package com.logistock.report;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+
+import java.time.LocalDate;
+
+/**
+ * Filtros opcionales de un reporte: rango de fechas (inclusive, sobre la fecha propia de
+ * cada entidad) y filtros por campo. Cada entidad admite solo los filtros de sus campos.
+ */
+@Data
+@NoArgsConstructor
+public class FiltroReporte {
+
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+    private LocalDate desde;
+
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+    private LocalDate hasta;
+
+    private String estado;
+    private String categoria;
+    private String tipo;
+    private String prioridad;
+
+    public static FiltroReporte vacio() {
+        return new FiltroReporte();
+    }
+
+    /**
+     * Representación estable del filtro, para claves de caché y deduplicación
+     */
+    public String clave() {
+        StringBuilder clave = new StringBuilder();
+        agregar(clave, "desde", desde);
+        agregar(clave, "hasta", hasta);
+        agregar(clave, "estado", estado);
+        agregar(clave, "categoria", categoria);
+        agregar(clave, "tipo", tipo);
+        agregar(clave, "prioridad", prioridad);
+        return clave.toString();
+    }
+
+    private static void agregar(StringBuilder clave, String nombre, Object valor) {
+        if (valor == null || valor.toString().isBlank()) {
+            return;
+        }
+        if (clave.length() > 0) {
+            clave.append('&');
+        }
+        clave.append(nombre).append('=').append(valor);
+    }
+}
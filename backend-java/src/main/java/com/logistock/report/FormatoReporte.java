@@ -0,0 +1,45 @@
+package com.logistock.report;
+
+import org.springframework.http.MediaType;
+
+/**
+ * Formatos de salida de los reportes, con su extensión y tipo de contenido
+ */
+public enum FormatoReporte {
+    PDF("pdf", MediaType.APPLICATION_PDF),
+    EXCEL("xlsx", MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet")),
+    CSV("csv", MediaType.parseMediaType("text/csv;charset=UTF-8")),
+    NDJSON("ndjson", MediaType.parseMediaType("application/x-ndjson"));
+
+    public static final MediaType GZIP = MediaType.parseMediaType("application/gzip");
+
+    private final String extension;
+    private final MediaType tipoContenido;
+
+    FormatoReporte(String extension, MediaType tipoContenido) {
+        this.extension = extension;
+        this.tipoContenido = tipoContenido;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    public MediaType getTipoContenido() {
+        return tipoContenido;
+    }
+
+    /**
+     * Formato a partir de su nombre o extensión, sin distinguir mayúsculas
+     * @throws IllegalArgumentException si el formato no existe
+     */
+    public static FormatoReporte desde(String valor) {
+        for (FormatoReporte formato : values()) {
+            if (formato.name().equalsIgnoreCase(valor) || formato.extension.equalsIgnoreCase(valor)) {
+                return formato;
+            }
+        }
+        throw new IllegalArgumentException("Formato de reporte inválido: " + valor
+                + ". Valores permitidos: pdf, excel, csv, ndjson");
+    }
+}
@@ -0,0 +1,112 @@
+package com.logistock.report;
+
+import com.lowagie.text.Chunk;
+import com.lowagie.text.Document;
+import com.lowagie.text.DocumentException;
+import com.lowagie.text.Element;
+import com.lowagie.text.Font;
+import com.lowagie.text.FontFactory;
+import com.lowagie.text.Paragraph;
+import com.lowagie.text.Phrase;
+import com.lowagie.text.pdf.PdfPCell;
+import com.lowagie.text.pdf.PdfPTable;
+import com.lowagie.text.pdf.PdfWriter;
+import com.logistock.model.Pedido;
+import com.logistock.model.ProductoPedido;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.text.NumberFormat;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+
+/**
+ * Guía de remisión de un pedido en PDF.
+ *
+ * Las fuentes se crean una sola vez y se comparten entre hilos (OpenPDF solo las lee al
+ * maquetar); el formateador de moneda no es thread-safe y se mantiene uno por hilo.
+ * Cada documento es independiente, por lo que varias guías pueden generarse en paralelo.
+ */
+public final class GuiaRemisionWriter {
+
+    private static final Font FUENTE_TITULO = FontFactory.getFont(FontFactory.HELVETICA_BOLD, 16);
+    private static final Font FUENTE_ETIQUETA = FontFactory.getFont(FontFactory.HELVETICA_BOLD, 10);
+    private static final Font FUENTE_TEXTO = FontFactory.getFont(FontFactory.HELVETICA, 10);
+    private static final int[] ANCHOS_LINEAS = {6, 2, 3, 3};
+    private static final DateTimeFormatter FORMATO_FECHA = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm");
+    private static final ThreadLocal<NumberFormat> MONEDA =
+            ThreadLocal.withInitial(() -> NumberFormat.getCurrencyInstance(Locale.US));
+
+    private GuiaRemisionWriter() {
+    }
+
+    /**
+     * Escribir la guía de un pedido. No cierra el stream de salida.
+     */
+    public static void escribir(OutputStream out, Pedido pedido) throws IOException {
+        Document document = new Document();
+        try {
+            PdfWriter writer = PdfWriter.getInstance(document, out);
+            writer.setCloseStream(false);
+            document.open();
+
+            Paragraph titulo = new Paragraph("Guía de Remisión - LogiStock", FUENTE_TITULO);
+            titulo.setAlignment(Element.ALIGN_CENTER);
+            document.add(titulo);
+            document.add(Chunk.NEWLINE);
+
+            document.add(dato("Pedido: ", pedido.getId()));
+            document.add(dato("Fecha: ", pedido.getFechaAsignacion() != null
+                    ? FORMATO_FECHA.format(pedido.getFechaAsignacion())
+                    : pedido.getFechaCreacion() != null ? FORMATO_FECHA.format(pedido.getFechaCreacion()) : null));
+            document.add(dato("Cliente: ", pedido.getClienteNombre()));
+            document.add(dato("Teléfono: ", pedido.getClienteTelefono()));
+            document.add(dato("Dirección de entrega: ", pedido.getDireccionEntrega() != null
+                    ? pedido.getDireccionEntrega() : pedido.getClienteDireccion()));
+            document.add(dato("Conductor: ", pedido.getUsuarioAsignadoNombre()));
+            if (pedido.getObservaciones() != null && !pedido.getObservaciones().isBlank()) {
+                document.add(dato("Observaciones: ", pedido.getObservaciones()));
+            }
+            document.add(Chunk.NEWLINE);
+
+            NumberFormat moneda = MONEDA.get();
+            PdfPTable lineas = new PdfPTable(ANCHOS_LINEAS.length);
+            lineas.setWidthPercentage(100);
+            lineas.setWidths(ANCHOS_LINEAS);
+            lineas.setHeaderRows(1);
+            for (String encabezado : new String[]{"Producto", "Cantidad", "Precio Unitario", "Subtotal"}) {
+                PdfPCell celda = new PdfPCell(new Phrase(encabezado, FUENTE_ETIQUETA));
+                celda.setBackgroundColor(Color.LIGHT_GRAY);
+                celda.setHorizontalAlignment(Element.ALIGN_CENTER);
+                lineas.addCell(celda);
+            }
+            if (pedido.getProductos() != null) {
+                for (ProductoPedido linea : pedido.getProductos()) {
+                    lineas.addCell(new Phrase(linea.getNombre() != null ? linea.getNombre() : "", FUENTE_TEXTO));
+                    lineas.addCell(new Phrase(String.valueOf(linea.getCantidad()), FUENTE_TEXTO));
+                    lineas.addCell(new Phrase(moneda.format(linea.getPrecioUnitario()), FUENTE_TEXTO));
+                    lineas.addCell(new Phrase(moneda.format(linea.getCantidad() * linea.getPrecioUnitario()), FUENTE_TEXTO));
+                }
+            }
+            document.add(lineas);
+
+            Paragraph total = new Paragraph("Total: " + moneda.format(pedido.getTotal()), FUENTE_ETIQUETA);
+            total.setAlignment(Element.ALIGN_RIGHT);
+            document.add(total);
+            document.add(Chunk.NEWLINE);
+            document.add(Chunk.NEWLINE);
+            document.add(new Paragraph("Recibido por: ______________________    Firma: ______________________", FUENTE_TEXTO));
+            document.close();
+        } catch (DocumentException e) {
+            throw new IOException("Error generating PDF: " + e.getMessage(), e);
+        }
+    }
+
+    private static Paragraph dato(String etiqueta, String valor) {
+        Paragraph parrafo = new Paragraph();
+        parrafo.add(new Chunk(etiqueta, FUENTE_ETIQUETA));
+        parrafo.add(new Chunk(valor != null ? valor : "", FUENTE_TEXTO));
+        return parrafo;
+    }
+}
@@ -0,0 +1,94 @@
+package com.logistock.report;
+
+import com.lowagie.text.Chunk;
+import com.lowagie.text.Document;
+import com.lowagie.text.DocumentException;
+import com.lowagie.text.Element;
+import com.lowagie.text.Font;
+import com.lowagie.text.FontFactory;
+import com.lowagie.text.Paragraph;
+import com.lowagie.text.Phrase;
+import com.lowagie.text.pdf.PdfPCell;
+import com.lowagie.text.pdf.PdfPTable;
+import com.lowagie.text.pdf.PdfWriter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.text.NumberFormat;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Escritor de reportes PDF tabulares en streaming.
+ *
+ * La tabla se marca como incompleta y se agrega al documento cada bloque de filas:
+ * OpenPDF escribe las filas ya maquetadas y las descarta, de modo que la memoria no
+ * depende del total de filas y los primeros bytes salen antes de terminar la consulta.
+ * El encabezado se repite en cada página.
+ */
+public final class PdfStreamWriter {
+
+    private static final int FILAS_POR_BLOQUE = 100;
+
+    private PdfStreamWriter() {
+    }
+
+    /**
+     * Escribir un reporte con título y una tabla. No cierra el stream de salida.
+     */
+    public static <T> void escribir(OutputStream out, String titulo, List<ColumnaReporte<T>> columnas,
+                                    int[] anchos, Iterator<T> filas) throws IOException {
+        Document document = new Document();
+        try {
+            PdfWriter writer = PdfWriter.getInstance(document, out);
+            writer.setCloseStream(false);
+            document.open();
+
+            Font fontTitle = FontFactory.getFont(FontFactory.HELVETICA_BOLD, 18);
+            Paragraph title = new Paragraph(titulo, fontTitle);
+            title.setAlignment(Element.ALIGN_CENTER);
+            document.add(title);
+            document.add(Chunk.NEWLINE);
+
+            PdfPTable table = new PdfPTable(columnas.size());
+            table.setWidthPercentage(100);
+            table.setWidths(anchos);
+            table.setComplete(false);
+            table.setHeaderRows(1);
+
+            for (ColumnaReporte<T> columna : columnas) {
+                PdfPCell cell = new PdfPCell(new Phrase(columna.getTitulo()));
+                cell.setBackgroundColor(java.awt.Color.LIGHT_GRAY);
+                cell.setHorizontalAlignment(Element.ALIGN_CENTER);
+                table.addCell(cell);
+            }
+
+            NumberFormat currencyFormatter = NumberFormat.getCurrencyInstance(Locale.US);
+            int enBloque = 0;
+            while (filas.hasNext()) {
+                T item = filas.next();
+                for (ColumnaReporte<T> columna : columnas) {
+                    table.addCell(texto(columna.valor(item), columna, currencyFormatter));
+                }
+                if (++enBloque == FILAS_POR_BLOQUE) {
+                    document.add(table);
+                    enBloque = 0;
+                }
+            }
+
+            table.setComplete(true);
+            document.add(table);
+            document.close();
+        } catch (DocumentException e) {
+            throw new IOException("Error generating PDF: " + e.getMessage(), e);
+        }
+    }
+
+    private static String texto(Object valor, ColumnaReporte<?> columna, NumberFormat currencyFormatter) {
+        if (columna.getFormato() == ColumnaReporte.Formato.MONEDA) {
+            return currencyFormatter.format(valor instanceof Number ? valor : 0);
+        }
+        return valor != null ? valor.toString() : "";
+    }
+}
@@ -0,0 +1,141 @@
+package com.logistock.report;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Trabajo de generación de un reporte en segundo plano.
+ * Lo escribe un único hilo del pool de reportes y lo leen las consultas de estado.
+ */
+public class TrabajoReporte {
+
+    public enum Estado {
+        PENDIENTE,
+        EN_PROCESO,
+        COMPLETADO,
+        ERROR
+    }
+
+    private final String id;
+    private final String entidad;
+    private final FormatoReporte formato;
+    private final boolean gzip;
+    private final FiltroReporte filtro;
+    private final LocalDateTime creadoEn;
+
+    private volatile Estado estado = Estado.PENDIENTE;
+    private volatile LocalDateTime iniciadoEn;
+    private volatile LocalDateTime finalizadoEn;
+    private volatile Path archivo;
+    private volatile long tamanoBytes;
+    private volatile String error;
+    // Filas escritas por hoja (o por entidad) mientras se genera
+    private final Map<String, Long> progreso = new ConcurrentHashMap<>();
+
+    public TrabajoReporte(String id, String entidad, FormatoReporte formato, boolean gzip, FiltroReporte filtro) {
+        this.id = id;
+        this.entidad = entidad;
+        this.formato = formato;
+        this.gzip = gzip;
+        this.filtro = filtro;
+        this.creadoEn = LocalDateTime.now();
+    }
+
+    /**
+     * Clave de deduplicación: dos solicitudes con la misma clave producen el mismo archivo
+     */
+    public static String clave(String entidad, FormatoReporte formato, boolean gzip, FiltroReporte filtro) {
+        return entidad + ":" + formato.name() + (gzip ? ":gz" : "") + "?" + filtro.clave();
+    }
+
+    public void iniciar() {
+        iniciadoEn = LocalDateTime.now();
+        estado = Estado.EN_PROCESO;
+    }
+
+    public void registrarProgreso(String hoja, long filas) {
+        progreso.put(hoja, filas);
+    }
+
+    public void completar(Path archivo, long tamanoBytes) {
+        this.archivo = archivo;
+        this.tamanoBytes = tamanoBytes;
+        this.finalizadoEn = LocalDateTime.now();
+        this.estado = Estado.COMPLETADO;
+    }
+
+    public void fallar(String error) {
+        this.error = error;
+        this.finalizadoEn = LocalDateTime.now();
+        this.estado = Estado.ERROR;
+    }
+
+    @JsonIgnore
+    public boolean isTerminado() {
+        return estado == Estado.COMPLETADO || estado == Estado.ERROR;
+    }
+
+    @JsonIgnore
+    public String getClave() {
+        return clave(entidad, formato, gzip, filtro);
+    }
+
+    // Getters
+
+    public String getId() {
+        return id;
+    }
+
+    public String getEntidad() {
+        return entidad;
+    }
+
+    public FormatoReporte getFormato() {
+        return formato;
+    }
+
+    public boolean isGzip() {
+        return gzip;
+    }
+
+    public FiltroReporte getFiltro() {
+        return filtro;
+    }
+
+    public LocalDateTime getCreadoEn() {
+        return creadoEn;
+    }
+
+    public Estado getEstado() {
+        return estado;
+    }
+
+    public LocalDateTime getIniciadoEn() {
+        return iniciadoEn;
+    }
+
+    public LocalDateTime getFinalizadoEn() {
+        return finalizadoEn;
+    }
+
+    @JsonIgnore
+    public Path getArchivo() {
+        return archivo;
+    }
+
+    public long getTamanoBytes() {
+        return tamanoBytes;
+    }
+
+    public Map<String, Long> getProgreso() {
+        return progreso;
+    }
+
+    public String getError() {
+        return error;
+    }
+}
@@ -0,0 +1,12 @@
+package com.logistock.repository;
+
+import com.logistock.model.MovimientoStock;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Repositorio para la entidad MovimientoStock
+ */
+@Repository
+public interface MovimientoStockRepository extends MongoRepository<MovimientoStock, String> {
+}
@@ -5,6 +5,7 @@ import com.logistock.model.Pedido;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Repository
@@ -23,4 +24,6 @@ public interface PedidoRepository extends MongoRepository<Pedido, String> {
     List<Pedido> findByUsuarioAsignadoIdAndEstadoIn(String usuarioId, List<EstadoPedido> estados);
     
     long countByEstado(EstadoPedido estado);
+    
+    List<Pedido> findByFechaActualizacionAfter(LocalDateTime fecha);
 }
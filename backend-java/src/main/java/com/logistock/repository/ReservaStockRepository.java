@@ -0,0 +1,18 @@
+package com.logistock.repository;
+
+import com.logistock.model.ReservaStock;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Repositorio para la entidad ReservaStock
+ */
+@Repository
+public interface ReservaStockRepository extends MongoRepository<ReservaStock, String> {
+
+    // Reservas que siguen vigentes
+    List<ReservaStock> findByExpiraEnAfter(LocalDateTime fecha);
+}
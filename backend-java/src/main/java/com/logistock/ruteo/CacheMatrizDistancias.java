@@ -0,0 +1,155 @@
+package com.logistock.ruteo;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Costos de viaje (km y minutos) entre pares de ubicaciones registradas, en una tabla hash
+ * mapeada en memoria
+ *
+ * La tabla tiene un número fijo de ranuras de 16 bytes (clave del par y valor), agrupadas en
+ * cubetas de 4 que ocupan una línea de caché. Un par solo puede estar en su cubeta, así que
+ * una búsqueda lee a lo sumo 4 ranuras, y los ids de ubicación no tienen límite: cuando la
+ * cubeta está llena, el par nuevo desaloja a uno de los guardados, que se vuelve a calcular
+ * si se lo pide otra vez. El archivo es disperso, de modo que solo ocupa disco lo que se
+ * escribió, y las lecturas no pasan por el heap ni por la base.
+ *
+ * Las escrituras se serializan; las lecturas no toman bloqueo y releen la clave después del
+ * valor para descartar una ranura que se estaba reemplazando.
+ */
+public class CacheMatrizDistancias implements Closeable {
+
+    private static final int MAGICO = 0x4C534448;
+    private static final int CABECERA = 16;
+    private static final int BYTES_RANURA = 16;
+    private static final int VIAS = 4;
+    // Máxima cantidad de ranuras que entra en un único mapeo (1 GB)
+    public static final int CAPACIDAD_MAXIMA = 1 << 26;
+
+    private static final VarHandle LARGO = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    private final int ranuras;
+    private final FileChannel canal;
+    private final MappedByteBuffer celdas;
+    private final AtomicLong desalojados = new AtomicLong();
+    private int victima;
+
+    /**
+     * @param capacidad Pares a guardar; se redondea a la potencia de dos siguiente
+     * @return la caché, o null si el archivo existe con otra capacidad (hay que descartarlo)
+     */
+    public static CacheMatrizDistancias abrir(Path ruta, int capacidad) throws IOException {
+        if (capacidad < 1 || capacidad > CAPACIDAD_MAXIMA) {
+            throw new IllegalArgumentException("Capacidad de la caché de distancias fuera de rango: " + capacidad);
+        }
+        int ranuras = Math.max(VIAS, Integer.highestOneBit(capacidad - 1) << 1);
+        FileChannel canal = FileChannel.open(ruta, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long tamano = CABECERA + (long) ranuras * BYTES_RANURA;
+        MappedByteBuffer celdas = canal.map(FileChannel.MapMode.READ_WRITE, 0, tamano);
+        int magico = celdas.getInt(0);
+        if (magico == 0) {
+            celdas.putInt(4, ranuras);
+            celdas.putInt(0, MAGICO);
+        } else if (magico != MAGICO || celdas.getInt(4) != ranuras) {
+            canal.close();
+            return null;
+        }
+        return new CacheMatrizDistancias(ranuras, canal, celdas);
+    }
+
+    private CacheMatrizDistancias(int ranuras, FileChannel canal, MappedByteBuffer celdas) {
+        this.ranuras = ranuras;
+        this.canal = canal;
+        this.celdas = celdas;
+    }
+
+    public int capacidad() {
+        return ranuras;
+    }
+
+    /**
+     * Pares reemplazados por otros desde que se abrió la caché
+     */
+    public long desalojados() {
+        return desalojados.get();
+    }
+
+    /**
+     * @return {km, minutos} o null si el par no está guardado
+     */
+    public double[] obtener(int desde, int hasta) {
+        long clave = clave(desde, hasta);
+        int cubeta = cubeta(clave);
+        for (int via = 0; via < VIAS; via++) {
+            int posicion = cubeta + via * BYTES_RANURA;
+            if ((long) LARGO.getVolatile(celdas, posicion) == clave) {
+                long celda = (long) LARGO.getVolatile(celdas, posicion + 8);
+                // Si la clave cambió entretanto, el valor puede ser de otro par
+                if ((long) LARGO.getVolatile(celdas, posicion) != clave) {
+                    return null;
+                }
+                return new double[]{Float.intBitsToFloat((int) (celda >>> 32)), Float.intBitsToFloat((int) celda)};
+            }
+        }
+        return null;
+    }
+
+    public synchronized void guardar(int desde, int hasta, double km, double minutos) {
+        long clave = clave(desde, hasta);
+        int cubeta = cubeta(clave);
+        int libre = -1;
+        for (int via = 0; via < VIAS; via++) {
+            long guardada = (long) LARGO.getVolatile(celdas, cubeta + via * BYTES_RANURA);
+            if (guardada == clave) {
+                libre = via;
+                break;
+            }
+            if (guardada == 0 && libre < 0) {
+                libre = via;
+            }
+        }
+        if (libre < 0) {
+            libre = victima++ & (VIAS - 1);
+            desalojados.incrementAndGet();
+        }
+        int posicion = cubeta + libre * BYTES_RANURA;
+        long celda = ((long) Float.floatToIntBits((float) km) << 32) | (Float.floatToIntBits((float) minutos) & 0xFFFFFFFFL);
+        LARGO.setVolatile(celdas, posicion, 0L);
+        LARGO.setVolatile(celdas, posicion + 8, celda);
+        LARGO.setVolatile(celdas, posicion, clave);
+    }
+
+    /**
+     * Llevar a disco las páginas modificadas
+     */
+    public void sincronizar() {
+        celdas.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        sincronizar();
+        canal.close();
+    }
+
+    /**
+     * Clave del par, nunca cero (cero = ranura libre)
+     */
+    private static long clave(int desde, int hasta) {
+        return (((long) desde << 32) | (hasta & 0xFFFFFFFFL)) + 1;
+    }
+
+    private int cubeta(long clave) {
+        long mezcla = clave * 0x9E3779B97F4A7C15L;
+        int indice = (int) (mezcla >>> 32) & (ranuras / VIAS - 1);
+        return CABECERA + indice * VIAS * BYTES_RANURA;
+    }
+}
@@ -0,0 +1,57 @@
+package com.logistock.ruteo;
+
+import com.logistock.model.Ubicacion;
+
+/**
+ * Matriz simétrica de costos de viaje (km y minutos) entre los puntos de un problema.
+ * Se arma con DistanciasService, que la completa desde la caché en disco.
+ */
+public final class MatrizDistancias {
+
+    private static final double RADIO_TIERRA_KM = 6371.0088;
+
+    private final double[][] km;
+    private final double[][] minutos;
+
+    private MatrizDistancias(double[][] km, double[][] minutos) {
+        this.km = km;
+        this.minutos = minutos;
+    }
+
+    /**
+     * Matriz a partir de distancias ya calculadas; debe ser cuadrada y simétrica.
+     * Sin tiempos, los minutos quedan en cero.
+     */
+    public static MatrizDistancias de(double[][] km) {
+        return new MatrizDistancias(km, new double[km.length][km.length]);
+    }
+
+    public static MatrizDistancias de(double[][] km, double[][] minutos) {
+        return new MatrizDistancias(km, minutos);
+    }
+
+    /**
+     * Distancia de gran círculo en km
+     */
+    public static double haversineKm(Ubicacion a, Ubicacion b) {
+        double lat1 = Math.toRadians(a.getLatitud());
+        double lat2 = Math.toRadians(b.getLatitud());
+        double dLat = lat2 - lat1;
+        double dLon = Math.toRadians(b.getLongitud() - a.getLongitud());
+        double h = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(lat1) * Math.cos(lat2) * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * RADIO_TIERRA_KM * Math.asin(Math.min(1, Math.sqrt(h)));
+    }
+
+    public int tamano() {
+        return km.length;
+    }
+
+    public double km(int desde, int hasta) {
+        return km[desde][hasta];
+    }
+
+    public double minutos(int desde, int hasta) {
+        return minutos[desde][hasta];
+    }
+}
@@ -0,0 +1,136 @@
+package com.logistock.ruteo;
+
+import java.time.LocalDateTime;
+
+/**
+ * Regresión lineal en línea (mínimos cuadrados recursivos) de la duración real de una ruta
+ *
+ * Variables: constante, km, cantidad de paradas, prioridad (Baja, Alta y Urgente frente a
+ * Media) y hora de salida como seno y coseno, para que las 23:00 y la 01:00 queden cerca.
+ * Cada ruta completada actualiza los coeficientes en O(d²) sin volver a recorrer el
+ * historial, y el factor de olvido da más peso a las rutas recientes. Con olvido, la
+ * covarianza de una variable que no varía (una prioridad que no se usa) crece sin límite
+ * hasta desestabilizar el modelo; su traza se acota a la inicial. Las predicciones leen
+ * una copia inmutable de los coeficientes, sin bloqueo.
+ */
+public class ModeloEta {
+
+    private static final int VARIABLES = 8;
+    // Varianza inicial alta: los primeros ejemplos mueven mucho los coeficientes
+    private static final double VARIANZA_INICIAL = 1_000;
+    // Cota de la traza de la covarianza: nunca más incertidumbre que al empezar
+    private static final double TRAZA_MAXIMA = VARIABLES * VARIANZA_INICIAL;
+    // Suavizado del error absoluto medio
+    private static final double PESO_ERROR = 0.05;
+
+    private final double olvido;
+    private final double[][] covarianza = new double[VARIABLES][VARIABLES];
+    private volatile double[] coeficientes = new double[VARIABLES];
+    private volatile long muestras;
+    private volatile double errorMedioMinutos;
+
+    /**
+     * @param olvido Factor de olvido en (0, 1]; 1 = todas las rutas pesan igual
+     */
+    public ModeloEta(double olvido) {
+        if (olvido <= 0 || olvido > 1) {
+            throw new IllegalArgumentException("El factor de olvido debe estar en (0, 1]: " + olvido);
+        }
+        this.olvido = olvido;
+        for (int i = 0; i < VARIABLES; i++) {
+            covarianza[i][i] = VARIANZA_INICIAL;
+        }
+    }
+
+    /**
+     * Incorporar la duración real de una ruta
+     */
+    public synchronized void aprender(double km, int paradas, String prioridad, LocalDateTime salida, double minutos) {
+        double[] x = variables(km, paradas, prioridad, salida);
+        double[] w = coeficientes.clone();
+
+        double[] px = new double[VARIABLES];
+        double denominador = olvido;
+        for (int i = 0; i < VARIABLES; i++) {
+            for (int j = 0; j < VARIABLES; j++) {
+                px[i] += covarianza[i][j] * x[j];
+            }
+            denominador += x[i] * px[i];
+        }
+        double error = minutos - producto(w, x);
+        for (int i = 0; i < VARIABLES; i++) {
+            w[i] += px[i] / denominador * error;
+        }
+        double traza = 0;
+        for (int i = 0; i < VARIABLES; i++) {
+            for (int j = 0; j < VARIABLES; j++) {
+                covarianza[i][j] = (covarianza[i][j] - px[i] * px[j] / denominador) / olvido;
+            }
+            traza += covarianza[i][i];
+        }
+        if (traza > TRAZA_MAXIMA) {
+            double escala = TRAZA_MAXIMA / traza;
+            for (int i = 0; i < VARIABLES; i++) {
+                for (int j = 0; j < VARIABLES; j++) {
+                    covarianza[i][j] *= escala;
+                }
+            }
+        }
+
+        // Error medido antes de aprender del ejemplo (estimación honesta del error de predicción)
+        errorMedioMinutos = muestras == 0 ? Math.abs(error)
+                : (1 - PESO_ERROR) * errorMedioMinutos + PESO_ERROR * Math.abs(error);
+        muestras++;
+        coeficientes = w;
+    }
+
+    /**
+     * Duración estimada en minutos (sin redondear; puede ser poco fiable con pocas muestras)
+     */
+    public double predecir(double km, int paradas, String prioridad, LocalDateTime salida) {
+        return producto(coeficientes, variables(km, paradas, prioridad, salida));
+    }
+
+    public long getMuestras() {
+        return muestras;
+    }
+
+    public double getErrorMedioMinutos() {
+        return errorMedioMinutos;
+    }
+
+    public double[] getCoeficientes() {
+        return coeficientes.clone();
+    }
+
+    synchronized double trazaCovarianza() {
+        double traza = 0;
+        for (int i = 0; i < VARIABLES; i++) {
+            traza += covarianza[i][i];
+        }
+        return traza;
+    }
+
+    private static double[] variables(double km, int paradas, String prioridad, LocalDateTime salida) {
+        double hora = salida.getHour() + salida.getMinute() / 60.0;
+        double angulo = 2 * Math.PI * hora / 24;
+        return new double[]{
+                1,
+                km,
+                paradas,
+                "Baja".equals(prioridad) ? 1 : 0,
+                "Alta".equals(prioridad) ? 1 : 0,
+                "Urgente".equals(prioridad) ? 1 : 0,
+                Math.sin(angulo),
+                Math.cos(angulo)
+        };
+    }
+
+    private static double producto(double[] a, double[] b) {
+        double suma = 0;
+        for (int i = 0; i < a.length; i++) {
+            suma += a[i] * b[i];
+        }
+        return suma;
+    }
+}
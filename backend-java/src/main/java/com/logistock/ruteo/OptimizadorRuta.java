@@ -0,0 +1,189 @@
+package com.logistock.ruteo;
+
+/**
+ * Optimizador del orden de paradas de una ruta
+ *
+ * El recorrido parte del nodo 0 (origen), visita las paradas 1..n y, si el destino es fijo,
+ * termina en el último nodo de la matriz; si no, termina en la última parada visitada.
+ * Se construye una solución con el vecino más cercano y se mejora con búsqueda local
+ * (2-opt e inversión de tramos, Or-opt moviendo tramos de 1 a 3 paradas) hasta que ningún
+ * movimiento mejore o se agote el presupuesto de tiempo.
+ *
+ * Supone una matriz simétrica: 2-opt invierte tramos sin recalcular su costo interno.
+ */
+public final class OptimizadorRuta {
+
+    private static final double EPSILON = 1e-9;
+    private static final int MAXIMO_TRAMO_OR_OPT = 3;
+
+    private OptimizadorRuta() {
+    }
+
+    /**
+     * @param matriz Distancias entre origen, paradas y (si es fijo) destino
+     * @param destinoFijo true si el último nodo de la matriz es el destino final
+     * @param presupuestoNanos Tiempo máximo de búsqueda local
+     * @return Orden de visita de las paradas, como índices 0..n-1 de la lista de paradas
+     */
+    public static int[] optimizar(MatrizDistancias matriz, boolean destinoFijo, long presupuestoNanos) {
+        int paradas = matriz.tamano() - 1 - (destinoFijo ? 1 : 0);
+        if (paradas <= 0) {
+            return new int[0];
+        }
+        long limite = System.nanoTime() + presupuestoNanos;
+        int[] recorrido = vecinoMasCercano(matriz, paradas, destinoFijo);
+
+        boolean mejoro = true;
+        while (mejoro && System.nanoTime() < limite) {
+            mejoro = dosOpt(matriz, recorrido, destinoFijo, limite) | orOpt(matriz, recorrido, destinoFijo, limite);
+        }
+
+        int[] orden = new int[paradas];
+        for (int i = 0; i < paradas; i++) {
+            orden[i] = recorrido[i + 1] - 1;
+        }
+        return orden;
+    }
+
+    /**
+     * Distancia total de un orden de visita (índices 0..n-1 de las paradas)
+     */
+    public static double distanciaKm(MatrizDistancias matriz, int[] orden, boolean destinoFijo) {
+        double total = 0;
+        int anterior = 0;
+        for (int parada : orden) {
+            total += matriz.km(anterior, parada + 1);
+            anterior = parada + 1;
+        }
+        if (destinoFijo) {
+            total += matriz.km(anterior, matriz.tamano() - 1);
+        }
+        return total;
+    }
+
+    /**
+     * Minutos de viaje de un orden de visita (índices 0..n-1 de las paradas)
+     */
+    public static double minutos(MatrizDistancias matriz, int[] orden, boolean destinoFijo) {
+        double total = 0;
+        int anterior = 0;
+        for (int parada : orden) {
+            total += matriz.minutos(anterior, parada + 1);
+            anterior = parada + 1;
+        }
+        if (destinoFijo) {
+            total += matriz.minutos(anterior, matriz.tamano() - 1);
+        }
+        return total;
+    }
+
+    private static int[] vecinoMasCercano(MatrizDistancias matriz, int paradas, boolean destinoFijo) {
+        int[] recorrido = new int[paradas + 1 + (destinoFijo ? 1 : 0)];
+        boolean[] visitada = new boolean[paradas + 1];
+        int actual = 0;
+        for (int posicion = 1; posicion <= paradas; posicion++) {
+            int siguiente = -1;
+            for (int candidata = 1; candidata <= paradas; candidata++) {
+                if (!visitada[candidata] && (siguiente < 0 || matriz.km(actual, candidata) < matriz.km(actual, siguiente))) {
+                    siguiente = candidata;
+                }
+            }
+            visitada[siguiente] = true;
+            recorrido[posicion] = siguiente;
+            actual = siguiente;
+        }
+        if (destinoFijo) {
+            recorrido[recorrido.length - 1] = matriz.tamano() - 1;
+        }
+        return recorrido;
+    }
+
+    /**
+     * Invertir el tramo i..j cuando reduce la distancia. Con destino libre el tramo puede
+     * llegar hasta el final y el último arco desaparece.
+     */
+    private static boolean dosOpt(MatrizDistancias matriz, int[] recorrido, boolean destinoFijo, long limite) {
+        int ultima = ultimaMovible(recorrido, destinoFijo);
+        boolean mejoro = false;
+        for (int i = 1; i < ultima && System.nanoTime() < limite; i++) {
+            for (int j = i + 1; j <= ultima; j++) {
+                int antes = recorrido[i - 1];
+                int despues = j + 1 < recorrido.length ? recorrido[j + 1] : -1;
+                double delta = km(matriz, antes, recorrido[j]) + km(matriz, recorrido[i], despues)
+                        - km(matriz, antes, recorrido[i]) - km(matriz, recorrido[j], despues);
+                if (delta < -EPSILON) {
+                    invertir(recorrido, i, j);
+                    mejoro = true;
+                }
+            }
+        }
+        return mejoro;
+    }
+
+    /**
+     * Mover un tramo de 1 a 3 paradas consecutivas a otra posición del recorrido
+     */
+    private static boolean orOpt(MatrizDistancias matriz, int[] recorrido, boolean destinoFijo, long limite) {
+        int ultima = ultimaMovible(recorrido, destinoFijo);
+        boolean mejoro = false;
+        for (int largo = 1; largo <= MAXIMO_TRAMO_OR_OPT; largo++) {
+            for (int i = 1; i + largo - 1 <= ultima && System.nanoTime() < limite; i++) {
+                int fin = i + largo - 1;
+                int antes = recorrido[i - 1];
+                int despues = fin + 1 < recorrido.length ? recorrido[fin + 1] : -1;
+                double ahorro = km(matriz, antes, recorrido[i]) + km(matriz, recorrido[fin], despues)
+                        - km(matriz, antes, despues);
+                // Insertar entre recorrido[k] y recorrido[k + 1], fuera del tramo
+                for (int k = 0; k <= ultima; k++) {
+                    if (k >= i - 1 && k <= fin) {
+                        continue;
+                    }
+                    int u = recorrido[k];
+                    int v = k + 1 < recorrido.length ? recorrido[k + 1] : -1;
+                    double costo = km(matriz, u, recorrido[i]) + km(matriz, recorrido[fin], v) - km(matriz, u, v);
+                    if (costo - ahorro < -EPSILON) {
+                        mover(recorrido, i, fin, k);
+                        mejoro = true;
+                        break;
+                    }
+                }
+            }
+        }
+        return mejoro;
+    }
+
+    private static int ultimaMovible(int[] recorrido, boolean destinoFijo) {
+        return recorrido.length - (destinoFijo ? 2 : 1);
+    }
+
+    /**
+     * Distancia entre nodos; -1 representa "sin nodo" (final abierto) y no suma
+     */
+    private static double km(MatrizDistancias matriz, int desde, int hasta) {
+        return desde < 0 || hasta < 0 ? 0 : matriz.km(desde, hasta);
+    }
+
+    private static void invertir(int[] recorrido, int i, int j) {
+        while (i < j) {
+            int temporal = recorrido[i];
+            recorrido[i++] = recorrido[j];
+            recorrido[j--] = temporal;
+        }
+    }
+
+    /**
+     * Mover recorrido[i..fin] para que quede justo después de la posición k (k fuera del tramo)
+     */
+    private static void mover(int[] recorrido, int i, int fin, int k) {
+        int largo = fin - i + 1;
+        int[] tramo = new int[largo];
+        System.arraycopy(recorrido, i, tramo, 0, largo);
+        if (k < i) {
+            System.arraycopy(recorrido, k + 1, recorrido, k + 1 + largo, i - k - 1);
+            System.arraycopy(tramo, 0, recorrido, k + 1, largo);
+        } else {
+            System.arraycopy(recorrido, fin + 1, recorrido, i, k - fin);
+            System.arraycopy(tramo, 0, recorrido, k - largo + 1, largo);
+        }
+    }
+}
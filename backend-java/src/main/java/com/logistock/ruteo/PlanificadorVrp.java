@@ -0,0 +1,222 @@
+package com.logistock.ruteo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Ruteo de vehículos con capacidad y jornada (CVRP) sobre una matriz de distancias
+ *
+ * El nodo 0 es el depósito y los nodos 1..n son entregas con su demanda en unidades.
+ * Todas las rutas salen del depósito y vuelven a él. El tiempo de una ruta son los minutos de
+ * viaje de la matriz (los del ProveedorDistancias) más un tiempo de servicio fijo por entrega.
+ *
+ * Construcción con el algoritmo de ahorros de Clarke-Wright (se unen rutas por sus extremos
+ * mientras respeten capacidad y jornada), orden interno de cada ruta mejorado con
+ * {@link OptimizadorRuta}, e inserción de menor costo para agregar entregas nuevas a rutas
+ * existentes sin rehacer el plan.
+ */
+public final class PlanificadorVrp {
+
+    private final MatrizDistancias matriz;
+    private final int[] demanda;
+    private final double minutosServicio;
+
+    /**
+     * @param demanda Unidades por nodo; demanda[0] (depósito) se ignora
+     */
+    public PlanificadorVrp(MatrizDistancias matriz, int[] demanda, double minutosServicio) {
+        this.matriz = matriz;
+        this.demanda = demanda;
+        this.minutosServicio = minutosServicio;
+    }
+
+    /**
+     * Agrupar las entregas en rutas por ahorros. Las entregas que por sí solas exceden la
+     * capacidad o la jornada quedan fuera de todas las rutas.
+     * @param entregas Nodos a planificar (1..n)
+     */
+    public List<List<Integer>> ahorros(List<Integer> entregas, int capacidad, double jornadaMinutos) {
+        int n = matriz.tamano();
+        List<List<Integer>> rutaDe = new ArrayList<>(Collections.nCopies(n, null));
+        int[] carga = new int[n];
+        double[] viaje = new double[n];
+        for (int nodo : entregas) {
+            List<Integer> ruta = new ArrayList<>();
+            ruta.add(nodo);
+            double ida = matriz.minutos(0, nodo) + matriz.minutos(nodo, 0);
+            if (demanda[nodo] <= capacidad && minutos(ida, 1) <= jornadaMinutos) {
+                rutaDe.set(nodo, ruta);
+                carga[nodo] = demanda[nodo];
+                viaje[nodo] = ida;
+            }
+        }
+
+        List<int[]> pares = new ArrayList<>();
+        List<Double> valores = new ArrayList<>();
+        List<Integer> candidatos = new ArrayList<>();
+        for (int nodo : entregas) {
+            if (rutaDe.get(nodo) != null) {
+                candidatos.add(nodo);
+            }
+        }
+        for (int a = 0; a < candidatos.size(); a++) {
+            for (int b = a + 1; b < candidatos.size(); b++) {
+                int i = candidatos.get(a);
+                int j = candidatos.get(b);
+                double ahorro = matriz.km(0, i) + matriz.km(0, j) - matriz.km(i, j);
+                if (ahorro > 0) {
+                    pares.add(new int[]{i, j});
+                    valores.add(ahorro);
+                }
+            }
+        }
+        Integer[] orden = new Integer[pares.size()];
+        for (int k = 0; k < orden.length; k++) {
+            orden[k] = k;
+        }
+        Arrays.sort(orden, (x, y) -> Double.compare(valores.get(y), valores.get(x)));
+
+        for (int k : orden) {
+            int i = pares.get(k)[0];
+            int j = pares.get(k)[1];
+            List<Integer> ri = rutaDe.get(i);
+            List<Integer> rj = rutaDe.get(j);
+            if (ri == rj || !extremo(ri, i) || !extremo(rj, j)) {
+                continue;
+            }
+            // La carga y los minutos de viaje se guardan en el primer nodo de cada ruta
+            int cargaUnida = carga[ri.get(0)] + carga[rj.get(0)];
+            double viajeUnido = viaje[ri.get(0)] + viaje[rj.get(0)]
+                    - matriz.minutos(i, 0) - matriz.minutos(0, j) + matriz.minutos(i, j);
+            if (cargaUnida > capacidad || minutos(viajeUnido, ri.size() + rj.size()) > jornadaMinutos) {
+                continue;
+            }
+            // Orientar para unir ...i con j...
+            if (ri.get(0) == i && ri.size() > 1) {
+                Collections.reverse(ri);
+            }
+            if (rj.get(rj.size() - 1) == j && rj.size() > 1) {
+                Collections.reverse(rj);
+            }
+            ri.addAll(rj);
+            for (int nodo : rj) {
+                rutaDe.set(nodo, ri);
+            }
+            carga[ri.get(0)] = cargaUnida;
+            viaje[ri.get(0)] = viajeUnido;
+        }
+
+        List<List<Integer>> rutas = new ArrayList<>();
+        for (int nodo : candidatos) {
+            List<Integer> ruta = rutaDe.get(nodo);
+            if (ruta.get(0) == nodo) {
+                rutas.add(ruta);
+            }
+        }
+        return rutas;
+    }
+
+    /**
+     * Reordenar las entregas de una ruta (ida y vuelta al depósito) con búsqueda local
+     */
+    public List<Integer> mejorarOrden(List<Integer> ruta, long presupuestoNanos) {
+        if (ruta.size() < 3) {
+            return new ArrayList<>(ruta);
+        }
+        int n = ruta.size();
+        double[][] km = new double[n + 2][n + 2];
+        for (int a = 0; a < n + 2; a++) {
+            for (int b = 0; b < n + 2; b++) {
+                km[a][b] = matriz.km(nodoLocal(ruta, a), nodoLocal(ruta, b));
+            }
+        }
+        int[] orden = OptimizadorRuta.optimizar(MatrizDistancias.de(km), true, presupuestoNanos);
+        List<Integer> mejorada = new ArrayList<>(n);
+        for (int indice : orden) {
+            mejorada.add(ruta.get(indice));
+        }
+        return mejorada;
+    }
+
+    /**
+     * Mejor posición para insertar una entrega en una ruta sin exceder capacidad ni jornada
+     * @param cargaActual Unidades ya cargadas en la ruta
+     * @return {posición, incremento en km} o null si no cabe
+     */
+    public double[] mejorInsercion(List<Integer> ruta, int nodo, int cargaActual, int capacidad, double jornadaMinutos) {
+        if (cargaActual + demanda[nodo] > capacidad) {
+            return null;
+        }
+        double viajeActual = minutosViaje(ruta);
+        double[] mejor = null;
+        for (int posicion = 0; posicion <= ruta.size(); posicion++) {
+            int antes = posicion == 0 ? 0 : ruta.get(posicion - 1);
+            int despues = posicion == ruta.size() ? 0 : ruta.get(posicion);
+            double incremento = matriz.km(antes, nodo) + matriz.km(nodo, despues) - matriz.km(antes, despues);
+            double viajeExtra = matriz.minutos(antes, nodo) + matriz.minutos(nodo, despues) - matriz.minutos(antes, despues);
+            if ((mejor == null || incremento < mejor[1])
+                    && minutos(viajeActual + viajeExtra, ruta.size() + 1) <= jornadaMinutos) {
+                mejor = new double[]{posicion, incremento};
+            }
+        }
+        return mejor;
+    }
+
+    /**
+     * Kilómetros de la ruta saliendo y volviendo al depósito
+     */
+    public double km(List<Integer> ruta) {
+        double total = 0;
+        int anterior = 0;
+        for (int nodo : ruta) {
+            total += matriz.km(anterior, nodo);
+            anterior = nodo;
+        }
+        return total + matriz.km(anterior, 0);
+    }
+
+    public int carga(List<Integer> ruta) {
+        int total = 0;
+        for (int nodo : ruta) {
+            total += demanda[nodo];
+        }
+        return total;
+    }
+
+    /**
+     * Minutos de viaje de la ruta saliendo y volviendo al depósito, sin el servicio
+     */
+    public double minutosViaje(List<Integer> ruta) {
+        double total = 0;
+        int anterior = 0;
+        for (int nodo : ruta) {
+            total += matriz.minutos(anterior, nodo);
+            anterior = nodo;
+        }
+        return total + matriz.minutos(anterior, 0);
+    }
+
+    /**
+     * Duración de la ruta para la jornada: viaje más el servicio de cada entrega
+     */
+    public double minutos(List<Integer> ruta) {
+        return minutos(minutosViaje(ruta), ruta.size());
+    }
+
+    private double minutos(double minutosViaje, int entregas) {
+        return minutosViaje + entregas * minutosServicio;
+    }
+
+    private static boolean extremo(List<Integer> ruta, int nodo) {
+        return ruta.get(0) == nodo || ruta.get(ruta.size() - 1) == nodo;
+    }
+
+    /**
+     * Nodo global de la posición local: 0 = depósito, 1..n = entregas, n+1 = depósito (vuelta)
+     */
+    private static int nodoLocal(List<Integer> ruta, int posicion) {
+        return posicion == 0 || posicion == ruta.size() + 1 ? 0 : ruta.get(posicion - 1);
+    }
+}
@@ -0,0 +1,16 @@
+package com.logistock.ruteo;
+
+import com.logistock.model.Ubicacion;
+
+/**
+ * Fuente de costos de viaje entre dos puntos (un motor de ruteo, una API externa o una
+ * estimación local). Las llamadas pueden ser lentas: el resultado se guarda en la caché de
+ * distancias y cada par se consulta una sola vez.
+ */
+public interface ProveedorDistancias {
+
+    /**
+     * @return {kilómetros, minutos} de viaje de desde a hasta
+     */
+    double[] costo(Ubicacion desde, Ubicacion hasta);
+}
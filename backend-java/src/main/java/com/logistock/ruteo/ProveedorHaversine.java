@@ -0,0 +1,24 @@
+package com.logistock.ruteo;
+
+import com.logistock.model.Ubicacion;
+
+/**
+ * Estimación local: distancia de gran círculo por un factor de desvío y tiempo a velocidad
+ * media constante. Es el proveedor por defecto mientras no haya un motor de ruteo.
+ */
+public class ProveedorHaversine implements ProveedorDistancias {
+
+    private final double factorDesvio;
+    private final double velocidadKmh;
+
+    public ProveedorHaversine(double factorDesvio, double velocidadKmh) {
+        this.factorDesvio = factorDesvio;
+        this.velocidadKmh = velocidadKmh;
+    }
+
+    @Override
+    public double[] costo(Ubicacion desde, Ubicacion hasta) {
+        double km = MatrizDistancias.haversineKm(desde, hasta) * factorDesvio;
+        return new double[]{km, km / velocidadKmh * 60};
+    }
+}
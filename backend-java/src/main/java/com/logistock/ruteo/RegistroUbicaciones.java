@@ -0,0 +1,99 @@
+package com.logistock.ruteo;
+
+import com.logistock.model.Ubicacion;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Registro de ubicaciones con ids enteros compactos (0, 1, 2, ...)
+ *
+ * Las coordenadas se redondean a 5 decimales (~1 m): dos direcciones en el mismo punto
+ * comparten id. Cada alta se agrega a un archivo (id, latitud, longitud) que se relee al
+ * iniciar, de modo que los ids son estables entre reinicios y sirven como índice de la
+ * matriz de distancias en disco.
+ */
+public class RegistroUbicaciones implements Closeable {
+
+    private static final double ESCALA = 100_000d;
+    private static final int BYTES_REGISTRO = 12;
+
+    private final ConcurrentMap<Long, Integer> ids = new ConcurrentHashMap<>();
+    private final DataOutputStream archivo;
+    private int siguiente;
+
+    public RegistroUbicaciones(Path ruta) throws IOException {
+        long leidos = 0;
+        if (Files.exists(ruta)) {
+            try (InputStream entrada = Files.newInputStream(ruta);
+                 DataInputStream datos = new DataInputStream(new BufferedInputStream(entrada))) {
+                while (true) {
+                    int id = datos.readInt();
+                    int latitud = datos.readInt();
+                    int longitud = datos.readInt();
+                    ids.put(clave(latitud, longitud), id);
+                    siguiente = Math.max(siguiente, id + 1);
+                    leidos++;
+                }
+            } catch (EOFException e) {
+                // Fin del archivo (o un registro incompleto de una escritura interrumpida)
+            }
+            // Descartar el registro incompleto para que las altas nuevas queden alineadas
+            try (FileChannel canal = FileChannel.open(ruta, StandardOpenOption.WRITE)) {
+                canal.truncate(leidos * BYTES_REGISTRO);
+            }
+        }
+        this.archivo = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(ruta,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)));
+    }
+
+    /**
+     * Id de la ubicación, registrándola si es nueva
+     */
+    public int id(Ubicacion ubicacion) throws IOException {
+        int latitud = (int) Math.round(ubicacion.getLatitud() * ESCALA);
+        int longitud = (int) Math.round(ubicacion.getLongitud() * ESCALA);
+        long clave = clave(latitud, longitud);
+        Integer id = ids.get(clave);
+        if (id != null) {
+            return id;
+        }
+        synchronized (this) {
+            id = ids.get(clave);
+            if (id == null) {
+                id = siguiente++;
+                archivo.writeInt(id);
+                archivo.writeInt(latitud);
+                archivo.writeInt(longitud);
+                archivo.flush();
+                ids.put(clave, id);
+            }
+            return id;
+        }
+    }
+
+    public int tamano() {
+        return ids.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        archivo.close();
+    }
+
+    private static long clave(int latitud, int longitud) {
+        return ((long) latitud << 32) | (longitud & 0xFFFFFFFFL);
+    }
+}
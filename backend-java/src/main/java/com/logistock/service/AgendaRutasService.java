@@ -0,0 +1,340 @@
+package com.logistock.service;
+
+import com.logistock.agenda.ArbolIntervalos;
+import com.logistock.model.Ruta;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Agenda de vehículos y conductores
+ *
+ * Índice en memoria con un árbol de intervalos por vehículo y por conductor sobre
+ * [fechaPlanificada, fechaPlanificada + tiempo total con paradas) de cada ruta activa que no
+ * está completada ni cancelada. Se carga al iniciar y se mantiene en cada escritura de rutas,
+ * de modo que verificar una doble asignación al guardar es O(log n) sin recorrer las rutas.
+ *
+ * El índice es local a esta instancia: supone que las rutas se escriben a través de ella.
+ * Mientras no se haya cargado (o si la carga falló) no se puede verificar nada: las
+ * reservas y las consultas reintentan la carga y, si vuelve a fallar, se rechazan.
+ */
+@Service
+@Slf4j
+public class AgendaRutasService {
+
+    private static final DateTimeFormatter FORMATO_HORA = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm");
+
+    private final MongoTemplate mongoTemplate;
+
+    private final Map<String, ArbolIntervalos> porVehiculo = new HashMap<>();
+    private final Map<String, ArbolIntervalos> porConductor = new HashMap<>();
+    // Reserva vigente de cada ruta, para poder retirarla de los árboles
+    private final Map<String, Reserva> reservas = new HashMap<>();
+    private boolean cargada;
+
+    public AgendaRutasService(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    /**
+     * Cargar las rutas agendadas (después de la carga de datos iniciales). Si falla, la
+     * agenda queda no disponible y las escrituras de rutas se rechazan hasta que cargue.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void cargar() {
+        try {
+            recargar();
+        } catch (Exception e) {
+            log.error("No se pudo cargar la agenda de rutas; las escrituras de rutas se rechazan hasta que cargue: {}",
+                    e.getMessage());
+        }
+    }
+
+    /**
+     * Guardar una ruta verificando antes que su vehículo y su conductor estén libres en su horario
+     *
+     * La escritura se hace con el monitor de la agenda tomado: verificar, guardar y registrar
+     * tienen que ser atómicos frente a otras reservas, o dos rutas solapadas podrían pasar la
+     * verificación antes de que ninguna quede registrada. Esto serializa las escrituras de
+     * rutas de la instancia (una escritura de un documento cada una) y hace esperar a las
+     * consultas de agenda mientras tanto; las lecturas de rutas no pasan por aquí.
+     * @throws IllegalStateException si el vehículo o el conductor ya tienen otra ruta en ese
+     *         horario, o si la agenda no está disponible
+     */
+    public synchronized Ruta reservar(Ruta ruta, Supplier<Ruta> guardar) {
+        verificarCargada();
+        Reserva reserva = Reserva.de(ruta);
+        if (reserva != null) {
+            verificar(reserva, porVehiculo.get(reserva.vehiculo), "El vehículo " + ruta.getVehiculoAsignado());
+            verificar(reserva, porConductor.get(reserva.conductor), "El conductor " + ruta.getConductorAsignado());
+        }
+        Ruta guardada = guardar.get();
+        registrar(guardada);
+        return guardada;
+    }
+
+    /**
+     * Reflejar en la agenda el estado guardado de una ruta (la agrega, la mueve o la retira)
+     */
+    public synchronized void registrar(Ruta ruta) {
+        retirar(ruta.getId());
+        Reserva reserva = Reserva.de(ruta);
+        if (reserva == null) {
+            return;
+        }
+        if (reserva.vehiculo != null) {
+            porVehiculo.computeIfAbsent(reserva.vehiculo, k -> new ArbolIntervalos())
+                    .insertar(reserva.rutaId, reserva.inicio, reserva.fin);
+        }
+        if (reserva.conductor != null) {
+            porConductor.computeIfAbsent(reserva.conductor, k -> new ArbolIntervalos())
+                    .insertar(reserva.rutaId, reserva.inicio, reserva.fin);
+        }
+        reservas.put(reserva.rutaId, reserva);
+    }
+
+    public synchronized void retirar(String rutaId) {
+        Reserva reserva = rutaId != null ? reservas.remove(rutaId) : null;
+        if (reserva == null) {
+            return;
+        }
+        retirar(porVehiculo, reserva.vehiculo, reserva);
+        retirar(porConductor, reserva.conductor, reserva);
+    }
+
+    /**
+     * Franjas libres de al menos la duración pedida dentro de [desde, hasta) en las que el
+     * vehículo y el conductor indicados (uno o ambos) están disponibles
+     * @throws IllegalArgumentException si no se indica vehículo ni conductor o la ventana no es válida
+     * @throws IllegalStateException si la agenda no está disponible
+     */
+    public synchronized List<Map<String, Object>> disponibilidad(String vehiculo, String conductor,
+                                                                 LocalDateTime desde, LocalDateTime hasta,
+                                                                 int duracionMinutos) {
+        verificarCargada();
+        String claveVehiculo = clave(vehiculo);
+        String claveConductor = clave(conductor);
+        if (claveVehiculo == null && claveConductor == null) {
+            throw new IllegalArgumentException("Debe indicar un vehículo o un conductor");
+        }
+        if (!hasta.isAfter(desde)) {
+            throw new IllegalArgumentException("La fecha hasta debe ser posterior a la fecha desde");
+        }
+        if (duracionMinutos < 1) {
+            throw new IllegalArgumentException("La duración debe ser al menos 1 minuto");
+        }
+        long inicio = minutos(desde);
+        long fin = minutos(hasta);
+
+        // Ocupaciones de ambos recursos, ordenadas por inicio
+        List<ArbolIntervalos.Intervalo> ocupados = new ArrayList<>();
+        if (claveVehiculo != null && porVehiculo.containsKey(claveVehiculo)) {
+            ocupados.addAll(porVehiculo.get(claveVehiculo).solapados(inicio, fin));
+        }
+        if (claveConductor != null && porConductor.containsKey(claveConductor)) {
+            ocupados.addAll(porConductor.get(claveConductor).solapados(inicio, fin));
+        }
+        ocupados.sort((a, b) -> Long.compare(a.getInicio(), b.getInicio()));
+
+        List<Map<String, Object>> libres = new ArrayList<>();
+        long cursor = inicio;
+        for (ArbolIntervalos.Intervalo ocupado : ocupados) {
+            if (ocupado.getInicio() - cursor >= duracionMinutos) {
+                libres.add(franja(cursor, ocupado.getInicio()));
+            }
+            cursor = Math.max(cursor, ocupado.getFin());
+        }
+        if (fin - cursor >= duracionMinutos) {
+            libres.add(franja(cursor, fin));
+        }
+        return libres;
+    }
+
+    /**
+     * Todas las dobles asignaciones vigentes de la flota (rutas cargadas antes de la
+     * verificación o escritas por fuera de la aplicación)
+     * @throws IllegalStateException si la agenda no está disponible
+     */
+    public synchronized Map<String, Object> conflictos() {
+        verificarCargada();
+        long inicio = System.nanoTime();
+        List<Map<String, Object>> vehiculos = conflictos(porVehiculo, "vehiculo");
+        List<Map<String, Object>> conductores = conflictos(porConductor, "conductor");
+
+        Map<String, Object> resultado = new LinkedHashMap<>();
+        resultado.put("rutas", reservas.size());
+        resultado.put("conflictos", vehiculos.size() + conductores.size());
+        resultado.put("vehiculos", vehiculos);
+        resultado.put("conductores", conductores);
+        resultado.put("duracionMs", (System.nanoTime() - inicio) / 1_000_000);
+        return resultado;
+    }
+
+    private List<Map<String, Object>> conflictos(Map<String, ArbolIntervalos> arboles, String recurso) {
+        List<Map<String, Object>> conflictos = new ArrayList<>();
+        for (Map.Entry<String, ArbolIntervalos> entrada : arboles.entrySet()) {
+            ArbolIntervalos arbol = entrada.getValue();
+            for (ArbolIntervalos.Intervalo intervalo : arbol.solapados(Long.MIN_VALUE, Long.MAX_VALUE)) {
+                for (ArbolIntervalos.Intervalo otro : arbol.solapados(intervalo.getInicio(), intervalo.getFin())) {
+                    // Cada par una sola vez: el otro empieza después (o igual y con id mayor)
+                    boolean posterior = otro.getInicio() > intervalo.getInicio()
+                            || (otro.getInicio() == intervalo.getInicio() && otro.getId().compareTo(intervalo.getId()) > 0);
+                    if (!posterior) {
+                        continue;
+                    }
+                    Reserva primera = reservas.get(intervalo.getId());
+                    Reserva segunda = reservas.get(otro.getId());
+                    Map<String, Object> conflicto = new LinkedHashMap<>();
+                    conflicto.put(recurso, recurso.equals("vehiculo") ? primera.nombreVehiculo : primera.nombreConductor);
+                    conflicto.put("ruta", primera.codigo);
+                    conflicto.put("rutaId", primera.rutaId);
+                    conflicto.put("conRuta", segunda.codigo);
+                    conflicto.put("conRutaId", segunda.rutaId);
+                    conflicto.put("desde", fecha(otro.getInicio()));
+                    conflicto.put("hasta", fecha(Math.min(intervalo.getFin(), otro.getFin())));
+                    conflictos.add(conflicto);
+                }
+            }
+        }
+        return conflictos;
+    }
+
+    /**
+     * Leer de nuevo todas las rutas agendadas, reemplazando el índice
+     */
+    private synchronized void recargar() {
+        long inicio = System.nanoTime();
+        Query query = new Query(Criteria.where("isActive").is(true)
+                .and("fechaPlanificada").ne(null)
+                .and("estado").nin("Completada", "Cancelada"));
+        query.fields().include("codigo", "estado", "isActive", "vehiculoAsignado", "conductorAsignado",
+                "fechaPlanificada", "tiempoEstimadoMinutos", "paradas.tiempoEstimadoMinutos");
+        cargada = false;
+        porVehiculo.clear();
+        porConductor.clear();
+        reservas.clear();
+        try (Stream<Ruta> rutas = mongoTemplate.stream(query, Ruta.class)) {
+            rutas.forEach(this::registrar);
+        }
+        cargada = true;
+        log.info("Agenda de rutas cargada: {} rutas, {} vehículos y {} conductores en {} ms", reservas.size(),
+                porVehiculo.size(), porConductor.size(), (System.nanoTime() - inicio) / 1_000_000);
+    }
+
+    /**
+     * Reintentar la carga si la agenda todavía no está cargada (se llama con el monitor tomado)
+     * @throws IllegalStateException si sigue sin poder cargarse
+     */
+    private void verificarCargada() {
+        if (cargada) {
+            return;
+        }
+        try {
+            recargar();
+        } catch (Exception e) {
+            log.warn("La agenda de rutas sigue sin cargar: {}", e.getMessage());
+            throw new IllegalStateException("La agenda de rutas no está disponible; vuelva a intentarlo en unos minutos");
+        }
+    }
+
+    private void verificar(Reserva reserva, ArbolIntervalos arbol, String recurso) {
+        if (arbol == null) {
+            return;
+        }
+        ArbolIntervalos.Intervalo solape = arbol.primerSolape(reserva.inicio, reserva.fin, reserva.rutaId);
+        if (solape != null) {
+            Reserva otra = reservas.get(solape.getId());
+            throw new IllegalStateException(String.format("%s ya está asignado a la ruta %s de %s a %s", recurso,
+                    otra.codigo, FORMATO_HORA.format(fecha(otra.inicio)), FORMATO_HORA.format(fecha(otra.fin))));
+        }
+    }
+
+    private static void retirar(Map<String, ArbolIntervalos> arboles, String clave, Reserva reserva) {
+        if (clave == null) {
+            return;
+        }
+        ArbolIntervalos arbol = arboles.get(clave);
+        if (arbol != null && arbol.eliminar(reserva.rutaId, reserva.inicio) && arbol.isVacio()) {
+            arboles.remove(clave);
+        }
+    }
+
+    private static Map<String, Object> franja(long inicio, long fin) {
+        Map<String, Object> franja = new LinkedHashMap<>();
+        franja.put("desde", fecha(inicio));
+        franja.put("hasta", fecha(fin));
+        franja.put("minutos", fin - inicio);
+        return franja;
+    }
+
+    /**
+     * Clave de un vehículo o conductor: sin espacios de borde ni distinción de mayúsculas
+     */
+    private static String clave(String recurso) {
+        if (recurso == null || recurso.isBlank()) {
+            return null;
+        }
+        return recurso.trim().toUpperCase(Locale.ROOT);
+    }
+
+    private static long minutos(LocalDateTime fecha) {
+        return Math.floorDiv(fecha.toEpochSecond(ZoneOffset.UTC), 60);
+    }
+
+    private static LocalDateTime fecha(long minutos) {
+        return LocalDateTime.ofEpochSecond(minutos * 60, 0, ZoneOffset.UTC);
+    }
+
+    /**
+     * Horario de una ruta en la agenda
+     */
+    private static class Reserva {
+        private String rutaId;
+        private String codigo;
+        private String vehiculo;
+        private String conductor;
+        private String nombreVehiculo;
+        private String nombreConductor;
+        private long inicio;
+        private long fin;
+
+        /**
+         * @return la reserva, o null si la ruta no ocupa la agenda
+         */
+        static Reserva de(Ruta ruta) {
+            if (!Boolean.TRUE.equals(ruta.getIsActive()) || ruta.getFechaPlanificada() == null
+                    || "Completada".equals(ruta.getEstado()) || "Cancelada".equals(ruta.getEstado())) {
+                return null;
+            }
+            Reserva reserva = new Reserva();
+            reserva.vehiculo = clave(ruta.getVehiculoAsignado());
+            reserva.conductor = clave(ruta.getConductorAsignado());
+            if (reserva.vehiculo == null && reserva.conductor == null) {
+                return null;
+            }
+            reserva.rutaId = ruta.getId();
+            reserva.codigo = ruta.getCodigo();
+            reserva.nombreVehiculo = ruta.getVehiculoAsignado();
+            reserva.nombreConductor = ruta.getConductorAsignado();
+            reserva.inicio = minutos(ruta.getFechaPlanificada());
+            reserva.fin = reserva.inicio + Math.max(1, ruta.getTiempoTotalConParadas());
+            return reserva;
+        }
+    }
+}
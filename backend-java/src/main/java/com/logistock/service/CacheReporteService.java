@@ -0,0 +1,292 @@
+package com.logistock.service;
+
+import com.logistock.report.FiltroReporte;
+import com.logistock.report.FormatoReporte;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Caché en disco de reportes generados
+ *
+ * Cada reporte se identifica por entidad, formato, filtro y la versión de datos de su
+ * colección (VersionDatosService). Mientras la versión no cambie, el archivo generado se
+ * reutiliza y el ETag es el mismo, de modo que una descarga repetida es un envío de archivo
+ * o un 304. Se guarda a lo sumo un archivo por entidad, formato y filtro, y el total se
+ * acota con desalojo LRU; un archivo reemplazado o desalojado se elimina cuando termina
+ * su última descarga en curso. Al iniciar se descartan los archivos previos.
+ */
+@Service
+@Slf4j
+public class CacheReporteService {
+
+    private final ReportService reportService;
+    private final VersionDatosService versionDatosService;
+    private final Path directorio;
+    private final long maximoBytes;
+
+    // Orden de acceso: el primero es el menos usado recientemente
+    private final LinkedHashMap<String, ReporteCacheado> entradas = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+    // Claves que alguna descarga está generando y guardando en este momento
+    private final Set<String> generando = ConcurrentHashMap.newKeySet();
+
+    public CacheReporteService(ReportService reportService,
+                               VersionDatosService versionDatosService,
+                               @Value("${app.reportes.cache.directorio:data/reportes-cache}") String directorio,
+                               @Value("${app.reportes.cache.maximo-mb:256}") long maximoMb) {
+        this.reportService = reportService;
+        this.versionDatosService = versionDatosService;
+        this.directorio = Paths.get(directorio);
+        this.maximoBytes = maximoMb * 1024 * 1024;
+    }
+
+    @PostConstruct
+    public void inicializar() throws IOException {
+        Files.createDirectories(directorio);
+        try (Stream<Path> archivos = Files.list(directorio)) {
+            archivos.forEach(this::eliminarArchivo);
+        }
+    }
+
+    /**
+     * Preparar el envío del reporte con la versión actual de los datos. No genera ni lee
+     * nada: el ETag se puede comparar con If-None-Match antes de escribir el cuerpo.
+     * @throws IllegalArgumentException si la entidad no existe
+     */
+    public EnvioReporte preparar(String entidad, FormatoReporte formato, FiltroReporte filtro) {
+        String clave = clave(entidad, formato, filtro);
+        // La versión se lee antes de generar: si los datos cambian durante la generación,
+        // el archivo queda asociado a la versión anterior y la próxima descarga lo regenera
+        String version = versionDatosService.version(reportService.tipoEntidad(entidad));
+        return new EnvioReporte(etag(clave, version), out -> escribir(clave, version, entidad, formato, filtro, out));
+    }
+
+    /**
+     * Escribir el reporte: desde el archivo en caché si existe; si no, se genera enviándolo
+     * a la vez a la respuesta y al archivo de caché. Si otra descarga ya lo está generando,
+     * esta lo genera solo para su respuesta en lugar de esperarla.
+     */
+    private void escribir(String clave, String version, String entidad, FormatoReporte formato,
+                          FiltroReporte filtro, OutputStream out) throws IOException {
+        if (enviarCacheado(clave, version, out)) {
+            return;
+        }
+        if (!generando.add(clave)) {
+            reportService.generar(entidad, formato, filtro, out);
+            return;
+        }
+        try {
+            if (!enviarCacheado(clave, version, out)) {
+                generarYGuardar(clave, version, entidad, formato, filtro, out);
+            }
+        } finally {
+            generando.remove(clave);
+        }
+    }
+
+    private boolean enviarCacheado(String clave, String version, OutputStream out) throws IOException {
+        ReporteCacheado actual = adquirir(clave, version);
+        if (actual == null) {
+            return false;
+        }
+        try {
+            Files.copy(actual.archivo, out);
+        } finally {
+            liberar(actual);
+        }
+        return true;
+    }
+
+    private void generarYGuardar(String clave, String version, String entidad, FormatoReporte formato,
+                                 FiltroReporte filtro, OutputStream out) throws IOException {
+        Path archivo = directorio.resolve(clave + "-" + UUID.randomUUID());
+        Path temporal = directorio.resolve(archivo.getFileName() + ".tmp");
+        try (OutputStream cache = new BufferedOutputStream(Files.newOutputStream(temporal), 64 * 1024)) {
+            reportService.generar(entidad, formato, filtro, new SalidaDoble(out, cache));
+        } catch (IOException | RuntimeException e) {
+            // Incluye el corte de la descarga: el archivo parcial no se guarda
+            eliminarArchivo(temporal);
+            throw e;
+        }
+        Files.move(temporal, archivo, StandardCopyOption.ATOMIC_MOVE);
+        ReporteCacheado nuevo = new ReporteCacheado(version, archivo, Files.size(archivo));
+        guardar(clave, nuevo);
+        log.info("Reporte {} generado y guardado en caché ({} bytes, versión {})", clave, nuevo.tamanoBytes, version);
+    }
+
+    /**
+     * Buscar el reporte de la versión indicada y registrar un lector; el archivo no se
+     * elimina mientras tenga lectores
+     */
+    private synchronized ReporteCacheado adquirir(String clave, String version) {
+        ReporteCacheado entrada = entradas.get(clave);
+        if (entrada == null || !entrada.version.equals(version)) {
+            return null;
+        }
+        entrada.lectores++;
+        return entrada;
+    }
+
+    private synchronized void liberar(ReporteCacheado entrada) {
+        entrada.lectores--;
+        if (entrada.retirado && entrada.lectores == 0) {
+            eliminarArchivo(entrada.archivo);
+        }
+    }
+
+    private synchronized void guardar(String clave, ReporteCacheado nuevo) {
+        ReporteCacheado anterior = entradas.put(clave, nuevo);
+        totalBytes += nuevo.tamanoBytes;
+        if (anterior != null) {
+            totalBytes -= anterior.tamanoBytes;
+            retirar(anterior);
+        }
+        // Desalojar los menos usados, sin tocar el recién generado
+        Iterator<Map.Entry<String, ReporteCacheado>> it = entradas.entrySet().iterator();
+        while (totalBytes > maximoBytes && it.hasNext()) {
+            Map.Entry<String, ReporteCacheado> menosUsada = it.next();
+            if (menosUsada.getValue() == nuevo) {
+                continue;
+            }
+            it.remove();
+            totalBytes -= menosUsada.getValue().tamanoBytes;
+            retirar(menosUsada.getValue());
+            log.debug("Reporte {} desalojado de la caché", menosUsada.getKey());
+        }
+    }
+
+    /**
+     * Sacar un archivo de la caché: se elimina ya si nadie lo está leyendo, o al
+     * terminar el último lector
+     */
+    private void retirar(ReporteCacheado entrada) {
+        entrada.retirado = true;
+        if (entrada.lectores == 0) {
+            eliminarArchivo(entrada.archivo);
+        }
+    }
+
+    /**
+     * Clave de caché; el filtro (texto libre del cliente) se resume en un hash para poder
+     * usarlo en nombres de archivo y en el ETag
+     */
+    private static String clave(String entidad, FormatoReporte formato, FiltroReporte filtro) {
+        String base = entidad + "." + formato.getExtension();
+        String filtroClave = filtro != null ? filtro.clave() : "";
+        if (filtroClave.isEmpty()) {
+            return base;
+        }
+        return base + "-" + UUID.nameUUIDFromBytes(filtroClave.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String etag(String clave, String version) {
+        return "\"" + clave + "-" + version + "\"";
+    }
+
+    private void eliminarArchivo(Path archivo) {
+        try {
+            Files.deleteIfExists(archivo);
+        } catch (IOException e) {
+            log.warn("No se pudo eliminar el archivo de caché {}: {}", archivo, e.getMessage());
+        }
+    }
+
+    /**
+     * Reporte generado para una versión de los datos. Los lectores y la marca de
+     * retirado se protegen con el monitor del servicio.
+     */
+    private static class ReporteCacheado {
+        private final String version;
+        private final Path archivo;
+        private final long tamanoBytes;
+        private int lectores;
+        private boolean retirado;
+
+        ReporteCacheado(String version, Path archivo, long tamanoBytes) {
+            this.version = version;
+            this.archivo = archivo;
+            this.tamanoBytes = tamanoBytes;
+        }
+    }
+
+    /**
+     * Cuerpo de la respuesta de un reporte y su ETag
+     */
+    public static class EnvioReporte {
+        private final String etag;
+        private final Escritura escritura;
+
+        EnvioReporte(String etag, Escritura escritura) {
+            this.etag = etag;
+            this.escritura = escritura;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        public void escribir(OutputStream out) throws IOException {
+            escritura.escribir(out);
+        }
+    }
+
+    @FunctionalInterface
+    interface Escritura {
+        void escribir(OutputStream out) throws IOException;
+    }
+
+    /**
+     * Salida que copia lo escrito a la respuesta y al archivo de caché
+     */
+    private static class SalidaDoble extends OutputStream {
+        private final OutputStream respuesta;
+        private final OutputStream cache;
+
+        SalidaDoble(OutputStream respuesta, OutputStream cache) {
+            this.respuesta = respuesta;
+            this.cache = cache;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            respuesta.write(b);
+            cache.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            respuesta.write(b, off, len);
+            cache.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            respuesta.flush();
+            cache.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            // La respuesta la cierra el contenedor; el archivo, generarYGuardar
+            flush();
+        }
+    }
+}
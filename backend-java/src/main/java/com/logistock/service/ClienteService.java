@@ -23,6 +23,7 @@ import java.util.Optional;
 public class ClienteService {
 
     private final ClienteRepository clienteRepository;
+    private final VersionDatosService versionDatosService;
 
     /**
      * Obtener todos los clientes activos
@@ -67,7 +68,7 @@ public class ClienteService {
             throw new IllegalArgumentException("Ya existe un cliente con el email: " + cliente.getEmail());
         }
         
-        return clienteRepository.save(cliente);
+        return guardar(cliente);
     }
 
     /**
@@ -100,7 +101,7 @@ public class ClienteService {
         existing.setNotas(cliente.getNotas());
         // existing.setContactoSecundario(cliente.getContactoSecundario()); // Eliminado por simplificación
         
-        return clienteRepository.save(existing);
+        return guardar(existing);
     }
 
     /**
@@ -113,7 +114,7 @@ public class ClienteService {
             .orElseThrow(() -> new IllegalArgumentException("Cliente no encontrado con ID: " + id));
         
         cliente.setIsActive(false);
-        clienteRepository.save(cliente);
+        guardar(cliente);
     }
 
     /**
@@ -178,4 +179,12 @@ public class ClienteService {
         return clienteRepository.findClientsWithoutRecentPurchases(fechaLimite);
     }
 
-}
\ No newline at end of file
+    /**
+     * Guardar y registrar el cambio en la versión de datos de la colección
+     */
+    private Cliente guardar(Cliente cliente) {
+        Cliente guardado = clienteRepository.save(cliente);
+        versionDatosService.incrementar(Cliente.class);
+        return guardado;
+    }
+}
@@ -0,0 +1,138 @@
+package com.logistock.service;
+
+import com.logistock.model.Ubicacion;
+import com.logistock.ruteo.CacheMatrizDistancias;
+import com.logistock.ruteo.MatrizDistancias;
+import com.logistock.ruteo.ProveedorDistancias;
+import com.logistock.ruteo.RegistroUbicaciones;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Costos de viaje entre ubicaciones con caché persistente
+ *
+ * Cada ubicación recibe un id compacto en el registro y los pares ya calculados se leen de
+ * la caché mapeada en memoria; solo los pares nuevos se piden al ProveedorDistancias. Un par
+ * se guarda una vez, con el id menor primero. Una optimización repetida sobre los mismos
+ * puntos no vuelve a calcular ningún par, también después de reiniciar, mientras la caché
+ * no los haya desalojado: su capacidad es en pares, no en ubicaciones, y se dimensiona para
+ * los pares que se consultan a diario.
+ */
+@Service
+@Slf4j
+public class DistanciasService {
+
+    private final ProveedorDistancias proveedor;
+    private final Path directorio;
+    private final int capacidad;
+
+    private RegistroUbicaciones registro;
+    private CacheMatrizDistancias cache;
+    private final AtomicLong aciertos = new AtomicLong();
+    private final AtomicLong calculados = new AtomicLong();
+
+    public DistanciasService(ProveedorDistancias proveedor,
+                             @Value("${app.rutas.distancias.directorio:data/distancias}") String directorio,
+                             @Value("${app.rutas.distancias.capacidad-pares:4194304}") int capacidad) {
+        this.proveedor = proveedor;
+        this.directorio = Paths.get(directorio);
+        this.capacidad = capacidad;
+    }
+
+    @PostConstruct
+    public void iniciar() throws IOException {
+        Files.createDirectories(directorio);
+        registro = new RegistroUbicaciones(directorio.resolve("ubicaciones.dat"));
+        Path matriz = directorio.resolve("matriz.dat");
+        cache = CacheMatrizDistancias.abrir(matriz, capacidad);
+        if (cache == null) {
+            log.warn("La caché de distancias en disco tiene otra capacidad o formato; se descarta y se vuelve a calcular");
+            Files.delete(matriz);
+            cache = CacheMatrizDistancias.abrir(matriz, capacidad);
+        }
+        log.info("Caché de distancias abierta: {} ubicaciones registradas, capacidad {} pares",
+                registro.tamano(), cache.capacidad());
+    }
+
+    @PreDestroy
+    public void detener() throws IOException {
+        cache.close();
+        registro.close();
+    }
+
+    /**
+     * Llevar a disco los pares calculados desde la última sincronización
+     */
+    @Scheduled(fixedDelayString = "${app.rutas.distancias.sincronizacion-ms:60000}")
+    public void sincronizar() {
+        cache.sincronizar();
+    }
+
+    /**
+     * Matriz de km y minutos entre los puntos, en el mismo orden
+     */
+    public MatrizDistancias matriz(List<Ubicacion> puntos) {
+        int n = puntos.size();
+        int[] ids = new int[n];
+        try {
+            for (int i = 0; i < n; i++) {
+                ids[i] = registro.id(puntos.get(i));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo registrar la ubicación", e);
+        }
+        double[][] km = new double[n][n];
+        double[][] minutos = new double[n][n];
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
+                if (ids[i] == ids[j]) {
+                    continue;
+                }
+                double[] costo = costo(ids[i], ids[j], puntos.get(i), puntos.get(j));
+                km[i][j] = costo[0];
+                km[j][i] = costo[0];
+                minutos[i][j] = costo[1];
+                minutos[j][i] = costo[1];
+            }
+        }
+        return MatrizDistancias.de(km, minutos);
+    }
+
+    public Map<String, Object> estadisticas() {
+        Map<String, Object> estadisticas = new LinkedHashMap<>();
+        estadisticas.put("ubicaciones", registro.tamano());
+        estadisticas.put("capacidadPares", cache.capacidad());
+        estadisticas.put("desalojados", cache.desalojados());
+        estadisticas.put("aciertos", aciertos.get());
+        estadisticas.put("calculados", calculados.get());
+        return estadisticas;
+    }
+
+    private double[] costo(int desde, int hasta, Ubicacion origen, Ubicacion destino) {
+        int menor = Math.min(desde, hasta);
+        int mayor = Math.max(desde, hasta);
+        double[] guardado = cache.obtener(menor, mayor);
+        if (guardado != null) {
+            aciertos.incrementAndGet();
+            return guardado;
+        }
+        double[] costo = proveedor.costo(origen, destino);
+        calculados.incrementAndGet();
+        cache.guardar(menor, mayor, costo[0], costo[1]);
+        return costo;
+    }
+}
@@ -0,0 +1,162 @@
+package com.logistock.service;
+
+import com.logistock.model.Ruta;
+import com.logistock.ruteo.ModeloEta;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Estimación de la duración de las rutas aprendida de las rutas completadas
+ *
+ * El modelo vive en memoria: al iniciar se entrena una vez con el historial y después
+ * aprende de cada ruta que pasa a Completada, de modo que una predicción no consulta la
+ * base. Con menos muestras que el mínimo configurado no se predice.
+ *
+ * El entrenamiento corre cuando la aplicación ya atiende pedidos, así que una ruta puede
+ * completarse antes de que termine y llegar también en el historial. Las rutas recibidas
+ * mientras tanto se guardan y, al terminar, se aprenden solo las que el historial no trajo.
+ */
+@Service
+@Slf4j
+public class EtaService {
+
+    // Duraciones fuera de este rango son datos mal cargados (una ruta que nunca se cerró, etc.)
+    private static final long DURACION_MAXIMA_MINUTOS = 24 * 60;
+
+    private final MongoTemplate mongoTemplate;
+    private final ModeloEta modelo;
+    private final long minimoMuestras;
+    // Antes de este momento ninguna ruta pudo llegar por aprender(): solo las terminadas
+    // después se cotejan contra las pendientes
+    private final LocalDateTime arranque = LocalDateTime.now();
+    // Rutas completadas recibidas antes de terminar el entrenamiento (null una vez entrenado)
+    private Map<String, Ruta> pendientes = new LinkedHashMap<>();
+
+    public EtaService(MongoTemplate mongoTemplate,
+                      @Value("${app.rutas.eta.olvido:0.999}") double olvido,
+                      @Value("${app.rutas.eta.minimo-muestras:20}") long minimoMuestras) {
+        this.mongoTemplate = mongoTemplate;
+        this.modelo = new ModeloEta(olvido);
+        this.minimoMuestras = minimoMuestras;
+    }
+
+    /**
+     * Entrenar con las rutas completadas, de la más antigua a la más reciente
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void entrenar() {
+        Set<String> recientes = new HashSet<>();
+        long inicio = System.nanoTime();
+        Query query = new Query(Criteria.where("estado").is("Completada")
+                .and("fechaInicio").ne(null)
+                .and("fechaFinalizacion").ne(null))
+                .with(Sort.by(Sort.Direction.ASC, "fechaFinalizacion"));
+        query.fields().include("distanciaKm", "prioridad", "fechaInicio", "fechaFinalizacion", "paradas.direccion");
+        try (Stream<Ruta> rutas = mongoTemplate.stream(query, Ruta.class)) {
+            rutas.forEach(ruta -> {
+                if (!ruta.getFechaFinalizacion().isBefore(arranque)) {
+                    recientes.add(ruta.getId());
+                }
+                incorporar(ruta);
+            });
+            log.info("Modelo de ETA entrenado con {} rutas completadas en {} ms (error medio {} min)", modelo.getMuestras(),
+                    (System.nanoTime() - inicio) / 1_000_000, Math.round(modelo.getErrorMedioMinutos()));
+        } catch (Exception e) {
+            log.warn("No se pudo entrenar el modelo de ETA: {}", e.getMessage());
+        }
+        synchronized (this) {
+            pendientes.forEach((id, ruta) -> {
+                if (!recientes.contains(id)) {
+                    incorporar(ruta);
+                }
+            });
+            pendientes = null;
+        }
+    }
+
+    /**
+     * Incorporar una ruta completada; se ignora si le faltan datos o su duración no es plausible
+     */
+    public void aprender(Ruta ruta) {
+        synchronized (this) {
+            if (pendientes != null) {
+                pendientes.put(ruta.getId(), ruta);
+                return;
+            }
+        }
+        incorporar(ruta);
+    }
+
+    private void incorporar(Ruta ruta) {
+        if (ruta.getFechaInicio() == null || ruta.getFechaFinalizacion() == null || ruta.getDistanciaKm() == null) {
+            return;
+        }
+        long minutos = Duration.between(ruta.getFechaInicio(), ruta.getFechaFinalizacion()).toMinutes();
+        if (minutos < 1 || minutos > DURACION_MAXIMA_MINUTOS) {
+            return;
+        }
+        modelo.aprender(ruta.getDistanciaKm().doubleValue(), paradas(ruta), ruta.getPrioridad(), ruta.getFechaInicio(), minutos);
+    }
+
+    /**
+     * Duración estimada de una ruta según su distancia, paradas, prioridad y hora planificada
+     * @return minutos, o null si el modelo todavía no tiene muestras suficientes
+     */
+    public Integer predecir(Ruta ruta) {
+        if (ruta.getDistanciaKm() == null) {
+            return null;
+        }
+        return predecir(ruta.getDistanciaKm().doubleValue(), paradas(ruta), ruta.getPrioridad(), ruta.getFechaPlanificada());
+    }
+
+    public Integer predecir(double km, int paradas, String prioridad, LocalDateTime salida) {
+        if (modelo.getMuestras() < minimoMuestras) {
+            return null;
+        }
+        double minutos = modelo.predecir(km, paradas, prioridad, salida != null ? salida : LocalDateTime.now());
+        return (int) Math.max(1, Math.round(minutos));
+    }
+
+    /**
+     * Estimación con el estado del modelo, para la API
+     * @throws IllegalArgumentException si la distancia o las paradas son negativas
+     */
+    public Map<String, Object> estimar(double km, int paradas, String prioridad, LocalDateTime salida) {
+        if (km < 0 || paradas < 0) {
+            throw new IllegalArgumentException("La distancia y las paradas no pueden ser negativas");
+        }
+        Map<String, Object> estimacion = new LinkedHashMap<>();
+        estimacion.put("tiempoEstimadoMinutos", predecir(km, paradas, prioridad, salida));
+        estimacion.put("muestras", modelo.getMuestras());
+        estimacion.put("errorMedioMinutos", Math.round(modelo.getErrorMedioMinutos()));
+        return estimacion;
+    }
+
+    public Map<String, Object> estado() {
+        Map<String, Object> estado = new LinkedHashMap<>();
+        estado.put("muestras", modelo.getMuestras());
+        estado.put("minimoMuestras", minimoMuestras);
+        estado.put("errorMedioMinutos", Math.round(modelo.getErrorMedioMinutos()));
+        estado.put("coeficientes", modelo.getCoeficientes());
+        return estado;
+    }
+
+    private static int paradas(Ruta ruta) {
+        return ruta.getParadas() != null ? ruta.getParadas().size() : 0;
+    }
+}
@@ -0,0 +1,149 @@
+package com.logistock.service;
+
+import com.logistock.model.Pedido;
+import com.logistock.report.FiltroReporte;
+import com.logistock.report.GuiaRemisionWriter;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Guías de remisión por lote en un ZIP
+ *
+ * Los pedidos se leen con un cursor y cada guía se renderiza en un pool acotado de hilos.
+ * El hilo de la solicitud escribe las guías en el ZIP en el orden del cursor a medida que
+ * terminan; como mucho hay una ventana fija de guías en vuelo, de modo que la memoria no
+ * depende de la cantidad de pedidos y el archivo nunca se arma completo en memoria.
+ */
+@Service
+@Slf4j
+public class GuiaRemisionService {
+
+    private static final int TAMANO_LOTE_CURSOR = 500;
+
+    private final MongoTemplate mongoTemplate;
+    private final ReportService reportService;
+    private final int hilos;
+    private final int ventana;
+
+    private ExecutorService renderizadores;
+
+    public GuiaRemisionService(MongoTemplate mongoTemplate,
+                               ReportService reportService,
+                               @Value("${app.reportes.guias.hilos:4}") int hilos,
+                               @Value("${app.reportes.guias.ventana:32}") int ventana) {
+        this.mongoTemplate = mongoTemplate;
+        this.reportService = reportService;
+        this.hilos = hilos;
+        this.ventana = Math.max(ventana, hilos);
+    }
+
+    @PostConstruct
+    public void iniciar() {
+        AtomicInteger contador = new AtomicInteger();
+        renderizadores = Executors.newFixedThreadPool(hilos, r -> {
+            Thread hilo = new Thread(r, "guias-remision-" + contador.incrementAndGet());
+            hilo.setDaemon(true);
+            return hilo;
+        });
+    }
+
+    @PreDestroy
+    public void detener() {
+        renderizadores.shutdownNow();
+    }
+
+    /**
+     * Validar el filtro de pedidos sin ejecutar la consulta
+     * @throws IllegalArgumentException si el filtro no es válido para pedidos
+     */
+    public void validarFiltro(FiltroReporte filtro) {
+        reportService.validarFiltro("orders", filtro);
+    }
+
+    /**
+     * Escribir en un ZIP una guía de remisión (PDF) por cada pedido que cumple el filtro.
+     * No cierra el stream de salida.
+     * @return cantidad de guías escritas
+     */
+    public int generarZip(FiltroReporte filtro, OutputStream out) throws IOException {
+        Query query = reportService.consulta("orders", filtro).cursorBatchSize(TAMANO_LOTE_CURSOR);
+        Deque<Future<GuiaRenderizada>> enVuelo = new ArrayDeque<>();
+        int escritas = 0;
+
+        ZipOutputStream zip = new ZipOutputStream(out);
+        // Los PDF ya van comprimidos: volver a comprimirlos solo gasta CPU
+        zip.setLevel(Deflater.NO_COMPRESSION);
+        try (Stream<Pedido> pedidos = mongoTemplate.stream(query, Pedido.class)) {
+            Iterator<Pedido> it = pedidos.iterator();
+            while (it.hasNext()) {
+                Pedido pedido = it.next();
+                enVuelo.add(renderizadores.submit(() -> renderizar(pedido)));
+                if (enVuelo.size() >= ventana) {
+                    escribir(zip, enVuelo.poll());
+                    escritas++;
+                }
+            }
+            while (!enVuelo.isEmpty()) {
+                escribir(zip, enVuelo.poll());
+                escritas++;
+            }
+            zip.finish();
+        } finally {
+            enVuelo.forEach(guia -> guia.cancel(true));
+        }
+        log.info("Guías de remisión generadas: {}", escritas);
+        return escritas;
+    }
+
+    private static GuiaRenderizada renderizar(Pedido pedido) throws IOException {
+        ByteArrayOutputStream pdf = new ByteArrayOutputStream(16 * 1024);
+        GuiaRemisionWriter.escribir(pdf, pedido);
+        return new GuiaRenderizada("guia-" + pedido.getId() + ".pdf", pdf.toByteArray());
+    }
+
+    private static void escribir(ZipOutputStream zip, Future<GuiaRenderizada> futuro) throws IOException {
+        GuiaRenderizada guia;
+        try {
+            guia = futuro.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Generación de guías interrumpida", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Error generando una guía de remisión: " + e.getCause().getMessage(), e.getCause());
+        }
+        zip.putNextEntry(new ZipEntry(guia.nombre));
+        zip.write(guia.contenido);
+        zip.closeEntry();
+    }
+
+    private static class GuiaRenderizada {
+        private final String nombre;
+        private final byte[] contenido;
+
+        GuiaRenderizada(String nombre, byte[] contenido) {
+            this.nombre = nombre;
+            this.contenido = contenido;
+        }
+    }
+}
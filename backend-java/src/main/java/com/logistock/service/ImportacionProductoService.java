@@ -0,0 +1,443 @@
+package com.logistock.service;
+
+import com.logistock.dto.ResultadoImportacion;
+import com.logistock.importacion.LectorCsv;
+import com.logistock.importacion.LectorXlsx;
+import com.logistock.model.MovimientoStock;
+import com.logistock.model.Product;
+import com.logistock.model.TipoMovimiento;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.bulk.BulkWriteUpsert;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.text.Normalizer;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Importación masiva de productos desde XLSX o CSV
+ *
+ * Los archivos se leen en streaming (SAX para XLSX) y las filas válidas se acumulan en
+ * lotes de tamaño fijo; cada lote es una lectura de los productos existentes por código y
+ * una escritura masiva desordenada (upsert por código para los nuevos, actualización
+ * condicionada al stock leído para los existentes). La memoria depende del tamaño del
+ * lote y no del archivo.
+ *
+ * Los cambios de stock quedan en el libro de movimientos (IMPORTACION). En los productos
+ * calientes el stock no se escribe en la base: la diferencia se aplica al contador en memoria,
+ * igual que en la edición individual.
+ */
+@Service
+@Slf4j
+public class ImportacionProductoService {
+
+    private static final String UBICACION_POR_DEFECTO = "Almacén Principal";
+    private static final int INTENTOS_LOTE = 2;
+    private static final int CODIGO_CLAVE_DUPLICADA = 11000;
+
+    // Encabezados aceptados (sin tildes ni mayúsculas) por campo del producto
+    private static final Map<String, String> ENCABEZADOS = Map.ofEntries(
+            Map.entry("code", "code"), Map.entry("codigo", "code"),
+            Map.entry("name", "name"), Map.entry("nombre", "name"),
+            Map.entry("description", "description"), Map.entry("descripcion", "description"),
+            Map.entry("category", "category"), Map.entry("categoria", "category"),
+            Map.entry("stock", "stock"),
+            Map.entry("minstock", "minStock"), Map.entry("stockminimo", "minStock"), Map.entry("stock minimo", "minStock"),
+            Map.entry("price", "price"), Map.entry("precio", "price"),
+            Map.entry("supplier", "supplier"), Map.entry("proveedor", "supplier"),
+            Map.entry("location", "location"), Map.entry("ubicacion", "location"));
+
+    private final MongoTemplate mongoTemplate;
+    private final MovimientoStockService movimientoStockService;
+    private final StockCalienteService stockCalienteService;
+    private final VersionDatosService versionDatosService;
+    private final int tamanoLote;
+    private final int maximoErrores;
+
+    public ImportacionProductoService(MongoTemplate mongoTemplate,
+                                      MovimientoStockService movimientoStockService,
+                                      StockCalienteService stockCalienteService,
+                                      VersionDatosService versionDatosService,
+                                      @Value("${app.inventario.importacion.tamano-lote:1000}") int tamanoLote,
+                                      @Value("${app.inventario.importacion.maximo-errores:1000}") int maximoErrores) {
+        this.mongoTemplate = mongoTemplate;
+        this.movimientoStockService = movimientoStockService;
+        this.stockCalienteService = stockCalienteService;
+        this.versionDatosService = versionDatosService;
+        this.tamanoLote = tamanoLote;
+        this.maximoErrores = maximoErrores;
+    }
+
+    /**
+     * Importar la primera hoja de un libro XLSX
+     */
+    public ResultadoImportacion importarXlsx(File archivo) throws IOException {
+        Importacion importacion = new Importacion();
+        new LectorXlsx().leer(archivo, importacion::fila);
+        return importacion.terminar();
+    }
+
+    /**
+     * Importar un CSV en UTF-8 con encabezado
+     */
+    public ResultadoImportacion importarCsv(InputStream entrada, char separador) throws IOException {
+        Importacion importacion = new Importacion();
+        new LectorCsv(separador).leer(entrada, importacion::fila);
+        return importacion.terminar();
+    }
+
+    /**
+     * Estado de una importación en curso: columnas del encabezado, lote pendiente y resultado
+     */
+    private class Importacion {
+        private final ResultadoImportacion resultado = new ResultadoImportacion(maximoErrores);
+        private Map<String, Integer> columnas;
+        // Por código: la última fila del archivo gana si un código se repite en el lote
+        private Map<String, FilaProducto> lote = new LinkedHashMap<>();
+
+        void fila(int numero, List<String> valores) {
+            if (columnas == null) {
+                columnas = columnas(valores);
+                return;
+            }
+            resultado.contarFila();
+            FilaProducto fila;
+            try {
+                fila = FilaProducto.desde(numero, valores, columnas);
+            } catch (IllegalArgumentException e) {
+                resultado.registrarError(numero, valor(valores, columnas.get("code")), e.getMessage());
+                return;
+            }
+            FilaProducto reemplazada = lote.put(fila.code, fila);
+            if (reemplazada != null) {
+                resultado.registrarError(reemplazada.numero, reemplazada.code,
+                        "Código repetido; se usa la fila " + numero);
+            }
+            if (lote.size() >= tamanoLote) {
+                escribirLote(lote, resultado);
+                lote = new LinkedHashMap<>();
+            }
+        }
+
+        ResultadoImportacion terminar() {
+            if (columnas == null) {
+                throw new IllegalArgumentException("El archivo está vacío");
+            }
+            if (!lote.isEmpty()) {
+                escribirLote(lote, resultado);
+            }
+            log.info("Importación de productos: {} filas, {} nuevos, {} actualizados, {} con error",
+                    resultado.getTotal(), resultado.getInsertados(), resultado.getActualizados(), resultado.getFallidos());
+            return resultado;
+        }
+    }
+
+    private static Map<String, Integer> columnas(List<String> encabezado) {
+        Map<String, Integer> columnas = new HashMap<>();
+        for (int i = 0; i < encabezado.size(); i++) {
+            String campo = ENCABEZADOS.get(normalizar(encabezado.get(i)));
+            if (campo != null) {
+                columnas.putIfAbsent(campo, i);
+            }
+        }
+        if (!columnas.containsKey("code") || !columnas.containsKey("name")) {
+            throw new IllegalArgumentException("El encabezado debe incluir las columnas code (codigo) y name (nombre)");
+        }
+        return columnas;
+    }
+
+    private static String normalizar(String encabezado) {
+        if (encabezado == null) {
+            return "";
+        }
+        String sinTildes = Normalizer.normalize(encabezado.trim().toLowerCase(), Normalizer.Form.NFD);
+        return sinTildes.replaceAll("\\p{M}", "").replace('_', ' ');
+    }
+
+    /**
+     * Escribir un lote. Las filas cuyo producto cambió entre la lectura y la escritura
+     * se releen y se vuelven a intentar; si siguen sin aplicarse se informan como error.
+     * Cada pasada corre sin que un producto cambie de modo caliente entre su lectura y su
+     * escritura.
+     */
+    private void escribirLote(Map<String, FilaProducto> lote, ResultadoImportacion resultado) {
+        List<FilaProducto> pendientes = new ArrayList<>(lote.values());
+        for (int intento = 0; intento < INTENTOS_LOTE && !pendientes.isEmpty(); intento++) {
+            List<FilaProducto> filas = pendientes;
+            pendientes = stockCalienteService.sinCambioDeModo(() -> escribir(filas, resultado));
+        }
+        for (FilaProducto fila : pendientes) {
+            resultado.registrarError(fila.numero, fila.code,
+                    "El producto cambió durante la importación; vuelva a importar la fila");
+        }
+        versionDatosService.incrementar(Product.class);
+    }
+
+    /**
+     * Una pasada de escritura masiva: upsert por código de los productos nuevos y
+     * actualización por id de los existentes. El stock de un producto existente solo se
+     * reemplaza si sigue siendo el leído, de modo que el movimiento registrado es la
+     * diferencia real; el de un producto nuevo solo se fija al insertarlo.
+     * @return Filas que no se aplicaron porque el producto cambió desde la lectura
+     */
+    private List<FilaProducto> escribir(List<FilaProducto> filas, ResultadoImportacion resultado) {
+        Map<String, Product> existentes = new HashMap<>();
+        Query consulta = new Query(Criteria.where("code").in(filas.stream().map(f -> f.code).toList()));
+        consulta.fields().include("id", "code", "stock", "hotSku");
+        mongoTemplate.find(consulta, Product.class).forEach(p -> existentes.putIfAbsent(p.getCode(), p));
+
+        // Precisión de milisegundos, la misma que guarda Mongo, para reconocer la escritura al releer
+        LocalDateTime ahora = LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Product.class);
+        for (FilaProducto fila : filas) {
+            Product existente = existentes.get(fila.code);
+            if (existente == null) {
+                bulk.upsert(new Query(Criteria.where("code").is(fila.code)), fila.update(false, true, ahora));
+                continue;
+            }
+            boolean caliente = Boolean.TRUE.equals(existente.getHotSku());
+            Criteria criteria = Criteria.where("id").is(existente.getId());
+            if (fila.stock != null && !caliente) {
+                criteria.and("stock").is(existente.getStock());
+            }
+            bulk.updateOne(new Query(criteria), fila.update(caliente, false, ahora));
+        }
+
+        Set<Integer> fallidas = new HashSet<>();
+        List<FilaProducto> pendientes = new ArrayList<>();
+        BulkWriteResult escritura;
+        try {
+            escritura = bulk.execute();
+        } catch (BulkOperationException e) {
+            for (BulkWriteError error : e.getErrors()) {
+                FilaProducto fila = filas.get(error.getIndex());
+                fallidas.add(error.getIndex());
+                if (error.getCode() == CODIGO_CLAVE_DUPLICADA) {
+                    // Otro proceso insertó el mismo código a la vez: se reintenta como existente
+                    pendientes.add(fila);
+                } else {
+                    resultado.registrarError(fila.numero, fila.code, error.getMessage());
+                }
+            }
+            escritura = e.getResult();
+        }
+
+        List<MovimientoStock> movimientos = new ArrayList<>();
+        Set<Integer> insertadas = new HashSet<>();
+        for (BulkWriteUpsert upsert : escritura.getUpserts()) {
+            insertadas.add(upsert.getIndex());
+            FilaProducto fila = filas.get(upsert.getIndex());
+            int stock = fila.stock != null ? fila.stock : 0;
+            if (stock != 0) {
+                movimientos.add(MovimientoStockService.movimiento(upsert.getId().asObjectId().getValue().toHexString(),
+                        stock, TipoMovimiento.IMPORTACION, null, ahora));
+            }
+        }
+
+        // Un producto nuevo que no se insertó coincidió con uno creado por otro proceso
+        // (su stock no se fijó); los existentes que no coincidieron cambiaron de stock
+        int nuevosCoincidentes = 0;
+        List<Integer> actualizadas = new ArrayList<>();
+        for (int i = 0; i < filas.size(); i++) {
+            if (fallidas.contains(i) || insertadas.contains(i)) {
+                continue;
+            }
+            if (existentes.containsKey(filas.get(i).code)) {
+                actualizadas.add(i);
+            } else {
+                nuevosCoincidentes++;
+                pendientes.add(filas.get(i));
+            }
+        }
+        if (escritura.getMatchedCount() - nuevosCoincidentes < actualizadas.size()) {
+            List<String> ids = actualizadas.stream().map(i -> existentes.get(filas.get(i).code).getId()).toList();
+            Set<String> aplicados = aplicados(ids, ahora);
+            List<Integer> confirmadas = new ArrayList<>();
+            for (int i : actualizadas) {
+                if (aplicados.contains(existentes.get(filas.get(i).code).getId())) {
+                    confirmadas.add(i);
+                } else {
+                    pendientes.add(filas.get(i));
+                }
+            }
+            actualizadas = confirmadas;
+        }
+
+        for (int i : actualizadas) {
+            FilaProducto fila = filas.get(i);
+            Product existente = existentes.get(fila.code);
+            if (fila.stock == null) {
+                continue;
+            }
+            boolean caliente = Boolean.TRUE.equals(existente.getHotSku());
+            int anterior = caliente
+                    ? stockCalienteService.disponible(existente.getId()).orElse(valorStock(existente))
+                    : valorStock(existente);
+            int diferencia = fila.stock - anterior;
+            if (diferencia != 0 && caliente) {
+                // Si el contador no alcanza para la baja queda en cero: se registra lo aplicado
+                diferencia = stockCalienteService.ajustar(existente.getId(), diferencia).orElse(0);
+            }
+            if (diferencia != 0) {
+                movimientos.add(MovimientoStockService.movimiento(existente.getId(), diferencia,
+                        TipoMovimiento.IMPORTACION, null, ahora));
+            }
+        }
+        movimientoStockService.registrar(movimientos);
+
+        resultado.sumarInsertados(insertadas.size());
+        resultado.sumarActualizados(actualizadas.size());
+        return pendientes;
+    }
+
+    /**
+     * Ids de los productos que recibieron la escritura marcada con updatedAt = ahora
+     */
+    private Set<String> aplicados(List<String> ids, LocalDateTime ahora) {
+        Query consulta = new Query(Criteria.where("id").in(ids).and("updatedAt").is(ahora));
+        consulta.fields().include("id");
+        Set<String> aplicados = new HashSet<>();
+        mongoTemplate.find(consulta, Product.class).forEach(p -> aplicados.add(p.getId()));
+        return aplicados;
+    }
+
+    private static int valorStock(Product producto) {
+        return producto.getStock() != null ? producto.getStock() : 0;
+    }
+
+    private static String valor(List<String> valores, Integer columna) {
+        if (columna == null || columna >= valores.size() || valores.get(columna) == null) {
+            return null;
+        }
+        String valor = valores.get(columna).trim();
+        return valor.isEmpty() ? null : valor;
+    }
+
+    /**
+     * Fila validada del archivo. Los campos opcionales vacíos no modifican el producto existente.
+     */
+    private static class FilaProducto {
+        private final int numero;
+        private final String code;
+        private final String name;
+        private final String description;
+        private final String category;
+        private final Integer stock;
+        private final Integer minStock;
+        private final BigDecimal price;
+        private final String supplier;
+        private final String location;
+
+        private FilaProducto(int numero, List<String> valores, Map<String, Integer> columnas) {
+            this.numero = numero;
+            this.code = valor(valores, columnas.get("code"));
+            this.name = valor(valores, columnas.get("name"));
+            this.description = valor(valores, columnas.get("description"));
+            this.category = valor(valores, columnas.get("category"));
+            this.stock = entero(valor(valores, columnas.get("stock")), "stock");
+            this.minStock = entero(valor(valores, columnas.get("minStock")), "minStock");
+            this.price = decimal(valor(valores, columnas.get("price")));
+            this.supplier = valor(valores, columnas.get("supplier"));
+            this.location = valor(valores, columnas.get("location"));
+        }
+
+        /**
+         * @throws IllegalArgumentException con el motivo si la fila no es válida
+         */
+        static FilaProducto desde(int numero, List<String> valores, Map<String, Integer> columnas) {
+            FilaProducto fila = new FilaProducto(numero, valores, columnas);
+            if (fila.code == null) {
+                throw new IllegalArgumentException("El código es obligatorio");
+            }
+            if (fila.name == null) {
+                throw new IllegalArgumentException("El nombre es obligatorio");
+            }
+            return fila;
+        }
+
+        /**
+         * @param nuevo El producto no existía al leer el lote: el stock solo se fija al insertarlo
+         */
+        Update update(boolean caliente, boolean nuevo, LocalDateTime ahora) {
+            Update update = new Update()
+                    .set("name", name)
+                    .set("updatedAt", ahora)
+                    .setOnInsert("createdAt", ahora)
+                    .setOnInsert("isActive", true)
+                    .setOnInsert("hotSku", false);
+            establecer(update, "description", description);
+            establecer(update, "category", category);
+            establecer(update, "minStock", minStock);
+            establecer(update, "price", price);
+            establecer(update, "supplier", supplier);
+            if (location != null) {
+                update.set("location", location);
+            } else {
+                update.setOnInsert("location", UBICACION_POR_DEFECTO);
+            }
+            // El stock de un producto caliente lo lleva el contador en memoria
+            if (nuevo) {
+                update.setOnInsert("stock", stock != null ? stock : 0);
+            } else if (stock != null && !caliente) {
+                update.set("stock", stock);
+            }
+            return update;
+        }
+
+        private static void establecer(Update update, String campo, Object valor) {
+            if (valor != null) {
+                update.set(campo, valor);
+            }
+        }
+
+        private static Integer entero(String valor, String campo) {
+            if (valor == null) {
+                return null;
+            }
+            try {
+                int numero = new BigDecimal(valor).intValueExact();
+                if (numero < 0) {
+                    throw new IllegalArgumentException("El campo " + campo + " no puede ser negativo");
+                }
+                return numero;
+            } catch (ArithmeticException | NumberFormatException e) {
+                throw new IllegalArgumentException("El campo " + campo + " debe ser un número entero: " + valor);
+            }
+        }
+
+        private static BigDecimal decimal(String valor) {
+            if (valor == null) {
+                return null;
+            }
+            try {
+                BigDecimal precio = new BigDecimal(valor);
+                if (precio.signum() < 0) {
+                    throw new IllegalArgumentException("El precio no puede ser negativo");
+                }
+                return precio;
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("El precio debe ser un número: " + valor);
+            }
+        }
+    }
+}
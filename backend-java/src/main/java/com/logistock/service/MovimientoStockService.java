@@ -0,0 +1,286 @@
+package com.logistock.service;
+
+import com.logistock.model.MovimientoStock;
+import com.logistock.model.Product;
+import com.logistock.model.ProductoPedido;
+import com.logistock.model.SnapshotStock;
+import com.logistock.model.TipoMovimiento;
+import com.logistock.repository.MovimientoStockRepository;
+import com.logistock.repository.ProductRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.group;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.match;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.sort;
+
+/**
+ * Servicio del libro de movimientos de stock
+ *
+ * Cada cambio de stock inserta un movimiento pequeño (nunca se reescribe). Una tarea
+ * periódica pliega los movimientos nuevos sobre el último snapshot de cada producto y
+ * guarda un snapshot por fecha de corte; el stock a una fecha es el snapshot previo más
+ * los movimientos posteriores. Product.stock sigue siendo la vista materializada que
+ * usan las lecturas, y el plegado verifica que coincida con el libro.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class MovimientoStockService {
+
+    private final MovimientoStockRepository movimientoStockRepository;
+    private final ProductRepository productRepository;
+    private final MongoTemplate mongoTemplate;
+    private final StockCalienteService stockCalienteService;
+
+    // Los movimientos más recientes que este margen quedan para el siguiente plegado,
+    // por si alguna inserción con fecha anterior al corte todavía no llegó a la base
+    @Value("${app.stock.libro.margen-segundos:60}")
+    private long margenSegundos;
+
+    @PostConstruct
+    public void crearIndices() {
+        try {
+            mongoTemplate.indexOps(MovimientoStock.class)
+                    .ensureIndex(new Index().on("productoId", Sort.Direction.ASC).on("fecha", Sort.Direction.ASC));
+            mongoTemplate.indexOps(MovimientoStock.class)
+                    .ensureIndex(new Index().on("fecha", Sort.Direction.ASC));
+            mongoTemplate.indexOps(SnapshotStock.class)
+                    .ensureIndex(new Index().on("productoId", Sort.Direction.ASC).on("fecha", Sort.Direction.DESC));
+            mongoTemplate.indexOps(SnapshotStock.class)
+                    .ensureIndex(new Index().on("fecha", Sort.Direction.DESC));
+        } catch (Exception e) {
+            log.warn("No se pudieron crear los índices del libro de stock: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Abrir el libro de los productos que aún no tienen movimientos (datos previos al libro)
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void inicializarLibro() {
+        try {
+            Set<String> conMovimientos = new HashSet<>(mongoTemplate.findDistinct(
+                    new Query(), "productoId", MovimientoStock.class, String.class));
+            LocalDateTime ahora = LocalDateTime.now();
+            List<MovimientoStock> iniciales = new ArrayList<>();
+            for (Product producto : productRepository.findAll()) {
+                if (!conMovimientos.contains(producto.getId()) && producto.getStock() != null && producto.getStock() != 0) {
+                    iniciales.add(movimiento(producto.getId(), producto.getStock(), TipoMovimiento.INICIAL, null, ahora));
+                }
+            }
+            if (!iniciales.isEmpty()) {
+                movimientoStockRepository.insert(iniciales);
+            }
+            log.info("Libro de stock inicializado: {} productos abiertos", iniciales.size());
+        } catch (Exception e) {
+            log.warn("No se pudo inicializar el libro de stock: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Registrar un movimiento de stock
+     * @param cantidad Positivo = entrada, negativo = salida
+     */
+    public void registrar(String productoId, int cantidad, TipoMovimiento tipo, String referencia) {
+        movimientoStockRepository.insert(movimiento(productoId, cantidad, tipo, referencia, LocalDateTime.now()));
+    }
+
+    /**
+     * Registrar varios movimientos con un único insert
+     */
+    public void registrar(List<MovimientoStock> movimientos) {
+        if (!movimientos.isEmpty()) {
+            movimientoStockRepository.insert(movimientos);
+        }
+    }
+
+    /**
+     * Movimientos correspondientes a las líneas de un pedido
+     * @param signo -1 para salidas, 1 para entradas
+     */
+    public static List<MovimientoStock> movimientosDe(List<ProductoPedido> productos, int signo,
+                                                      TipoMovimiento tipo, String referencia, LocalDateTime fecha) {
+        List<MovimientoStock> movimientos = new ArrayList<>(productos.size());
+        for (ProductoPedido productoPedido : productos) {
+            movimientos.add(movimiento(productoPedido.getProductoId(), signo * productoPedido.getCantidad(), tipo, referencia, fecha));
+        }
+        return movimientos;
+    }
+
+    /**
+     * Movimientos de un producto, del más reciente al más antiguo
+     */
+    public List<MovimientoStock> listar(String productoId, LocalDateTime desde, LocalDateTime hasta, int limite) {
+        Criteria criteria = Criteria.where("productoId").is(productoId);
+        if (desde != null || hasta != null) {
+            Criteria fecha = criteria.and("fecha");
+            if (desde != null) {
+                fecha.gte(desde);
+            }
+            if (hasta != null) {
+                fecha.lte(hasta);
+            }
+        }
+        Query query = new Query(criteria).with(Sort.by(Sort.Direction.DESC, "fecha")).limit(limite);
+        return mongoTemplate.find(query, MovimientoStock.class);
+    }
+
+    /**
+     * Stock de un producto a una fecha: último snapshot anterior más los movimientos posteriores
+     */
+    public Map<String, Object> stockEn(String productoId, LocalDateTime fecha) {
+        SnapshotStock snapshot = mongoTemplate.findOne(
+                new Query(Criteria.where("productoId").is(productoId).and("fecha").lte(fecha))
+                        .with(Sort.by(Sort.Direction.DESC, "fecha")),
+                SnapshotStock.class);
+
+        LocalDateTime desde = snapshot != null ? snapshot.getFecha() : null;
+        Map<String, int[]> sumas = sumarMovimientos(List.of(productoId), desde, fecha);
+        int[] suma = sumas.getOrDefault(productoId, new int[2]);
+
+        Map<String, Object> resultado = new LinkedHashMap<>();
+        resultado.put("productoId", productoId);
+        resultado.put("fecha", fecha);
+        resultado.put("stock", (snapshot != null ? snapshot.getStock() : 0) + suma[0]);
+        resultado.put("snapshot", desde);
+        resultado.put("movimientosAplicados", suma[1]);
+        return resultado;
+    }
+
+    /**
+     * Plegar los movimientos nuevos sobre el último snapshot de cada producto
+     */
+    @Scheduled(fixedDelayString = "${app.stock.libro.consolidacion-ms:300000}", initialDelay = 60000)
+    public void consolidar() {
+        LocalDateTime corte = LocalDateTime.now().minusSeconds(margenSegundos);
+        SnapshotStock ultimo = mongoTemplate.findOne(
+                new Query().with(Sort.by(Sort.Direction.DESC, "fecha")), SnapshotStock.class);
+        LocalDateTime desde = ultimo != null ? ultimo.getFecha() : null;
+        if (desde != null && !corte.isAfter(desde)) {
+            return;
+        }
+
+        Map<String, int[]> deltas = sumarMovimientos(null, desde, corte);
+        if (deltas.isEmpty()) {
+            return;
+        }
+
+        Map<String, Integer> anteriores = ultimosSnapshots(deltas.keySet());
+        List<SnapshotStock> snapshots = new ArrayList<>(deltas.size());
+        deltas.forEach((productoId, suma) -> snapshots.add(SnapshotStock.builder()
+                .productoId(productoId)
+                .stock(anteriores.getOrDefault(productoId, 0) + suma[0])
+                .fecha(corte)
+                .build()));
+        mongoTemplate.insertAll(snapshots);
+        log.info("Libro de stock consolidado hasta {}: {} productos", corte, snapshots.size());
+
+        verificarVistaMaterializada(snapshots, corte);
+    }
+
+    /**
+     * Comparar el libro con Product.stock. Un descuadre puntual puede deberse a un
+     * pedido en curso (stock ya descontado, movimiento aún no insertado). Para los
+     * productos calientes el documento va retrasado respecto al contador en memoria,
+     * así que se compara contra el contador.
+     */
+    private void verificarVistaMaterializada(List<SnapshotStock> snapshots, LocalDateTime corte) {
+        Map<String, Integer> esperado = new HashMap<>();
+        snapshots.forEach(s -> esperado.put(s.getProductoId(), s.getStock()));
+        sumarMovimientos(esperado.keySet(), corte, null)
+                .forEach((productoId, suma) -> esperado.merge(productoId, suma[0], Integer::sum));
+
+        for (Product producto : productRepository.findAllById(esperado.keySet())) {
+            int stock = stockCalienteService.disponible(producto.getId())
+                    .orElse(producto.getStock() != null ? producto.getStock() : 0);
+            int libro = esperado.get(producto.getId());
+            if (stock != libro) {
+                log.warn("Descuadre de stock en producto {}: documento {}, libro {}", producto.getId(), stock, libro);
+            }
+        }
+    }
+
+    /**
+     * Suma y cantidad de movimientos por producto en el rango (desde, hasta]
+     * @param productoIds Productos a considerar, o null para todos
+     * @param desde Límite inferior exclusivo (null = sin límite); al menos uno de los dos es obligatorio
+     */
+    private Map<String, int[]> sumarMovimientos(Collection<String> productoIds, LocalDateTime desde, LocalDateTime hasta) {
+        Criteria criteria = productoIds != null
+                ? Criteria.where("productoId").in(productoIds).and("fecha")
+                : Criteria.where("fecha");
+        if (desde != null) {
+            criteria.gt(desde);
+        }
+        if (hasta != null) {
+            criteria.lte(hasta);
+        }
+        Aggregation aggregation = Aggregation.newAggregation(
+                match(criteria),
+                group("productoId").sum("cantidad").as("total").count().as("movimientos"));
+
+        Map<String, int[]> sumas = new HashMap<>();
+        for (Document fila : mongoTemplate.aggregate(aggregation, MovimientoStock.class, Document.class)) {
+            sumas.put(fila.getString("_id"), new int[]{
+                    ((Number) fila.get("total")).intValue(),
+                    ((Number) fila.get("movimientos")).intValue()});
+        }
+        return sumas;
+    }
+
+    /**
+     * Último snapshot de cada producto. El orden coincide con el índice
+     * {productoId: 1, fecha: -1}, de modo que el $group con $first se resuelve
+     * leyendo una entrada del índice por producto en vez de todo su historial.
+     */
+    private Map<String, Integer> ultimosSnapshots(Collection<String> productoIds) {
+        Aggregation aggregation = Aggregation.newAggregation(
+                match(Criteria.where("productoId").in(productoIds)),
+                sort(Sort.by(Sort.Direction.ASC, "productoId").and(Sort.by(Sort.Direction.DESC, "fecha"))),
+                group("productoId").first("stock").as("stock"));
+
+        Map<String, Integer> stocks = new HashMap<>();
+        for (Document fila : mongoTemplate.aggregate(aggregation, SnapshotStock.class, Document.class)) {
+            stocks.put(fila.getString("_id"), ((Number) fila.get("stock")).intValue());
+        }
+        return stocks;
+    }
+
+    /**
+     * Movimiento sin guardar, para registrarlo luego junto con otros
+     */
+    public static MovimientoStock movimiento(String productoId, int cantidad, TipoMovimiento tipo,
+                                             String referencia, LocalDateTime fecha) {
+        return MovimientoStock.builder()
+                .productoId(productoId)
+                .cantidad(cantidad)
+                .tipo(tipo)
+                .referencia(referencia)
+                .fecha(fecha)
+                .build();
+    }
+}
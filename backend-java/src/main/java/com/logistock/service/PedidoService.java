@@ -1,7 +1,14 @@
 package com.logistock.service;
 
+import com.logistock.dto.ResultadoPedidoLote;
+import com.logistock.metrics.LatenciaEntregaTracker;
 import com.logistock.model.EstadoPedido;
+import com.logistock.model.MovimientoStock;
 import com.logistock.model.Pedido;
+import com.logistock.model.Product;
+import com.logistock.model.ProductoPedido;
+import com.logistock.model.ReservaStock;
+import com.logistock.model.TipoMovimiento;
 import com.logistock.repository.PedidoRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -9,9 +16,13 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 @Service
 public class PedidoService {
@@ -24,23 +35,50 @@ public class PedidoService {
     @Autowired
     private ProductService productService;
 
+    @Autowired
+    private LatenciaEntregaTracker latenciaEntregaTracker;
+
+    @Autowired
+    private ReservaStockService reservaStockService;
+
+    @Autowired
+    private MovimientoStockService movimientoStockService;
+
+    @Autowired
+    private VersionDatosService versionDatosService;
+
     /**
      * Crear un nuevo pedido (ADMIN)
      * Automáticamente reduce el stock de los productos incluidos en el pedido
      */
     public Pedido crearPedido(Pedido pedido) {
+        return crearPedido(pedido, null);
+    }
+
+    /**
+     * Crear un nuevo pedido consumiendo una reserva de stock (ADMIN)
+     * @param reservaId Reserva de carrito que cubre el pedido, o null
+     */
+    public Pedido crearPedido(Pedido pedido, String reservaId) {
         logger.info("🛒 Creando nuevo pedido con {} productos", pedido.getProductos().size());
         
-        // Validar y reducir stock de cada producto ANTES de crear el pedido
+        // Leer los productos una sola vez: la validación y la reserva usan el mismo snapshot.
+        // El stock apartado por otras reservas de carrito no está disponible para este pedido.
+        List<String> productIds = ProductService.idsDe(pedido.getProductos());
+        // Se bloquean también los productos de la reserva consumida, que se retira en el mismo paso
+        List<String> bloqueados = new ArrayList<>(productIds);
+        if (reservaId != null) {
+            bloqueados.addAll(reservaStockService.productosDe(reservaId));
+        }
+        ReservaStock consumida;
         try {
-            pedido.getProductos().forEach(productoPedido -> {
-                logger.info("📦 Reduciendo stock del producto ID: {}, cantidad: {}", 
-                    productoPedido.getProductoId(), productoPedido.getCantidad());
-                productService.reducirStock(
-                    productoPedido.getProductoId(), 
-                    productoPedido.getCantidad()
-                );
-                logger.info("✅ Stock reducido exitosamente para producto: {}", productoPedido.getProductoId());
+            consumida = reservaStockService.conBloqueo(bloqueados, () -> {
+                Map<String, Product> snapshot = productService.cargarProductos(productIds);
+                productService.validateStockForOrder(pedido.getProductos(), snapshot);
+                reservaStockService.verificarDisponibilidad(pedido.getProductos(), snapshot, reservaId);
+                productService.reservarStock(pedido.getProductos(), snapshot);
+                // El stock ya está descontado: la reserva deja de apartarlo antes de soltar los bloqueos
+                return reservaId != null ? reservaStockService.retirar(reservaId) : null;
             });
         } catch (Exception e) {
             // Si falla la reducción de stock, lanzar excepción y no crear el pedido
@@ -48,15 +86,205 @@ public class PedidoService {
             throw new RuntimeException("Error al reducir stock: " + e.getMessage(), e);
         }
         
+        LocalDateTime ahora = LocalDateTime.now();
         pedido.setEstado(EstadoPedido.DISPONIBLE);
-        pedido.setFechaCreacion(LocalDateTime.now());
-        pedido.setFechaActualizacion(LocalDateTime.now());
+        pedido.setFechaCreacion(ahora);
+        pedido.setFechaActualizacion(ahora);
+        pedido.registrarTransicion(null, EstadoPedido.DISPONIBLE, null, ahora);
         
-        Pedido pedidoGuardado = pedidoRepository.save(pedido);
+        Pedido pedidoGuardado;
+        try {
+            pedidoGuardado = pedidoRepository.save(pedido);
+            versionDatosService.incrementar(Pedido.class);
+        } catch (RuntimeException e) {
+            // El stock ya se descontó: devolverlo para no perderlo
+            Map<String, Integer> devolver = new HashMap<>();
+            pedido.getProductos().forEach(pp -> devolver.merge(pp.getProductoId(), pp.getCantidad(), Integer::sum));
+            productService.devolverStockEnLote(devolver);
+            if (consumida != null) {
+                reservaStockService.restaurar(consumida);
+            }
+            throw e;
+        }
+        registrarMovimientos(MovimientoStockService.movimientosDe(
+                pedidoGuardado.getProductos(), -1, TipoMovimiento.PEDIDO, pedidoGuardado.getId(), ahora));
+        if (consumida != null) {
+            reservaStockService.confirmar(consumida.getId());
+        }
         logger.info("✅ Pedido creado exitosamente con ID: {}", pedidoGuardado.getId());
         return pedidoGuardado;
     }
 
+    /**
+     * Crear un bloque de pedidos (carga masiva desde ERP)
+     *
+     * Se lee el stock de todos los productos del bloque con una sola consulta,
+     * se validan los pedidos en orden descontando de ese snapshot, se reserva el
+     * stock total por producto con una escritura masiva y se insertan todos los
+     * pedidos aceptados con un único insert. Un pedido rechazado no afecta al resto.
+     *
+     * @param pedidos Pedidos del bloque (posiciones null = pedido inválido ya reportado)
+     * @param indiceBase Posición del primer pedido del bloque dentro de la carga completa
+     * @return Resultado por pedido, en el mismo orden del bloque
+     */
+    public List<ResultadoPedidoLote> crearPedidosEnLote(List<Pedido> pedidos, int indiceBase) {
+        logger.info("🛒 Creando bloque de {} pedidos", pedidos.size());
+        ResultadoPedidoLote[] resultados = new ResultadoPedidoLote[pedidos.size()];
+
+        List<String> productIds = new ArrayList<>();
+        for (Pedido pedido : pedidos) {
+            if (pedido != null && pedido.getProductos() != null) {
+                pedido.getProductos().forEach(pp -> productIds.add(pp.getProductoId()));
+            }
+        }
+        // Validar y reservar con los productos bloqueados frente a reservas de carrito
+        List<Integer> aceptados = reservaStockService.conBloqueo(productIds,
+                () -> validarYReservarBloque(pedidos, productIds, indiceBase, resultados));
+
+        // 3. Insertar los pedidos aceptados con un único insert
+        LocalDateTime ahora = LocalDateTime.now();
+        List<Pedido> aInsertar = new ArrayList<>(aceptados.size());
+        for (int i : aceptados) {
+            Pedido pedido = pedidos.get(i);
+            pedido.setEstado(EstadoPedido.DISPONIBLE);
+            pedido.setFechaCreacion(ahora);
+            pedido.setFechaActualizacion(ahora);
+            pedido.registrarTransicion(null, EstadoPedido.DISPONIBLE, null, ahora);
+            aInsertar.add(pedido);
+        }
+
+        try {
+            List<Pedido> insertados = pedidoRepository.insert(aInsertar);
+            versionDatosService.incrementar(Pedido.class);
+            List<MovimientoStock> movimientos = new ArrayList<>();
+            for (int k = 0; k < aceptados.size(); k++) {
+                int i = aceptados.get(k);
+                Pedido insertado = insertados.get(k);
+                resultados[i] = ResultadoPedidoLote.exito(indiceBase + i, insertado.getId());
+                movimientos.addAll(MovimientoStockService.movimientosDe(
+                        insertado.getProductos(), -1, TipoMovimiento.PEDIDO, insertado.getId(), ahora));
+            }
+            registrarMovimientos(movimientos);
+        } catch (Exception e) {
+            logger.error("❌ Error al insertar bloque de pedidos: {}", e.getMessage());
+            // La inserción pudo quedar a medias
+            versionDatosService.incrementar(Pedido.class);
+            Map<String, Integer> devolver = new HashMap<>();
+            for (int i : aceptados) {
+                pedidos.get(i).getProductos().forEach(pp ->
+                        devolver.merge(pp.getProductoId(), pp.getCantidad(), Integer::sum));
+                resultados[i] = ResultadoPedidoLote.error(indiceBase + i, "Error al guardar pedido: " + e.getMessage());
+            }
+            productService.devolverStockEnLote(devolver);
+        }
+
+        logger.info("✅ Bloque procesado: {} de {} pedidos creados", aceptados.size(), pedidos.size());
+        return Arrays.asList(resultados);
+    }
+
+    /**
+     * Validar en orden los pedidos del bloque y reservar su stock.
+     * Debe ejecutarse con los productos del bloque bloqueados.
+     * @return Posiciones de los pedidos con stock reservado
+     */
+    private List<Integer> validarYReservarBloque(List<Pedido> pedidos, List<String> productIds,
+                                                 int indiceBase, ResultadoPedidoLote[] resultados) {
+        Map<String, Product> snapshot = productService.cargarProductos(productIds);
+        Map<String, Integer> disponible = new HashMap<>();
+        // Disponible para prometer: el stock apartado por reservas activas no cuenta
+        snapshot.forEach((id, producto) -> disponible.put(id, reservaStockService.disponibleParaPrometer(producto)));
+
+        // 1. Validar en orden contra el snapshot
+        List<Integer> aceptados = new ArrayList<>();
+        Map<String, Integer> totalPorProducto = new HashMap<>();
+        for (int i = 0; i < pedidos.size(); i++) {
+            Pedido pedido = pedidos.get(i);
+            if (pedido == null) {
+                continue;
+            }
+            String error = validarContraSnapshot(pedido, snapshot, disponible);
+            if (error != null) {
+                resultados[i] = ResultadoPedidoLote.error(indiceBase + i, error);
+                continue;
+            }
+            for (ProductoPedido pp : pedido.getProductos()) {
+                disponible.merge(pp.getProductoId(), -pp.getCantidad(), Integer::sum);
+                totalPorProducto.merge(pp.getProductoId(), pp.getCantidad(), Integer::sum);
+            }
+            aceptados.add(i);
+        }
+
+        // 2. Reservar stock con una escritura masiva
+        Set<String> sinReserva = productService.reservarStockEnLote(totalPorProducto);
+        if (!sinReserva.isEmpty()) {
+            // Otra escritura concurrente consumió el stock: se rechazan los pedidos afectados
+            Map<String, Integer> devolver = new HashMap<>();
+            List<Integer> confirmados = new ArrayList<>();
+            for (int i : aceptados) {
+                Pedido pedido = pedidos.get(i);
+                boolean afectado = pedido.getProductos().stream()
+                        .anyMatch(pp -> sinReserva.contains(pp.getProductoId()));
+                if (!afectado) {
+                    confirmados.add(i);
+                    continue;
+                }
+                resultados[i] = ResultadoPedidoLote.error(indiceBase + i,
+                        "El stock cambió durante la carga, reintente el pedido");
+                for (ProductoPedido pp : pedido.getProductos()) {
+                    if (!sinReserva.contains(pp.getProductoId())) {
+                        devolver.merge(pp.getProductoId(), pp.getCantidad(), Integer::sum);
+                    }
+                }
+            }
+            // Lo descontado para productos rechazados nunca se aplicó; solo se devuelve lo aplicado
+            productService.devolverStockEnLote(devolver);
+            aceptados = confirmados;
+        }
+        return aceptados;
+    }
+
+    /**
+     * Registrar en el libro las salidas de stock de pedidos ya guardados.
+     * El pedido existe y el stock ya se descontó: un fallo aquí no revierte nada,
+     * queda como descuadre que detecta la consolidación del libro.
+     */
+    private void registrarMovimientos(List<MovimientoStock> movimientos) {
+        try {
+            movimientoStockService.registrar(movimientos);
+        } catch (Exception e) {
+            logger.error("❌ Error al registrar movimientos de stock: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Validar un pedido contra el stock disponible del snapshot
+     * @return Mensaje de error, o null si el pedido es válido
+     */
+    private String validarContraSnapshot(Pedido pedido, Map<String, Product> snapshot, Map<String, Integer> disponible) {
+        if (pedido.getProductos() == null || pedido.getProductos().isEmpty()) {
+            return "El pedido no tiene productos";
+        }
+        Map<String, Integer> solicitado = new HashMap<>();
+        for (ProductoPedido pp : pedido.getProductos()) {
+            if (pp.getCantidad() <= 0) {
+                return "Cantidad inválida para el producto " + pp.getProductoId();
+            }
+            solicitado.merge(pp.getProductoId(), pp.getCantidad(), Integer::sum);
+        }
+        for (Map.Entry<String, Integer> linea : solicitado.entrySet()) {
+            Product producto = snapshot.get(linea.getKey());
+            if (producto == null) {
+                return "Producto no encontrado con ID: " + linea.getKey();
+            }
+            int stock = disponible.getOrDefault(linea.getKey(), 0);
+            if (stock < linea.getValue()) {
+                return String.format("Stock insuficiente para el producto '%s'. Stock disponible: %d, solicitado: %d",
+                        producto.getName(), stock, linea.getValue());
+            }
+        }
+        return null;
+    }
+
     /**
      * Obtener todos los pedidos (ADMIN)
      */
@@ -112,13 +340,18 @@ public class PedidoService {
             throw new RuntimeException("El pedido no está disponible");
         }
         
+        LocalDateTime ahora = LocalDateTime.now();
         pedido.setEstado(EstadoPedido.ASIGNADO);
         pedido.setUsuarioAsignadoId(usuarioId);
         pedido.setUsuarioAsignadoNombre(usuarioNombre);
-        pedido.setFechaAsignacion(LocalDateTime.now());
-        pedido.setFechaActualizacion(LocalDateTime.now());
+        pedido.setFechaAsignacion(ahora);
+        pedido.setFechaActualizacion(ahora);
+        pedido.registrarTransicion(EstadoPedido.DISPONIBLE, EstadoPedido.ASIGNADO, usuarioId, ahora);
         
-        return pedidoRepository.save(pedido);
+        Pedido pedidoGuardado = pedidoRepository.save(pedido);
+        versionDatosService.incrementar(Pedido.class);
+        latenciaEntregaTracker.registrarTransicion(pedidoGuardado);
+        return pedidoGuardado;
     }
 
     /**
@@ -139,16 +372,22 @@ public class PedidoService {
         }
         
         // Validar transiciones de estado válidas
-        validarTransicionEstado(pedido.getEstado(), nuevoEstado);
+        EstadoPedido estadoAnterior = pedido.getEstado();
+        validarTransicionEstado(estadoAnterior, nuevoEstado);
         
+        LocalDateTime ahora = LocalDateTime.now();
         pedido.setEstado(nuevoEstado);
-        pedido.setFechaActualizacion(LocalDateTime.now());
+        pedido.setFechaActualizacion(ahora);
         
         if (nuevoEstado == EstadoPedido.ENTREGADO) {
-            pedido.setFechaEntrega(LocalDateTime.now());
+            pedido.setFechaEntrega(ahora);
         }
+        pedido.registrarTransicion(estadoAnterior, nuevoEstado, usuarioId, ahora);
         
-        return pedidoRepository.save(pedido);
+        Pedido pedidoGuardado = pedidoRepository.save(pedido);
+        versionDatosService.incrementar(Pedido.class);
+        latenciaEntregaTracker.registrarTransicion(pedidoGuardado);
+        return pedidoGuardado;
     }
 
     /**
@@ -172,7 +411,9 @@ public class PedidoService {
         pedido.setProductos(pedidoActualizado.getProductos());
         pedido.setFechaActualizacion(LocalDateTime.now());
         
-        return pedidoRepository.save(pedido);
+        Pedido pedidoGuardado = pedidoRepository.save(pedido);
+        versionDatosService.incrementar(Pedido.class);
+        return pedidoGuardado;
     }
 
     /**
@@ -201,7 +442,9 @@ public class PedidoService {
                         productoPedido.getProductoId(), productoPedido.getCantidad());
                     productService.aumentarStock(
                         productoPedido.getProductoId(), 
-                        productoPedido.getCantidad()
+                        productoPedido.getCantidad(),
+                        TipoMovimiento.CANCELACION,
+                        id
                     );
                     logger.info("✅ Stock restaurado para producto: {}", productoPedido.getProductoId());
                 });
@@ -211,10 +454,16 @@ public class PedidoService {
             }
         }
         
+        EstadoPedido estadoAnterior = pedido.getEstado();
+        LocalDateTime ahora = LocalDateTime.now();
         pedido.setEstado(EstadoPedido.CANCELADO);
-        pedido.setFechaActualizacion(LocalDateTime.now());
+        pedido.setFechaActualizacion(ahora);
+        if (estadoAnterior != EstadoPedido.CANCELADO) {
+            pedido.registrarTransicion(estadoAnterior, EstadoPedido.CANCELADO, null, ahora);
+        }
         
         Pedido pedidoCancelado = pedidoRepository.save(pedido);
+        versionDatosService.incrementar(Pedido.class);
         logger.info("✅ Pedido cancelado exitosamente: {}", id);
         return pedidoCancelado;
     }
@@ -224,6 +473,7 @@ public class PedidoService {
      */
     public void eliminarPedido(String id) {
         pedidoRepository.deleteById(id);
+        versionDatosService.incrementar(Pedido.class);
     }
 
     /**
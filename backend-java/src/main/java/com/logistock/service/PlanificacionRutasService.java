@@ -0,0 +1,496 @@
+package com.logistock.service;
+
+import com.logistock.dto.SolicitudPlanificacionRequest;
+import com.logistock.model.EstadoPedido;
+import com.logistock.model.Pedido;
+import com.logistock.model.ProductoPedido;
+import com.logistock.model.Ruta;
+import com.logistock.model.Ubicacion;
+import com.logistock.repository.RutaRepository;
+import com.logistock.ruteo.MatrizDistancias;
+import com.logistock.ruteo.PlanificadorVrp;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Planificación automática de rutas a partir de los pedidos disponibles
+ *
+ * Toma los pedidos DISPONIBLE con coordenadas y sin ruta, los agrupa en rutas que respetan
+ * la capacidad (unidades) y la jornada (minutos) de cada vehículo y crea los documentos Ruta
+ * con sus paradas ordenadas; cada pedido queda enlazado con su ruta (rutaId).
+ *
+ * En modo incremental, antes de crear rutas nuevas intenta insertar cada pedido nuevo en
+ * las rutas automáticas ya planificadas del día, en la posición de menor costo, de modo que
+ * llegar un pedido tarde no obliga a rehacer el plan ni a mover las paradas ya comunicadas.
+ *
+ * Las planificaciones de esta instancia se ejecutan de a una. La secuencia de códigos AUTO
+ * del día se calcula leyendo los existentes; si otra instancia tomó el mismo código, el
+ * índice único lo rechaza y se recalcula. Cada pedido se reclama para su ruta con una
+ * escritura condicional antes de guardarla, y las rutas existentes solo reciben sus paradas
+ * nuevas si no cambiaron desde la lectura.
+ */
+@Service
+@Slf4j
+public class PlanificacionRutasService {
+
+    private static final DateTimeFormatter FORMATO_CODIGO = DateTimeFormatter.ofPattern("yyMMdd");
+    private static final LocalTime HORA_INICIO_POR_DEFECTO = LocalTime.of(8, 0);
+    // Recálculos de la secuencia AUTO si el código elegido ya existe
+    private static final int INTENTOS_CODIGO = 3;
+
+    private final MongoTemplate mongoTemplate;
+    private final RutaRepository rutaRepository;
+    private final VersionDatosService versionDatosService;
+    private final DistanciasService distanciasService;
+    private final AgendaRutasService agendaRutasService;
+    private final EtaService etaService;
+    private final int minutosServicio;
+    private final long presupuestoMs;
+
+    public PlanificacionRutasService(MongoTemplate mongoTemplate,
+                                     RutaRepository rutaRepository,
+                                     VersionDatosService versionDatosService,
+                                     DistanciasService distanciasService,
+                                     AgendaRutasService agendaRutasService,
+                                     EtaService etaService,
+                                     @Value("${app.rutas.planificacion.minutos-servicio:10}") int minutosServicio,
+                                     @Value("${app.rutas.planificacion.presupuesto-ms:2000}") long presupuestoMs) {
+        this.mongoTemplate = mongoTemplate;
+        this.rutaRepository = rutaRepository;
+        this.versionDatosService = versionDatosService;
+        this.distanciasService = distanciasService;
+        this.agendaRutasService = agendaRutasService;
+        this.etaService = etaService;
+        this.minutosServicio = minutosServicio;
+        this.presupuestoMs = presupuestoMs;
+    }
+
+    /**
+     * Planificar los pedidos pendientes
+     * @param incremental true para insertar primero en las rutas automáticas ya planificadas del día
+     */
+    public synchronized Map<String, Object> planificar(SolicitudPlanificacionRequest solicitud, boolean incremental) {
+        long inicio = System.nanoTime();
+        LocalDateTime desde = solicitud.getFecha().atStartOfDay();
+        List<Ruta> delDia = rutaRepository.findRutasPlanificadasForDate(desde, desde.plusDays(1));
+
+        Criteria sinRuta = Criteria.where("estado").is(EstadoPedido.DISPONIBLE).and("rutaId").is(null);
+        List<Pedido> pendientes = mongoTemplate.find(new Query(new Criteria().andOperator(sinRuta,
+                Criteria.where("ubicacion").ne(null))), Pedido.class);
+        long sinUbicacion = mongoTemplate.count(new Query(new Criteria().andOperator(sinRuta,
+                Criteria.where("ubicacion").is(null))), Pedido.class);
+
+        // Nodos: 0 = depósito, luego pedidos pendientes y, en modo incremental, paradas existentes
+        List<Ubicacion> puntos = new ArrayList<>();
+        List<Integer> demandas = new ArrayList<>();
+        puntos.add(solicitud.getUbicacionDeposito());
+        demandas.add(0);
+        Map<Integer, Pedido> pedidoDeNodo = new HashMap<>();
+        for (Pedido pedido : pendientes) {
+            pedidoDeNodo.put(puntos.size(), pedido);
+            puntos.add(pedido.getUbicacion());
+            demandas.add(unidades(pedido));
+        }
+        List<RutaExistente> existentes = new ArrayList<>();
+        if (incremental) {
+            for (Ruta ruta : delDia) {
+                RutaExistente existente = RutaExistente.desde(ruta, solicitud.getUbicacionDeposito(), puntos, demandas);
+                if (existente != null) {
+                    existentes.add(existente);
+                }
+            }
+        }
+
+        MatrizDistancias matriz = distanciasService.matriz(puntos);
+        int[] demanda = demandas.stream().mapToInt(Integer::intValue).toArray();
+        PlanificadorVrp planificador = new PlanificadorVrp(matriz, demanda, minutosServicio);
+
+        List<Integer> porAsignar = new ArrayList<>(pedidoDeNodo.keySet());
+        porAsignar.sort(Comparator.comparingInt((Integer nodo) -> demanda[nodo]).reversed());
+        Map<String, String> sinAsignar = new LinkedHashMap<>();
+
+        // 1. Inserción en rutas ya planificadas
+        Set<RutaExistente> modificadas = new HashSet<>();
+        for (Iterator<Integer> it = porAsignar.iterator(); it.hasNext(); ) {
+            int nodo = it.next();
+            RutaExistente mejorRuta = null;
+            double[] mejor = null;
+            for (RutaExistente existente : existentes) {
+                double[] insercion = planificador.mejorInsercion(existente.nodos, nodo, existente.carga,
+                        existente.ruta.getCapacidadUnidades(), existente.ruta.getJornadaMinutos());
+                if (insercion != null && (mejor == null || insercion[1] < mejor[1])) {
+                    mejor = insercion;
+                    mejorRuta = existente;
+                }
+            }
+            if (mejorRuta != null) {
+                mejorRuta.nodos.add((int) mejor[0], nodo);
+                mejorRuta.carga += demanda[nodo];
+                mejorRuta.paradaDeNodo.put(nodo, parada(pedidoDeNodo.get(nodo)));
+                modificadas.add(mejorRuta);
+                it.remove();
+            }
+        }
+
+        // 2. Rutas nuevas por ahorros con los vehículos que no tienen ruta ese día
+        Set<String> ocupados = new HashSet<>();
+        delDia.forEach(ruta -> ocupados.add(ruta.getVehiculoAsignado()));
+        List<SolicitudPlanificacionRequest.Vehiculo> libres = new ArrayList<>();
+        for (SolicitudPlanificacionRequest.Vehiculo vehiculo : solicitud.getVehiculos()) {
+            if (!ocupados.contains(vehiculo.getVehiculo())) {
+                libres.add(vehiculo);
+            }
+        }
+        List<List<Integer>> nuevas = new ArrayList<>();
+        List<SolicitudPlanificacionRequest.Vehiculo> asignados = new ArrayList<>();
+        if (!porAsignar.isEmpty() && !libres.isEmpty()) {
+            int capacidadMaxima = libres.stream().mapToInt(SolicitudPlanificacionRequest.Vehiculo::getCapacidadUnidades).max().getAsInt();
+            int jornadaMaxima = libres.stream().mapToInt(SolicitudPlanificacionRequest.Vehiculo::getJornadaMinutos).max().getAsInt();
+            List<List<Integer>> rutas = planificador.ahorros(porAsignar, capacidadMaxima, jornadaMaxima);
+            Set<Integer> enRutas = new HashSet<>();
+            rutas.forEach(enRutas::addAll);
+            for (int nodo : porAsignar) {
+                if (!enRutas.contains(nodo)) {
+                    sinAsignar.put(pedidoDeNodo.get(nodo).getId(), "Excede la capacidad o la jornada de todos los vehículos");
+                }
+            }
+            // Las rutas más cargadas eligen primero; cada una toma el vehículo más chico en el que cabe
+            rutas.sort(Comparator.comparingInt((List<Integer> ruta) -> planificador.carga(ruta)).reversed());
+            libres.sort(Comparator.comparingInt(SolicitudPlanificacionRequest.Vehiculo::getCapacidadUnidades));
+            for (List<Integer> ruta : rutas) {
+                SolicitudPlanificacionRequest.Vehiculo elegido = null;
+                for (SolicitudPlanificacionRequest.Vehiculo vehiculo : libres) {
+                    if (planificador.carga(ruta) <= vehiculo.getCapacidadUnidades()
+                            && planificador.minutos(ruta) <= vehiculo.getJornadaMinutos()) {
+                        elegido = vehiculo;
+                        break;
+                    }
+                }
+                if (elegido == null) {
+                    ruta.forEach(nodo -> sinAsignar.put(pedidoDeNodo.get(nodo).getId(), "No hay vehículos libres con capacidad suficiente"));
+                } else {
+                    libres.remove(elegido);
+                    nuevas.add(ruta);
+                    asignados.add(elegido);
+                }
+            }
+        } else {
+            porAsignar.forEach(nodo -> sinAsignar.put(pedidoDeNodo.get(nodo).getId(), "No hay vehículos libres"));
+        }
+
+        // 3. Búsqueda local en cada ruta nueva, repartiendo el presupuesto. Las rutas existentes
+        // conservan el orden de sus paradas: solo reciben inserciones
+        long presupuesto = (solicitud.getPresupuestoMs() != null ? solicitud.getPresupuestoMs() : presupuestoMs) * 1_000_000L;
+        long porRuta = presupuesto / Math.max(1, nuevas.size());
+        nuevas.replaceAll(ruta -> planificador.mejorarOrden(ruta, porRuta));
+
+        // 4. Reclamar los pedidos de cada ruta antes de guardarla: una ruta solo lleva los
+        // pedidos que seguían disponibles y sin ruta, y si no se puede guardar los devuelve
+        LocalDateTime salida = solicitud.getFecha().atTime(solicitud.getHoraInicio() != null
+                ? solicitud.getHoraInicio() : HORA_INICIO_POR_DEFECTO);
+        List<Ruta> creadas = new ArrayList<>();
+        List<Ruta> actualizadas = new ArrayList<>();
+        long enlazados = 0;
+        int secuencia = siguienteSecuencia(solicitud);
+        for (int i = 0; i < nuevas.size(); i++) {
+            List<Integer> ruta = nuevas.get(i);
+            String rutaId = new ObjectId().toHexString();
+            Set<Integer> reclamados = reclamar(rutaId, ruta, pedidoDeNodo, sinAsignar);
+            ruta.retainAll(reclamados);
+            if (ruta.isEmpty()) {
+                continue;
+            }
+            List<Ruta.Parada> paradas = new ArrayList<>();
+            ruta.forEach(nodo -> paradas.add(parada(pedidoDeNodo.get(nodo))));
+            Ruta nueva = nuevaRuta(solicitud, asignados.get(i), paradas, salida);
+            nueva.setId(rutaId);
+            estimar(nueva, planificador.km(ruta), planificador.minutosViaje(ruta), planificador.carga(ruta));
+            try {
+                Ruta creada = null;
+                for (int intento = 1; creada == null; intento++) {
+                    nueva.setCodigo(String.format("AUTO-%s-%02d", FORMATO_CODIGO.format(solicitud.getFecha()), secuencia++));
+                    try {
+                        creada = agendaRutasService.reservar(nueva, () -> rutaRepository.insert(nueva));
+                    } catch (DuplicateKeyException e) {
+                        if (intento == INTENTOS_CODIGO) {
+                            throw e;
+                        }
+                        // Otra instancia (o una carga manual) tomó el código entretanto
+                        secuencia = siguienteSecuencia(solicitud);
+                    }
+                }
+                creadas.add(creada);
+                enlazados += reclamados.size();
+            } catch (IllegalStateException | DuplicateKeyException e) {
+                liberar(rutaId, reclamados, pedidoDeNodo, sinAsignar, "No se pudo crear la ruta: " + e.getMessage());
+            }
+        }
+        for (RutaExistente existente : modificadas) {
+            Ruta ruta = existente.ruta;
+            Set<Integer> reclamados = reclamar(ruta.getId(), existente.nodos, pedidoDeNodo, sinAsignar);
+            if (reclamados.isEmpty()) {
+                continue;
+            }
+            for (Iterator<Integer> it = existente.nodos.iterator(); it.hasNext(); ) {
+                int nodo = it.next();
+                if (pedidoDeNodo.containsKey(nodo) && !reclamados.contains(nodo)) {
+                    it.remove();
+                    existente.carga -= demanda[nodo];
+                }
+            }
+            LocalDateTime leidaEn = ruta.getUpdatedAt();
+            List<Ruta.Parada> paradas = new ArrayList<>();
+            existente.nodos.forEach(nodo -> paradas.add(existente.paradaDeNodo.get(nodo)));
+            ruta.setParadas(paradas);
+            ruta.setUpdatedAt(LocalDateTime.now());
+            estimar(ruta, planificador.km(existente.nodos), planificador.minutosViaje(existente.nodos), existente.carga);
+            try {
+                actualizadas.add(agendaRutasService.reservar(ruta, () -> agregarParadas(ruta, leidaEn)));
+                enlazados += reclamados.size();
+            } catch (IllegalStateException e) {
+                liberar(ruta.getId(), reclamados, pedidoDeNodo, sinAsignar, e.getMessage());
+            }
+        }
+        if (!creadas.isEmpty() || !actualizadas.isEmpty()) {
+            versionDatosService.incrementar(Ruta.class);
+        }
+
+        List<Ruta> guardadas = new ArrayList<>(creadas);
+        guardadas.addAll(actualizadas);
+        Map<String, Object> resumen = new LinkedHashMap<>();
+        resumen.put("fecha", solicitud.getFecha());
+        resumen.put("pedidosPendientes", pendientes.size());
+        resumen.put("pedidosAsignados", enlazados);
+        resumen.put("pedidosSinUbicacion", sinUbicacion);
+        resumen.put("rutasCreadas", creadas.stream().map(Ruta::getCodigo).toList());
+        resumen.put("rutasActualizadas", actualizadas.stream().map(Ruta::getCodigo).toList());
+        resumen.put("sinAsignar", sinAsignar.entrySet().stream()
+                .map(e -> Map.of("pedidoId", e.getKey(), "motivo", e.getValue())).toList());
+        resumen.put("distanciaTotalKm", guardadas.stream().map(Ruta::getDistanciaKm).reduce(BigDecimal.ZERO, BigDecimal::add));
+        resumen.put("duracionMs", (System.nanoTime() - inicio) / 1_000_000);
+        log.info("Planificación {} del {}: {} pedidos pendientes, {} asignados, {} rutas nuevas, {} actualizadas",
+                incremental ? "incremental" : "completa", solicitud.getFecha(), pendientes.size(), enlazados,
+                creadas.size(), actualizadas.size());
+        return resumen;
+    }
+
+    /**
+     * Enlazar con la ruta los pedidos de sus nodos que siguen disponibles y sin ruta. Los que
+     * otro proceso tomó entretanto quedan sin asignar.
+     * @return Nodos cuyo pedido quedó enlazado con la ruta
+     */
+    private Set<Integer> reclamar(String rutaId, List<Integer> nodos, Map<Integer, Pedido> pedidoDeNodo,
+                                  Map<String, String> sinAsignar) {
+        Map<String, Integer> nodoDePedido = new HashMap<>();
+        for (int nodo : nodos) {
+            Pedido pedido = pedidoDeNodo.get(nodo);
+            if (pedido != null) {
+                nodoDePedido.put(pedido.getId(), nodo);
+            }
+        }
+        if (nodoDePedido.isEmpty()) {
+            return Set.of();
+        }
+        Query query = new Query(Criteria.where("id").in(nodoDePedido.keySet())
+                .and("estado").is(EstadoPedido.DISPONIBLE).and("rutaId").is(null));
+        long modificados = mongoTemplate.updateMulti(query,
+                new Update().set("rutaId", rutaId).set("fechaActualizacion", LocalDateTime.now()), Pedido.class)
+                .getModifiedCount();
+        versionDatosService.incrementar(Pedido.class);
+        if (modificados == nodoDePedido.size()) {
+            return new HashSet<>(nodoDePedido.values());
+        }
+
+        Query enlazados = new Query(Criteria.where("id").in(nodoDePedido.keySet()).and("rutaId").is(rutaId));
+        enlazados.fields().include("id");
+        Set<Integer> reclamados = new HashSet<>();
+        for (Pedido pedido : mongoTemplate.find(enlazados, Pedido.class)) {
+            reclamados.add(nodoDePedido.get(pedido.getId()));
+        }
+        nodoDePedido.forEach((pedidoId, nodo) -> {
+            if (!reclamados.contains(nodo)) {
+                sinAsignar.put(pedidoId, "El pedido ya no está disponible");
+            }
+        });
+        return reclamados;
+    }
+
+    /**
+     * Devolver los pedidos reclamados por una ruta que no se pudo guardar
+     */
+    private void liberar(String rutaId, Set<Integer> nodos, Map<Integer, Pedido> pedidoDeNodo,
+                         Map<String, String> sinAsignar, String motivo) {
+        List<String> ids = new ArrayList<>();
+        for (int nodo : nodos) {
+            String pedidoId = pedidoDeNodo.get(nodo).getId();
+            ids.add(pedidoId);
+            sinAsignar.put(pedidoId, motivo);
+        }
+        mongoTemplate.updateMulti(new Query(Criteria.where("id").in(ids).and("rutaId").is(rutaId)),
+                new Update().unset("rutaId").set("fechaActualizacion", LocalDateTime.now()), Pedido.class);
+        versionDatosService.incrementar(Pedido.class);
+        log.warn("Planificación: ruta {} no guardada, {} pedidos devueltos ({})", rutaId, ids.size(), motivo);
+    }
+
+    /**
+     * Escribir las paradas agregadas y las nuevas estimaciones de una ruta existente, solo si
+     * sigue planificada y sin cambios desde la lectura
+     * @throws IllegalStateException si la ruta cambió entretanto
+     */
+    private Ruta agregarParadas(Ruta ruta, LocalDateTime leidaEn) {
+        Query query = new Query(Criteria.where("id").is(ruta.getId())
+                .and("estado").is("Planificada")
+                .and("updatedAt").is(leidaEn));
+        Update update = new Update()
+                .set("paradas", ruta.getParadas())
+                .set("distanciaKm", ruta.getDistanciaKm())
+                .set("tiempoEstimadoMinutos", ruta.getTiempoEstimadoMinutos())
+                .set("tiempoEstimadoPredichoMinutos", ruta.getTiempoEstimadoPredichoMinutos())
+                .set("cargaUnidades", ruta.getCargaUnidades())
+                .set("updatedAt", ruta.getUpdatedAt());
+        Ruta actualizada = mongoTemplate.findAndModify(query, update,
+                FindAndModifyOptions.options().returnNew(true), Ruta.class);
+        if (actualizada == null) {
+            throw new IllegalStateException("La ruta " + ruta.getCodigo() + " cambió durante la planificación");
+        }
+        return actualizada;
+    }
+
+    private Ruta nuevaRuta(SolicitudPlanificacionRequest solicitud, SolicitudPlanificacionRequest.Vehiculo vehiculo,
+                           List<Ruta.Parada> paradas, LocalDateTime salida) {
+        return Ruta.builder()
+                .nombre("Ruta automática " + solicitud.getFecha() + " - " + vehiculo.getVehiculo())
+                .origen(solicitud.getDeposito())
+                .destino(solicitud.getDeposito())
+                .ubicacionOrigen(solicitud.getUbicacionDeposito())
+                .ubicacionDestino(solicitud.getUbicacionDeposito())
+                .paradas(paradas)
+                .vehiculoAsignado(vehiculo.getVehiculo())
+                .conductorAsignado(vehiculo.getConductor())
+                .capacidadUnidades(vehiculo.getCapacidadUnidades())
+                .jornadaMinutos(vehiculo.getJornadaMinutos())
+                .fechaPlanificada(salida)
+                .createdAt(LocalDateTime.now())
+                .updatedAt(LocalDateTime.now())
+                .build();
+    }
+
+    /**
+     * Distancia, tiempo de recorrido y carga de la ruta. El servicio de cada parada está en
+     * su tiempoEstimadoMinutos y lo suma Ruta.getTiempoTotalConParadas.
+     */
+    private void estimar(Ruta ruta, double km, double minutosViaje, int carga) {
+        ruta.setDistanciaKm(BigDecimal.valueOf(Math.max(km, 0.1)).setScale(2, RoundingMode.HALF_UP));
+        ruta.setTiempoEstimadoMinutos(Math.max(1, (int) Math.ceil(minutosViaje)));
+        ruta.setCargaUnidades(carga);
+        ruta.setTiempoEstimadoPredichoMinutos(etaService.predecir(ruta));
+    }
+
+    private Ruta.Parada parada(Pedido pedido) {
+        String direccion = pedido.getDireccionEntrega() != null && !pedido.getDireccionEntrega().isBlank()
+                ? pedido.getDireccionEntrega() : pedido.getClienteDireccion();
+        return Ruta.Parada.builder()
+                .direccion(recortar(direccion != null && !direccion.isBlank() ? direccion : "Pedido " + pedido.getId(), 200))
+                .cliente(recortar(pedido.getClienteNombre(), 100))
+                .tiempoEstimadoMinutos(minutosServicio)
+                .ubicacion(pedido.getUbicacion())
+                .pedidoId(pedido.getId())
+                .build();
+    }
+
+    private static String recortar(String texto, int maximo) {
+        return texto != null && texto.length() > maximo ? texto.substring(0, maximo) : texto;
+    }
+
+    private static int unidades(Pedido pedido) {
+        int total = 0;
+        if (pedido.getProductos() != null) {
+            for (ProductoPedido producto : pedido.getProductos()) {
+                total += producto.getCantidad();
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Siguiente número libre de los códigos AUTO-yyMMdd-NN del día
+     */
+    private int siguienteSecuencia(SolicitudPlanificacionRequest solicitud) {
+        String prefijo = "AUTO-" + FORMATO_CODIGO.format(solicitud.getFecha()) + "-";
+        Query query = new Query(Criteria.where("codigo").regex("^" + Pattern.quote(prefijo)));
+        query.fields().include("codigo");
+        int maximo = 0;
+        for (Ruta ruta : mongoTemplate.find(query, Ruta.class)) {
+            try {
+                maximo = Math.max(maximo, Integer.parseInt(ruta.getCodigo().substring(prefijo.length())));
+            } catch (NumberFormatException e) {
+                // Código con el prefijo pero cargado a mano: no participa de la secuencia
+            }
+        }
+        return maximo + 1;
+    }
+
+    /**
+     * Ruta ya planificada del día que admite nuevas entregas: sale del depósito de la
+     * solicitud y vuelve a él (el planificador supone ambos extremos en el nodo 0), tiene
+     * capacidad y jornada y todas sus paradas tienen coordenadas. Sus paradas se agregan como nodos sin demanda
+     * (la carga de la ruta ya está en cargaUnidades).
+     */
+    private static class RutaExistente {
+        private final Ruta ruta;
+        private final List<Integer> nodos = new ArrayList<>();
+        private final Map<Integer, Ruta.Parada> paradaDeNodo = new HashMap<>();
+        private int carga;
+
+        private RutaExistente(Ruta ruta) {
+            this.ruta = ruta;
+        }
+
+        static RutaExistente desde(Ruta ruta, Ubicacion deposito, List<Ubicacion> puntos, List<Integer> demandas) {
+            if (ruta.getCapacidadUnidades() == null || ruta.getJornadaMinutos() == null) {
+                return null;
+            }
+            if (!deposito.equals(ruta.getUbicacionOrigen()) || !deposito.equals(ruta.getUbicacionDestino())) {
+                return null;
+            }
+            List<Ruta.Parada> paradas = ruta.getParadas() != null ? ruta.getParadas() : List.of();
+            if (paradas.stream().anyMatch(parada -> parada.getUbicacion() == null)) {
+                return null;
+            }
+            RutaExistente existente = new RutaExistente(ruta);
+            existente.carga = ruta.getCargaUnidades() != null ? ruta.getCargaUnidades() : 0;
+            for (Ruta.Parada parada : paradas) {
+                int nodo = puntos.size();
+                puntos.add(parada.getUbicacion());
+                demandas.add(0);
+                existente.nodos.add(nodo);
+                existente.paradaDeNodo.put(nodo, parada);
+            }
+            return existente;
+        }
+    }
+}
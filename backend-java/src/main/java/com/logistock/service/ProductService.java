@@ -3,14 +3,38 @@ package com.logistock.service;
 import com.logistock.dto.StockValidationResult;
 import com.logistock.model.Product;
 import com.logistock.model.ProductoPedido;
+import com.logistock.model.TipoMovimiento;
 import com.logistock.repository.ProductRepository;
+import com.mongodb.bulk.BulkWriteError;
+import jakarta.annotation.PostConstruct;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.bson.Document;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.Set;
 
 /**
  * Servicio para la gestión de productos (versión simplificada)
@@ -20,55 +44,192 @@ public class ProductService {
 
     private static final Logger logger = LoggerFactory.getLogger(ProductService.class);
 
+    // Relecturas de update() si el stock cambia entre la lectura y la escritura
+    private static final int INTENTOS_ACTUALIZACION = 3;
+
     @Autowired
     private ProductRepository productRepository;
 
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private MovimientoStockService movimientoStockService;
+
+    @Autowired
+    private StockCalienteService stockCalienteService;
+
+    @Autowired
+    private VersionDatosService versionDatosService;
+
+    /**
+     * Índice único por código: la importación hace upsert por código y, sin el índice,
+     * dos importaciones simultáneas podían insertar el mismo producto dos veces
+     */
+    @PostConstruct
+    public void crearIndices() {
+        try {
+            mongoTemplate.indexOps(Product.class)
+                .ensureIndex(new Index().on("code", Sort.Direction.ASC).unique().named("code_unico"));
+        } catch (Exception e) {
+            logger.warn("No se pudo crear el índice único de código de producto: {}", e.getMessage());
+        }
+    }
+
     /**
      * Obtener todos los productos
      */
     public List<Product> findAll() {
-        return productRepository.findAll();
+        List<Product> productos = productRepository.findAll();
+        productos.forEach(this::aplicarStockCaliente);
+        return productos;
     }
 
     /**
      * Buscar producto por ID
      */
     public Optional<Product> findById(String id) {
-        return productRepository.findById(id);
+        return productRepository.findById(id).map(this::aplicarStockCaliente);
     }
 
     /**
      * Crear nuevo producto
      */
     public Product save(Product product) {
-        return productRepository.save(product);
+        boolean nuevo = product.getId() == null;
+        Product guardado;
+        try {
+            guardado = productRepository.save(product);
+        } catch (DuplicateKeyException e) {
+            // Índice único code_unico
+            throw new IllegalArgumentException("Ya existe un producto con el código " + product.getCode());
+        }
+        versionDatosService.incrementar(Product.class);
+        if (nuevo && guardado.getStock() != null && guardado.getStock() != 0) {
+            movimientoStockService.registrar(guardado.getId(), guardado.getStock(), TipoMovimiento.INICIAL, null);
+        }
+        return guardado;
     }
 
     /**
      * Eliminar producto
      */
     public void deleteById(String id) {
+        stockCalienteService.desactivar(id);
         productRepository.deleteById(id);
+        versionDatosService.incrementar(Product.class);
     }
 
     /**
      * Actualizar producto existente
+     *
+     * Los datos descriptivos se escriben con $set, sin reemplazar el documento. El stock
+     * nuevo se fija solo si el stock sigue siendo el leído, de modo que un $inc concurrente
+     * (pedidos, devoluciones) no se pierde y el movimiento registrado es la diferencia real;
+     * si cambió, se relee y se reintenta.
+     * @throws IllegalArgumentException si el producto no existe
+     * @throws IllegalStateException si el stock siguió cambiando en todos los intentos
      */
     public Product update(String id, Product product) {
-        Optional<Product> existingOpt = productRepository.findById(id);
-        if (existingOpt.isPresent()) {
-            Product existing = existingOpt.get();
-            existing.setName(product.getName());
-            existing.setDescription(product.getDescription());
-            existing.setCategory(product.getCategory());
-            existing.setStock(product.getStock());
-            existing.setMinStock(product.getMinStock());
-            existing.setPrice(product.getPrice());
-            existing.setSupplier(product.getSupplier());
-            existing.setLocation(product.getLocation());
-            return productRepository.save(existing);
+        for (int intento = 0; intento < INTENTOS_ACTUALIZACION; intento++) {
+            Product actualizado = stockCalienteService.sinCambioDeModo(() -> intentarActualizar(id, product));
+            if (actualizado != null) {
+                return actualizado;
+            }
+        }
+        throw new IllegalStateException("El stock del producto " + id + " cambió durante la actualización; vuelva a intentarlo");
+    }
+
+    /**
+     * Un intento de {@link #update}
+     * @return El producto actualizado, o null si el stock cambió desde la lectura
+     */
+    private Product intentarActualizar(String id, Product product) {
+        OptionalInt stockCaliente = stockCalienteService.disponible(id);
+        if (stockCaliente.isPresent()) {
+            return actualizarProductoCaliente(id, product, stockCaliente.getAsInt());
+        }
+        Product existing = productRepository.findById(id)
+            .orElseThrow(() -> new IllegalArgumentException("Producto no encontrado con ID: " + id));
+        int stockAnterior = existing.getStock() != null ? existing.getStock() : 0;
+
+        Criteria criteria = Criteria.where("id").is(id);
+        Update update = camposDescriptivos(product).set("updatedAt", LocalDateTime.now());
+        boolean cambiaStock = product.getStock() != null && product.getStock() != stockAnterior;
+        if (cambiaStock) {
+            criteria.and("stock").is(existing.getStock());
+            update.set("stock", product.getStock());
+        }
+        Product actualizado = mongoTemplate.findAndModify(new Query(criteria), update,
+            FindAndModifyOptions.options().returnNew(true), Product.class);
+        if (actualizado == null) {
+            // El stock cambió desde la lectura (o el producto se eliminó): se relee
+            return null;
         }
-        throw new IllegalArgumentException("Producto no encontrado con ID: " + id);
+        versionDatosService.incrementar(Product.class);
+        if (cambiaStock) {
+            movimientoStockService.registrar(id, product.getStock() - stockAnterior, TipoMovimiento.AJUSTE_MANUAL, null);
+        }
+        return actualizado;
+    }
+
+    /**
+     * Actualizar un producto caliente: los datos descriptivos se escriben con $set (sin
+     * reemplazar el documento, cuyo stock lo mantiene el volcado del diario) y el cambio
+     * de stock se aplica al contador en memoria. Si entretanto otras reservas dejaron
+     * menos stock que la baja pedida, el contador queda en cero y se registra lo aplicado.
+     */
+    private Product actualizarProductoCaliente(String id, Product product, int stockAnterior) {
+        Update update = camposDescriptivos(product);
+        if (mongoTemplate.updateFirst(new Query(Criteria.where("id").is(id)), update, Product.class).getMatchedCount() == 0) {
+            throw new IllegalArgumentException("Producto no encontrado con ID: " + id);
+        }
+        versionDatosService.incrementar(Product.class);
+        if (product.getStock() != null && product.getStock() != stockAnterior) {
+            int aplicado = stockCalienteService.ajustar(id, product.getStock() - stockAnterior).orElse(0);
+            if (aplicado != 0) {
+                movimientoStockService.registrar(id, aplicado, TipoMovimiento.AJUSTE_MANUAL, null);
+            }
+        }
+        return findById(id).orElseThrow(() -> new IllegalArgumentException("Producto no encontrado con ID: " + id));
+    }
+
+    /**
+     * Campos que se editan desde el formulario del producto, salvo el stock
+     */
+    private static Update camposDescriptivos(Product product) {
+        return new Update()
+            .set("name", product.getName())
+            .set("description", product.getDescription())
+            .set("category", product.getCategory())
+            .set("minStock", product.getMinStock())
+            .set("price", product.getPrice())
+            .set("supplier", product.getSupplier())
+            .set("location", product.getLocation());
+    }
+
+    /**
+     * Activar o desactivar el modo de stock caliente de un producto
+     * @throws IllegalArgumentException si el producto no existe
+     */
+    public Product marcarHotSku(String id, boolean activo) {
+        if (!productRepository.existsById(id)) {
+            throw new IllegalArgumentException("Producto no encontrado con ID: " + id);
+        }
+        if (activo) {
+            stockCalienteService.activar(id);
+        } else {
+            stockCalienteService.desactivar(id);
+        }
+        return findById(id).orElseThrow(() -> new IllegalArgumentException("Producto no encontrado con ID: " + id));
+    }
+
+    /**
+     * Para productos calientes, el stock autoritativo es el contador en memoria
+     */
+    private Product aplicarStockCaliente(Product producto) {
+        stockCalienteService.disponible(producto.getId()).ifPresent(producto::setStock);
+        return producto;
     }
 
     /**
@@ -118,31 +279,53 @@ public class ProductService {
      * @throws IllegalStateException si no hay suficiente stock
      */
     public void reducirStock(String productId, int cantidad) {
+        reducirStock(productId, cantidad, TipoMovimiento.AJUSTE_MANUAL, null);
+    }
+
+    /**
+     * Reducir el stock de un producto y registrar el movimiento en el libro
+     * @param tipo Origen del movimiento
+     * @param referencia Entidad que origina el movimiento (por ejemplo el pedido), o null
+     */
+    public void reducirStock(String productId, int cantidad, TipoMovimiento tipo, String referencia) {
+        stockCalienteService.sinCambioDeModo(() -> descontarStock(productId, cantidad, tipo, referencia));
+    }
+
+    private void descontarStock(String productId, int cantidad, TipoMovimiento tipo, String referencia) {
         logger.info("📉 Reduciendo stock - Producto ID: {}, Cantidad: {}", productId, cantidad);
         
-        Product producto = productRepository.findById(productId)
-            .orElseThrow(() -> {
-                logger.error("❌ Producto no encontrado con ID: {}", productId);
-                return new IllegalArgumentException("Producto no encontrado con ID: " + productId);
-            });
+        Boolean reservado = stockCalienteService.reservar(productId, cantidad);
+        if (reservado != null) {
+            if (!reservado) {
+                Product actual = findById(productId)
+                    .orElseThrow(() -> new IllegalArgumentException("Producto no encontrado con ID: " + productId));
+                throw stockInsuficiente(actual, actual.getStock() != null ? actual.getStock() : 0, cantidad);
+            }
+            movimientoStockService.registrar(productId, -cantidad, tipo, referencia);
+            logger.info("✅ Stock caliente reservado - Producto ID: {}, Cantidad: {}", productId, cantidad);
+            return;
+        }
         
-        int stockActual = producto.getStock();
-        logger.info("📊 Stock actual del producto '{}': {}", producto.getName(), stockActual);
+        // $inc condicionado: no reescribe el documento y no pisa escrituras concurrentes
+        Product producto = mongoTemplate.findAndModify(
+            new Query(Criteria.where("id").is(productId).and("stock").gte(cantidad)),
+            new Update().inc("stock", -cantidad),
+            FindAndModifyOptions.options().returnNew(true),
+            Product.class);
         
-        if (stockActual < cantidad) {
-            logger.error("❌ Stock insuficiente - Producto: {}, Stock actual: {}, Solicitado: {}", 
-                producto.getName(), stockActual, cantidad);
-            throw new IllegalStateException(
-                String.format("Stock insuficiente para el producto '%s'. Stock actual: %d, solicitado: %d", 
-                    producto.getName(), stockActual, cantidad)
-            );
+        if (producto == null) {
+            Product actual = productRepository.findById(productId)
+                .orElseThrow(() -> {
+                    logger.error("❌ Producto no encontrado con ID: {}", productId);
+                    return new IllegalArgumentException("Producto no encontrado con ID: " + productId);
+                });
+            throw stockInsuficiente(actual, actual.getStock() != null ? actual.getStock() : 0, cantidad);
         }
         
-        int nuevoStock = stockActual - cantidad;
-        producto.setStock(nuevoStock);
-        productRepository.save(producto);
+        versionDatosService.incrementar(Product.class);
+        movimientoStockService.registrar(productId, -cantidad, tipo, referencia);
         logger.info("✅ Stock actualizado - Producto: {}, Anterior: {}, Nuevo: {}", 
-            producto.getName(), stockActual, nuevoStock);
+            producto.getName(), producto.getStock() + cantidad, producto.getStock());
     }
 
     /**
@@ -152,20 +335,42 @@ public class ProductService {
      * @throws IllegalArgumentException si el producto no existe
      */
     public void aumentarStock(String productId, int cantidad) {
+        aumentarStock(productId, cantidad, TipoMovimiento.AJUSTE_MANUAL, null);
+    }
+
+    /**
+     * Aumentar el stock de un producto y registrar el movimiento en el libro
+     * @param tipo Origen del movimiento
+     * @param referencia Entidad que origina el movimiento (por ejemplo el pedido), o null
+     */
+    public void aumentarStock(String productId, int cantidad, TipoMovimiento tipo, String referencia) {
+        stockCalienteService.sinCambioDeModo(() -> sumarStock(productId, cantidad, tipo, referencia));
+    }
+
+    private void sumarStock(String productId, int cantidad, TipoMovimiento tipo, String referencia) {
         logger.info("📈 Aumentando stock - Producto ID: {}, Cantidad: {}", productId, cantidad);
         
-        Product producto = productRepository.findById(productId)
-            .orElseThrow(() -> {
-                logger.error("❌ Producto no encontrado con ID: {}", productId);
-                return new IllegalArgumentException("Producto no encontrado con ID: " + productId);
-            });
+        if (stockCalienteService.agregar(productId, cantidad)) {
+            movimientoStockService.registrar(productId, cantidad, tipo, referencia);
+            logger.info("✅ Stock caliente restaurado - Producto ID: {}, Cantidad: {}", productId, cantidad);
+            return;
+        }
         
-        int stockActual = producto.getStock();
-        int nuevoStock = stockActual + cantidad;
-        producto.setStock(nuevoStock);
-        productRepository.save(producto);
+        Product producto = mongoTemplate.findAndModify(
+            new Query(Criteria.where("id").is(productId)),
+            new Update().inc("stock", cantidad),
+            FindAndModifyOptions.options().returnNew(true),
+            Product.class);
+        
+        if (producto == null) {
+            logger.error("❌ Producto no encontrado con ID: {}", productId);
+            throw new IllegalArgumentException("Producto no encontrado con ID: " + productId);
+        }
+        
+        versionDatosService.incrementar(Product.class);
+        movimientoStockService.registrar(productId, cantidad, tipo, referencia);
         logger.info("✅ Stock restaurado - Producto: {}, Anterior: {}, Nuevo: {}", 
-            producto.getName(), stockActual, nuevoStock);
+            producto.getName(), producto.getStock() - cantidad, producto.getStock());
     }
 
     /**
@@ -199,15 +404,25 @@ public class ProductService {
      * @return StockValidationResult con advertencias si algún producto queda bajo el mínimo
      */
     public StockValidationResult validateStockForOrder(List<ProductoPedido> productos) {
+        return validateStockForOrder(productos, cargarProductos(idsDe(productos)));
+    }
+
+    /**
+     * Validar stock para múltiples productos usando un snapshot ya cargado
+     * @param productos Lista de productos del pedido
+     * @param snapshot Productos leídos con {@link #cargarProductos(Collection)}
+     * @return StockValidationResult con advertencias si algún producto queda bajo el mínimo
+     */
+    public StockValidationResult validateStockForOrder(List<ProductoPedido> productos, Map<String, Product> snapshot) {
         logger.info("🔍 Validando stock para {} productos del pedido", productos.size());
         StockValidationResult result = new StockValidationResult();
         
         for (ProductoPedido productoPedido : productos) {
-            Product producto = productRepository.findById(productoPedido.getProductoId())
-                .orElseThrow(() -> {
-                    logger.error("❌ Producto no encontrado: {}", productoPedido.getProductoId());
-                    return new IllegalArgumentException("Producto no encontrado: " + productoPedido.getProductoId());
-                });
+            Product producto = snapshot.get(productoPedido.getProductoId());
+            if (producto == null) {
+                logger.error("❌ Producto no encontrado: {}", productoPedido.getProductoId());
+                throw new IllegalArgumentException("Producto no encontrado: " + productoPedido.getProductoId());
+            }
             
             int stockActual = producto.getStock();
             int cantidad = productoPedido.getCantidad();
@@ -239,4 +454,193 @@ public class ProductService {
         
         return result;
     }
-}
\ No newline at end of file
+
+    /**
+     * Reservar (descontar) el stock de las líneas de un pedido usando el snapshot de la validación
+     *
+     * Las comprobaciones se hacen sobre el snapshot, sin volver a leer los productos, y el
+     * descuento se aplica con una única escritura masiva condicionada a que haya stock.
+     * Si otra operación consumió el stock entre la lectura y la escritura, se devuelve lo
+     * ya descontado y el pedido falla.
+     *
+     * @param productos Líneas del pedido
+     * @param snapshot Productos leídos con {@link #cargarProductos(Collection)}
+     * @throws IllegalArgumentException si algún producto no existe
+     * @throws IllegalStateException si no hay suficiente stock
+     */
+    public void reservarStock(List<ProductoPedido> productos, Map<String, Product> snapshot) {
+        Map<String, Integer> cantidades = new HashMap<>();
+        for (ProductoPedido productoPedido : productos) {
+            cantidades.merge(productoPedido.getProductoId(), productoPedido.getCantidad(), Integer::sum);
+        }
+
+        for (Map.Entry<String, Integer> linea : cantidades.entrySet()) {
+            Product producto = snapshot.get(linea.getKey());
+            if (producto == null) {
+                logger.error("❌ Producto no encontrado con ID: {}", linea.getKey());
+                throw new IllegalArgumentException("Producto no encontrado con ID: " + linea.getKey());
+            }
+            int stockActual = producto.getStock() != null ? producto.getStock() : 0;
+            if (stockActual < linea.getValue()) {
+                throw stockInsuficiente(producto, stockActual, linea.getValue());
+            }
+        }
+
+        Set<String> fallidos = reservarStockEnLote(cantidades);
+        if (!fallidos.isEmpty()) {
+            Map<String, Integer> devolver = new HashMap<>(cantidades);
+            devolver.keySet().removeAll(fallidos);
+            devolverStockEnLote(devolver);
+
+            String productId = fallidos.iterator().next();
+            Product producto = snapshot.get(productId);
+            Product actual = productRepository.findById(productId).orElse(producto);
+            throw stockInsuficiente(actual, actual.getStock() != null ? actual.getStock() : 0, cantidades.get(productId));
+        }
+
+        cantidades.forEach((productId, cantidad) -> logger.info("✅ Stock reservado - Producto: {}, Cantidad: {}",
+            snapshot.get(productId).getName(), cantidad));
+    }
+
+    private IllegalStateException stockInsuficiente(Product producto, int stockActual, int cantidad) {
+        logger.error("❌ Stock insuficiente - Producto: {}, Stock actual: {}, Solicitado: {}", 
+            producto.getName(), stockActual, cantidad);
+        return new IllegalStateException(
+            String.format("Stock insuficiente para el producto '%s'. Stock actual: %d, solicitado: %d", 
+                producto.getName(), stockActual, cantidad)
+        );
+    }
+
+    /**
+     * IDs de producto referenciados por las líneas de un pedido
+     */
+    public static List<String> idsDe(List<ProductoPedido> productos) {
+        List<String> ids = new ArrayList<>(productos.size());
+        for (ProductoPedido productoPedido : productos) {
+            ids.add(productoPedido.getProductoId());
+        }
+        return ids;
+    }
+
+    /**
+     * Cargar varios productos con una sola consulta
+     * @param ids IDs de los productos (se ignoran duplicados)
+     * @return Mapa ID → producto con los productos encontrados
+     */
+    public Map<String, Product> cargarProductos(Collection<String> ids) {
+        Map<String, Product> productos = new HashMap<>();
+        for (Product producto : productRepository.findAllById(new HashSet<>(ids))) {
+            productos.put(producto.getId(), aplicarStockCaliente(producto));
+        }
+        return productos;
+    }
+
+    /**
+     * Reducir el stock de varios productos con una sola escritura masiva
+     *
+     * Cada operación es una actualización por id, sin upsert, que descuenta la cantidad solo
+     * si alcanza el stock (ver {@link #descontar(int)}); si no alcanza, la operación falla
+     * con su índice sin modificar el documento. Un producto inexistente no coincide: solo si
+     * faltan coincidencias se releen los ids para saber cuáles ya no existen.
+     *
+     * Los productos calientes se reservan sobre su contador en memoria (StockCalienteService).
+     * El llamador registra los movimientos en el libro una vez confirmada la operación.
+     *
+     * @param cantidades Cantidad total a descontar por ID de producto
+     * @return IDs de los productos que NO se descontaron (stock insuficiente o inexistente)
+     */
+    public Set<String> reservarStockEnLote(Map<String, Integer> cantidades) {
+        return stockCalienteService.sinCambioDeModo(() -> reservarEnLote(cantidades));
+    }
+
+    private Set<String> reservarEnLote(Map<String, Integer> cantidades) {
+        Set<String> fallidos = new HashSet<>();
+        // Los productos calientes se reservan en memoria; el resto va a la escritura masiva
+        List<String> frios = new ArrayList<>();
+        cantidades.forEach((productId, cantidad) -> {
+            Boolean reservado = stockCalienteService.reservar(productId, cantidad);
+            if (reservado == null) {
+                frios.add(productId);
+            } else if (!reservado) {
+                fallidos.add(productId);
+            }
+        });
+        if (frios.isEmpty()) {
+            return fallidos;
+        }
+
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Product.class);
+        for (String productId : frios) {
+            bulk.updateOne(new Query(Criteria.where("id").is(productId)), descontar(cantidades.get(productId)));
+        }
+        int coincidencias;
+        try {
+            coincidencias = bulk.execute().getMatchedCount();
+        } catch (BulkOperationException e) {
+            // Stock insuficiente: el producto existe pero la operación falló
+            for (BulkWriteError error : e.getErrors()) {
+                fallidos.add(frios.get(error.getIndex()));
+            }
+            coincidencias = e.getResult().getMatchedCount() + e.getErrors().size();
+        }
+        versionDatosService.incrementar(Product.class);
+
+        if (coincidencias < frios.size()) {
+            Query existentes = new Query(Criteria.where("id").in(frios));
+            existentes.fields().include("id");
+            Set<String> encontrados = new HashSet<>();
+            for (Product producto : mongoTemplate.find(existentes, Product.class)) {
+                encontrados.add(producto.getId());
+            }
+            for (String productId : frios) {
+                if (!encontrados.contains(productId)) {
+                    fallidos.add(productId);
+                }
+            }
+        }
+
+        logger.info("📦 Reserva masiva de stock: {} productos, {} rechazados", cantidades.size(), fallidos.size());
+        return fallidos;
+    }
+
+    /**
+     * Actualización que descuenta la cantidad si el stock alcanza. Si no alcanza, convertir
+     * un texto a número hace fallar la operación, que la escritura masiva informa con su
+     * índice; así se sabe qué producto falló sin dejar marcas en el documento.
+     */
+    private static AggregationUpdate descontar(int cantidad) {
+        AggregationOperation etapa = contexto -> new Document("$set", new Document("stock",
+                new Document("$cond", List.of(
+                        new Document("$gte", List.of("$stock", cantidad)),
+                        new Document("$subtract", List.of("$stock", cantidad)),
+                        new Document("$toInt", "stock insuficiente")))));
+        return AggregationUpdate.from(List.of(etapa));
+    }
+
+    /**
+     * Devolver stock de varios productos con una sola escritura masiva
+     * (compensación de reservas que no llegaron a confirmarse)
+     * @param cantidades Cantidad a devolver por ID de producto
+     */
+    public void devolverStockEnLote(Map<String, Integer> cantidades) {
+        stockCalienteService.sinCambioDeModo(() -> devolverEnLote(cantidades));
+    }
+
+    private void devolverEnLote(Map<String, Integer> cantidades) {
+        Map<String, Integer> frios = new HashMap<>();
+        cantidades.forEach((productId, cantidad) -> {
+            if (!stockCalienteService.agregar(productId, cantidad)) {
+                frios.put(productId, cantidad);
+            }
+        });
+        if (frios.isEmpty()) {
+            return;
+        }
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Product.class);
+        frios.forEach((productId, cantidad) ->
+            bulk.updateOne(new Query(Criteria.where("id").is(productId)), new Update().inc("stock", cantidad)));
+        bulk.execute();
+        versionDatosService.incrementar(Product.class);
+        logger.info("🔄 Stock devuelto en lote para {} productos", cantidades.size());
+    }
+}
@@ -24,6 +24,7 @@ import java.util.stream.Collectors;
 public class ProveedorService {
 
     private final ProveedorRepository proveedorRepository;
+    private final VersionDatosService versionDatosService;
 
     /**
      * Obtener todos los proveedores activos
@@ -120,7 +121,7 @@ public class ProveedorService {
         proveedor.setCreatedAt(LocalDateTime.now());
         proveedor.setUpdatedAt(LocalDateTime.now());
 
-        return proveedorRepository.save(proveedor);
+        return guardar(proveedor);
     }
 
     /**
@@ -158,7 +159,7 @@ public class ProveedorService {
                     proveedorExistente.setContactoComercial(proveedorActualizado.getContactoComercial());
                     proveedorExistente.setUpdatedAt(LocalDateTime.now());
 
-                    return proveedorRepository.save(proveedorExistente);
+                    return guardar(proveedorExistente);
                 })
                 .orElseThrow(() -> new NoSuchElementException("Proveedor no encontrado con ID: " + id));
     }
@@ -173,7 +174,7 @@ public class ProveedorService {
                 .ifPresent(proveedor -> {
                     proveedor.setIsActive(false);
                     proveedor.setUpdatedAt(LocalDateTime.now());
-                    proveedorRepository.save(proveedor);
+                    guardar(proveedor);
                 });
     }
 
@@ -183,6 +184,7 @@ public class ProveedorService {
     public void deleteHard(String id) {
         log.warn("Eliminación permanente de proveedor ID: {}", id);
         proveedorRepository.deleteById(id);
+        versionDatosService.incrementar(Proveedor.class);
     }
 
     /**
@@ -197,7 +199,7 @@ public class ProveedorService {
                     proveedor.setMontoTotalCompras(proveedor.getMontoTotalCompras().add(monto));
                     proveedor.setUltimaOrden(LocalDateTime.now());
                     proveedor.setUpdatedAt(LocalDateTime.now());
-                    proveedorRepository.save(proveedor);
+                    guardar(proveedor);
                 });
     }
 
@@ -272,4 +274,13 @@ public class ProveedorService {
         log.debug("Buscando proveedores que suministran categoría: {}", categoria);
         return proveedorRepository.findByCategoriasProductosContaining(categoria);
     }
+
+    /**
+     * Guardar y registrar el cambio en la versión de datos de la colección
+     */
+    private Proveedor guardar(Proveedor proveedor) {
+        Proveedor guardado = proveedorRepository.save(proveedor);
+        versionDatosService.incrementar(Proveedor.class);
+        return guardado;
+    }
 }
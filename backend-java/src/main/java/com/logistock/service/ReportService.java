@@ -1,570 +1,608 @@
 package com.logistock.service;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.logistock.model.Cliente;
+import com.logistock.model.EstadoPedido;
 import com.logistock.model.Pedido;
 import com.logistock.model.Product;
 import com.logistock.model.Proveedor;
 import com.logistock.model.Ruta;
-import com.logistock.repository.ClienteRepository;
-import com.logistock.repository.PedidoRepository;
-import com.logistock.repository.ProductRepository;
-import com.logistock.repository.ProveedorRepository;
-import com.logistock.repository.RutaRepository;
-import com.lowagie.text.Chunk;
-import com.lowagie.text.Document;
-import com.lowagie.text.DocumentException;
-import com.lowagie.text.Element;
-import com.lowagie.text.FontFactory;
-import com.lowagie.text.Paragraph;
-import com.lowagie.text.Phrase;
-import com.lowagie.text.pdf.PdfPCell;
-import com.lowagie.text.pdf.PdfPTable;
-import com.lowagie.text.pdf.PdfWriter;
-import org.apache.poi.ss.usermodel.CellStyle;
-import org.apache.poi.ss.usermodel.IndexedColors;
-import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.ss.usermodel.Workbook;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import com.logistock.report.ColumnaReporte;
+import com.logistock.report.ExcelStreamWriter;
+import com.logistock.report.ExportStreamWriter;
+import com.logistock.report.FiltroReporte;
+import com.logistock.report.FormatoReporte;
+import com.logistock.report.PdfStreamWriter;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.stereotype.Service;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.text.NumberFormat;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 @Service
 public class ReportService {
 
-    @Autowired
-    private ProductRepository productRepository;
+    private static final int TAMANO_LOTE_CURSOR = 1000;
+    private static final int FILAS_POR_LOTE_CONSOLIDADO = 500;
+    private static final int LOTES_EN_COLA_CONSOLIDADO = 16;
 
-    @Autowired
-    private RutaRepository rutaRepository;
+    /**
+     * Entidad del libro consolidado con todas las entidades (solo Excel)
+     */
+    public static final String CONSOLIDADO = "consolidated";
+    private static final List<String> HOJAS_CONSOLIDADO = List.of("inventory", "routes", "clients", "suppliers", "orders");
 
     @Autowired
-    private ClienteRepository clienteRepository;
+    private MongoTemplate mongoTemplate;
 
     @Autowired
-    private ProveedorRepository proveedorRepository;
+    private ObjectMapper objectMapper;
 
-    @Autowired
-    private PedidoRepository pedidoRepository;
+    @Value("${app.reportes.consolidado.hilos:5}")
+    private int hilosConsolidado;
 
-    public ByteArrayInputStream generateInventoryPdf() {
-        Document document = new Document();
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private ExecutorService lectoresConsolidado;
 
-        try {
-            PdfWriter.getInstance(document, out);
-            document.open();
-
-            // Título
-            com.lowagie.text.Font fontTitle = FontFactory.getFont(FontFactory.HELVETICA_BOLD, 18);
-            Paragraph title = new Paragraph("Reporte de Inventario - LogiStock", fontTitle);
-            title.setAlignment(Element.ALIGN_CENTER);
-            document.add(title);
-            document.add(Chunk.NEWLINE);
-
-            // Tabla
-            PdfPTable table = new PdfPTable(5);
-            table.setWidthPercentage(100);
-            table.setWidths(new int[]{3, 6, 4, 3, 3});
-
-            // Encabezados
-            String[] headers = {"Código", "Nombre", "Categoría", "Stock", "Precio"};
-            for (String header : headers) {
-                PdfPCell cell = new PdfPCell(new Phrase(header));
-                cell.setBackgroundColor(java.awt.Color.LIGHT_GRAY);
-                cell.setHorizontalAlignment(Element.ALIGN_CENTER);
-                table.addCell(cell);
-            }
+    @PostConstruct
+    public void iniciar() {
+        AtomicInteger contador = new AtomicInteger();
+        lectoresConsolidado = Executors.newFixedThreadPool(hilosConsolidado, r -> {
+            Thread hilo = new Thread(r, "reportes-consolidado-" + contador.incrementAndGet());
+            hilo.setDaemon(true);
+            return hilo;
+        });
+    }
 
-            // Datos
-            List<Product> products = productRepository.findAll();
-            NumberFormat currencyFormatter = NumberFormat.getCurrencyInstance(Locale.US);
-            
-            for (Product product : products) {
-                table.addCell(product.getCode() != null ? product.getCode() : "");
-                table.addCell(product.getName() != null ? product.getName() : "");
-                table.addCell(product.getCategory() != null ? product.getCategory() : "");
-                table.addCell(product.getStock() != null ? String.valueOf(product.getStock()) : "0");
-                table.addCell(product.getPrice() != null ? currencyFormatter.format(product.getPrice()) : "$0.00");
-            }
+    @PreDestroy
+    public void detener() {
+        lectoresConsolidado.shutdownNow();
+    }
 
-            document.add(table);
-            document.close();
+    // Columnas de los reportes PDF
+
+    private static final List<ColumnaReporte<Product>> COLUMNAS_PDF_INVENTARIO = List.of(
+            ColumnaReporte.texto("Código", p -> valorTexto(p.getCode()), "code"),
+            ColumnaReporte.texto("Nombre", p -> valorTexto(p.getName()), "name"),
+            ColumnaReporte.texto("Categoría", p -> valorTexto(p.getCategory()), "category"),
+            ColumnaReporte.texto("Stock", p -> p.getStock() != null ? String.valueOf(p.getStock()) : "0", "stock"),
+            ColumnaReporte.moneda("Precio", Product::getPrice, "price"));
+    private static final int[] ANCHOS_PDF_INVENTARIO = {3, 6, 4, 3, 3};
+
+    private static final List<ColumnaReporte<Ruta>> COLUMNAS_PDF_RUTAS = List.of(
+            ColumnaReporte.texto("Código", r -> valorTexto(r.getCodigo()), "codigo"),
+            ColumnaReporte.texto("Nombre", r -> valorTexto(r.getNombre()), "nombre"),
+            ColumnaReporte.texto("Origen", r -> valorTexto(r.getOrigen()), "origen"),
+            ColumnaReporte.texto("Destino", r -> valorTexto(r.getDestino()), "destino"),
+            ColumnaReporte.texto("Estado", r -> valorTexto(r.getEstado()), "estado"));
+    private static final int[] ANCHOS_PDF_RUTAS = {3, 5, 5, 5, 3};
+
+    private static final List<ColumnaReporte<Cliente>> COLUMNAS_PDF_CLIENTES = List.of(
+            ColumnaReporte.texto("Nombre", c -> valorTexto(c.getNombre()), "nombre"),
+            ColumnaReporte.texto("Empresa", c -> valorTexto(c.getEmpresa()), "empresa"),
+            ColumnaReporte.texto("Email", c -> valorTexto(c.getEmail()), "email"),
+            ColumnaReporte.texto("Teléfono", c -> valorTexto(c.getTelefono()), "telefono"),
+            ColumnaReporte.texto("Categoría", c -> valorTexto(c.getCategoria()), "categoria"));
+    private static final int[] ANCHOS_PDF_CLIENTES = {4, 4, 5, 3, 3};
+
+    private static final List<ColumnaReporte<Proveedor>> COLUMNAS_PDF_PROVEEDORES = List.of(
+            ColumnaReporte.texto("Nombre", p -> valorTexto(p.getNombre()), "nombre"),
+            ColumnaReporte.texto("Empresa", p -> valorTexto(p.getEmpresa()), "empresa"),
+            ColumnaReporte.texto("Email", p -> valorTexto(p.getEmail()), "email"),
+            ColumnaReporte.texto("Teléfono", p -> valorTexto(p.getTelefono()), "telefono"),
+            ColumnaReporte.texto("Tipo", p -> valorTexto(p.getTipo()), "tipo"));
+    private static final int[] ANCHOS_PDF_PROVEEDORES = {4, 4, 5, 3, 3};
+
+    private static final List<ColumnaReporte<Pedido>> COLUMNAS_PDF_PEDIDOS = List.of(
+            ColumnaReporte.texto("Cliente", p -> valorTexto(p.getClienteNombre()), "clienteNombre"),
+            ColumnaReporte.texto("Estado", p -> p.getEstado() != null ? p.getEstado().toString() : "", "estado"),
+            ColumnaReporte.texto("Fecha Creación", p -> p.getFechaCreacion() != null ? p.getFechaCreacion().toString() : "", "fechaCreacion"),
+            ColumnaReporte.texto("Dirección Entrega", p -> valorTexto(p.getDireccionEntrega()), "direccionEntrega"),
+            ColumnaReporte.moneda("Total", Pedido::getTotal, "total"));
+    private static final int[] ANCHOS_PDF_PEDIDOS = {4, 3, 4, 4, 3};
+
+    // Columnas de los reportes Excel
+
+    private static final List<ColumnaReporte<Product>> COLUMNAS_EXCEL_INVENTARIO = List.of(
+            ColumnaReporte.texto("Código", p -> valorTexto(p.getCode()), "code"),
+            ColumnaReporte.texto("Nombre", p -> valorTexto(p.getName()), "name"),
+            ColumnaReporte.texto("Descripción", p -> valorTexto(p.getDescription()), "description"),
+            ColumnaReporte.texto("Categoría", p -> valorTexto(p.getCategory()), "category"),
+            ColumnaReporte.texto("Stock", p -> p.getStock() != null ? String.valueOf(p.getStock()) : "0", "stock"),
+            ColumnaReporte.moneda("Precio", p -> p.getPrice() != null ? p.getPrice() : 0.0, "price"),
+            ColumnaReporte.texto("Proveedor", p -> valorTexto(p.getSupplier()), "supplier"),
+            ColumnaReporte.texto("Ubicación", p -> valorTexto(p.getLocation()), "location"));
+
+    private static final List<ColumnaReporte<Ruta>> COLUMNAS_EXCEL_RUTAS = List.of(
+            ColumnaReporte.texto("Código", r -> valorTexto(r.getCodigo()), "codigo"),
+            ColumnaReporte.texto("Nombre", r -> valorTexto(r.getNombre()), "nombre"),
+            ColumnaReporte.texto("Origen", r -> valorTexto(r.getOrigen()), "origen"),
+            ColumnaReporte.texto("Destino", r -> valorTexto(r.getDestino()), "destino"),
+            ColumnaReporte.numero("Distancia (km)", r -> r.getDistanciaKm() != null ? r.getDistanciaKm() : 0.0, "distanciaKm"),
+            ColumnaReporte.texto("Estado", r -> valorTexto(r.getEstado()), "estado"),
+            ColumnaReporte.texto("Prioridad", r -> valorTexto(r.getPrioridad()), "prioridad"),
+            ColumnaReporte.moneda("Costo Total", r -> r.getCostoTotal() != null ? r.getCostoTotal() : 0.0, "costoCombustible", "costoPeajes", "otrosCostos"));
+
+    private static final List<ColumnaReporte<Cliente>> COLUMNAS_EXCEL_CLIENTES = List.of(
+            ColumnaReporte.texto("Nombre", c -> valorTexto(c.getNombre()), "nombre"),
+            ColumnaReporte.texto("Empresa", c -> valorTexto(c.getEmpresa()), "empresa"),
+            ColumnaReporte.texto("Email", c -> valorTexto(c.getEmail()), "email"),
+            ColumnaReporte.texto("Teléfono", c -> valorTexto(c.getTelefono()), "telefono"),
+            ColumnaReporte.texto("Dirección", c -> valorTexto(c.getDireccion()), "direccion"),
+            ColumnaReporte.texto("Categoría", c -> valorTexto(c.getCategoria()), "categoria"),
+            ColumnaReporte.moneda("Total Compras", c -> c.getTotalCompras() != null ? c.getTotalCompras() : 0.0, "totalCompras"));
+
+    private static final List<ColumnaReporte<Proveedor>> COLUMNAS_EXCEL_PROVEEDORES = List.of(
+            ColumnaReporte.texto("Nombre", p -> valorTexto(p.getNombre()), "nombre"),
+            ColumnaReporte.texto("Empresa", p -> valorTexto(p.getEmpresa()), "empresa"),
+            ColumnaReporte.texto("Email", p -> valorTexto(p.getEmail()), "email"),
+            ColumnaReporte.texto("Teléfono", p -> valorTexto(p.getTelefono()), "telefono"),
+            ColumnaReporte.texto("Dirección", p -> valorTexto(p.getDireccion()), "direccion"),
+            ColumnaReporte.texto("Tipo", p -> valorTexto(p.getTipo()), "tipo"),
+            ColumnaReporte.texto("País", p -> valorTexto(p.getPais()), "pais"),
+            ColumnaReporte.texto("Ciudad", p -> valorTexto(p.getCiudad()), "ciudad"));
+
+    private static final List<ColumnaReporte<Pedido>> COLUMNAS_EXCEL_PEDIDOS = List.of(
+            ColumnaReporte.texto("ID Pedido", p -> valorTexto(p.getId()), "id"),
+            ColumnaReporte.texto("Cliente", p -> valorTexto(p.getClienteNombre()), "clienteNombre"),
+            ColumnaReporte.texto("Estado", p -> p.getEstado() != null ? p.getEstado().toString() : "", "estado"),
+            ColumnaReporte.texto("Fecha Creación", p -> p.getFechaCreacion() != null ? p.getFechaCreacion().toString() : "", "fechaCreacion"),
+            ColumnaReporte.texto("Dirección Entrega", p -> valorTexto(p.getDireccionEntrega()), "direccionEntrega"),
+            ColumnaReporte.moneda("Total", Pedido::getTotal, "total"));
+
+    // Columnas de las exportaciones en crudo (CSV / NDJSON)
+
+    private static final List<ColumnaReporte<Product>> CAMPOS_PRODUCTOS = List.of(
+            ColumnaReporte.campo("id", Product::getId),
+            ColumnaReporte.campo("code", Product::getCode),
+            ColumnaReporte.campo("name", Product::getName),
+            ColumnaReporte.campo("description", Product::getDescription),
+            ColumnaReporte.campo("category", Product::getCategory),
+            ColumnaReporte.campo("stock", Product::getStock),
+            ColumnaReporte.campo("minStock", Product::getMinStock),
+            ColumnaReporte.campo("price", Product::getPrice),
+            ColumnaReporte.campo("supplier", Product::getSupplier),
+            ColumnaReporte.campo("location", Product::getLocation),
+            ColumnaReporte.campo("isActive", Product::getIsActive),
+            ColumnaReporte.campo("createdAt", Product::getCreatedAt),
+            ColumnaReporte.campo("updatedAt", Product::getUpdatedAt));
+
+    private static final List<ColumnaReporte<Ruta>> CAMPOS_RUTAS = List.of(
+            ColumnaReporte.campo("id", Ruta::getId),
+            ColumnaReporte.campo("codigo", Ruta::getCodigo),
+            ColumnaReporte.campo("nombre", Ruta::getNombre),
+            ColumnaReporte.campo("origen", Ruta::getOrigen),
+            ColumnaReporte.campo("destino", Ruta::getDestino),
+            ColumnaReporte.campo("distanciaKm", Ruta::getDistanciaKm),
+            ColumnaReporte.campo("tiempoEstimadoMinutos", Ruta::getTiempoEstimadoMinutos),
+            ColumnaReporte.campo("estado", Ruta::getEstado),
+            ColumnaReporte.campo("prioridad", Ruta::getPrioridad),
+            ColumnaReporte.campo("vehiculoAsignado", Ruta::getVehiculoAsignado),
+            ColumnaReporte.campo("conductorAsignado", Ruta::getConductorAsignado),
+            ColumnaReporte.campo("costoCombustible", Ruta::getCostoCombustible),
+            ColumnaReporte.campo("costoPeajes", Ruta::getCostoPeajes),
+            ColumnaReporte.campo("otrosCostos", Ruta::getOtrosCostos),
+            ColumnaReporte.campo("fechaPlanificada", Ruta::getFechaPlanificada),
+            ColumnaReporte.campo("fechaInicio", Ruta::getFechaInicio),
+            ColumnaReporte.campo("fechaFinalizacion", Ruta::getFechaFinalizacion),
+            ColumnaReporte.campo("isActive", Ruta::getIsActive));
+
+    private static final List<ColumnaReporte<Cliente>> CAMPOS_CLIENTES = List.of(
+            ColumnaReporte.campo("id", Cliente::getId),
+            ColumnaReporte.campo("nombre", Cliente::getNombre),
+            ColumnaReporte.campo("empresa", Cliente::getEmpresa),
+            ColumnaReporte.campo("email", Cliente::getEmail),
+            ColumnaReporte.campo("telefono", Cliente::getTelefono),
+            ColumnaReporte.campo("direccion", Cliente::getDireccion),
+            ColumnaReporte.campo("categoria", Cliente::getCategoria),
+            ColumnaReporte.campo("fechaRegistro", Cliente::getFechaRegistro),
+            ColumnaReporte.campo("ultimaCompra", Cliente::getUltimaCompra),
+            ColumnaReporte.campo("totalCompras", Cliente::getTotalCompras),
+            ColumnaReporte.campo("isActive", Cliente::getIsActive));
+
+    private static final List<ColumnaReporte<Proveedor>> CAMPOS_PROVEEDORES = List.of(
+            ColumnaReporte.campo("id", Proveedor::getId),
+            ColumnaReporte.campo("nombre", Proveedor::getNombre),
+            ColumnaReporte.campo("empresa", Proveedor::getEmpresa),
+            ColumnaReporte.campo("email", Proveedor::getEmail),
+            ColumnaReporte.campo("telefono", Proveedor::getTelefono),
+            ColumnaReporte.campo("direccion", Proveedor::getDireccion),
+            ColumnaReporte.campo("tipo", Proveedor::getTipo),
+            ColumnaReporte.campo("rucNit", Proveedor::getRucNit),
+            ColumnaReporte.campo("pais", Proveedor::getPais),
+            ColumnaReporte.campo("ciudad", Proveedor::getCiudad),
+            ColumnaReporte.campo("diasPago", Proveedor::getDiasPago),
+            ColumnaReporte.campo("descuentoGeneral", Proveedor::getDescuentoGeneral),
+            ColumnaReporte.campo("totalOrdenes", Proveedor::getTotalOrdenes),
+            ColumnaReporte.campo("montoTotalCompras", Proveedor::getMontoTotalCompras),
+            ColumnaReporte.campo("ultimaOrden", Proveedor::getUltimaOrden),
+            ColumnaReporte.campo("isActive", Proveedor::getIsActive));
+
+    private static final List<ColumnaReporte<Pedido>> CAMPOS_PEDIDOS = List.of(
+            ColumnaReporte.campo("id", Pedido::getId),
+            ColumnaReporte.campo("clienteId", Pedido::getClienteId),
+            ColumnaReporte.campo("clienteNombre", Pedido::getClienteNombre),
+            ColumnaReporte.campo("direccionEntrega", Pedido::getDireccionEntrega),
+            ColumnaReporte.campo("estado", Pedido::getEstado),
+            ColumnaReporte.campo("usuarioAsignadoId", Pedido::getUsuarioAsignadoId),
+            ColumnaReporte.campo("usuarioAsignadoNombre", Pedido::getUsuarioAsignadoNombre),
+            ColumnaReporte.campo("fechaCreacion", Pedido::getFechaCreacion),
+            ColumnaReporte.campo("fechaAsignacion", Pedido::getFechaAsignacion),
+            ColumnaReporte.campo("fechaEntrega", Pedido::getFechaEntrega),
+            ColumnaReporte.campo("total", Pedido::getTotal));
+
+    // Definición de cada reporte: documentos, fecha para el rango, filtros y columnas
+
+    private static final Map<String, DefinicionReporte<?>> DEFINICIONES = Map.of(
+            "inventory", new DefinicionReporte<>(Product.class, "inventario", "Inventario", "createdAt")
+                    .filtro("categoria", "category")
+                    .pdf("Reporte de Inventario - LogiStock", COLUMNAS_PDF_INVENTARIO, ANCHOS_PDF_INVENTARIO)
+                    .excel(COLUMNAS_EXCEL_INVENTARIO)
+                    .exportacion(CAMPOS_PRODUCTOS),
+            "routes", new DefinicionReporte<>(Ruta.class, "rutas", "Rutas", "fechaPlanificada")
+                    .filtro("estado", "estado")
+                    .filtro("prioridad", "prioridad")
+                    .pdf("Reporte de Rutas - LogiStock", COLUMNAS_PDF_RUTAS, ANCHOS_PDF_RUTAS)
+                    .excel(COLUMNAS_EXCEL_RUTAS)
+                    .exportacion(CAMPOS_RUTAS),
+            "clients", new DefinicionReporte<>(Cliente.class, "clientes", "Clientes", "fechaRegistro")
+                    .filtro("categoria", "categoria")
+                    .pdf("Reporte de Clientes - LogiStock", COLUMNAS_PDF_CLIENTES, ANCHOS_PDF_CLIENTES)
+                    .excel(COLUMNAS_EXCEL_CLIENTES)
+                    .exportacion(CAMPOS_CLIENTES),
+            "suppliers", new DefinicionReporte<>(Proveedor.class, "proveedores", "Proveedores", "createdAt")
+                    .filtro("tipo", "tipo")
+                    .pdf("Reporte de Proveedores - LogiStock", COLUMNAS_PDF_PROVEEDORES, ANCHOS_PDF_PROVEEDORES)
+                    .excel(COLUMNAS_EXCEL_PROVEEDORES)
+                    .exportacion(CAMPOS_PROVEEDORES),
+            "orders", new DefinicionReporte<>(Pedido.class, "pedidos", "Pedidos", "fechaCreacion")
+                    .filtro("estado", "estado", ReportService::estadoPedido)
+                    .pdf("Reporte de Pedidos - LogiStock", COLUMNAS_PDF_PEDIDOS, ANCHOS_PDF_PEDIDOS)
+                    .excel(COLUMNAS_EXCEL_PEDIDOS)
+                    .exportacion(CAMPOS_PEDIDOS));
+
+    /**
+     * Generar el reporte de una entidad en el formato indicado. La consulta aplica el
+     * filtro y proyecta solo los campos que leen las columnas del formato.
+     * @throws IllegalArgumentException si la entidad no existe o el filtro no es válido para ella
+     */
+    public void generar(String entidad, FormatoReporte formato, FiltroReporte filtro, OutputStream out) throws IOException {
+        generar(entidad, formato, filtro, out, (hoja, filas) -> { });
+    }
 
-        } catch (DocumentException e) {
-            e.printStackTrace();
+    /**
+     * Generar un reporte informando el avance (filas escritas por hoja). La entidad
+     * {@link #CONSOLIDADO} produce el libro Excel con todas las entidades.
+     */
+    public void generar(String entidad, FormatoReporte formato, FiltroReporte filtro, OutputStream out,
+                        BiConsumer<String, Long> progreso) throws IOException {
+        FiltroReporte filtroEfectivo = filtro != null ? filtro : FiltroReporte.vacio();
+        if (CONSOLIDADO.equals(entidad)) {
+            validar(entidad, formato, filtroEfectivo);
+            generarConsolidado(filtroEfectivo, out, progreso);
+            return;
         }
-
-        return new ByteArrayInputStream(out.toByteArray());
+        generar(definicion(entidad), formato, filtroEfectivo, out);
     }
 
-    public ByteArrayInputStream generateInventoryExcel() throws IOException {
-        String[] columns = {"Código", "Nombre", "Descripción", "Categoría", "Stock", "Precio", "Proveedor", "Ubicación"};
-
-        try (Workbook workbook = new XSSFWorkbook(); ByteArrayOutputStream out = new ByteArrayOutputStream()) {
-            Sheet sheet = workbook.createSheet("Inventario");
-
-            // Estilo de encabezado
-            org.apache.poi.ss.usermodel.Font headerFont = workbook.createFont();
-            headerFont.setBold(true);
-            headerFont.setColor(IndexedColors.BLUE.getIndex());
-            CellStyle headerCellStyle = workbook.createCellStyle();
-            headerCellStyle.setFont(headerFont);
-
-            // Estilo de moneda
-            CellStyle currencyStyle = workbook.createCellStyle();
-            currencyStyle.setDataFormat(workbook.createDataFormat().getFormat("$#,##0.00"));
-
-            // Fila de encabezado
-            org.apache.poi.ss.usermodel.Row headerRow = sheet.createRow(0);
-            for (int i = 0; i < columns.length; i++) {
-                org.apache.poi.ss.usermodel.Cell cell = headerRow.createCell(i);
-                cell.setCellValue(columns[i]);
-                cell.setCellStyle(headerCellStyle);
-            }
-
-            // Datos
-            List<Product> products = productRepository.findAll();
-            int rowIdx = 1;
-            for (Product product : products) {
-                org.apache.poi.ss.usermodel.Row row = sheet.createRow(rowIdx++);
-
-                row.createCell(0).setCellValue(product.getCode() != null ? product.getCode() : "");
-                row.createCell(1).setCellValue(product.getName() != null ? product.getName() : "");
-                row.createCell(2).setCellValue(product.getDescription() != null ? product.getDescription() : "");
-                row.createCell(3).setCellValue(product.getCategory() != null ? product.getCategory() : "");
-                row.createCell(4).setCellValue(product.getStock() != null ? product.getStock() : 0);
-                
-                org.apache.poi.ss.usermodel.Cell priceCell = row.createCell(5);
-                if (product.getPrice() != null) {
-                    priceCell.setCellValue(product.getPrice().doubleValue());
-                } else {
-                    priceCell.setCellValue(0.0);
-                }
-                priceCell.setCellStyle(currencyStyle);
-                
-                row.createCell(6).setCellValue(product.getSupplier() != null ? product.getSupplier() : "");
-                row.createCell(7).setCellValue(product.getLocation() != null ? product.getLocation() : "");
-            }
-
-            // Auto-ajustar columnas
-            for (int i = 0; i < columns.length; i++) {
-                sheet.autoSizeColumn(i);
-            }
-
-            workbook.write(out);
-            return new ByteArrayInputStream(out.toByteArray());
-        } catch (Exception e) {
-            e.printStackTrace();
-            throw new IOException("Error generating Excel: " + e.getMessage(), e);
+    /**
+     * Validar formato y filtro para una entidad sin ejecutar la consulta
+     * @throws IllegalArgumentException si la entidad no existe o no admite el formato o el filtro
+     */
+    public void validar(String entidad, FormatoReporte formato, FiltroReporte filtro) {
+        if (CONSOLIDADO.equals(entidad) && formato != FormatoReporte.EXCEL) {
+            throw new IllegalArgumentException("El reporte consolidado solo está disponible en Excel");
         }
+        validarFiltro(entidad, filtro);
     }
 
-    public ByteArrayInputStream generateRoutesPdf() {
-        Document document = new Document();
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-
-        try {
-            PdfWriter.getInstance(document, out);
-            document.open();
-
-            // Título
-            com.lowagie.text.Font fontTitle = FontFactory.getFont(FontFactory.HELVETICA_BOLD, 18);
-            Paragraph title = new Paragraph("Reporte de Rutas - LogiStock", fontTitle);
-            title.setAlignment(Element.ALIGN_CENTER);
-            document.add(title);
-            document.add(Chunk.NEWLINE);
-
-            // Tabla
-            PdfPTable table = new PdfPTable(5); // Código, Nombre, Origen, Destino, Estado
-            table.setWidthPercentage(100);
-            table.setWidths(new int[]{3, 5, 5, 5, 3});
-
-            // Encabezados
-            String[] headers = {"Código", "Nombre", "Origen", "Destino", "Estado"};
-            for (String header : headers) {
-                PdfPCell cell = new PdfPCell(new Phrase(header));
-                cell.setBackgroundColor(java.awt.Color.LIGHT_GRAY);
-                cell.setHorizontalAlignment(Element.ALIGN_CENTER);
-                table.addCell(cell);
-            }
-
-            // Datos
-            List<Ruta> rutas = rutaRepository.findAll();
-            
-            for (Ruta ruta : rutas) {
-                table.addCell(ruta.getCodigo() != null ? ruta.getCodigo() : "");
-                table.addCell(ruta.getNombre() != null ? ruta.getNombre() : "");
-                table.addCell(ruta.getOrigen() != null ? ruta.getOrigen() : "");
-                table.addCell(ruta.getDestino() != null ? ruta.getDestino() : "");
-                table.addCell(ruta.getEstado() != null ? ruta.getEstado() : "");
+    /**
+     * Validar un filtro para una entidad sin ejecutar la consulta
+     * @throws IllegalArgumentException si la entidad no existe o el filtro no es válido para ella
+     */
+    public void validarFiltro(String entidad, FiltroReporte filtro) {
+        FiltroReporte filtroEfectivo = filtro != null ? filtro : FiltroReporte.vacio();
+        if (CONSOLIDADO.equals(entidad)) {
+            FiltroReporte rango = soloRango(filtroEfectivo);
+            if (!rango.clave().equals(filtroEfectivo.clave())) {
+                throw new IllegalArgumentException("El reporte consolidado solo admite el rango de fechas (desde, hasta)");
             }
+            HOJAS_CONSOLIDADO.forEach(hoja -> consulta(definicion(hoja), rango, List.of()));
+            return;
+        }
+        consulta(definicion(entidad), filtroEfectivo, List.of());
+    }
 
-            document.add(table);
-            document.close();
+    /**
+     * Consulta de una entidad con el filtro aplicado, sin proyección
+     * @throws IllegalArgumentException si la entidad no existe o el filtro no es válido para ella
+     */
+    public Query consulta(String entidad, FiltroReporte filtro) {
+        return consulta(definicion(entidad), filtro != null ? filtro : FiltroReporte.vacio(), List.of());
+    }
 
-        } catch (DocumentException e) {
-            e.printStackTrace();
-        }
+    /**
+     * Nombre base del archivo de una entidad
+     * @throws IllegalArgumentException si la entidad no existe
+     */
+    public String nombreArchivo(String entidad) {
+        return CONSOLIDADO.equals(entidad) ? "consolidado" : definicion(entidad).archivo;
+    }
 
-        return new ByteArrayInputStream(out.toByteArray());
+    /**
+     * Clase de los documentos de una entidad
+     * @throws IllegalArgumentException si la entidad no existe
+     */
+    public Class<?> tipoEntidad(String entidad) {
+        return definicion(entidad).tipo;
     }
 
-    public ByteArrayInputStream generateRoutesExcel() throws IOException {
-        String[] columns = {"Código", "Nombre", "Origen", "Destino", "Distancia (km)", "Estado", "Prioridad", "Costo Total"};
-
-        try (Workbook workbook = new XSSFWorkbook(); ByteArrayOutputStream out = new ByteArrayOutputStream()) {
-            Sheet sheet = workbook.createSheet("Rutas");
-
-            // Estilo de encabezado
-            org.apache.poi.ss.usermodel.Font headerFont = workbook.createFont();
-            headerFont.setBold(true);
-            headerFont.setColor(IndexedColors.BLUE.getIndex());
-            CellStyle headerCellStyle = workbook.createCellStyle();
-            headerCellStyle.setFont(headerFont);
-
-            // Estilo de moneda
-            CellStyle currencyStyle = workbook.createCellStyle();
-            currencyStyle.setDataFormat(workbook.createDataFormat().getFormat("$#,##0.00"));
-
-            // Fila de encabezado
-            org.apache.poi.ss.usermodel.Row headerRow = sheet.createRow(0);
-            for (int i = 0; i < columns.length; i++) {
-                org.apache.poi.ss.usermodel.Cell cell = headerRow.createCell(i);
-                cell.setCellValue(columns[i]);
-                cell.setCellStyle(headerCellStyle);
+    /**
+     * Libro con una hoja por entidad. Las colecciones se leen en paralelo en el pool de
+     * lectores, que entregan lotes de filas a una cola acotada; este hilo es el único que
+     * escribe en el libro (SXSSF no admite escrituras concurrentes) e intercala las hojas
+     * a medida que llegan los lotes. El tiempo total se acerca al de la hoja más lenta.
+     */
+    private void generarConsolidado(FiltroReporte filtro, OutputStream out,
+                                    BiConsumer<String, Long> progreso) throws IOException {
+        BlockingQueue<LoteConsolidado> cola = new ArrayBlockingQueue<>(LOTES_EN_COLA_CONSOLIDADO);
+        List<Future<?>> lectores = new ArrayList<>();
+        try (ExcelStreamWriter excel = new ExcelStreamWriter()) {
+            for (String entidad : HOJAS_CONSOLIDADO) {
+                lectores.add(leerHoja(definicion(entidad), filtro, excel, cola));
             }
-
-            // Datos
-            List<Ruta> rutas = rutaRepository.findAll();
-            int rowIdx = 1;
-            for (Ruta ruta : rutas) {
-                org.apache.poi.ss.usermodel.Row row = sheet.createRow(rowIdx++);
-
-                row.createCell(0).setCellValue(ruta.getCodigo() != null ? ruta.getCodigo() : "");
-                row.createCell(1).setCellValue(ruta.getNombre() != null ? ruta.getNombre() : "");
-                row.createCell(2).setCellValue(ruta.getOrigen() != null ? ruta.getOrigen() : "");
-                row.createCell(3).setCellValue(ruta.getDestino() != null ? ruta.getDestino() : "");
-                
-                if (ruta.getDistanciaKm() != null) {
-                    row.createCell(4).setCellValue(ruta.getDistanciaKm().doubleValue());
-                } else {
-                    row.createCell(4).setCellValue(0.0);
+            int pendientes = HOJAS_CONSOLIDADO.size();
+            while (pendientes > 0) {
+                LoteConsolidado lote = cola.take();
+                if (lote.error != null) {
+                    throw new IOException("Error leyendo la hoja " + lote.hoja + ": " + lote.error.getMessage(), lote.error);
                 }
-
-                row.createCell(5).setCellValue(ruta.getEstado() != null ? ruta.getEstado() : "");
-                row.createCell(6).setCellValue(ruta.getPrioridad() != null ? ruta.getPrioridad() : "");
-                
-                org.apache.poi.ss.usermodel.Cell costCell = row.createCell(7);
-                if (ruta.getCostoTotal() != null) {
-                    costCell.setCellValue(ruta.getCostoTotal().doubleValue());
-                } else {
-                    costCell.setCellValue(0.0);
+                long filas = lote.escritura.get();
+                progreso.accept(lote.hoja, filas);
+                if (lote.fin) {
+                    pendientes--;
                 }
-                costCell.setCellStyle(currencyStyle);
             }
-
-            // Auto-ajustar columnas
-            for (int i = 0; i < columns.length; i++) {
-                sheet.autoSizeColumn(i);
-            }
-
-            workbook.write(out);
-            return new ByteArrayInputStream(out.toByteArray());
-        } catch (Exception e) {
-            e.printStackTrace();
-            throw new IOException("Error generating Excel: " + e.getMessage(), e);
+            excel.write(out);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Generación del reporte consolidado interrumpida", e);
+        } finally {
+            lectores.forEach(lector -> lector.cancel(true));
         }
     }
 
-    // --- CLIENTES ---
-
-    public ByteArrayInputStream generateClientsPdf() {
-        Document document = new Document();
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-
-        try {
-            PdfWriter.getInstance(document, out);
-            document.open();
-
-            com.lowagie.text.Font fontTitle = FontFactory.getFont(FontFactory.HELVETICA_BOLD, 18);
-            Paragraph title = new Paragraph("Reporte de Clientes - LogiStock", fontTitle);
-            title.setAlignment(Element.ALIGN_CENTER);
-            document.add(title);
-            document.add(Chunk.NEWLINE);
-
-            PdfPTable table = new PdfPTable(5);
-            table.setWidthPercentage(100);
-            table.setWidths(new int[]{4, 4, 5, 3, 3});
-
-            String[] headers = {"Nombre", "Empresa", "Email", "Teléfono", "Categoría"};
-            for (String header : headers) {
-                PdfPCell cell = new PdfPCell(new Phrase(header));
-                cell.setBackgroundColor(java.awt.Color.LIGHT_GRAY);
-                cell.setHorizontalAlignment(Element.ALIGN_CENTER);
-                table.addCell(cell);
+    private <T> Future<?> leerHoja(DefinicionReporte<T> definicion, FiltroReporte filtro, ExcelStreamWriter excel,
+                                   BlockingQueue<LoteConsolidado> cola) {
+        // La hoja se crea en el hilo escritor; el lector solo consulta y agrupa filas
+        ExcelStreamWriter.Hoja<T> hoja = excel.abrirHoja(definicion.hoja, definicion.columnasExcel);
+        Query query = consulta(definicion, filtro, definicion.columnasExcel).cursorBatchSize(TAMANO_LOTE_CURSOR);
+        return lectoresConsolidado.submit(() -> {
+            try (Stream<T> filas = mongoTemplate.stream(query, definicion.tipo)) {
+                Iterator<T> it = filas.iterator();
+                List<T> lote = new ArrayList<>(FILAS_POR_LOTE_CONSOLIDADO);
+                while (it.hasNext()) {
+                    lote.add(it.next());
+                    if (lote.size() == FILAS_POR_LOTE_CONSOLIDADO) {
+                        cola.put(LoteConsolidado.filas(definicion.hoja, hoja, lote, false));
+                        lote = new ArrayList<>(FILAS_POR_LOTE_CONSOLIDADO);
+                    }
+                }
+                cola.put(LoteConsolidado.filas(definicion.hoja, hoja, lote, true));
+            } catch (RuntimeException e) {
+                cola.put(LoteConsolidado.error(definicion.hoja, e));
             }
+            return null;
+        });
+    }
 
-            List<Cliente> clientes = clienteRepository.findAll();
-            for (Cliente cliente : clientes) {
-                table.addCell(cliente.getNombre() != null ? cliente.getNombre() : "");
-                table.addCell(cliente.getEmpresa() != null ? cliente.getEmpresa() : "");
-                table.addCell(cliente.getEmail() != null ? cliente.getEmail() : "");
-                table.addCell(cliente.getTelefono() != null ? cliente.getTelefono() : "");
-                table.addCell(cliente.getCategoria() != null ? cliente.getCategoria() : "");
-            }
+    private static FiltroReporte soloRango(FiltroReporte filtro) {
+        FiltroReporte rango = new FiltroReporte();
+        rango.setDesde(filtro.getDesde());
+        rango.setHasta(filtro.getHasta());
+        return rango;
+    }
 
-            document.add(table);
-            document.close();
-        } catch (DocumentException e) {
-            e.printStackTrace();
+    private <T> void generar(DefinicionReporte<T> definicion, FormatoReporte formato, FiltroReporte filtro,
+                             OutputStream out) throws IOException {
+        List<ColumnaReporte<T>> columnas = definicion.columnas(formato);
+        Query query = consulta(definicion, filtro, columnas).cursorBatchSize(TAMANO_LOTE_CURSOR);
+        try (Stream<T> filas = mongoTemplate.stream(query, definicion.tipo)) {
+            switch (formato) {
+                case PDF:
+                    PdfStreamWriter.escribir(out, definicion.tituloPdf, columnas, definicion.anchosPdf, filas.iterator());
+                    break;
+                case EXCEL:
+                    try (ExcelStreamWriter excel = new ExcelStreamWriter()) {
+                        excel.hoja(definicion.hoja, columnas, filas.iterator());
+                        excel.write(out);
+                    }
+                    break;
+                case CSV:
+                    ExportStreamWriter.csv(out, columnas, filas.iterator());
+                    break;
+                default:
+                    ExportStreamWriter.ndjson(out, objectMapper, columnas, filas.iterator());
+                    break;
+            }
         }
-        return new ByteArrayInputStream(out.toByteArray());
     }
 
-    public ByteArrayInputStream generateClientsExcel() throws IOException {
-        String[] columns = {"Nombre", "Empresa", "Email", "Teléfono", "Dirección", "Categoría", "Total Compras"};
-
-        try (Workbook workbook = new XSSFWorkbook(); ByteArrayOutputStream out = new ByteArrayOutputStream()) {
-            Sheet sheet = workbook.createSheet("Clientes");
-
-            org.apache.poi.ss.usermodel.Font headerFont = workbook.createFont();
-            headerFont.setBold(true);
-            headerFont.setColor(IndexedColors.BLUE.getIndex());
-            CellStyle headerCellStyle = workbook.createCellStyle();
-            headerCellStyle.setFont(headerFont);
-
-            CellStyle currencyStyle = workbook.createCellStyle();
-            currencyStyle.setDataFormat(workbook.createDataFormat().getFormat("$#,##0.00"));
-
-            org.apache.poi.ss.usermodel.Row headerRow = sheet.createRow(0);
-            for (int i = 0; i < columns.length; i++) {
-                org.apache.poi.ss.usermodel.Cell cell = headerRow.createCell(i);
-                cell.setCellValue(columns[i]);
-                cell.setCellStyle(headerCellStyle);
+    /**
+     * Consulta con el rango de fechas, los filtros por campo y la proyección de las columnas
+     */
+    private static <T> Query consulta(DefinicionReporte<T> definicion, FiltroReporte filtro, List<ColumnaReporte<T>> columnas) {
+        List<Criteria> condiciones = new ArrayList<>();
+        if (filtro.getDesde() != null || filtro.getHasta() != null) {
+            if (filtro.getDesde() != null && filtro.getHasta() != null && filtro.getHasta().isBefore(filtro.getDesde())) {
+                throw new IllegalArgumentException("La fecha 'hasta' no puede ser anterior a 'desde'");
             }
-
-            List<Cliente> clientes = clienteRepository.findAll();
-            int rowIdx = 1;
-            for (Cliente cliente : clientes) {
-                org.apache.poi.ss.usermodel.Row row = sheet.createRow(rowIdx++);
-                row.createCell(0).setCellValue(cliente.getNombre() != null ? cliente.getNombre() : "");
-                row.createCell(1).setCellValue(cliente.getEmpresa() != null ? cliente.getEmpresa() : "");
-                row.createCell(2).setCellValue(cliente.getEmail() != null ? cliente.getEmail() : "");
-                row.createCell(3).setCellValue(cliente.getTelefono() != null ? cliente.getTelefono() : "");
-                row.createCell(4).setCellValue(cliente.getDireccion() != null ? cliente.getDireccion() : "");
-                row.createCell(5).setCellValue(cliente.getCategoria() != null ? cliente.getCategoria() : "");
-                
-                org.apache.poi.ss.usermodel.Cell totalCell = row.createCell(6);
-                if (cliente.getTotalCompras() != null) {
-                    totalCell.setCellValue(cliente.getTotalCompras().doubleValue());
-                } else {
-                    totalCell.setCellValue(0.0);
-                }
-                totalCell.setCellStyle(currencyStyle);
+            Criteria fecha = Criteria.where(definicion.campoFecha);
+            if (filtro.getDesde() != null) {
+                fecha = fecha.gte(filtro.getDesde().atStartOfDay());
             }
-
-            for (int i = 0; i < columns.length; i++) {
-                sheet.autoSizeColumn(i);
+            if (filtro.getHasta() != null) {
+                fecha = fecha.lt(filtro.getHasta().plusDays(1).atStartOfDay());
             }
-
-            workbook.write(out);
-            return new ByteArrayInputStream(out.toByteArray());
-        } catch (Exception e) {
-            e.printStackTrace();
-            throw new IOException("Error generating Excel: " + e.getMessage(), e);
+            condiciones.add(fecha);
         }
+        agregarFiltro(definicion, condiciones, "estado", filtro.getEstado());
+        agregarFiltro(definicion, condiciones, "categoria", filtro.getCategoria());
+        agregarFiltro(definicion, condiciones, "tipo", filtro.getTipo());
+        agregarFiltro(definicion, condiciones, "prioridad", filtro.getPrioridad());
+
+        Query query = condiciones.isEmpty() ? new Query() : new Query(new Criteria().andOperator(condiciones));
+        // Sin proyección si alguna columna no declara los campos que lee
+        if (!columnas.isEmpty() && columnas.stream().noneMatch(columna -> columna.getCampos().isEmpty())) {
+            columnas.forEach(columna -> columna.getCampos().forEach(campo -> query.fields().include(campo)));
+        }
+        return query;
     }
 
-    // --- PROVEEDORES ---
-
-    public ByteArrayInputStream generateSuppliersPdf() {
-        Document document = new Document();
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private static void agregarFiltro(DefinicionReporte<?> definicion, List<Criteria> condiciones, String nombre, String valor) {
+        if (valor == null || valor.isBlank()) {
+            return;
+        }
+        CampoFiltro campo = definicion.filtros.get(nombre);
+        if (campo == null) {
+            throw new IllegalArgumentException("El reporte de " + definicion.archivo + " no admite el filtro '" + nombre + "'");
+        }
+        condiciones.add(Criteria.where(campo.campo).is(campo.conversion.apply(valor.trim())));
+    }
 
+    private static Object estadoPedido(String valor) {
         try {
-            PdfWriter.getInstance(document, out);
-            document.open();
-
-            com.lowagie.text.Font fontTitle = FontFactory.getFont(FontFactory.HELVETICA_BOLD, 18);
-            Paragraph title = new Paragraph("Reporte de Proveedores - LogiStock", fontTitle);
-            title.setAlignment(Element.ALIGN_CENTER);
-            document.add(title);
-            document.add(Chunk.NEWLINE);
-
-            PdfPTable table = new PdfPTable(5);
-            table.setWidthPercentage(100);
-            table.setWidths(new int[]{4, 4, 5, 3, 3});
-
-            String[] headers = {"Nombre", "Empresa", "Email", "Teléfono", "Tipo"};
-            for (String header : headers) {
-                PdfPCell cell = new PdfPCell(new Phrase(header));
-                cell.setBackgroundColor(java.awt.Color.LIGHT_GRAY);
-                cell.setHorizontalAlignment(Element.ALIGN_CENTER);
-                table.addCell(cell);
-            }
-
-            List<Proveedor> proveedores = proveedorRepository.findAll();
-            for (Proveedor proveedor : proveedores) {
-                table.addCell(proveedor.getNombre() != null ? proveedor.getNombre() : "");
-                table.addCell(proveedor.getEmpresa() != null ? proveedor.getEmpresa() : "");
-                table.addCell(proveedor.getEmail() != null ? proveedor.getEmail() : "");
-                table.addCell(proveedor.getTelefono() != null ? proveedor.getTelefono() : "");
-                table.addCell(proveedor.getTipo() != null ? proveedor.getTipo() : "");
-            }
-
-            document.add(table);
-            document.close();
-        } catch (DocumentException e) {
-            e.printStackTrace();
+            return EstadoPedido.valueOf(valor.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Estado de pedido inválido: " + valor);
         }
-        return new ByteArrayInputStream(out.toByteArray());
     }
 
-    public ByteArrayInputStream generateSuppliersExcel() throws IOException {
-        String[] columns = {"Nombre", "Empresa", "Email", "Teléfono", "Dirección", "Tipo", "País", "Ciudad"};
-
-        try (Workbook workbook = new XSSFWorkbook(); ByteArrayOutputStream out = new ByteArrayOutputStream()) {
-            Sheet sheet = workbook.createSheet("Proveedores");
-
-            org.apache.poi.ss.usermodel.Font headerFont = workbook.createFont();
-            headerFont.setBold(true);
-            headerFont.setColor(IndexedColors.BLUE.getIndex());
-            CellStyle headerCellStyle = workbook.createCellStyle();
-            headerCellStyle.setFont(headerFont);
-
-            org.apache.poi.ss.usermodel.Row headerRow = sheet.createRow(0);
-            for (int i = 0; i < columns.length; i++) {
-                org.apache.poi.ss.usermodel.Cell cell = headerRow.createCell(i);
-                cell.setCellValue(columns[i]);
-                cell.setCellStyle(headerCellStyle);
-            }
-
-            List<Proveedor> proveedores = proveedorRepository.findAll();
-            int rowIdx = 1;
-            for (Proveedor proveedor : proveedores) {
-                org.apache.poi.ss.usermodel.Row row = sheet.createRow(rowIdx++);
-                row.createCell(0).setCellValue(proveedor.getNombre() != null ? proveedor.getNombre() : "");
-                row.createCell(1).setCellValue(proveedor.getEmpresa() != null ? proveedor.getEmpresa() : "");
-                row.createCell(2).setCellValue(proveedor.getEmail() != null ? proveedor.getEmail() : "");
-                row.createCell(3).setCellValue(proveedor.getTelefono() != null ? proveedor.getTelefono() : "");
-                row.createCell(4).setCellValue(proveedor.getDireccion() != null ? proveedor.getDireccion() : "");
-                row.createCell(5).setCellValue(proveedor.getTipo() != null ? proveedor.getTipo() : "");
-                row.createCell(6).setCellValue(proveedor.getPais() != null ? proveedor.getPais() : "");
-                row.createCell(7).setCellValue(proveedor.getCiudad() != null ? proveedor.getCiudad() : "");
-            }
-
-            for (int i = 0; i < columns.length; i++) {
-                sheet.autoSizeColumn(i);
-            }
-
-            workbook.write(out);
-            return new ByteArrayInputStream(out.toByteArray());
-        } catch (Exception e) {
-            e.printStackTrace();
-            throw new IOException("Error generating Excel: " + e.getMessage(), e);
+    private static DefinicionReporte<?> definicion(String entidad) {
+        DefinicionReporte<?> definicion = DEFINICIONES.get(entidad);
+        if (definicion == null) {
+            throw new IllegalArgumentException("Entidad no exportable: " + entidad
+                    + ". Valores permitidos: " + String.join(", ", DEFINICIONES.keySet()));
         }
+        return definicion;
     }
 
-    // --- PEDIDOS ---
+    private static String valorTexto(String valor) {
+        return valor != null ? valor : "";
+    }
 
-    public ByteArrayInputStream generateOrdersPdf() {
-        Document document = new Document();
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
+    /**
+     * Lote de filas de una hoja del consolidado, o el error de su lector
+     */
+    private static class LoteConsolidado {
+        private final String hoja;
+        private final Supplier<Long> escritura;
+        private final boolean fin;
+        private final RuntimeException error;
+
+        private LoteConsolidado(String hoja, Supplier<Long> escritura, boolean fin, RuntimeException error) {
+            this.hoja = hoja;
+            this.escritura = escritura;
+            this.fin = fin;
+            this.error = error;
+        }
 
-        try {
-            PdfWriter.getInstance(document, out);
-            document.open();
-
-            com.lowagie.text.Font fontTitle = FontFactory.getFont(FontFactory.HELVETICA_BOLD, 18);
-            Paragraph title = new Paragraph("Reporte de Pedidos - LogiStock", fontTitle);
-            title.setAlignment(Element.ALIGN_CENTER);
-            document.add(title);
-            document.add(Chunk.NEWLINE);
-
-            PdfPTable table = new PdfPTable(5);
-            table.setWidthPercentage(100);
-            table.setWidths(new int[]{4, 3, 4, 4, 3});
-
-            String[] headers = {"Cliente", "Estado", "Fecha Creación", "Dirección Entrega", "Total"};
-            for (String header : headers) {
-                PdfPCell cell = new PdfPCell(new Phrase(header));
-                cell.setBackgroundColor(java.awt.Color.LIGHT_GRAY);
-                cell.setHorizontalAlignment(Element.ALIGN_CENTER);
-                table.addCell(cell);
-            }
+        static <T> LoteConsolidado filas(String nombre, ExcelStreamWriter.Hoja<T> hoja, List<T> filas, boolean fin) {
+            return new LoteConsolidado(nombre, () -> {
+                filas.forEach(hoja::agregar);
+                return fin ? hoja.terminar() : hoja.getFilas();
+            }, fin, null);
+        }
 
-            List<Pedido> pedidos = pedidoRepository.findAll();
-            NumberFormat currencyFormatter = NumberFormat.getCurrencyInstance(Locale.US);
+        static LoteConsolidado error(String hoja, RuntimeException error) {
+            return new LoteConsolidado(hoja, null, true, error);
+        }
+    }
 
-            for (Pedido pedido : pedidos) {
-                table.addCell(pedido.getClienteNombre() != null ? pedido.getClienteNombre() : "");
-                table.addCell(pedido.getEstado() != null ? pedido.getEstado().toString() : "");
-                table.addCell(pedido.getFechaCreacion() != null ? pedido.getFechaCreacion().toString() : "");
-                table.addCell(pedido.getDireccionEntrega() != null ? pedido.getDireccionEntrega() : "");
-                table.addCell(currencyFormatter.format(pedido.getTotal()));
-            }
+    private static class CampoFiltro {
+        private final String campo;
+        private final Function<String, Object> conversion;
 
-            document.add(table);
-            document.close();
-        } catch (DocumentException e) {
-            e.printStackTrace();
+        CampoFiltro(String campo, Function<String, Object> conversion) {
+            this.campo = campo;
+            this.conversion = conversion;
         }
-        return new ByteArrayInputStream(out.toByteArray());
     }
 
-    public ByteArrayInputStream generateOrdersExcel() throws IOException {
-        String[] columns = {"ID Pedido", "Cliente", "Estado", "Fecha Creación", "Dirección Entrega", "Total"};
+    private static class DefinicionReporte<T> {
+        private final Class<T> tipo;
+        private final String archivo;
+        private final String hoja;
+        private final String campoFecha;
+        private final Map<String, CampoFiltro> filtros = new HashMap<>();
+        private String tituloPdf;
+        private List<ColumnaReporte<T>> columnasPdf;
+        private int[] anchosPdf;
+        private List<ColumnaReporte<T>> columnasExcel;
+        private List<ColumnaReporte<T>> columnasExportacion;
+
+        DefinicionReporte(Class<T> tipo, String archivo, String hoja, String campoFecha) {
+            this.tipo = tipo;
+            this.archivo = archivo;
+            this.hoja = hoja;
+            this.campoFecha = campoFecha;
+        }
 
-        try (Workbook workbook = new XSSFWorkbook(); ByteArrayOutputStream out = new ByteArrayOutputStream()) {
-            Sheet sheet = workbook.createSheet("Pedidos");
+        DefinicionReporte<T> filtro(String nombre, String campo) {
+            return filtro(nombre, campo, valor -> valor);
+        }
 
-            org.apache.poi.ss.usermodel.Font headerFont = workbook.createFont();
-            headerFont.setBold(true);
-            headerFont.setColor(IndexedColors.BLUE.getIndex());
-            CellStyle headerCellStyle = workbook.createCellStyle();
-            headerCellStyle.setFont(headerFont);
+        DefinicionReporte<T> filtro(String nombre, String campo, Function<String, Object> conversion) {
+            filtros.put(nombre, new CampoFiltro(campo, conversion));
+            return this;
+        }
 
-            CellStyle currencyStyle = workbook.createCellStyle();
-            currencyStyle.setDataFormat(workbook.createDataFormat().getFormat("$#,##0.00"));
+        DefinicionReporte<T> pdf(String titulo, List<ColumnaReporte<T>> columnas, int[] anchos) {
+            this.tituloPdf = titulo;
+            this.columnasPdf = columnas;
+            this.anchosPdf = anchos;
+            return this;
+        }
 
-            org.apache.poi.ss.usermodel.Row headerRow = sheet.createRow(0);
-            for (int i = 0; i < columns.length; i++) {
-                org.apache.poi.ss.usermodel.Cell cell = headerRow.createCell(i);
-                cell.setCellValue(columns[i]);
-                cell.setCellStyle(headerCellStyle);
-            }
+        DefinicionReporte<T> excel(List<ColumnaReporte<T>> columnas) {
+            this.columnasExcel = columnas;
+            return this;
+        }
 
-            List<Pedido> pedidos = pedidoRepository.findAll();
-            int rowIdx = 1;
-            for (Pedido pedido : pedidos) {
-                org.apache.poi.ss.usermodel.Row row = sheet.createRow(rowIdx++);
-                row.createCell(0).setCellValue(pedido.getId() != null ? pedido.getId() : "");
-                row.createCell(1).setCellValue(pedido.getClienteNombre() != null ? pedido.getClienteNombre() : "");
-                row.createCell(2).setCellValue(pedido.getEstado() != null ? pedido.getEstado().toString() : "");
-                row.createCell(3).setCellValue(pedido.getFechaCreacion() != null ? pedido.getFechaCreacion().toString() : "");
-                row.createCell(4).setCellValue(pedido.getDireccionEntrega() != null ? pedido.getDireccionEntrega() : "");
-                
-                org.apache.poi.ss.usermodel.Cell totalCell = row.createCell(5);
-                totalCell.setCellValue(pedido.getTotal());
-                totalCell.setCellStyle(currencyStyle);
-            }
+        DefinicionReporte<T> exportacion(List<ColumnaReporte<T>> columnas) {
+            this.columnasExportacion = columnas;
+            return this;
+        }
 
-            for (int i = 0; i < columns.length; i++) {
-                sheet.autoSizeColumn(i);
+        List<ColumnaReporte<T>> columnas(FormatoReporte formato) {
+            switch (formato) {
+                case PDF:
+                    return columnasPdf;
+                case EXCEL:
+                    return columnasExcel;
+                default:
+                    return columnasExportacion;
             }
-
-            workbook.write(out);
-            return new ByteArrayInputStream(out.toByteArray());
-        } catch (Exception e) {
-            e.printStackTrace();
-            throw new IOException("Error generating Excel: " + e.getMessage(), e);
         }
     }
 }
@@ -0,0 +1,336 @@
+package com.logistock.service;
+
+import com.logistock.model.Product;
+import com.logistock.model.ProductoPedido;
+import com.logistock.model.ReservaStock;
+import com.logistock.repository.ReservaStockRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Servicio de reservas temporales de stock (carritos)
+ *
+ * Una reserva aparta cantidad de uno o más productos durante N minutos. Las reservas
+ * activas se mantienen en memoria junto con el total reservado por producto, de modo
+ * que el disponible para prometer (stock - reservado) se calcula en O(1). Cada reserva
+ * tiene un temporizador que la libera al vencer, y se replica en la colección
+ * reservas_stock (índice TTL) para recuperarlas al reiniciar.
+ *
+ * Las operaciones que comparan stock con reservas se serializan por producto con
+ * bloqueos por franjas; la coordinación es local a esta instancia de la aplicación.
+ */
+@Service
+@Slf4j
+public class ReservaStockService {
+
+    private static final int FRANJAS_BLOQUEO = 64;
+
+    private final ReservaStockRepository reservaStockRepository;
+    private final ProductService productService;
+    private final MongoTemplate mongoTemplate;
+    private final int minutosPorDefecto;
+    private final int minutosMaximo;
+
+    private final ConcurrentMap<String, ReservaActiva> activas = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Integer> reservadoPorProducto = new ConcurrentHashMap<>();
+    private final ReentrantLock[] bloqueos = new ReentrantLock[FRANJAS_BLOQUEO];
+    private final ScheduledExecutorService expirador = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread hilo = new Thread(r, "reservas-stock-expirador");
+        hilo.setDaemon(true);
+        return hilo;
+    });
+
+    public ReservaStockService(ReservaStockRepository reservaStockRepository,
+                               ProductService productService,
+                               MongoTemplate mongoTemplate,
+                               @Value("${app.stock.reservas.minutos-defecto:15}") int minutosPorDefecto,
+                               @Value("${app.stock.reservas.minutos-maximo:120}") int minutosMaximo) {
+        this.reservaStockRepository = reservaStockRepository;
+        this.productService = productService;
+        this.mongoTemplate = mongoTemplate;
+        this.minutosPorDefecto = minutosPorDefecto;
+        this.minutosMaximo = minutosMaximo;
+        for (int i = 0; i < FRANJAS_BLOQUEO; i++) {
+            bloqueos[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Crear el índice TTL y recuperar las reservas vigentes
+     */
+    @PostConstruct
+    public void inicializar() {
+        try {
+            mongoTemplate.indexOps(ReservaStock.class)
+                    .ensureIndex(new Index().on("expiraEn", Sort.Direction.ASC).expire(0).named("expiraEn_ttl"));
+            List<ReservaStock> vigentes = reservaStockRepository.findByExpiraEnAfter(LocalDateTime.now());
+            vigentes.forEach(this::activar);
+            log.info("Reservas de stock recuperadas: {}", vigentes.size());
+        } catch (Exception e) {
+            log.warn("No se pudieron recuperar las reservas de stock: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void detener() {
+        expirador.shutdownNow();
+    }
+
+    /**
+     * Crear una reserva de stock
+     * @param productos Productos y cantidades a reservar
+     * @param minutos Duración de la reserva (null = valor por defecto)
+     * @param usuario Usuario que crea la reserva
+     * @throws IllegalArgumentException si los datos son inválidos o un producto no existe
+     * @throws IllegalStateException si no hay disponible suficiente
+     */
+    public ReservaStock crear(List<ProductoPedido> productos, Integer minutos, String usuario) {
+        if (productos == null || productos.isEmpty()) {
+            throw new IllegalArgumentException("La reserva no tiene productos");
+        }
+        int duracion = minutos != null ? minutos : minutosPorDefecto;
+        if (duracion < 1 || duracion > minutosMaximo) {
+            throw new IllegalArgumentException("La duración de la reserva debe estar entre 1 y " + minutosMaximo + " minutos");
+        }
+        Map<String, Integer> cantidades = agrupar(productos);
+        for (Map.Entry<String, Integer> linea : cantidades.entrySet()) {
+            if (linea.getValue() <= 0) {
+                throw new IllegalArgumentException("Cantidad inválida para el producto " + linea.getKey());
+            }
+        }
+
+        LocalDateTime ahora = LocalDateTime.now();
+        ReservaStock reserva = ReservaStock.builder()
+                .productos(productos)
+                .usuario(usuario)
+                .creadaEn(ahora)
+                .expiraEn(ahora.plusMinutes(duracion))
+                .build();
+
+        return conBloqueo(cantidades.keySet(), () -> {
+            Map<String, Product> snapshot = productService.cargarProductos(cantidades.keySet());
+            verificar(cantidades, snapshot, Map.of());
+
+            ReservaStock guardada = reservaStockRepository.insert(reserva);
+            activar(guardada);
+            log.info("Reserva de stock {} creada por {} minutos", guardada.getId(), duracion);
+            return guardada;
+        });
+    }
+
+    public Optional<ReservaStock> obtener(String id) {
+        ReservaActiva activa = activas.get(id);
+        return Optional.ofNullable(activa != null ? activa.reserva : null);
+    }
+
+    /**
+     * Liberar una reserva antes de que venza
+     * @return true si la reserva estaba activa
+     */
+    public boolean liberar(String id) {
+        boolean liberada = desactivar(id);
+        reservaStockRepository.deleteById(id);
+        if (liberada) {
+            log.info("Reserva de stock {} liberada", id);
+        }
+        return liberada;
+    }
+
+    /**
+     * Productos de una reserva activa (vacío si no existe o venció), para incluirlos en
+     * {@link #conBloqueo} junto con los del pedido que la consume
+     */
+    public List<String> productosDe(String id) {
+        ReservaActiva activa = activas.get(id);
+        return activa != null ? new ArrayList<>(agrupar(activa.reserva.getProductos()).keySet()) : List.of();
+    }
+
+    /**
+     * Retirar la reserva que consume un pedido. Se llama dentro de {@link #conBloqueo}, con los
+     * productos del pedido y de la reserva, justo después de descontar el stock: ninguna
+     * verificación ve a la vez el stock descontado y la reserva apartándolo.
+     * @return La reserva retirada (para restaurarla si el pedido no se guarda), o null si no estaba activa
+     */
+    public ReservaStock retirar(String id) {
+        ReservaActiva activa = activas.get(id);
+        return activa != null && desactivar(activa) ? activa.reserva : null;
+    }
+
+    /**
+     * Volver a activar una reserva retirada cuyo pedido no se pudo guardar (el stock se devolvió)
+     */
+    public void restaurar(ReservaStock reserva) {
+        conBloqueo(agrupar(reserva.getProductos()).keySet(), () -> {
+            activar(reserva);
+            return null;
+        });
+        log.info("Reserva de stock {} restaurada", reserva.getId());
+    }
+
+    /**
+     * Convertir una reserva en pedido: el stock ya fue descontado y la reserva retirada
+     * con {@link #retirar}; se elimina su documento
+     */
+    public void confirmar(String id) {
+        desactivar(id);
+        reservaStockRepository.deleteById(id);
+        log.info("Reserva de stock {} convertida en pedido", id);
+    }
+
+    /**
+     * Cantidad reservada de un producto por reservas activas
+     */
+    public int reservado(String productoId) {
+        return reservadoPorProducto.getOrDefault(productoId, 0);
+    }
+
+    /**
+     * Disponible para prometer: stock menos reservas activas
+     */
+    public int disponibleParaPrometer(Product producto) {
+        int stock = producto.getStock() != null ? producto.getStock() : 0;
+        return stock - reservado(producto.getId());
+    }
+
+    /**
+     * Verificar que un pedido cabe en el disponible para prometer
+     * @param productos Líneas del pedido
+     * @param snapshot Productos leídos dentro de {@link #conBloqueo}
+     * @param reservaId Reserva que el pedido consume (su cantidad no cuenta en contra), o null
+     * @throws IllegalStateException si la reserva venció o no hay disponible suficiente
+     */
+    public void verificarDisponibilidad(List<ProductoPedido> productos, Map<String, Product> snapshot, String reservaId) {
+        Map<String, Integer> propias = Map.of();
+        if (reservaId != null) {
+            ReservaActiva activa = activas.get(reservaId);
+            if (activa == null) {
+                throw new IllegalStateException("La reserva " + reservaId + " no existe o ha expirado");
+            }
+            propias = agrupar(activa.reserva.getProductos());
+        }
+        verificar(agrupar(productos), snapshot, propias);
+    }
+
+    /**
+     * Ejecutar una acción con los productos indicados bloqueados frente a otras
+     * reservas y pedidos de esta instancia
+     */
+    public <T> T conBloqueo(Collection<String> productIds, Supplier<T> accion) {
+        TreeSet<Integer> franjas = new TreeSet<>();
+        for (String productId : productIds) {
+            franjas.add(Math.floorMod(productId.hashCode(), FRANJAS_BLOQUEO));
+        }
+        Integer[] orden = franjas.toArray(new Integer[0]);
+        for (Integer franja : orden) {
+            bloqueos[franja].lock();
+        }
+        try {
+            return accion.get();
+        } finally {
+            for (int i = orden.length - 1; i >= 0; i--) {
+                bloqueos[orden[i]].unlock();
+            }
+        }
+    }
+
+    private void verificar(Map<String, Integer> cantidades, Map<String, Product> snapshot, Map<String, Integer> propias) {
+        for (Map.Entry<String, Integer> linea : cantidades.entrySet()) {
+            Product producto = snapshot.get(linea.getKey());
+            if (producto == null) {
+                throw new IllegalArgumentException("Producto no encontrado con ID: " + linea.getKey());
+            }
+            int disponible = disponibleParaPrometer(producto) + propias.getOrDefault(linea.getKey(), 0);
+            if (disponible < linea.getValue()) {
+                throw new IllegalStateException(String.format(
+                        "Disponible insuficiente para el producto '%s'. Disponible: %d, solicitado: %d",
+                        producto.getName(), Math.max(disponible, 0), linea.getValue()));
+            }
+        }
+    }
+
+    private void activar(ReservaStock reserva) {
+        agrupar(reserva.getProductos()).forEach((productId, cantidad) ->
+                reservadoPorProducto.merge(productId, cantidad, Integer::sum));
+        // Se publica antes de programar el vencimiento: una reserva ya vencida expira enseguida
+        ReservaActiva activa = new ReservaActiva(reserva);
+        activas.put(reserva.getId(), activa);
+        long espera = Math.max(Duration.between(LocalDateTime.now(), reserva.getExpiraEn()).toMillis(), 0);
+        activa.temporizador = expirador.schedule(() -> expirar(activa), espera, TimeUnit.MILLISECONDS);
+    }
+
+    private boolean desactivar(String id) {
+        ReservaActiva activa = activas.get(id);
+        return activa != null && desactivar(activa);
+    }
+
+    /**
+     * Retirar una reserva activa y descontar su cantidad del total reservado.
+     * Se hace bajo los bloqueos de sus productos para que ninguna verificación
+     * de disponible vea la reserva a medio retirar.
+     */
+    private boolean desactivar(ReservaActiva activa) {
+        Map<String, Integer> cantidades = agrupar(activa.reserva.getProductos());
+        return conBloqueo(cantidades.keySet(), () -> {
+            if (!activas.remove(activa.reserva.getId(), activa)) {
+                return false;
+            }
+            ScheduledFuture<?> temporizador = activa.temporizador;
+            if (temporizador != null) {
+                temporizador.cancel(false);
+            }
+            // merge elimina la entrada cuando el remapeo devuelve null (total agotado)
+            cantidades.forEach((productId, cantidad) ->
+                    reservadoPorProducto.merge(productId, -cantidad, (total, delta) -> total + delta <= 0 ? null : total + delta));
+            return true;
+        });
+    }
+
+    private void expirar(ReservaActiva activa) {
+        // Solo la activación que programó el vencimiento: una reserva restaurada lleva el suyo
+        if (desactivar(activa)) {
+            // El índice TTL elimina el documento; aquí solo se libera la cantidad en memoria
+            log.info("Reserva de stock {} expirada", activa.reserva.getId());
+        }
+    }
+
+    private static Map<String, Integer> agrupar(List<ProductoPedido> productos) {
+        Map<String, Integer> cantidades = new HashMap<>();
+        for (ProductoPedido productoPedido : productos) {
+            cantidades.merge(productoPedido.getProductoId(), productoPedido.getCantidad(), Integer::sum);
+        }
+        return cantidades;
+    }
+
+    private static class ReservaActiva {
+        private final ReservaStock reserva;
+        private volatile ScheduledFuture<?> temporizador;
+
+        ReservaActiva(ReservaStock reserva) {
+            this.reserva = reserva;
+        }
+    }
+}
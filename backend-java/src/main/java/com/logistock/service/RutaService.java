@@ -1,20 +1,54 @@
 package com.logistock.service;
 
+import com.logistock.dto.FiltroRutas;
 import com.logistock.model.Ruta;
+import com.logistock.model.Ubicacion;
 import com.logistock.repository.RutaRepository;
+import com.logistock.ruteo.MatrizDistancias;
+import com.logistock.ruteo.OptimizadorRuta;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.Decimal128;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.aggregation.ConditionalOperators;
+import org.springframework.data.mongodb.core.aggregation.ConvertOperators;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.support.PageableExecutionUtils;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.facet;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.group;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.match;
+
 /**
  * Servicio para la gestión de rutas
  */
@@ -24,6 +58,26 @@ import java.util.stream.Collectors;
 public class RutaService {
 
     private final RutaRepository rutaRepository;
+    private final VersionDatosService versionDatosService;
+    private final MongoTemplate mongoTemplate;
+    private final DistanciasService distanciasService;
+    private final AgendaRutasService agendaRutasService;
+    private final EtaService etaService;
+
+    // Pool propio para no competir con el pool común de la JVM
+    private final ForkJoinPool planificador = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    private static final List<String> ESTADOS_FUERA_DE_AGENDA = List.of("Completada", "Cancelada");
+
+    // Campos con índice por los que se puede ordenar el listado
+    private static final List<String> CAMPOS_ORDEN = List.of("fechaPlanificada", "codigo", "estado", "prioridad", "createdAt");
+    private static final int TAMANO_PAGINA_MAXIMO = 200;
+
+    // Última agregación de estadísticas y la versión de los datos con que se calculó
+    private volatile EstadisticasRutas estadisticas;
+
+    @Value("${app.rutas.optimizacion.presupuesto-ms:200}")
+    private long presupuestoMs;
 
     /**
      * Obtener todas las rutas activas
@@ -34,13 +88,81 @@ public class RutaService {
     }
 
     /**
-     * Obtener rutas con paginación
+     * Obtener rutas activas con cualquier combinación de filtros, paginadas y ordenadas
+     * en una sola consulta
+     * @throws IllegalArgumentException si el campo o la dirección de ordenamiento no son válidos
      */
-    public Page<Ruta> findAll(int page, int size, String sortBy, String sortDirection) {
-        log.debug("Obteniendo rutas - página: {}, tamaño: {}", page, size);
-        Sort sort = Sort.by(Sort.Direction.fromString(sortDirection), sortBy);
-        Pageable pageable = PageRequest.of(page, size, sort);
-        return rutaRepository.findByIsActiveTrue(pageable);
+    public Page<Ruta> findAll(FiltroRutas filtro, int page, int size, String sortBy, String sortDirection) {
+        log.debug("Obteniendo rutas - filtro: {}, página: {}, tamaño: {}", filtro, page, size);
+        if (!CAMPOS_ORDEN.contains(sortBy)) {
+            throw new IllegalArgumentException("No se puede ordenar por '" + sortBy + "'; campos permitidos: "
+                    + String.join(", ", CAMPOS_ORDEN));
+        }
+        // El id desempata los valores repetidos para que las páginas no se solapen
+        Sort sort = Sort.by(Sort.Direction.fromString(sortDirection), sortBy).and(Sort.by("id"));
+        Pageable pageable = PageRequest.of(Math.max(page, 0), Math.min(Math.max(size, 1), TAMANO_PAGINA_MAXIMO), sort);
+
+        Criteria criteria = Criteria.where("isActive").is(true);
+        if (tieneTexto(filtro.getEstado())) {
+            criteria.and("estado").is(filtro.getEstado().trim());
+        }
+        if (tieneTexto(filtro.getPrioridad())) {
+            criteria.and("prioridad").is(filtro.getPrioridad().trim());
+        }
+        // Prefijo anclado y con mayúsculas tal cual: recorre solo el tramo del índice que coincide
+        if (tieneTexto(filtro.getVehiculo())) {
+            criteria.and("vehiculoAsignado").regex(prefijo(filtro.getVehiculo()));
+        }
+        if (tieneTexto(filtro.getConductor())) {
+            criteria.and("conductorAsignado").regex(prefijo(filtro.getConductor()));
+        }
+        if (tieneTexto(filtro.getSearch())) {
+            String texto = contiene(filtro.getSearch());
+            criteria.orOperator(Criteria.where("codigo").regex(texto, "i"), Criteria.where("nombre").regex(texto, "i"));
+        }
+
+        Query query = new Query(criteria).with(pageable);
+        List<Ruta> rutas = mongoTemplate.find(query, Ruta.class);
+        // El total solo se cuenta si la página no alcanza a determinarlo
+        return PageableExecutionUtils.getPage(rutas, pageable,
+                () -> mongoTemplate.count(Query.of(query).limit(-1).skip(-1), Ruta.class));
+    }
+
+    /**
+     * Índices para los filtros del listado combinados con el orden por defecto
+     */
+    @PostConstruct
+    public void crearIndices() {
+        try {
+            IndexOperations indices = mongoTemplate.indexOps(Ruta.class);
+            indices.ensureIndex(new Index().on("isActive", Sort.Direction.ASC).on("fechaPlanificada", Sort.Direction.DESC));
+            indices.ensureIndex(new Index().on("isActive", Sort.Direction.ASC).on("estado", Sort.Direction.ASC)
+                    .on("fechaPlanificada", Sort.Direction.DESC));
+            indices.ensureIndex(new Index().on("isActive", Sort.Direction.ASC).on("prioridad", Sort.Direction.ASC)
+                    .on("fechaPlanificada", Sort.Direction.DESC));
+            indices.ensureIndex(new Index().on("isActive", Sort.Direction.ASC).on("createdAt", Sort.Direction.DESC));
+            indices.ensureIndex(new Index().on("isActive", Sort.Direction.ASC).on("codigo", Sort.Direction.ASC));
+            indices.ensureIndex(new Index().on("isActive", Sort.Direction.ASC).on("vehiculoAsignado", Sort.Direction.ASC)
+                    .on("fechaPlanificada", Sort.Direction.DESC));
+            indices.ensureIndex(new Index().on("isActive", Sort.Direction.ASC).on("conductorAsignado", Sort.Direction.ASC)
+                    .on("fechaPlanificada", Sort.Direction.DESC));
+            // La verificación previa de create/update no alcanza con escrituras simultáneas
+            indices.ensureIndex(new Index().on("codigo", Sort.Direction.ASC).unique().named("codigo_unico"));
+        } catch (Exception e) {
+            log.warn("No se pudieron crear los índices de rutas: {}", e.getMessage());
+        }
+    }
+
+    private static boolean tieneTexto(String valor) {
+        return valor != null && !valor.isBlank();
+    }
+
+    private static String contiene(String texto) {
+        return Pattern.quote(texto.trim());
+    }
+
+    private static String prefijo(String texto) {
+        return "^" + Pattern.quote(texto.trim());
     }
 
     /**
@@ -110,6 +232,7 @@ public class RutaService {
 
     /**
      * Crear nueva ruta
+     * @throws IllegalStateException si el vehículo o el conductor ya tienen otra ruta en ese horario
      */
     public Ruta create(Ruta ruta) {
         log.info("Creando nueva ruta: {}", ruta.getCodigo());
@@ -142,14 +265,16 @@ public class RutaService {
             ruta.setOtrosCostos(BigDecimal.ZERO);
         }
 
+        ruta.setTiempoEstimadoPredichoMinutos(etaService.predecir(ruta));
         ruta.setCreatedAt(LocalDateTime.now());
         ruta.setUpdatedAt(LocalDateTime.now());
 
-        return rutaRepository.save(ruta);
+        return agendaRutasService.reservar(ruta, () -> guardar(ruta));
     }
 
     /**
      * Actualizar ruta
+     * @throws IllegalStateException si el vehículo o el conductor ya tienen otra ruta en ese horario
      */
     public Ruta update(String id, Ruta rutaActualizada) {
         log.info("Actualizando ruta ID: {}", id);
@@ -171,6 +296,8 @@ public class RutaService {
                     rutaExistente.setDescripcion(rutaActualizada.getDescripcion());
                     rutaExistente.setOrigen(rutaActualizada.getOrigen());
                     rutaExistente.setDestino(rutaActualizada.getDestino());
+                    rutaExistente.setUbicacionOrigen(rutaActualizada.getUbicacionOrigen());
+                    rutaExistente.setUbicacionDestino(rutaActualizada.getUbicacionDestino());
                     rutaExistente.setParadas(rutaActualizada.getParadas());
                     rutaExistente.setDistanciaKm(rutaActualizada.getDistanciaKm());
                     rutaExistente.setTiempoEstimadoMinutos(rutaActualizada.getTiempoEstimadoMinutos());
@@ -178,6 +305,8 @@ public class RutaService {
                     rutaExistente.setPrioridad(rutaActualizada.getPrioridad());
                     rutaExistente.setVehiculoAsignado(rutaActualizada.getVehiculoAsignado());
                     rutaExistente.setConductorAsignado(rutaActualizada.getConductorAsignado());
+                    rutaExistente.setCapacidadUnidades(rutaActualizada.getCapacidadUnidades());
+                    rutaExistente.setJornadaMinutos(rutaActualizada.getJornadaMinutos());
                     rutaExistente.setCostoCombustible(rutaActualizada.getCostoCombustible());
                     rutaExistente.setCostoPeajes(rutaActualizada.getCostoPeajes());
                     rutaExistente.setOtrosCostos(rutaActualizada.getOtrosCostos());
@@ -186,15 +315,18 @@ public class RutaService {
                     rutaExistente.setFechaFinalizacion(rutaActualizada.getFechaFinalizacion());
                     rutaExistente.setIsActive(rutaActualizada.getIsActive());
                     rutaExistente.setObservaciones(rutaActualizada.getObservaciones());
+                    rutaExistente.setTiempoEstimadoPredichoMinutos(etaService.predecir(rutaExistente));
                     rutaExistente.setUpdatedAt(LocalDateTime.now());
 
-                    return rutaRepository.save(rutaExistente);
+                    return agendaRutasService.reservar(rutaExistente, () -> guardar(rutaExistente));
                 })
                 .orElseThrow(() -> new NoSuchElementException("Ruta no encontrada con ID: " + id));
     }
 
     /**
      * Cambiar estado de la ruta
+     * @throws NoSuchElementException si la ruta no existe
+     * @throws IllegalStateException si el vehículo o el conductor ya tienen otra ruta en ese horario
      */
     public Ruta cambiarEstado(String id, String nuevoEstado) {
         log.info("Cambiando estado de ruta ID: {} a {}", id, nuevoEstado);
@@ -205,6 +337,37 @@ public class RutaService {
             throw new IllegalArgumentException("Estado inválido: " + nuevoEstado);
         }
         
+        // Escritura en el lugar sin leer la ruta: las fechas de inicio y fin se completan en la
+        // base solo si están vacías. Volver a un estado agendado desde Completada o Cancelada no
+        // entra en este camino, porque antes hay que verificar la agenda
+        Criteria criteria = Criteria.where("id").is(id);
+        if (!ESTADOS_FUERA_DE_AGENDA.contains(nuevoEstado)) {
+            criteria.and("estado").nin(ESTADOS_FUERA_DE_AGENDA);
+        } else if ("Completada".equals(nuevoEstado)) {
+            // Solo una transición real a Completada alimenta el modelo de ETA
+            criteria.and("estado").ne("Completada");
+        }
+        LocalDateTime ahora = LocalDateTime.now();
+        AggregationUpdate update = AggregationUpdate.update()
+                .set("estado").toValue(nuevoEstado)
+                .set("updatedAt").toValue(fechaMongo(ahora));
+        if ("En Proceso".equals(nuevoEstado)) {
+            update.set("fechaInicio").toValue(ConditionalOperators.ifNull("fechaInicio").then(fechaMongo(ahora)));
+        } else if ("Completada".equals(nuevoEstado)) {
+            update.set("fechaFinalizacion").toValue(ConditionalOperators.ifNull("fechaFinalizacion").then(fechaMongo(ahora)));
+        }
+        Ruta actualizada = mongoTemplate.findAndModify(new Query(criteria), update,
+                FindAndModifyOptions.options().returnNew(true), Ruta.class);
+        if (actualizada != null) {
+            versionDatosService.incrementar(Ruta.class);
+            agendaRutasService.registrar(actualizada);
+            if ("Completada".equals(nuevoEstado)) {
+                etaService.aprender(actualizada);
+            }
+            log.info("Estado de ruta {} cambiado a '{}'", id, nuevoEstado);
+            return actualizada;
+        }
+
         return rutaRepository.findById(id)
                 .map(ruta -> {
                     String estadoAnterior = ruta.getEstado();
@@ -212,19 +375,95 @@ public class RutaService {
                     
                     // Actualizar fechas según el estado
                     if ("En Proceso".equals(nuevoEstado) && ruta.getFechaInicio() == null) {
-                        ruta.setFechaInicio(LocalDateTime.now());
+                        ruta.setFechaInicio(ahora);
                     } else if ("Completada".equals(nuevoEstado) && ruta.getFechaFinalizacion() == null) {
-                        ruta.setFechaFinalizacion(LocalDateTime.now());
+                        ruta.setFechaFinalizacion(ahora);
                     }
                     
-                    ruta.setUpdatedAt(LocalDateTime.now());
+                    ruta.setUpdatedAt(ahora);
                     log.info("Estado cambiado de '{}' a '{}' para ruta {}", estadoAnterior, nuevoEstado, id);
                     
-                    return rutaRepository.save(ruta);
+                    Ruta guardada = agendaRutasService.reservar(ruta, () -> guardar(ruta));
+                    if ("Completada".equals(nuevoEstado) && !"Completada".equals(estadoAnterior)) {
+                        etaService.aprender(guardada);
+                    }
+                    return guardada;
                 })
                 .orElseThrow(() -> new NoSuchElementException("Ruta no encontrada con ID: " + id));
     }
 
+    /**
+     * Registrar la llegada a una parada (escritura en el lugar, sin leer la ruta)
+     * @param indice Posición de la parada en la ruta, desde 0
+     * @param hora Hora de llegada, o null para la hora actual
+     * @throws NoSuchElementException si la ruta o la parada no existen
+     * @throws IllegalStateException si la ruta no está en proceso
+     */
+    public Map<String, Object> registrarLlegada(String id, int indice, LocalDateTime hora) {
+        LocalDateTime llegada = hora != null ? hora : LocalDateTime.now();
+        actualizarParada(id, indice, new Update().set("paradas." + indice + ".horaLlegada", llegada));
+        log.info("Llegada a la parada {} de la ruta {} registrada: {}", indice, id, llegada);
+
+        Map<String, Object> resultado = new LinkedHashMap<>();
+        resultado.put("rutaId", id);
+        resultado.put("parada", indice);
+        resultado.put("horaLlegada", llegada);
+        return resultado;
+    }
+
+    /**
+     * Registrar la salida de una parada y marcarla como completada (escritura en el lugar)
+     * @param indice Posición de la parada en la ruta, desde 0
+     * @param hora Hora de salida, o null para la hora actual
+     * @throws NoSuchElementException si la ruta o la parada no existen
+     * @throws IllegalStateException si la ruta no está en proceso
+     */
+    public Map<String, Object> registrarSalida(String id, int indice, LocalDateTime hora) {
+        LocalDateTime salida = hora != null ? hora : LocalDateTime.now();
+        actualizarParada(id, indice, new Update()
+                .set("paradas." + indice + ".horaSalida", salida)
+                .set("paradas." + indice + ".completada", true));
+        log.info("Salida de la parada {} de la ruta {} registrada: {}", indice, id, salida);
+
+        Map<String, Object> resultado = new LinkedHashMap<>();
+        resultado.put("rutaId", id);
+        resultado.put("parada", indice);
+        resultado.put("horaSalida", salida);
+        resultado.put("completada", true);
+        return resultado;
+    }
+
+    private void actualizarParada(String id, int indice, Update update) {
+        if (indice < 0) {
+            throw new NoSuchElementException("Parada inexistente: " + indice);
+        }
+        // La condición sobre paradas.<indice> evita crear una parada que no existe
+        Query query = new Query(Criteria.where("id").is(id)
+                .and("estado").is("En Proceso")
+                .and("paradas." + indice).exists(true));
+        update.set("updatedAt", LocalDateTime.now());
+        if (mongoTemplate.updateFirst(query, update, Ruta.class).getMatchedCount() > 0) {
+            versionDatosService.incrementar(Ruta.class);
+            return;
+        }
+
+        // Solo ante un rechazo se lee la ruta, para informar el motivo
+        Ruta ruta = rutaRepository.findById(id)
+                .orElseThrow(() -> new NoSuchElementException("Ruta no encontrada con ID: " + id));
+        if (!ruta.isEnProceso()) {
+            throw new IllegalStateException("La ruta no está en proceso (estado actual: " + ruta.getEstado() + ")");
+        }
+        throw new NoSuchElementException("La ruta " + ruta.getCodigo() + " no tiene la parada " + indice);
+    }
+
+    /**
+     * Fecha en la misma representación que usa el mapeo de entidades (zona del sistema), para
+     * los valores que van dentro de un pipeline de actualización
+     */
+    private static Date fechaMongo(LocalDateTime fecha) {
+        return Date.from(fecha.atZone(ZoneId.systemDefault()).toInstant());
+    }
+
     /**
      * Eliminar ruta (soft delete)
      */
@@ -235,7 +474,7 @@ public class RutaService {
                 .ifPresent(ruta -> {
                     ruta.setIsActive(false);
                     ruta.setUpdatedAt(LocalDateTime.now());
-                    rutaRepository.save(ruta);
+                    agendaRutasService.registrar(guardar(ruta));
                 });
     }
 
@@ -245,79 +484,319 @@ public class RutaService {
     public void deleteHard(String id) {
         log.warn("Eliminación permanente de ruta ID: {}", id);
         rutaRepository.deleteById(id);
+        agendaRutasService.retirar(id);
+        versionDatosService.incrementar(Ruta.class);
+    }
+
+    /**
+     * Reordenar las paradas para minimizar el recorrido y recalcular distancia, tiempo
+     * estimado y costo de combustible (proporcional a la distancia)
+     * @param aplicar false para solo calcular la propuesta sin guardar
+     * @throws NoSuchElementException si la ruta no existe
+     * @throws IllegalArgumentException si faltan coordenadas de origen o de alguna parada
+     * @throws IllegalStateException si la ruta ya no está planificada, cambió mientras se
+     *         optimizaba o el nuevo horario choca en la agenda
+     */
+    public Map<String, Object> optimizarParadas(String id, boolean aplicar) {
+        Ruta ruta = rutaRepository.findById(id)
+                .orElseThrow(() -> new NoSuchElementException("Ruta no encontrada con ID: " + id));
+        if (!"Planificada".equals(ruta.getEstado()) && !"Suspendida".equals(ruta.getEstado())) {
+            throw new IllegalStateException("Solo se pueden optimizar rutas planificadas o suspendidas (estado actual: "
+                    + ruta.getEstado() + ")");
+        }
+        long inicio = System.nanoTime();
+        PropuestaRuta propuesta = proponer(ruta);
+        String estadoLeido = ruta.getEstado();
+        LocalDateTime leidaEn = ruta.getUpdatedAt();
+        propuesta.aplicarA(ruta);
+        if (aplicar) {
+            // Los tiempos cambian: la agenda se verifica antes de escribir, y solo se escribe
+            // si la ruta sigue como se leyó (mismo estado y misma fecha de actualización)
+            LocalDateTime ahora = LocalDateTime.now();
+            ruta = agendaRutasService.reservar(ruta, () -> guardarOptimizacion(propuesta, estadoLeido, leidaEn, ahora));
+        }
+        log.info("Ruta {} optimizada en {} ms: {} paradas, {} km -> {} km{}", id,
+                (System.nanoTime() - inicio) / 1_000_000, propuesta.paradas.size(),
+                kilometros(propuesta.distanciaAnterior), propuesta.distanciaKm, aplicar ? "" : " (sin aplicar)");
+
+        Map<String, Object> resultado = new LinkedHashMap<>();
+        resultado.put("ruta", ruta);
+        resultado.put("distanciaAnteriorKm", kilometros(propuesta.distanciaAnterior));
+        resultado.put("distanciaKm", propuesta.distanciaKm);
+        resultado.put("ahorroKm", kilometros(propuesta.ahorroKm()));
+        resultado.put("tiempoEstimadoMinutos", propuesta.tiempoMinutos);
+        resultado.put("aplicado", aplicar);
+        return resultado;
+    }
+
+    /**
+     * Optimizar en paralelo todas las rutas planificadas de un día y guardar los cambios con
+     * una única escritura masiva. Las rutas sin coordenadas, y las que cambiaron entre la
+     * lectura y la escritura, se omiten con el motivo.
+     * @param aplicar false para solo calcular el resumen sin guardar
+     */
+    public Map<String, Object> planificarDia(LocalDate fecha, boolean aplicar) {
+        long inicio = System.nanoTime();
+        List<Ruta> rutas = rutaRepository.findRutasPlanificadasForDate(fecha.atStartOfDay(), fecha.plusDays(1).atStartOfDay());
+
+        // Cada ruta se optimiza de forma independiente (CPU pura): un hilo por núcleo
+        List<PropuestaRuta> propuestas;
+        try {
+            propuestas = planificador.submit(() -> rutas.parallelStream()
+                    .map(this::proponerSinFallar)
+                    .collect(Collectors.toList())).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Planificación interrumpida", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Error al planificar el día: " + e.getCause().getMessage(), e.getCause());
+        }
+
+        List<PropuestaRuta> validas = new ArrayList<>();
+        List<Map<String, String>> omitidas = new ArrayList<>();
+        for (PropuestaRuta propuesta : propuestas) {
+            if (propuesta.error != null) {
+                omitidas.add(Map.of("id", propuesta.ruta.getId(), "codigo", String.valueOf(propuesta.ruta.getCodigo()),
+                        "motivo", propuesta.error));
+            } else {
+                validas.add(propuesta);
+            }
+        }
+
+        long actualizadas = 0;
+        if (aplicar && !validas.isEmpty()) {
+            // Precisión de milisegundos, la que guarda Mongo, para reconocer la escritura al releer
+            LocalDateTime ahora = LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+            BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Ruta.class);
+            for (PropuestaRuta propuesta : validas) {
+                // Solo si sigue planificada y sin cambios desde la lectura: no se reordena una
+                // ruta que ya salió ni se pisan ediciones hechas mientras se optimizaba
+                Query query = new Query(Criteria.where("id").is(propuesta.ruta.getId())
+                        .and("estado").is("Planificada")
+                        .and("updatedAt").is(propuesta.ruta.getUpdatedAt()));
+                bulk.updateOne(query, propuesta.update(ahora));
+            }
+            actualizadas = bulk.execute().getModifiedCount();
+            versionDatosService.incrementar(Ruta.class);
+            // Los tiempos cambiaron: reflejar en la agenda el estado guardado de las rutas
+            List<String> ids = validas.stream().map(propuesta -> propuesta.ruta.getId()).toList();
+            Set<String> aplicadas = new HashSet<>();
+            for (Ruta guardada : mongoTemplate.find(new Query(Criteria.where("id").in(ids)), Ruta.class)) {
+                agendaRutasService.registrar(guardada);
+                if (ahora.equals(guardada.getUpdatedAt())) {
+                    aplicadas.add(guardada.getId());
+                }
+            }
+            for (Iterator<PropuestaRuta> it = validas.iterator(); it.hasNext(); ) {
+                Ruta ruta = it.next().ruta;
+                if (!aplicadas.contains(ruta.getId())) {
+                    it.remove();
+                    omitidas.add(Map.of("id", ruta.getId(), "codigo", String.valueOf(ruta.getCodigo()),
+                            "motivo", "La ruta cambió durante la planificación"));
+                }
+            }
+        }
+
+        double ahorroKm = validas.stream().mapToDouble(PropuestaRuta::ahorroKm).sum();
+        long ahorroMinutos = validas.stream().mapToLong(PropuestaRuta::ahorroMinutos).sum();
+        long duracionMs = (System.nanoTime() - inicio) / 1_000_000;
+        log.info("Plan del día {}: {} rutas, {} optimizadas, {} omitidas, {} km y {} min ahorrados en {} ms", fecha,
+                rutas.size(), validas.size(), omitidas.size(), kilometros(ahorroKm), ahorroMinutos, duracionMs);
+
+        Map<String, Object> resumen = new LinkedHashMap<>();
+        resumen.put("fecha", fecha);
+        resumen.put("rutas", rutas.size());
+        resumen.put("optimizadas", validas.size());
+        resumen.put("actualizadas", actualizadas);
+        resumen.put("omitidas", omitidas);
+        resumen.put("distanciaAnteriorKm", kilometros(validas.stream().mapToDouble(p -> p.distanciaAnterior).sum()));
+        resumen.put("distanciaKm", kilometros(validas.stream().mapToDouble(p -> p.distancia).sum()));
+        resumen.put("ahorroKm", kilometros(ahorroKm));
+        resumen.put("ahorroMinutos", ahorroMinutos);
+        resumen.put("duracionMs", duracionMs);
+        resumen.put("aplicado", aplicar);
+        return resumen;
+    }
+
+    @PreDestroy
+    public void detenerPlanificador() {
+        planificador.shutdownNow();
+    }
+
+    /**
+     * Escribir solo los campos de la optimización, con la ruta en el estado y la versión leídos
+     * @throws IllegalStateException si la ruta cambió desde la lectura
+     */
+    private Ruta guardarOptimizacion(PropuestaRuta propuesta, String estadoLeido, LocalDateTime leidaEn,
+                                     LocalDateTime ahora) {
+        Query query = new Query(Criteria.where("id").is(propuesta.ruta.getId())
+                .and("estado").is(estadoLeido)
+                .and("updatedAt").is(leidaEn));
+        Ruta actualizada = mongoTemplate.findAndModify(query, propuesta.update(ahora),
+                FindAndModifyOptions.options().returnNew(true), Ruta.class);
+        if (actualizada == null) {
+            throw new IllegalStateException("La ruta " + propuesta.ruta.getCodigo()
+                    + " cambió mientras se optimizaba; vuelva a intentarlo");
+        }
+        versionDatosService.incrementar(Ruta.class);
+        return actualizada;
+    }
+
+    private PropuestaRuta proponerSinFallar(Ruta ruta) {
+        try {
+            return proponer(ruta);
+        } catch (IllegalArgumentException e) {
+            return PropuestaRuta.fallida(ruta, e.getMessage());
+        }
+    }
+
+    /**
+     * Calcular el mejor orden de paradas de una ruta sin modificarla
+     * @throws IllegalArgumentException si faltan coordenadas de origen o de alguna parada
+     */
+    private PropuestaRuta proponer(Ruta ruta) {
+        List<Ruta.Parada> paradas = ruta.getParadas() != null ? ruta.getParadas() : List.of();
+
+        List<Ubicacion> puntos = new ArrayList<>(paradas.size() + 2);
+        puntos.add(validarUbicacion(ruta.getUbicacionOrigen(), "el origen"));
+        for (int i = 0; i < paradas.size(); i++) {
+            puntos.add(validarUbicacion(paradas.get(i).getUbicacion(), "la parada " + (i + 1)));
+        }
+        boolean destinoFijo = ruta.getUbicacionDestino() != null;
+        if (destinoFijo) {
+            puntos.add(validarUbicacion(ruta.getUbicacionDestino(), "el destino"));
+        }
+
+        MatrizDistancias matriz = distanciasService.matriz(puntos);
+        int[] actual = new int[paradas.size()];
+        Arrays.setAll(actual, i -> i);
+        int[] orden = OptimizadorRuta.optimizar(matriz, destinoFijo, presupuestoMs * 1_000_000L);
+
+        PropuestaRuta propuesta = new PropuestaRuta(ruta);
+        for (int indice : orden) {
+            propuesta.paradas.add(paradas.get(indice));
+        }
+        propuesta.distanciaAnterior = OptimizadorRuta.distanciaKm(matriz, actual, destinoFijo);
+        propuesta.distancia = OptimizadorRuta.distanciaKm(matriz, orden, destinoFijo);
+        propuesta.distanciaKm = BigDecimal.valueOf(Math.max(propuesta.distancia, 0.1)).setScale(2, RoundingMode.HALF_UP);
+        // Solo el recorrido: el tiempo de las paradas lo suma Ruta.getTiempoTotalConParadas
+        propuesta.tiempoAnteriorMinutos = minutosRecorrido(matriz, actual, destinoFijo);
+        propuesta.tiempoMinutos = Math.max(1, minutosRecorrido(matriz, orden, destinoFijo));
+        // La predicción depende de la distancia: sin recalcularla quedaría la del orden anterior
+        propuesta.tiempoPredichoMinutos = etaService.predecir(propuesta.distanciaKm.doubleValue(),
+                propuesta.paradas.size(), ruta.getPrioridad(), ruta.getFechaPlanificada());
+
+        // El costo de combustible se escala con la distancia, conservando el costo por km cargado
+        BigDecimal distanciaPrevia = ruta.getDistanciaKm();
+        if (ruta.getCostoCombustible() != null && ruta.getCostoCombustible().signum() > 0
+                && distanciaPrevia != null && distanciaPrevia.signum() > 0) {
+            propuesta.costoCombustible = ruta.getCostoCombustible().multiply(propuesta.distanciaKm)
+                    .divide(distanciaPrevia, 2, RoundingMode.HALF_UP);
+        }
+        return propuesta;
+    }
+
+    private static int minutosRecorrido(MatrizDistancias matriz, int[] orden, boolean destinoFijo) {
+        return (int) Math.ceil(OptimizadorRuta.minutos(matriz, orden, destinoFijo));
+    }
+
+    private static BigDecimal kilometros(double km) {
+        return BigDecimal.valueOf(km).setScale(2, RoundingMode.HALF_UP);
+    }
+
+    private static Ubicacion validarUbicacion(Ubicacion ubicacion, String punto) {
+        if (ubicacion == null || ubicacion.getLatitud() == null || ubicacion.getLongitud() == null) {
+            throw new IllegalArgumentException("Faltan las coordenadas de " + punto);
+        }
+        if (Math.abs(ubicacion.getLatitud()) > 90 || Math.abs(ubicacion.getLongitud()) > 180) {
+            throw new IllegalArgumentException("Coordenadas inválidas para " + punto);
+        }
+        return ubicacion;
     }
 
     /**
      * Obtener estadísticas de rutas
+     *
+     * Una sola agregación ($facet) cuenta por estado y prioridad y suma costos, distancia y
+     * tiempo en la base. El resultado se conserva mientras no cambie la versión de los datos
+     * de rutas, de modo que las consultas repetidas no vuelven a la base.
      */
     public Map<String, Object> getStats() {
-        log.debug("Calculando estadísticas de rutas");
-        
-        List<Ruta> allRutas = rutaRepository.findByIsActiveTrue();
-        
+        String version = versionDatosService.version(Ruta.class);
+        EstadisticasRutas actuales = estadisticas;
+        if (actuales == null || !actuales.version.equals(version)) {
+            log.debug("Calculando estadísticas de rutas (versión {})", version);
+            actuales = new EstadisticasRutas(version, calcularStats());
+            estadisticas = actuales;
+        }
+        return new HashMap<>(actuales.stats);
+    }
+
+    private Map<String, Object> calcularStats() {
+        Aggregation aggregation = Aggregation.newAggregation(
+                match(Criteria.where("isActive").is(true)),
+                facet(group("estado").count().as("total")).as("porEstado")
+                        .and(group("prioridad").count().as("total")).as("porPrioridad")
+                        .and(group()
+                                .count().as("totalRutas")
+                                .sum(ConvertOperators.valueOf("costoCombustible").convertToDecimal()).as("combustible")
+                                .sum(ConvertOperators.valueOf("costoPeajes").convertToDecimal()).as("peajes")
+                                .sum(ConvertOperators.valueOf("otrosCostos").convertToDecimal()).as("otros")
+                                .sum(ConvertOperators.valueOf("distanciaKm").convertToDecimal()).as("distancia")
+                                .sum("tiempoEstimadoMinutos").as("minutos")).as("totales"));
+        Document resultado = mongoTemplate.aggregate(aggregation, Ruta.class, Document.class).getUniqueMappedResult();
+
+        Map<String, Long> porEstado = conteos(resultado.getList("porEstado", Document.class));
+        Map<String, Long> porPrioridad = conteos(resultado.getList("porPrioridad", Document.class));
+        List<Document> filasTotales = resultado.getList("totales", Document.class);
+        Document totales = filasTotales.isEmpty() ? new Document() : filasTotales.get(0);
+
         Map<String, Object> stats = new HashMap<>();
         
         // Totales generales
-        stats.put("totalRutas", allRutas.size());
-        stats.put("totalActivas", allRutas.stream().filter(Ruta::getIsActive).count());
-        
-        // Por estado
-        Map<String, Long> porEstado = allRutas.stream()
-                .collect(Collectors.groupingBy(Ruta::getEstado, Collectors.counting()));
+        long totalRutas = totales.get("totalRutas", Number.class) != null ? totales.get("totalRutas", Number.class).longValue() : 0;
+        stats.put("totalRutas", totalRutas);
+        stats.put("totalActivas", totalRutas);
         stats.put("porEstado", porEstado);
-        
-        // Por prioridad
-        Map<String, Long> porPrioridad = allRutas.stream()
-                .collect(Collectors.groupingBy(Ruta::getPrioridad, Collectors.counting()));
         stats.put("porPrioridad", porPrioridad);
-        
-        // Rutas en proceso
-        long rutasEnProceso = allRutas.stream()
-                .filter(Ruta::isEnProceso)
-                .count();
-        stats.put("rutasEnProceso", rutasEnProceso);
-        
-        // Rutas completadas
-        long rutasCompletadas = allRutas.stream()
-                .filter(Ruta::isCompletada)
-                .count();
-        stats.put("rutasCompletadas", rutasCompletadas);
+        stats.put("rutasEnProceso", porEstado.getOrDefault("En Proceso", 0L));
+        stats.put("rutasCompletadas", porEstado.getOrDefault("Completada", 0L));
         
         // Costos totales
-        BigDecimal costoTotalCombustible = allRutas.stream()
-                .map(Ruta::getCostoCombustible)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        BigDecimal costoTotalCombustible = decimal(totales.get("combustible"));
+        BigDecimal costoTotalPeajes = decimal(totales.get("peajes"));
+        BigDecimal costoTotalOtros = decimal(totales.get("otros"));
         stats.put("costoTotalCombustible", costoTotalCombustible);
-        
-        BigDecimal costoTotalPeajes = allRutas.stream()
-                .map(Ruta::getCostoPeajes)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
         stats.put("costoTotalPeajes", costoTotalPeajes);
-        
-        BigDecimal costoTotalOtros = allRutas.stream()
-                .map(Ruta::getOtrosCostos)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
         stats.put("costoTotalOtros", costoTotalOtros);
+        stats.put("costoTotal", costoTotalCombustible.add(costoTotalPeajes).add(costoTotalOtros));
         
-        BigDecimal costoTotal = costoTotalCombustible.add(costoTotalPeajes).add(costoTotalOtros);
-        stats.put("costoTotal", costoTotal);
-        
-        // Distancia total
-        BigDecimal distanciaTotal = allRutas.stream()
-                .map(Ruta::getDistanciaKm)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-        stats.put("distanciaTotal", distanciaTotal);
-        
-        // Tiempo total estimado
-        int tiempoTotalMinutos = allRutas.stream()
-                .mapToInt(Ruta::getTiempoEstimadoMinutos)
-                .sum();
+        // Distancia y tiempo total estimado
+        stats.put("distanciaTotal", decimal(totales.get("distancia")));
+        int tiempoTotalMinutos = totales.get("minutos", Number.class) != null ? totales.get("minutos", Number.class).intValue() : 0;
         stats.put("tiempoTotalMinutos", tiempoTotalMinutos);
         stats.put("tiempoTotalHoras", tiempoTotalMinutos / 60.0);
         
         return stats;
     }
 
+    private static Map<String, Long> conteos(List<Document> grupos) {
+        Map<String, Long> conteos = new HashMap<>();
+        for (Document grupo : grupos) {
+            if (grupo.get("_id") != null) {
+                conteos.put(grupo.get("_id").toString(), ((Number) grupo.get("total")).longValue());
+            }
+        }
+        return conteos;
+    }
+
+    private static BigDecimal decimal(Object valor) {
+        if (valor instanceof Decimal128 decimal) {
+            return decimal.bigDecimalValue();
+        }
+        return valor instanceof Number numero ? new BigDecimal(numero.toString()) : BigDecimal.ZERO;
+    }
+
     /**
      * Contar rutas activas
      */
@@ -331,4 +810,88 @@ public class RutaService {
     public long countByEstado(String estado) {
         return rutaRepository.countByEstado(estado);
     }
+
+    /**
+     * Guardar y registrar el cambio en la versión de datos de la colección
+     */
+    private Ruta guardar(Ruta ruta) {
+        Ruta guardado;
+        try {
+            guardado = rutaRepository.save(ruta);
+        } catch (DuplicateKeyException e) {
+            throw new IllegalArgumentException("Ya existe una ruta con el código: " + ruta.getCodigo());
+        }
+        versionDatosService.incrementar(Ruta.class);
+        return guardado;
+    }
+
+    private static class EstadisticasRutas {
+        private final String version;
+        private final Map<String, Object> stats;
+
+        EstadisticasRutas(String version, Map<String, Object> stats) {
+            this.version = version;
+            this.stats = stats;
+        }
+    }
+
+    /**
+     * Nuevo orden de paradas de una ruta con sus estimaciones, o el motivo por el que no se pudo optimizar
+     */
+    private static class PropuestaRuta {
+        private final Ruta ruta;
+        private final List<Ruta.Parada> paradas = new ArrayList<>();
+        private double distanciaAnterior;
+        private double distancia;
+        private BigDecimal distanciaKm;
+        private int tiempoAnteriorMinutos;
+        private int tiempoMinutos;
+        private Integer tiempoPredichoMinutos;
+        private BigDecimal costoCombustible;
+        private String error;
+
+        PropuestaRuta(Ruta ruta) {
+            this.ruta = ruta;
+        }
+
+        static PropuestaRuta fallida(Ruta ruta, String error) {
+            PropuestaRuta propuesta = new PropuestaRuta(ruta);
+            propuesta.error = error;
+            return propuesta;
+        }
+
+        double ahorroKm() {
+            return Math.max(0, distanciaAnterior - distancia);
+        }
+
+        long ahorroMinutos() {
+            return Math.max(0, tiempoAnteriorMinutos - tiempoMinutos);
+        }
+
+        /**
+         * Campos que cambia la optimización, para escribirlos sin reemplazar el documento
+         */
+        Update update(LocalDateTime ahora) {
+            Update update = new Update()
+                    .set("paradas", paradas)
+                    .set("distanciaKm", distanciaKm)
+                    .set("tiempoEstimadoMinutos", tiempoMinutos)
+                    .set("tiempoEstimadoPredichoMinutos", tiempoPredichoMinutos)
+                    .set("updatedAt", ahora);
+            if (costoCombustible != null) {
+                update.set("costoCombustible", costoCombustible);
+            }
+            return update;
+        }
+
+        void aplicarA(Ruta destino) {
+            destino.setParadas(paradas);
+            destino.setDistanciaKm(distanciaKm);
+            destino.setTiempoEstimadoMinutos(tiempoMinutos);
+            destino.setTiempoEstimadoPredichoMinutos(tiempoPredichoMinutos);
+            if (costoCombustible != null) {
+                destino.setCostoCombustible(costoCombustible);
+            }
+        }
+    }
 }
@@ -0,0 +1,277 @@
+package com.logistock.service;
+
+import com.logistock.model.Product;
+import com.logistock.stock.ContadorFranjas;
+import com.logistock.stock.DiarioStock;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalInt;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+/**
+ * Stock de productos de alta demanda (hot SKUs) llevado en memoria
+ *
+ * Para los productos marcados, el stock disponible autoritativo es un contador por
+ * franjas en memoria: las reservas son CAS sobre la franja del hilo y no tocan la base.
+ * Cada cambio se agrega al diario en disco y una tarea periódica rota el diario y vuelca
+ * el cambio neto por producto con una única escritura masiva ($inc). Al iniciar se
+ * aplican los lotes que hayan quedado pendientes y se cargan los contadores.
+ *
+ * Ante una caída del proceso no se pierden cambios (el diario está en el page cache);
+ * ante una caída del sistema se puede perder a lo sumo el último intervalo de volcado.
+ * Los contadores son locales a esta instancia: el modo caliente supone una sola
+ * instancia escribiendo el stock de esos productos.
+ */
+@Service
+@Slf4j
+public class StockCalienteService {
+
+    private final MongoTemplate mongoTemplate;
+    private final VersionDatosService versionDatosService;
+    private final Path directorio;
+    private final int franjas;
+
+    private final ConcurrentMap<String, ContadorFranjas> contadores = new ConcurrentHashMap<>();
+    // Operaciones (y escrituras del camino normal): lectura; activar/desactivar un producto: escritura
+    private final ReentrantReadWriteLock bloqueo = new ReentrantReadWriteLock();
+    private DiarioStock diario;
+
+    public StockCalienteService(MongoTemplate mongoTemplate,
+                                VersionDatosService versionDatosService,
+                                @Value("${app.stock.caliente.directorio:data/stock-caliente}") String directorio,
+                                @Value("${app.stock.caliente.franjas:0}") int franjas) {
+        this.mongoTemplate = mongoTemplate;
+        this.versionDatosService = versionDatosService;
+        this.directorio = Paths.get(directorio);
+        this.franjas = franjas > 0 ? franjas : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Aplicar los lotes pendientes de una ejecución anterior y cargar los contadores
+     */
+    @PostConstruct
+    public void iniciar() throws IOException {
+        diario = new DiarioStock(directorio);
+        try {
+            if (!aplicarPendientes()) {
+                log.warn("Quedaron lotes de stock caliente sin aplicar; los productos calientes quedan en modo normal");
+                return;
+            }
+            List<Product> calientes = mongoTemplate.find(new Query(Criteria.where("hotSku").is(true)), Product.class);
+            for (Product producto : calientes) {
+                contadores.put(producto.getId(), new ContadorFranjas(franjas, stockDe(producto)));
+            }
+            log.info("Stock caliente: {} productos cargados en {} franjas", calientes.size(), franjas);
+        } catch (Exception e) {
+            log.warn("No se pudo cargar el stock caliente: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void detener() throws IOException {
+        volcar();
+        diario.close();
+    }
+
+    /**
+     * Stock disponible de un producto caliente (vacío si el producto no es caliente)
+     */
+    public OptionalInt disponible(String productId) {
+        ContadorFranjas contador = contadores.get(productId);
+        return contador != null ? OptionalInt.of((int) contador.disponible()) : OptionalInt.empty();
+    }
+
+    /**
+     * Reservar stock de un producto caliente
+     * @return true/false según haya stock suficiente, o null si el producto no es caliente
+     */
+    public Boolean reservar(String productId, int cantidad) {
+        bloqueo.readLock().lock();
+        try {
+            ContadorFranjas contador = contadores.get(productId);
+            if (contador == null) {
+                return null;
+            }
+            if (!contador.reservar(cantidad)) {
+                return false;
+            }
+            try {
+                diario.registrar(productId, -cantidad);
+            } catch (IOException e) {
+                contador.agregar(cantidad);
+                throw new UncheckedIOException("No se pudo registrar la reserva en el diario de stock", e);
+            }
+            return true;
+        } finally {
+            bloqueo.readLock().unlock();
+        }
+    }
+
+    /**
+     * Agregar (o devolver) stock a un producto caliente
+     * @return false si el producto no es caliente
+     */
+    public boolean agregar(String productId, int cantidad) {
+        return ajustar(productId, cantidad).isPresent();
+    }
+
+    /**
+     * Ajustar el stock de un producto caliente en un valor con signo. El contador no
+     * baja de cero, así que un ajuste negativo mayor que lo disponible se aplica en
+     * parte; al diario va solo lo aplicado.
+     * @return Ajuste aplicado, o vacío si el producto no es caliente
+     */
+    public OptionalInt ajustar(String productId, int diferencia) {
+        bloqueo.readLock().lock();
+        try {
+            ContadorFranjas contador = contadores.get(productId);
+            if (contador == null) {
+                return OptionalInt.empty();
+            }
+            int aplicado = (int) contador.ajustar(diferencia);
+            try {
+                diario.registrar(productId, aplicado);
+            } catch (IOException e) {
+                contador.ajustar(-aplicado);
+                throw new UncheckedIOException("No se pudo registrar el ajuste en el diario de stock", e);
+            }
+            return OptionalInt.of(aplicado);
+        } finally {
+            bloqueo.readLock().unlock();
+        }
+    }
+
+    /**
+     * Ejecutar una operación de stock sin que ningún producto cambie de modo mientras tanto
+     *
+     * El camino normal decide que un producto no es caliente y después escribe el
+     * documento; si activar ocurriera en medio, sembraría el contador con un stock que aún
+     * no refleja esa escritura, y el volcado siguiente la perdería. activar y desactivar
+     * esperan a que terminen las operaciones en curso.
+     */
+    public <T> T sinCambioDeModo(Supplier<T> operacion) {
+        bloqueo.readLock().lock();
+        try {
+            return operacion.get();
+        } finally {
+            bloqueo.readLock().unlock();
+        }
+    }
+
+    public void sinCambioDeModo(Runnable operacion) {
+        sinCambioDeModo(() -> {
+            operacion.run();
+            return null;
+        });
+    }
+
+    /**
+     * Pasar un producto a modo caliente
+     * @throws IllegalArgumentException si el producto no existe
+     */
+    public void activar(String productId) {
+        bloqueo.writeLock().lock();
+        try {
+            if (contadores.containsKey(productId)) {
+                return;
+            }
+            Product producto = mongoTemplate.findAndModify(
+                    new Query(Criteria.where("id").is(productId)),
+                    new Update().set("hotSku", true),
+                    Product.class);
+            if (producto == null) {
+                throw new IllegalArgumentException("Producto no encontrado con ID: " + productId);
+            }
+            // Con el bloqueo de escritura no hay escrituras del camino normal en curso
+            Product actual = mongoTemplate.findById(productId, Product.class);
+            contadores.put(productId, new ContadorFranjas(franjas, stockDe(actual != null ? actual : producto)));
+            log.info("Producto {} en modo stock caliente", productId);
+        } finally {
+            bloqueo.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Volver un producto al modo normal: se vuelca su stock pendiente a la base
+     * antes de que las escrituras pasen a ir directo al documento
+     */
+    public void desactivar(String productId) {
+        bloqueo.writeLock().lock();
+        try {
+            if (contadores.remove(productId) == null) {
+                return;
+            }
+            volcar();
+            mongoTemplate.updateFirst(new Query(Criteria.where("id").is(productId)),
+                    new Update().set("hotSku", false), Product.class);
+            log.info("Producto {} vuelve al modo de stock normal", productId);
+        } finally {
+            bloqueo.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Rotar el diario y volcar los cambios netos a la base
+     */
+    @Scheduled(fixedDelayString = "${app.stock.caliente.volcado-ms:200}")
+    public void volcar() {
+        try {
+            diario.rotar();
+            aplicarPendientes();
+        } catch (Exception e) {
+            log.error("Error al volcar el stock caliente: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Aplicar los lotes del diario en orden. Cada documento guarda el último lote
+     * aplicado, de modo que reaplicar un lote tras una caída no lo duplica.
+     * @return true si no quedaron lotes pendientes
+     */
+    private synchronized boolean aplicarPendientes() throws IOException {
+        for (Path lote : diario.lotesPendientes()) {
+            long secuencia = DiarioStock.secuencia(lote);
+            Map<String, Long> deltas = DiarioStock.leer(lote);
+            deltas.values().removeIf(delta -> delta == 0);
+            if (!deltas.isEmpty()) {
+                try {
+                    BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Product.class);
+                    deltas.forEach((productId, delta) -> bulk.updateOne(
+                            new Query(Criteria.where("id").is(productId).and("ultimoLoteCaliente").not().gte(secuencia)),
+                            new Update().inc("stock", delta).set("ultimoLoteCaliente", secuencia)));
+                    bulk.execute();
+                    versionDatosService.incrementar(Product.class);
+                } catch (Exception e) {
+                    log.error("No se pudo aplicar el lote de stock {}: {}", lote.getFileName(), e.getMessage());
+                    return false;
+                }
+            }
+            Files.deleteIfExists(lote);
+        }
+        return true;
+    }
+
+    private static long stockDe(Product producto) {
+        return producto.getStock() != null ? producto.getStock() : 0;
+    }
+}
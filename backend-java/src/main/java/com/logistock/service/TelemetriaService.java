@@ -0,0 +1,366 @@
+package com.logistock.service;
+
+import com.logistock.dto.LotePosicionesRequest;
+import com.logistock.model.TelemetriaVehiculo;
+import com.logistock.telemetria.AnilloMpsc;
+import com.logistock.telemetria.PosicionGps;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Ingesta de posiciones GPS de los vehículos
+ *
+ * Cada vehículo tiene un anillo acotado sin bloqueos en el que los hilos HTTP dejan sus
+ * posiciones, y la última posición conocida se guarda aparte en memoria, de donde se sirve
+ * la vista en vivo. Una tarea periódica vacía los anillos y escribe todo con una única
+ * escritura masiva: un upsert con $push por vehículo y bloque de tiempo.
+ *
+ * La memoria está acotada por la cantidad de vehículos y la capacidad de cada anillo: si un
+ * anillo se llena entre dos volcados, las posiciones nuevas se descartan y se cuentan. Los
+ * vehículos sin posiciones durante el tiempo de inactividad se retiran de memoria.
+ */
+@Service
+@Slf4j
+public class TelemetriaService {
+
+    // Máximo de posiciones por escritura masiva
+    private static final int LOTE_ESCRITURA = 5000;
+
+    private final MongoTemplate mongoTemplate;
+    private final int capacidadPorVehiculo;
+    private final int maximoVehiculos;
+    private final long minutosBloque;
+    private final long inactividadMs;
+
+    private final ConcurrentMap<String, Canal> canales = new ConcurrentHashMap<>();
+    private final AtomicLong aceptadas = new AtomicLong();
+    private final AtomicLong rechazadas = new AtomicLong();
+    private final AtomicLong descartadas = new AtomicLong();
+    private final AtomicLong escritas = new AtomicLong();
+
+    public TelemetriaService(MongoTemplate mongoTemplate,
+                             @Value("${app.telemetria.capacidad-por-vehiculo:1024}") int capacidadPorVehiculo,
+                             @Value("${app.telemetria.maximo-vehiculos:10000}") int maximoVehiculos,
+                             @Value("${app.telemetria.minutos-bloque:60}") long minutosBloque,
+                             @Value("${app.telemetria.inactividad-minutos:30}") long inactividadMinutos) {
+        this.mongoTemplate = mongoTemplate;
+        this.capacidadPorVehiculo = capacidadPorVehiculo;
+        this.maximoVehiculos = maximoVehiculos;
+        this.minutosBloque = Math.max(1, minutosBloque);
+        this.inactividadMs = inactividadMinutos * 60_000;
+    }
+
+    @PostConstruct
+    public void crearIndices() {
+        try {
+            mongoTemplate.indexOps(TelemetriaVehiculo.class)
+                    .ensureIndex(new Index().on("vehiculo", Sort.Direction.ASC).on("inicio", Sort.Direction.ASC));
+        } catch (Exception e) {
+            log.warn("No se pudieron crear los índices de telemetría: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void detener() {
+        volcar();
+    }
+
+    /**
+     * Recibir un lote de posiciones; no espera a la escritura en la base
+     * @return cantidades recibidas, aceptadas, rechazadas (datos inválidos) y descartadas (sin lugar)
+     */
+    public Map<String, Object> registrar(List<LotePosicionesRequest.Posicion> posiciones) {
+        LocalDateTime ahora = LocalDateTime.now();
+        long recibidoMs = System.currentTimeMillis();
+        int aceptadasLote = 0;
+        int rechazadasLote = 0;
+        int descartadasLote = 0;
+        for (LotePosicionesRequest.Posicion posicion : posiciones) {
+            String vehiculo = posicion != null ? clave(posicion.getVehiculo()) : null;
+            if (vehiculo == null || !coordenadasValidas(posicion)) {
+                rechazadasLote++;
+                continue;
+            }
+            Canal canal = tomarCanal(vehiculo);
+            if (canal == null) {
+                descartadasLote++;
+                continue;
+            }
+            PosicionGps gps = new PosicionGps(vehiculo, posicion.getRutaId(), posicion.getLatitud(), posicion.getLongitud(),
+                    posicion.getVelocidadKmh(), posicion.getRumbo(), posicion.getFecha() != null ? posicion.getFecha() : ahora);
+            try {
+                canal.ultimoMs = recibidoMs;
+                canal.ultima.accumulateAndGet(gps, TelemetriaService::masReciente);
+                if (canal.anillo.ofrecer(gps)) {
+                    aceptadasLote++;
+                } else {
+                    descartadasLote++;
+                }
+            } finally {
+                canal.soltar();
+            }
+        }
+        aceptadas.addAndGet(aceptadasLote);
+        rechazadas.addAndGet(rechazadasLote);
+        descartadas.addAndGet(descartadasLote);
+        if (descartadasLote > 0) {
+            log.warn("Telemetría: {} posiciones descartadas por falta de lugar", descartadasLote);
+        }
+
+        Map<String, Object> resultado = new LinkedHashMap<>();
+        resultado.put("recibidas", posiciones.size());
+        resultado.put("aceptadas", aceptadasLote);
+        resultado.put("rechazadas", rechazadasLote);
+        resultado.put("descartadas", descartadasLote);
+        return resultado;
+    }
+
+    /**
+     * Última posición de cada vehículo activo, desde memoria
+     */
+    public List<PosicionGps> ultimasPosiciones() {
+        List<PosicionGps> posiciones = new ArrayList<>(canales.size());
+        for (Canal canal : canales.values()) {
+            PosicionGps ultima = canal.ultima.get();
+            if (ultima != null) {
+                posiciones.add(ultima);
+            }
+        }
+        posiciones.sort(Comparator.comparing(PosicionGps::getVehiculo));
+        return posiciones;
+    }
+
+    public Optional<PosicionGps> ultimaPosicion(String vehiculo) {
+        String clave = clave(vehiculo);
+        Canal canal = clave != null ? canales.get(clave) : null;
+        return canal != null ? Optional.ofNullable(canal.ultima.get()) : Optional.empty();
+    }
+
+    public Map<String, Object> estadisticas() {
+        long pendientes = 0;
+        for (Canal canal : canales.values()) {
+            pendientes += canal.anillo.pendientes();
+        }
+        Map<String, Object> estadisticas = new LinkedHashMap<>();
+        estadisticas.put("vehiculos", canales.size());
+        estadisticas.put("pendientes", pendientes);
+        estadisticas.put("aceptadas", aceptadas.get());
+        estadisticas.put("rechazadas", rechazadas.get());
+        estadisticas.put("descartadas", descartadas.get());
+        estadisticas.put("escritas", escritas.get());
+        return estadisticas;
+    }
+
+    /**
+     * Vaciar los anillos y escribir las posiciones agrupadas por vehículo y bloque.
+     * Es el único consumidor de los anillos.
+     */
+    @Scheduled(fixedDelayString = "${app.telemetria.volcado-ms:1000}")
+    public synchronized void volcar() {
+        long limiteInactividad = System.currentTimeMillis() - inactividadMs;
+        Map<String, List<PosicionGps>> porBloque = new HashMap<>();
+        int total = 0;
+        for (Map.Entry<String, Canal> entrada : canales.entrySet()) {
+            Canal canal = entrada.getValue();
+            total += canal.anillo.drenar(gps -> porBloque.computeIfAbsent(idBloque(gps), k -> new ArrayList<>()).add(gps),
+                    Integer.MAX_VALUE);
+            if (canal.ultimoMs < limiteInactividad && canal.retirar()) {
+                // Ningún productor lo tiene tomado ni puede tomarlo: lo que quede es lo último
+                canales.remove(entrada.getKey(), canal);
+                total += canal.anillo.drenar(gps -> porBloque.computeIfAbsent(idBloque(gps), k -> new ArrayList<>()).add(gps),
+                        Integer.MAX_VALUE);
+            }
+        }
+        if (total == 0) {
+            return;
+        }
+
+        long inicio = System.nanoTime();
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, TelemetriaVehiculo.class);
+        int enLote = 0;
+        for (Map.Entry<String, List<PosicionGps>> bloque : porBloque.entrySet()) {
+            bulk.upsert(new Query(Criteria.where("id").is(bloque.getKey())), actualizacion(bloque.getValue()));
+            enLote += bloque.getValue().size();
+            if (enLote >= LOTE_ESCRITURA) {
+                ejecutar(bulk, enLote);
+                bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, TelemetriaVehiculo.class);
+                enLote = 0;
+            }
+        }
+        if (enLote > 0) {
+            ejecutar(bulk, enLote);
+        }
+        log.debug("Telemetría: {} posiciones en {} bloques escritas en {} ms", total, porBloque.size(),
+                (System.nanoTime() - inicio) / 1_000_000);
+    }
+
+    private void ejecutar(BulkOperations bulk, int posiciones) {
+        try {
+            bulk.execute();
+            escritas.addAndGet(posiciones);
+        } catch (Exception e) {
+            descartadas.addAndGet(posiciones);
+            log.error("Error al escribir {} posiciones de telemetría: {}", posiciones, e.getMessage());
+        }
+    }
+
+    private Update actualizacion(List<PosicionGps> posiciones) {
+        LocalDateTime primera = posiciones.get(0).getFecha();
+        LocalDateTime ultima = primera;
+        List<TelemetriaVehiculo.Punto> puntos = new ArrayList<>(posiciones.size());
+        for (PosicionGps gps : posiciones) {
+            if (gps.getFecha().isBefore(primera)) {
+                primera = gps.getFecha();
+            }
+            if (gps.getFecha().isAfter(ultima)) {
+                ultima = gps.getFecha();
+            }
+            puntos.add(TelemetriaVehiculo.Punto.builder()
+                    .fecha(gps.getFecha())
+                    .latitud(gps.getLatitud())
+                    .longitud(gps.getLongitud())
+                    .velocidadKmh(gps.getVelocidadKmh())
+                    .rumbo(gps.getRumbo())
+                    .rutaId(gps.getRutaId())
+                    .build());
+        }
+        PosicionGps muestra = posiciones.get(0);
+        return new Update()
+                .setOnInsert("vehiculo", muestra.getVehiculo())
+                .setOnInsert("inicio", inicioBloque(muestra.getFecha()))
+                .min("primera", primera)
+                .max("ultima", ultima)
+                .inc("cantidad", posiciones.size())
+                .push("posiciones").each(puntos.toArray());
+    }
+
+    /**
+     * Canal del vehículo tomado para publicar, hasta {@link Canal#soltar()}. Si el volcado lo
+     * está retirando, se espera a que salga del mapa y se usa uno nuevo.
+     * @return el canal, o null si se alcanzó el máximo de vehículos
+     */
+    private Canal tomarCanal(String vehiculo) {
+        while (true) {
+            Canal canal = canal(vehiculo);
+            if (canal == null || canal.tomar()) {
+                return canal;
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Canal del vehículo, creándolo si hay lugar
+     * @return el canal, o null si se alcanzó el máximo de vehículos
+     */
+    private Canal canal(String vehiculo) {
+        Canal canal = canales.get(vehiculo);
+        if (canal != null) {
+            return canal;
+        }
+        if (canales.size() >= maximoVehiculos) {
+            return null;
+        }
+        return canales.computeIfAbsent(vehiculo, k -> new Canal(capacidadPorVehiculo));
+    }
+
+    private String idBloque(PosicionGps gps) {
+        return gps.getVehiculo() + "|" + inicioBloque(gps.getFecha());
+    }
+
+    private LocalDateTime inicioBloque(LocalDateTime fecha) {
+        LocalDateTime dia = fecha.truncatedTo(ChronoUnit.DAYS);
+        long minutos = ChronoUnit.MINUTES.between(dia, fecha);
+        return dia.plusMinutes(minutos - minutos % minutosBloque);
+    }
+
+    private static PosicionGps masReciente(PosicionGps actual, PosicionGps nueva) {
+        return actual == null || !nueva.getFecha().isBefore(actual.getFecha()) ? nueva : actual;
+    }
+
+    private static boolean coordenadasValidas(LotePosicionesRequest.Posicion posicion) {
+        return posicion.getLatitud() != null && posicion.getLongitud() != null
+                && Math.abs(posicion.getLatitud()) <= 90 && Math.abs(posicion.getLongitud()) <= 180;
+    }
+
+    /**
+     * Clave de un vehículo: sin espacios de borde ni distinción de mayúsculas
+     */
+    private static String clave(String vehiculo) {
+        if (vehiculo == null || vehiculo.isBlank()) {
+            return null;
+        }
+        return vehiculo.trim().toUpperCase(Locale.ROOT);
+    }
+
+    /**
+     * Anillo de posiciones pendientes y última posición de un vehículo
+     *
+     * Los productores lo toman mientras publican y el volcado solo lo retira si nadie lo
+     * tiene tomado; después de retirarlo ningún productor puede tomarlo, así que el drenaje
+     * final no deja posiciones sin escribir.
+     */
+    private static class Canal {
+        private final AnilloMpsc<PosicionGps> anillo;
+        private final AtomicReference<PosicionGps> ultima = new AtomicReference<>();
+        private final AtomicInteger enUso = new AtomicInteger();
+        private volatile boolean retirado;
+        private volatile long ultimoMs = System.currentTimeMillis();
+
+        Canal(int capacidad) {
+            this.anillo = new AnilloMpsc<>(capacidad);
+        }
+
+        boolean tomar() {
+            enUso.incrementAndGet();
+            if (retirado) {
+                enUso.decrementAndGet();
+                return false;
+            }
+            return true;
+        }
+
+        void soltar() {
+            enUso.decrementAndGet();
+        }
+
+        /**
+         * @return true si quedó retirado; false si un productor lo tiene tomado
+         */
+        boolean retirar() {
+            retirado = true;
+            if (enUso.get() > 0) {
+                retirado = false;
+                return false;
+            }
+            return true;
+        }
+    }
+}
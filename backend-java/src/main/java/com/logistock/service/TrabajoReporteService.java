@@ -0,0 +1,189 @@
+package com.logistock.service;
+
+import com.logistock.report.FiltroReporte;
+import com.logistock.report.FormatoReporte;
+import com.logistock.report.TrabajoReporte;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Cola de trabajos de reportes en segundo plano
+ *
+ * Los reportes grandes se generan en un pool acotado de hilos de baja prioridad, fuera
+ * de los hilos HTTP, y el resultado queda en un archivo en disco que se descarga aparte
+ * (con soporte de Range). Las solicitudes idénticas mientras un trabajo está pendiente o
+ * en proceso reciben ese mismo trabajo. Los trabajos terminados y sus archivos se
+ * eliminan pasado el TTL.
+ *
+ * El registro de trabajos vive en memoria: al reiniciar se descartan los archivos previos.
+ */
+@Service
+@Slf4j
+public class TrabajoReporteService {
+
+    private final ReportService reportService;
+    private final Path directorio;
+    private final long ttlMinutos;
+    private final ThreadPoolExecutor ejecutor;
+
+    private final ConcurrentMap<String, TrabajoReporte> trabajos = new ConcurrentHashMap<>();
+    // Trabajos pendientes o en proceso por clave de deduplicación
+    private final ConcurrentMap<String, TrabajoReporte> enCurso = new ConcurrentHashMap<>();
+
+    public TrabajoReporteService(ReportService reportService,
+                                 @Value("${app.reportes.trabajos.directorio:data/reportes}") String directorio,
+                                 @Value("${app.reportes.trabajos.hilos:2}") int hilos,
+                                 @Value("${app.reportes.trabajos.capacidad-cola:50}") int capacidadCola,
+                                 @Value("${app.reportes.trabajos.ttl-minutos:60}") long ttlMinutos) {
+        this.reportService = reportService;
+        this.directorio = Paths.get(directorio);
+        this.ttlMinutos = ttlMinutos;
+        AtomicInteger contador = new AtomicInteger();
+        this.ejecutor = new ThreadPoolExecutor(hilos, hilos, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(capacidadCola), r -> {
+                    Thread hilo = new Thread(r, "reportes-trabajo-" + contador.incrementAndGet());
+                    hilo.setDaemon(true);
+                    hilo.setPriority(Thread.MIN_PRIORITY);
+                    return hilo;
+                });
+    }
+
+    /**
+     * Preparar el directorio de resultados y descartar los archivos de una ejecución anterior
+     */
+    @PostConstruct
+    public void inicializar() throws IOException {
+        Files.createDirectories(directorio);
+        try (Stream<Path> archivos = Files.list(directorio)) {
+            archivos.forEach(this::eliminarArchivo);
+        }
+    }
+
+    @PreDestroy
+    public void detener() {
+        ejecutor.shutdownNow();
+    }
+
+    /**
+     * Encolar la generación de un reporte, o devolver el trabajo idéntico ya en curso
+     * @throws IllegalArgumentException si la entidad no existe o el filtro no es válido para ella
+     * @throws IllegalStateException si la cola de trabajos está llena
+     */
+    public TrabajoReporte solicitar(String entidad, FormatoReporte formato, boolean gzip, FiltroReporte filtro) {
+        FiltroReporte filtroEfectivo = filtro != null ? filtro : FiltroReporte.vacio();
+        reportService.validar(entidad, formato, filtroEfectivo);
+        String clave = TrabajoReporte.clave(entidad, formato, gzip, filtroEfectivo);
+
+        TrabajoReporte nuevo = new TrabajoReporte(UUID.randomUUID().toString(), entidad, formato, gzip, filtroEfectivo);
+        // Registrar el trabajo antes de publicarlo en enCurso: quien lo reutilice
+        // debe poder consultarlo por id desde el primer momento
+        trabajos.put(nuevo.getId(), nuevo);
+        TrabajoReporte existente = enCurso.putIfAbsent(clave, nuevo);
+        if (existente != null) {
+            trabajos.remove(nuevo.getId());
+            log.info("Reporte {} ya en curso, se reutiliza el trabajo {}", clave, existente.getId());
+            return existente;
+        }
+
+        try {
+            ejecutor.execute(() -> ejecutar(nuevo));
+        } catch (RejectedExecutionException e) {
+            trabajos.remove(nuevo.getId());
+            enCurso.remove(clave, nuevo);
+            throw new IllegalStateException("La cola de reportes está llena, intente más tarde");
+        }
+        log.info("Trabajo de reporte {} encolado: {}", nuevo.getId(), clave);
+        return nuevo;
+    }
+
+    public Optional<TrabajoReporte> obtener(String id) {
+        return Optional.ofNullable(trabajos.get(id));
+    }
+
+    /**
+     * Nombre de descarga del resultado de un trabajo
+     */
+    public String nombreArchivo(TrabajoReporte trabajo) {
+        return reportService.nombreArchivo(trabajo.getEntidad()) + "." + trabajo.getFormato().getExtension()
+                + (trabajo.isGzip() ? ".gz" : "");
+    }
+
+    /**
+     * Eliminar los trabajos terminados cuyo TTL venció, junto con sus archivos
+     */
+    @Scheduled(fixedDelayString = "${app.reportes.trabajos.limpieza-ms:60000}")
+    public void limpiar() {
+        LocalDateTime limite = LocalDateTime.now().minusMinutes(ttlMinutos);
+        trabajos.values().removeIf(trabajo -> {
+            if (!trabajo.isTerminado() || trabajo.getFinalizadoEn().isAfter(limite)) {
+                return false;
+            }
+            if (trabajo.getArchivo() != null) {
+                eliminarArchivo(trabajo.getArchivo());
+            }
+            log.info("Trabajo de reporte {} vencido y eliminado", trabajo.getId());
+            return true;
+        });
+    }
+
+    private void ejecutar(TrabajoReporte trabajo) {
+        trabajo.iniciar();
+        String base = trabajo.getId() + "." + trabajo.getFormato().getExtension() + (trabajo.isGzip() ? ".gz" : "");
+        Path temporal = directorio.resolve(base + ".tmp");
+        Path destino = directorio.resolve(base);
+        try {
+            try (OutputStream archivo = new BufferedOutputStream(Files.newOutputStream(temporal), 64 * 1024)) {
+                if (trabajo.isGzip()) {
+                    GZIPOutputStream comprimido = new GZIPOutputStream(archivo, 64 * 1024);
+                    reportService.generar(trabajo.getEntidad(), trabajo.getFormato(), trabajo.getFiltro(), comprimido,
+                            trabajo::registrarProgreso);
+                    comprimido.finish();
+                } else {
+                    reportService.generar(trabajo.getEntidad(), trabajo.getFormato(), trabajo.getFiltro(), archivo,
+                            trabajo::registrarProgreso);
+                }
+            }
+            Files.move(temporal, destino, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            trabajo.completar(destino, Files.size(destino));
+            log.info("Trabajo de reporte {} completado ({} bytes)", trabajo.getId(), trabajo.getTamanoBytes());
+        } catch (Exception e) {
+            eliminarArchivo(temporal);
+            trabajo.fallar(e.getMessage());
+            log.error("Error en el trabajo de reporte {}: {}", trabajo.getId(), e.getMessage());
+        } finally {
+            enCurso.remove(trabajo.getClave(), trabajo);
+        }
+    }
+
+    private void eliminarArchivo(Path archivo) {
+        try {
+            Files.deleteIfExists(archivo);
+        } catch (IOException e) {
+            log.warn("No se pudo eliminar el archivo de reporte {}: {}", archivo, e.getMessage());
+        }
+    }
+}
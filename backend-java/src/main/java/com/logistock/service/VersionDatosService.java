@@ -0,0 +1,38 @@
+package com.logistock.service;
+
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Versión de los datos de cada colección
+ *
+ * Los caminos de escritura de los servicios incrementan la versión de la colección que
+ * modifican, y los cachés derivados (p. ej. los reportes) la usan como parte de su clave:
+ * si la versión no cambió, el contenido tampoco. Las versiones viven en memoria y llevan
+ * el instante de arranque, de modo que nunca se repiten entre reinicios. Son locales a
+ * esta instancia de la aplicación.
+ */
+@Service
+public class VersionDatosService {
+
+    private final String arranque = Long.toString(System.currentTimeMillis(), 36);
+    private final ConcurrentMap<Class<?>, AtomicLong> versiones = new ConcurrentHashMap<>();
+
+    /**
+     * Registrar que los datos de una colección cambiaron
+     */
+    public void incrementar(Class<?> coleccion) {
+        versiones.computeIfAbsent(coleccion, c -> new AtomicLong()).incrementAndGet();
+    }
+
+    /**
+     * Versión actual de los datos de una colección
+     */
+    public String version(Class<?> coleccion) {
+        AtomicLong version = versiones.get(coleccion);
+        return arranque + "." + (version != null ? version.get() : 0);
+    }
+}
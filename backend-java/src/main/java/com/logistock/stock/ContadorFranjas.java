@@ -0,0 +1,146 @@
+package com.logistock.stock;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Contador de stock repartido en franjas independientes.
+ *
+ * Cada hilo reserva primero de su propia franja con un CAS, de modo que reservas
+ * concurrentes sobre el mismo producto no compiten por una única variable. Si su
+ * franja no alcanza, pasa a un recorrido con bloqueo que reúne la cantidad de todas
+ * las franjas; como solo un hilo a la vez reúne de varias franjas, una reserva falla
+ * únicamente cuando la suma de las franjas no alcanza. Ninguna franja baja nunca de cero.
+ */
+public class ContadorFranjas {
+
+    // Cada franja ocupa su propia línea de caché (16 longs = 128 bytes)
+    private static final int ESPACIADO = 16;
+
+    private final int franjas;
+    private final AtomicLongArray celdas;
+    // Serializa los recorridos que toman de varias franjas
+    private final ReentrantLock bloqueo = new ReentrantLock();
+
+    /**
+     * @param franjas Número de franjas (se redondea a potencia de dos)
+     * @param inicial Cantidad inicial, repartida entre las franjas
+     */
+    public ContadorFranjas(int franjas, long inicial) {
+        this.franjas = Integer.highestOneBit(Math.max(franjas, 1) * 2 - 1);
+        this.celdas = new AtomicLongArray(this.franjas * ESPACIADO);
+        repartir(inicial);
+    }
+
+    /**
+     * Cantidad disponible (suma de las franjas; bajo concurrencia es una aproximación instantánea)
+     */
+    public long disponible() {
+        long total = 0;
+        for (int i = 0; i < franjas; i++) {
+            total += celdas.get(i * ESPACIADO);
+        }
+        return total;
+    }
+
+    /**
+     * Reservar una cantidad de forma atómica respecto de otras reservas
+     * @return true si se reservó la cantidad completa
+     */
+    public boolean reservar(long cantidad) {
+        if (cantidad <= 0) {
+            return true;
+        }
+        int propia = franjaActual();
+        if (tomarCompleto(propia, cantidad)) {
+            return true;
+        }
+        bloqueo.lock();
+        try {
+            long reunido = 0;
+            for (int k = 0; k < franjas && reunido < cantidad; k++) {
+                reunido += tomar((propia + k) & (franjas - 1), cantidad - reunido);
+            }
+            if (reunido == cantidad) {
+                return true;
+            }
+            if (reunido > 0) {
+                celdas.getAndAdd(propia * ESPACIADO, reunido);
+            }
+            return false;
+        } finally {
+            bloqueo.unlock();
+        }
+    }
+
+    /**
+     * Devolver o agregar cantidad (a la franja del hilo actual)
+     */
+    public void agregar(long cantidad) {
+        celdas.getAndAdd(franjaActual() * ESPACIADO, cantidad);
+    }
+
+    /**
+     * Ajustar la cantidad en un valor con signo. Un ajuste negativo mayor que lo
+     * disponible deja el contador en cero.
+     * @return Ajuste aplicado realmente (menor en valor absoluto si se llegó a cero)
+     */
+    public long ajustar(long diferencia) {
+        if (diferencia >= 0) {
+            agregar(diferencia);
+            return diferencia;
+        }
+        if (reservar(-diferencia)) {
+            return diferencia;
+        }
+        long restante = -diferencia;
+        for (int franja = 0; franja < franjas && restante > 0; franja++) {
+            restante -= tomar(franja, restante);
+        }
+        return diferencia + restante;
+    }
+
+    public int getFranjas() {
+        return franjas;
+    }
+
+    private boolean tomarCompleto(int franja, long cantidad) {
+        int indice = franja * ESPACIADO;
+        while (true) {
+            long actual = celdas.get(indice);
+            if (actual < cantidad) {
+                return false;
+            }
+            if (celdas.compareAndSet(indice, actual, actual - cantidad)) {
+                return true;
+            }
+        }
+    }
+
+    private long tomar(int franja, long maximo) {
+        int indice = franja * ESPACIADO;
+        while (true) {
+            long actual = celdas.get(indice);
+            if (actual <= 0) {
+                return 0;
+            }
+            long obtenido = Math.min(actual, maximo);
+            if (celdas.compareAndSet(indice, actual, actual - obtenido)) {
+                return obtenido;
+            }
+        }
+    }
+
+    private void repartir(long total) {
+        long base = total / franjas;
+        long resto = total % franjas;
+        for (int i = 0; i < franjas; i++) {
+            celdas.set(i * ESPACIADO, base + (i < resto ? 1 : 0));
+        }
+    }
+
+    private int franjaActual() {
+        long hilo = Thread.currentThread().getId();
+        return (int) (hilo ^ (hilo >>> 16)) & (franjas - 1);
+    }
+}
@@ -0,0 +1,172 @@
+package com.logistock.stock;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * Diario en disco de los cambios de stock aún no volcados a la base.
+ *
+ * Cada cambio se agrega como una línea "productoId;delta" al archivo actual. Al rotar,
+ * el archivo actual se cierra y se renombra como un lote numerado; los lotes se aplican
+ * a la base en orden y se eliminan al confirmarse. Tras una caída, el archivo actual y
+ * los lotes pendientes siguen en disco y se vuelven a aplicar al iniciar.
+ *
+ * Las escrituras comparten un bloqueo de lectura (el canal serializa cada append);
+ * la rotación toma el bloqueo de escritura.
+ *
+ * Los appends no se fuerzan a disco uno a uno: el archivo se fuerza al rotar, así que
+ * ante una caída del sistema (no del proceso) se pierden como mucho los cambios del
+ * último intervalo de volcado (app.stock.caliente.volcado-ms).
+ */
+public class DiarioStock implements Closeable {
+
+    private static final String ACTUAL = "actual.diario";
+    private static final String PREFIJO_LOTE = "lote-";
+    private static final String SUFIJO_LOTE = ".diario";
+
+    private final Path directorio;
+    private final ReentrantReadWriteLock bloqueo = new ReentrantReadWriteLock();
+    private FileChannel canal;
+    private boolean conCambios;
+    private long ultimaSecuencia;
+
+    /**
+     * Abrir el diario. Si quedó un archivo actual de una ejecución anterior,
+     * se convierte en lote pendiente.
+     */
+    public DiarioStock(Path directorio) throws IOException {
+        this.directorio = directorio;
+        Files.createDirectories(directorio);
+        for (Path lote : lotesPendientes()) {
+            ultimaSecuencia = Math.max(ultimaSecuencia, secuencia(lote));
+        }
+        Path actual = directorio.resolve(ACTUAL);
+        if (Files.exists(actual) && Files.size(actual) > 0) {
+            Files.move(actual, directorio.resolve(nombreLote(siguienteSecuencia())), StandardCopyOption.ATOMIC_MOVE);
+        }
+        canal = abrir();
+    }
+
+    /**
+     * Agregar un cambio de stock al diario
+     */
+    public void registrar(String productoId, long delta) throws IOException {
+        ByteBuffer linea = ByteBuffer.wrap((productoId + ";" + delta + "\n").getBytes(StandardCharsets.UTF_8));
+        bloqueo.readLock().lock();
+        try {
+            while (linea.hasRemaining()) {
+                canal.write(linea);
+            }
+            conCambios = true;
+        } finally {
+            bloqueo.readLock().unlock();
+        }
+    }
+
+    /**
+     * Cerrar el archivo actual como lote pendiente y abrir uno nuevo
+     * @return true si había cambios para rotar
+     */
+    public boolean rotar() throws IOException {
+        bloqueo.writeLock().lock();
+        try {
+            if (!conCambios) {
+                return false;
+            }
+            canal.force(false);
+            canal.close();
+            Files.move(directorio.resolve(ACTUAL), directorio.resolve(nombreLote(siguienteSecuencia())),
+                    StandardCopyOption.ATOMIC_MOVE);
+            canal = abrir();
+            conCambios = false;
+            return true;
+        } finally {
+            bloqueo.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Lotes pendientes de aplicar, del más antiguo al más reciente
+     */
+    public List<Path> lotesPendientes() throws IOException {
+        try (Stream<Path> archivos = Files.list(directorio)) {
+            List<Path> lotes = new ArrayList<>();
+            archivos.filter(p -> {
+                String nombre = p.getFileName().toString();
+                return nombre.startsWith(PREFIJO_LOTE) && nombre.endsWith(SUFIJO_LOTE);
+            }).sorted().forEach(lotes::add);
+            return lotes;
+        }
+    }
+
+    /**
+     * Cambio neto por producto de un lote. Las líneas incompletas (escritura
+     * interrumpida por una caída) se ignoran.
+     */
+    public static Map<String, Long> leer(Path lote) throws IOException {
+        Map<String, Long> deltas = new HashMap<>();
+        try (BufferedReader lector = Files.newBufferedReader(lote, StandardCharsets.UTF_8)) {
+            String linea;
+            while ((linea = lector.readLine()) != null) {
+                int separador = linea.indexOf(';');
+                if (separador <= 0) {
+                    continue;
+                }
+                try {
+                    long delta = Long.parseLong(linea.substring(separador + 1));
+                    deltas.merge(linea.substring(0, separador), delta, Long::sum);
+                } catch (NumberFormatException e) {
+                    // Línea truncada
+                }
+            }
+        }
+        return deltas;
+    }
+
+    /**
+     * Número de secuencia de un lote (creciente entre ejecuciones)
+     */
+    public static long secuencia(Path lote) {
+        String nombre = lote.getFileName().toString();
+        return Long.parseLong(nombre.substring(PREFIJO_LOTE.length(), nombre.length() - SUFIJO_LOTE.length()));
+    }
+
+    @Override
+    public void close() throws IOException {
+        bloqueo.writeLock().lock();
+        try {
+            canal.force(false);
+            canal.close();
+        } finally {
+            bloqueo.writeLock().unlock();
+        }
+    }
+
+    private FileChannel abrir() throws IOException {
+        return FileChannel.open(directorio.resolve(ACTUAL),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private long siguienteSecuencia() {
+        ultimaSecuencia = Math.max(ultimaSecuencia + 1, System.currentTimeMillis());
+        return ultimaSecuencia;
+    }
+
+    private static String nombreLote(long secuencia) {
+        return String.format("%s%019d%s", PREFIJO_LOTE, secuencia, SUFIJO_LOTE);
+    }
+}
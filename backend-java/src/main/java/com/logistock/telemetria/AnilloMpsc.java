@@ -0,0 +1,95 @@
+package com.logistock.telemetria;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Cola circular acotada de varios productores y un único consumidor, sin bloqueos.
+ *
+ * Cada celda lleva un número de secuencia: un productor reserva una posición con un CAS
+ * sobre la cola y publica el elemento avanzando la secuencia de su celda; el consumidor
+ * solo lee celdas ya publicadas. Si la cola está llena, ofrecer devuelve false en lugar
+ * de esperar, de modo que la memoria queda acotada por la capacidad.
+ */
+public class AnilloMpsc<E> {
+
+    private final int mascara;
+    private final AtomicReferenceArray<E> elementos;
+    private final AtomicLongArray secuencias;
+    private final AtomicLong cola = new AtomicLong();
+    // Solo la lee y escribe el consumidor
+    private long cabeza;
+
+    /**
+     * @param capacidad Capacidad mínima (se redondea a potencia de dos)
+     */
+    public AnilloMpsc(int capacidad) {
+        int tamano = Integer.highestOneBit(Math.max(capacidad, 2) * 2 - 1);
+        this.mascara = tamano - 1;
+        this.elementos = new AtomicReferenceArray<>(tamano);
+        this.secuencias = new AtomicLongArray(tamano);
+        for (int i = 0; i < tamano; i++) {
+            secuencias.set(i, i);
+        }
+    }
+
+    /**
+     * Agregar un elemento (seguro desde cualquier hilo)
+     * @return false si la cola está llena
+     */
+    public boolean ofrecer(E elemento) {
+        long posicion = cola.get();
+        while (true) {
+            int celda = (int) (posicion & mascara);
+            long diferencia = secuencias.get(celda) - posicion;
+            if (diferencia == 0) {
+                if (cola.compareAndSet(posicion, posicion + 1)) {
+                    elementos.lazySet(celda, elemento);
+                    // Publicar: el consumidor ve el elemento cuando ve la secuencia nueva
+                    secuencias.lazySet(celda, posicion + 1);
+                    return true;
+                }
+                posicion = cola.get();
+            } else if (diferencia < 0) {
+                return false;
+            } else {
+                posicion = cola.get();
+            }
+        }
+    }
+
+    /**
+     * Sacar hasta un máximo de elementos publicados (solo desde el hilo consumidor)
+     * @return cantidad de elementos entregados al destino
+     */
+    public int drenar(Consumer<E> destino, int maximo) {
+        int entregados = 0;
+        while (entregados < maximo) {
+            int celda = (int) (cabeza & mascara);
+            if (secuencias.get(celda) != cabeza + 1) {
+                break;
+            }
+            E elemento = elementos.get(celda);
+            elementos.lazySet(celda, null);
+            // Liberar la celda para la siguiente vuelta de los productores
+            secuencias.lazySet(celda, cabeza + mascara + 1);
+            cabeza++;
+            destino.accept(elemento);
+            entregados++;
+        }
+        return entregados;
+    }
+
+    /**
+     * Elementos pendientes (aproximado bajo concurrencia)
+     */
+    public int pendientes() {
+        return (int) Math.max(0, cola.get() - cabeza);
+    }
+
+    public int capacidad() {
+        return mascara + 1;
+    }
+}
@@ -0,0 +1,56 @@
+package com.logistock.telemetria;
+
+import java.time.LocalDateTime;
+
+/**
+ * Posición informada por un vehículo (inmutable: se comparte entre hilos sin copiar)
+ */
+public final class PosicionGps {
+
+    private final String vehiculo;
+    private final String rutaId;
+    private final double latitud;
+    private final double longitud;
+    private final Double velocidadKmh;
+    private final Double rumbo;
+    private final LocalDateTime fecha;
+
+    public PosicionGps(String vehiculo, String rutaId, double latitud, double longitud,
+                       Double velocidadKmh, Double rumbo, LocalDateTime fecha) {
+        this.vehiculo = vehiculo;
+        this.rutaId = rutaId;
+        this.latitud = latitud;
+        this.longitud = longitud;
+        this.velocidadKmh = velocidadKmh;
+        this.rumbo = rumbo;
+        this.fecha = fecha;
+    }
+
+    public String getVehiculo() {
+        return vehiculo;
+    }
+
+    public String getRutaId() {
+        return rutaId;
+    }
+
+    public double getLatitud() {
+        return latitud;
+    }
+
+    public double getLongitud() {
+        return longitud;
+    }
+
+    public Double getVelocidadKmh() {
+        return velocidadKmh;
+    }
+
+    public Double getRumbo() {
+        return rumbo;
+    }
+
+    public LocalDateTime getFecha() {
+        return fecha;
+    }
+}
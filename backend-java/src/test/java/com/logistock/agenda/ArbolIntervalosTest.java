@@ -0,0 +1,65 @@
+package com.logistock.agenda;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ArbolIntervalosTest {
+
+    @Test
+    void primerSolape_extremosContiguosNoSeSolapan() {
+        ArbolIntervalos arbol = new ArbolIntervalos();
+        arbol.insertar("a", 480, 600);
+        arbol.insertar("b", 720, 840);
+
+        assertNull(arbol.primerSolape(600, 720, null));
+        assertEquals("a", arbol.primerSolape(590, 610, null).getId());
+        assertEquals("b", arbol.primerSolape(700, 900, null).getId());
+        // La propia ruta no cuenta como conflicto al actualizarla
+        assertNull(arbol.primerSolape(500, 560, "a"));
+    }
+
+    @Test
+    void solapados_coincideConBusquedaLineal() {
+        Random random = new Random(45);
+        ArbolIntervalos arbol = new ArbolIntervalos();
+        Map<String, long[]> vigentes = new HashMap<>();
+        for (int i = 0; i < 2000; i++) {
+            String id = "r" + i;
+            long inicio = random.nextInt(100_000);
+            long fin = inicio + 1 + random.nextInt(500);
+            arbol.insertar(id, inicio, fin);
+            vigentes.put(id, new long[]{inicio, fin});
+            // Retirar de vez en cuando una ruta anterior
+            if (i % 3 == 0) {
+                String retirada = "r" + random.nextInt(i + 1);
+                long[] intervalo = vigentes.remove(retirada);
+                assertEquals(intervalo != null, arbol.eliminar(retirada, intervalo != null ? intervalo[0] : -1));
+            }
+        }
+        assertEquals(vigentes.size(), arbol.tamano());
+
+        for (int consulta = 0; consulta < 200; consulta++) {
+            long inicio = random.nextInt(100_000);
+            long fin = inicio + 1 + random.nextInt(2000);
+            List<String> esperados = new ArrayList<>();
+            vigentes.forEach((id, intervalo) -> {
+                if (intervalo[0] < fin && intervalo[1] > inicio) {
+                    esperados.add(id);
+                }
+            });
+            List<ArbolIntervalos.Intervalo> obtenidos = arbol.solapados(inicio, fin);
+            assertEquals(esperados.size(), obtenidos.size());
+            for (int k = 1; k < obtenidos.size(); k++) {
+                assertTrue(obtenidos.get(k - 1).getInicio() <= obtenidos.get(k).getInicio());
+            }
+            assertEquals(esperados.isEmpty(), arbol.primerSolape(inicio, fin, null) == null);
+        }
+    }
+}
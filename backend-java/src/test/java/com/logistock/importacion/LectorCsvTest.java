@@ -0,0 +1,55 @@
+package com.logistock.importacion;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LectorCsvTest {
+
+    private static List<List<String>> leer(String csv, char separador) throws IOException {
+        List<List<String>> filas = new ArrayList<>();
+        new LectorCsv(separador).leer(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)),
+                (numero, valores) -> filas.add(valores));
+        return filas;
+    }
+
+    @Test
+    void leer_camposEntreComillasConSeparadoresYSaltos() throws IOException {
+        List<List<String>> filas = leer("\uFEFFcode,name\r\nA1,\"Caja, grande\"\r\nA2,\"Dice \"\"hola\"\"\nen dos líneas\"\r\n", ',');
+
+        assertEquals(3, filas.size());
+        assertEquals(List.of("code", "name"), filas.get(0));
+        assertEquals(List.of("A1", "Caja, grande"), filas.get(1));
+        assertEquals(List.of("A2", "Dice \"hola\"\nen dos líneas"), filas.get(2));
+    }
+
+    @Test
+    void leer_ignoraFilasVaciasYConservaCamposVacios() throws IOException {
+        List<List<String>> filas = leer("code;name;stock\n\nB1;;5\nB2;Tornillo;", ';');
+
+        assertEquals(3, filas.size());
+        assertEquals(List.of("B1", "", "5"), filas.get(1));
+        assertEquals(List.of("B2", "Tornillo", ""), filas.get(2));
+    }
+
+    @Test
+    void leer_numeraLaLineaFisicaEnQueEmpiezaCadaFila() throws IOException {
+        List<Integer> numeros = new ArrayList<>();
+        new LectorCsv(',').leer(new ByteArrayInputStream(
+                        "code,name\r\nA1,\"dos\r\nlíneas\"\r\n\r\nA2,Caja\rA3,Tapa\n".getBytes(StandardCharsets.UTF_8)),
+                (numero, valores) -> numeros.add(numero));
+
+        assertEquals(List.of(1, 2, 5, 6), numeros);
+    }
+
+    @Test
+    void leer_comillasSinCerrarEsError() {
+        assertThrows(IOException.class, () -> leer("code,name\nC1,\"sin cerrar\n", ','));
+    }
+}
@@ -0,0 +1,82 @@
+package com.logistock.metrics;
+
+import com.logistock.model.EstadoPedido;
+import com.logistock.model.Pedido;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LatenciaEntregaTrackerTest {
+
+    private LatenciaEntregaTracker tracker;
+
+    @BeforeEach
+    void setUp() {
+        tracker = new LatenciaEntregaTracker(null, 30);
+    }
+
+    @Test
+    void registrarTransicion_calculaCadaTramo() {
+        LocalDateTime inicio = LocalDateTime.of(2025, 3, 10, 8, 0);
+        Pedido pedido = new Pedido();
+
+        pedido.registrarTransicion(null, EstadoPedido.DISPONIBLE, null, inicio);
+        tracker.registrarTransicion(pedido);
+        pedido.registrarTransicion(EstadoPedido.DISPONIBLE, EstadoPedido.ASIGNADO, "u1", inicio.plusMinutes(30));
+        tracker.registrarTransicion(pedido);
+        pedido.registrarTransicion(EstadoPedido.ASIGNADO, EstadoPedido.EN_CAMINO, "u1", inicio.plusMinutes(40));
+        tracker.registrarTransicion(pedido);
+        pedido.registrarTransicion(EstadoPedido.EN_CAMINO, EstadoPedido.ENTREGADO, "u1", inicio.plusMinutes(100));
+        tracker.registrarTransicion(pedido);
+
+        Map<String, Object> conductor = tracker.resumenConductor("u1");
+        assertNotNull(conductor);
+        assertEquals(30.0, (double) tramo(conductor, TramoEntrega.CREACION_ASIGNACION).get("p50"), 0.5);
+        assertEquals(10.0, (double) tramo(conductor, TramoEntrega.ASIGNACION_EN_CAMINO).get("p50"), 0.5);
+        assertEquals(60.0, (double) tramo(conductor, TramoEntrega.EN_CAMINO_ENTREGA).get("p50"), 0.5);
+
+        Map<String, Object> dia = tracker.resumenDia(LocalDate.of(2025, 3, 10));
+        assertNotNull(dia);
+        assertEquals(1L, tramo(dia, TramoEntrega.EN_CAMINO_ENTREGA).get("total"));
+    }
+
+    @Test
+    void registrarTransicion_ignoraTransicionesNoMedidas() {
+        LocalDateTime inicio = LocalDateTime.of(2025, 3, 10, 8, 0);
+        Pedido pedido = new Pedido();
+        pedido.registrarTransicion(null, EstadoPedido.DISPONIBLE, null, inicio);
+        pedido.registrarTransicion(EstadoPedido.DISPONIBLE, EstadoPedido.CANCELADO, null, inicio.plusMinutes(5));
+        tracker.registrarTransicion(pedido);
+
+        Map<String, Object> global = tracker.resumenGlobal();
+        for (TramoEntrega t : TramoEntrega.values()) {
+            assertEquals(0L, tramo(global, t).get("total"));
+        }
+    }
+
+    @Test
+    void percentiles_reflejanDistribucion() {
+        LocalDateTime inicio = LocalDateTime.of(2025, 3, 11, 8, 0);
+        for (int minutos = 1; minutos <= 100; minutos++) {
+            Pedido pedido = new Pedido();
+            pedido.registrarTransicion(null, EstadoPedido.DISPONIBLE, null, inicio);
+            pedido.registrarTransicion(EstadoPedido.DISPONIBLE, EstadoPedido.ASIGNADO, "u2", inicio.plusMinutes(minutos));
+            tracker.registrarTransicion(pedido);
+        }
+
+        Map<String, Object> resumen = tramo(tracker.resumenConductor("u2"), TramoEntrega.CREACION_ASIGNACION);
+        assertEquals(100L, resumen.get("total"));
+        assertEquals(50.0, (double) resumen.get("p50"), 1.0);
+        assertEquals(99.0, (double) resumen.get("p99"), 1.5);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> tramo(Map<String, Object> grupo, TramoEntrega tramo) {
+        return (Map<String, Object>) grupo.get(tramo.name());
+    }
+}
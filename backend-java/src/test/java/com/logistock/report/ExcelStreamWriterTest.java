@@ -0,0 +1,68 @@
+package com.logistock.report;
+
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ExcelStreamWriterTest {
+
+    private static final List<ColumnaReporte<Integer>> COLUMNAS = List.of(
+            ColumnaReporte.texto("Código", i -> "P" + i),
+            ColumnaReporte.numero("Stock", i -> i),
+            ColumnaReporte.moneda("Precio", i -> BigDecimal.valueOf(i, 2)));
+
+    @Test
+    void hoja_escribeMasFilasQueLaVentanaConEncabezadoYFormatos() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long filas;
+        try (ExcelStreamWriter excel = new ExcelStreamWriter()) {
+            filas = excel.hoja("Inventario", COLUMNAS, IntStream.rangeClosed(1, 250).boxed().iterator());
+            excel.write(out);
+        }
+
+        assertEquals(250, filas);
+        try (XSSFWorkbook libro = new XSSFWorkbook(new ByteArrayInputStream(out.toByteArray()))) {
+            Sheet hoja = libro.getSheet("Inventario");
+            assertEquals(250, hoja.getLastRowNum());
+            assertEquals("Código", hoja.getRow(0).getCell(0).getStringCellValue());
+            Row ultima = hoja.getRow(250);
+            assertEquals("P250", ultima.getCell(0).getStringCellValue());
+            assertEquals(CellType.NUMERIC, ultima.getCell(1).getCellType());
+            assertEquals(250, ultima.getCell(1).getNumericCellValue());
+            assertEquals(2.5, ultima.getCell(2).getNumericCellValue());
+            assertEquals("$#,##0.00", ultima.getCell(2).getCellStyle().getDataFormatString());
+        }
+    }
+
+    @Test
+    void abrirHoja_intercalaFilasDeVariasHojas() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ExcelStreamWriter excel = new ExcelStreamWriter()) {
+            ExcelStreamWriter.Hoja<Integer> pares = excel.abrirHoja("Pares", COLUMNAS);
+            ExcelStreamWriter.Hoja<Integer> impares = excel.abrirHoja("Impares", COLUMNAS);
+            for (int i = 1; i <= 301; i++) {
+                (i % 2 == 0 ? pares : impares).agregar(i);
+            }
+            assertEquals(150, pares.terminar());
+            assertEquals(151, impares.terminar());
+            excel.write(out);
+        }
+
+        try (XSSFWorkbook libro = new XSSFWorkbook(new ByteArrayInputStream(out.toByteArray()))) {
+            assertEquals(150, libro.getSheet("Pares").getLastRowNum());
+            assertEquals(151, libro.getSheet("Impares").getLastRowNum());
+            assertEquals("P300", libro.getSheet("Pares").getRow(150).getCell(0).getStringCellValue());
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.logistock.report;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ExportStreamWriterTest {
+
+    private record Fila(String nombre, BigDecimal precio, LocalDateTime fecha) {
+    }
+
+    private static final List<ColumnaReporte<Fila>> COLUMNAS = List.of(
+            ColumnaReporte.campo("nombre", Fila::nombre),
+            ColumnaReporte.campo("precio", Fila::precio),
+            ColumnaReporte.campo("fecha", Fila::fecha));
+
+    @Test
+    void csv_escapaSeparadoresComillasYSaltosDeLinea() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        List<Fila> filas = List.of(
+                new Fila("Caja, grande", new BigDecimal("1E+3"), null),
+                new Fila("Dice \"hola\"", BigDecimal.ONE, null),
+                new Fila("dos\nlíneas", null, null),
+                new Fila("simple", null, LocalDateTime.of(2026, 3, 1, 8, 30)));
+
+        long total = ExportStreamWriter.csv(out, COLUMNAS, filas.iterator());
+
+        assertEquals(4, total);
+        assertEquals("nombre,precio,fecha\r\n"
+                        + "\"Caja, grande\",1000,\r\n"
+                        + "\"Dice \"\"hola\"\"\",1,\r\n"
+                        + "\"dos\nlíneas\",,\r\n"
+                        + "simple,,2026-03-01T08:30\r\n",
+                out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void ndjson_unObjetoPorLineaConFechasIso() throws IOException {
+        ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        List<Fila> filas = List.of(
+                new Fila("línea\nuno", new BigDecimal("9.90"), LocalDateTime.of(2026, 3, 1, 8, 30)),
+                new Fila("dos", null, null));
+
+        long total = ExportStreamWriter.ndjson(out, objectMapper, COLUMNAS, filas.iterator());
+
+        assertEquals(2, total);
+        String texto = out.toString(StandardCharsets.UTF_8);
+        assertTrue(texto.endsWith("\n"));
+        List<String> lineas = Arrays.asList(texto.split("\n"));
+        assertEquals(2, lineas.size());
+        JsonNode primera = objectMapper.readTree(lineas.get(0));
+        assertEquals("línea\nuno", primera.get("nombre").asText());
+        // El decimal se escribe tal cual, sin pasar por double
+        assertTrue(lineas.get(0).contains("\"precio\":9.90"));
+        assertEquals("2026-03-01T08:30:00", primera.get("fecha").asText());
+        JsonNode segunda = objectMapper.readTree(lineas.get(1));
+        assertTrue(segunda.get("precio").isNull());
+    }
+}
@@ -0,0 +1,54 @@
+package com.logistock.report;
+
+import com.lowagie.text.pdf.PdfReader;
+import com.lowagie.text.pdf.parser.PdfTextExtractor;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PdfStreamWriterTest {
+
+    private static final List<ColumnaReporte<Integer>> COLUMNAS = List.of(
+            ColumnaReporte.texto("Código", i -> "P" + i),
+            ColumnaReporte.moneda("Precio", i -> BigDecimal.valueOf(i * 100L, 2)));
+
+    @Test
+    void escribir_repiteElEncabezadoEnCadaPaginaYNoCierraLaSalida() throws IOException {
+        CerrableOutputStream out = new CerrableOutputStream();
+
+        PdfStreamWriter.escribir(out, "Reporte de prueba", COLUMNAS, new int[]{1, 1},
+                IntStream.rangeClosed(1, 250).boxed().iterator());
+
+        assertFalse(out.cerrado);
+        PdfReader pdf = new PdfReader(out.toByteArray());
+        try {
+            assertTrue(pdf.getNumberOfPages() > 1);
+            PdfTextExtractor extractor = new PdfTextExtractor(pdf);
+            String primera = extractor.getTextFromPage(1);
+            assertTrue(primera.contains("Reporte de prueba"));
+            assertTrue(primera.contains("P1"));
+            assertTrue(primera.contains("$1.00"));
+            String ultima = extractor.getTextFromPage(pdf.getNumberOfPages());
+            assertTrue(ultima.contains("Código"));
+            assertTrue(ultima.contains("P250"));
+            assertTrue(ultima.contains("$250.00"));
+        } finally {
+            pdf.close();
+        }
+    }
+
+    private static class CerrableOutputStream extends ByteArrayOutputStream {
+        private boolean cerrado;
+
+        @Override
+        public void close() {
+            cerrado = true;
+        }
+    }
+}
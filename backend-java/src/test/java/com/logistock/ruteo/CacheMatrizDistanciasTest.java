@@ -0,0 +1,73 @@
+package com.logistock.ruteo;
+
+import com.logistock.model.Ubicacion;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CacheMatrizDistanciasTest {
+
+    @TempDir
+    Path directorio;
+
+    private static Ubicacion punto(double latitud, double longitud) {
+        return Ubicacion.builder().latitud(latitud).longitud(longitud).build();
+    }
+
+    @Test
+    void registro_idsEstablesEntreReinicios() throws Exception {
+        Path archivo = directorio.resolve("ubicaciones.dat");
+        try (RegistroUbicaciones registro = new RegistroUbicaciones(archivo)) {
+            assertEquals(0, registro.id(punto(-12.04637, -77.04279)));
+            assertEquals(1, registro.id(punto(-12.12000, -77.03000)));
+            // Mismo punto redondeado a 5 decimales
+            assertEquals(0, registro.id(punto(-12.046371, -77.042789)));
+        }
+        try (RegistroUbicaciones registro = new RegistroUbicaciones(archivo)) {
+            assertEquals(2, registro.tamano());
+            assertEquals(1, registro.id(punto(-12.12, -77.03)));
+            assertEquals(2, registro.id(punto(-11.98, -77.06)));
+        }
+    }
+
+    @Test
+    void cache_paresGuardadosSobrevivenAlReinicio() throws Exception {
+        Path archivo = directorio.resolve("matriz.dat");
+        try (CacheMatrizDistancias cache = CacheMatrizDistancias.abrir(archivo, 100)) {
+            assertNull(cache.obtener(3, 7));
+            cache.guardar(3, 7, 12.5, 18.75);
+            cache.guardar(5, 5, 0, 0);
+        }
+        try (CacheMatrizDistancias cache = CacheMatrizDistancias.abrir(archivo, 100)) {
+            assertArrayEquals(new double[]{12.5, 18.75}, cache.obtener(3, 7), 1e-6);
+            assertNull(cache.obtener(7, 3));
+            // Un par de distancia cero queda calculado
+            assertNotNull(cache.obtener(5, 5));
+        }
+        assertNull(CacheMatrizDistancias.abrir(archivo, 200));
+    }
+
+    @Test
+    void cache_idsSinLimiteDesalojanAlLlenarse() throws Exception {
+        try (CacheMatrizDistancias cache = CacheMatrizDistancias.abrir(directorio.resolve("matriz.dat"), 8)) {
+            for (int i = 0; i < 1000; i++) {
+                cache.guardar(i, 50_000 + i, i, i);
+                // El último par guardado siempre se encuentra
+                assertArrayEquals(new double[]{i, i}, cache.obtener(i, 50_000 + i), 1e-6);
+            }
+            assertTrue(cache.desalojados() > 0);
+            int encontrados = 0;
+            for (int i = 0; i < 1000; i++) {
+                double[] guardado = cache.obtener(i, 50_000 + i);
+                if (guardado != null) {
+                    assertEquals(i, guardado[0], 1e-6);
+                    encontrados++;
+                }
+            }
+            assertTrue(encontrados <= cache.capacidad());
+        }
+    }
+}
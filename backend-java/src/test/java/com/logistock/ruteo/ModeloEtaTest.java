@@ -0,0 +1,58 @@
+package com.logistock.ruteo;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ModeloEtaTest {
+
+    private static final String[] PRIORIDADES = {"Baja", "Media", "Alta", "Urgente"};
+
+    @Test
+    void aprender_recuperaLaRelacionConDistanciaYParadas() {
+        // Duración real: 10 min fijos + 2 min/km + 8 min por parada, +15 min en la hora pico de la tarde
+        Random random = new Random(50);
+        ModeloEta modelo = new ModeloEta(1.0);
+        LocalDateTime base = LocalDateTime.of(2026, 1, 5, 0, 0);
+        for (int i = 0; i < 3_000; i++) {
+            double km = 5 + random.nextDouble() * 80;
+            int paradas = random.nextInt(12);
+            LocalDateTime salida = base.plusDays(i % 30).withHour(6 + random.nextInt(14));
+            double pico = salida.getHour() >= 17 ? 15 : 0;
+            double minutos = 10 + 2 * km + 8 * paradas + pico + random.nextGaussian() * 3;
+            modelo.aprender(km, paradas, PRIORIDADES[random.nextInt(4)], salida, minutos);
+        }
+
+        LocalDateTime manana = base.withHour(9);
+        double estimado = modelo.predecir(40, 5, "Media", manana);
+        assertEquals(10 + 80 + 40, estimado, 12);
+        // Más distancia y más paradas nunca acortan la estimación
+        assertTrue(modelo.predecir(60, 5, "Media", manana) > estimado);
+        assertTrue(modelo.predecir(40, 8, "Media", manana) > estimado);
+        assertEquals(3_000, modelo.getMuestras());
+        assertTrue(modelo.getErrorMedioMinutos() < 15);
+    }
+
+    @Test
+    void aprender_conOlvidoLaCovarianzaNoCreceSinLimite() {
+        // Siempre prioridad Media y la misma hora: varias variables nunca varían
+        ModeloEta modelo = new ModeloEta(0.9);
+        LocalDateTime salida = LocalDateTime.of(2026, 1, 5, 9, 0);
+        for (int i = 0; i < 5_000; i++) {
+            double km = 10 + i % 50;
+            modelo.aprender(km, 3, "Media", salida, 20 + 2 * km);
+        }
+
+        assertTrue(modelo.trazaCovarianza() <= 8 * 1_000 + 1e-6);
+        assertEquals(80, modelo.predecir(30, 3, "Media", salida), 1);
+    }
+
+    @Test
+    void constructor_rechazaFactorDeOlvidoFueraDeRango() {
+        assertThrows(IllegalArgumentException.class, () -> new ModeloEta(0));
+        assertThrows(IllegalArgumentException.class, () -> new ModeloEta(1.5));
+    }
+}
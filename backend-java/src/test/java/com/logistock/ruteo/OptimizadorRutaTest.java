@@ -0,0 +1,68 @@
+package com.logistock.ruteo;
+
+import com.logistock.model.Ubicacion;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OptimizadorRutaTest {
+
+    private static final long PRESUPUESTO = 500_000_000L;
+
+    /**
+     * Matriz euclidiana a partir de coordenadas en el plano
+     */
+    private static MatrizDistancias plano(double[][] puntos) {
+        double[][] km = new double[puntos.length][puntos.length];
+        for (int i = 0; i < puntos.length; i++) {
+            for (int j = 0; j < puntos.length; j++) {
+                km[i][j] = Math.hypot(puntos[i][0] - puntos[j][0], puntos[i][1] - puntos[j][1]);
+            }
+        }
+        return MatrizDistancias.de(km);
+    }
+
+    @Test
+    void optimizar_paradasEnLineaSeVisitanEnOrden() {
+        // Origen en 0 y destino en 10; las paradas llegan desordenadas
+        MatrizDistancias matriz = plano(new double[][]{{0, 0}, {7, 0}, {2, 0}, {9, 0}, {4, 0}, {10, 0}});
+
+        int[] orden = OptimizadorRuta.optimizar(matriz, true, PRESUPUESTO);
+
+        assertArrayEquals(new int[]{1, 3, 0, 2}, orden);
+        assertEquals(10.0, OptimizadorRuta.distanciaKm(matriz, orden, true), 1e-9);
+    }
+
+    @Test
+    void optimizar_devuelvePermutacionNoPeorQueElOrdenOriginal() {
+        Random aleatorio = new Random(42);
+        double[][] puntos = new double[41][2];
+        for (double[] punto : puntos) {
+            punto[0] = aleatorio.nextDouble() * 100;
+            punto[1] = aleatorio.nextDouble() * 100;
+        }
+        MatrizDistancias matriz = plano(puntos);
+        int[] original = new int[40];
+        Arrays.setAll(original, i -> i);
+
+        int[] orden = OptimizadorRuta.optimizar(matriz, false, PRESUPUESTO);
+
+        int[] ordenado = orden.clone();
+        Arrays.sort(ordenado);
+        assertArrayEquals(original, ordenado);
+        assertTrue(OptimizadorRuta.distanciaKm(matriz, orden, false)
+                < OptimizadorRuta.distanciaKm(matriz, original, false));
+    }
+
+    @Test
+    void haversine_distanciaConocida() {
+        // Lima - Arequipa, aproximadamente 765 km en línea recta
+        double km = MatrizDistancias.haversineKm(
+                new Ubicacion(-12.0464, -77.0428),
+                new Ubicacion(-16.4090, -71.5375));
+        assertEquals(765, km, 10);
+    }
+}
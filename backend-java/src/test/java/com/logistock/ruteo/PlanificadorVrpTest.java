@@ -0,0 +1,66 @@
+package com.logistock.ruteo;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PlanificadorVrpTest {
+
+    /**
+     * Depósito en el centro, dos grupos de 3 entregas a cada lado (x = -10 y x = 10), con un
+     * minuto de viaje por km
+     */
+    private static MatrizDistancias dosGrupos() {
+        double[][] puntos = {{0, 0}, {-10, 0}, {-10, 1}, {-10, -1}, {10, 0}, {10, 1}, {10, -1}};
+        double[][] km = new double[puntos.length][puntos.length];
+        for (int i = 0; i < puntos.length; i++) {
+            for (int j = 0; j < puntos.length; j++) {
+                km[i][j] = Math.hypot(puntos[i][0] - puntos[j][0], puntos[i][1] - puntos[j][1]);
+            }
+        }
+        return MatrizDistancias.de(km, km);
+    }
+
+    @Test
+    void ahorros_agrupaPorZonaRespetandoCapacidad() {
+        int[] demanda = {0, 2, 2, 2, 2, 2, 2};
+        PlanificadorVrp planificador = new PlanificadorVrp(dosGrupos(), demanda, 0);
+
+        List<List<Integer>> rutas = planificador.ahorros(List.of(1, 2, 3, 4, 5, 6), 6, 1000);
+
+        assertEquals(2, rutas.size());
+        for (List<Integer> ruta : rutas) {
+            assertTrue(planificador.carga(ruta) <= 6);
+            // Cada ruta queda en un solo lado del depósito
+            Set<Boolean> lados = new HashSet<>();
+            ruta.forEach(nodo -> lados.add(nodo <= 3));
+            assertEquals(1, lados.size());
+        }
+    }
+
+    @Test
+    void ahorros_dejaFueraLaEntregaQueExcedeLaCapacidad() {
+        int[] demanda = {0, 2, 2, 9, 2, 2, 2};
+        PlanificadorVrp planificador = new PlanificadorVrp(dosGrupos(), demanda, 0);
+
+        List<List<Integer>> rutas = planificador.ahorros(List.of(1, 2, 3, 4, 5, 6), 6, 1000);
+
+        assertTrue(rutas.stream().noneMatch(ruta -> ruta.contains(3)));
+        assertEquals(5, rutas.stream().mapToInt(List::size).sum());
+    }
+
+    @Test
+    void mejorInsercion_respetaLaJornada() {
+        int[] demanda = {0, 1, 1, 1, 1, 1, 1};
+        PlanificadorVrp planificador = new PlanificadorVrp(dosGrupos(), demanda, 0);
+        List<Integer> ruta = new ArrayList<>(List.of(1, 2));
+
+        assertNotNull(planificador.mejorInsercion(ruta, 3, 2, 10, 30));
+        assertNull(planificador.mejorInsercion(ruta, 4, 2, 10, 30));
+    }
+}
@@ -0,0 +1,111 @@
+package com.logistock.service;
+
+import com.logistock.model.Ruta;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class AgendaRutasServiceTest {
+
+    private static final LocalDateTime OCHO = LocalDateTime.of(2026, 3, 2, 8, 0);
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @InjectMocks
+    private AgendaRutasService agendaRutasService;
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void reservar_rechazaElVehiculoOcupadoSinGuardar() {
+        when(mongoTemplate.stream(any(Query.class), eq(Ruta.class)))
+                .thenReturn(Stream.of(ruta("1", "R-1", "ABC-123", "Ana", OCHO, 120)));
+        agendaRutasService.cargar();
+        Supplier<Ruta> guardar = mock(Supplier.class);
+
+        // Mismo vehículo (sin distinguir mayúsculas), otro conductor, empieza antes de que termine la primera
+        IllegalStateException error = assertThrows(IllegalStateException.class, () -> agendaRutasService.reservar(
+                ruta(null, "R-2", " abc-123 ", "Beto", OCHO.plusMinutes(90), 60), guardar));
+
+        assertTrue(error.getMessage().contains("R-1"));
+        verify(guardar, never()).get();
+    }
+
+    @Test
+    void reservar_registraLaRutaGuardadaYLaDisponibilidadLaDescuenta() {
+        when(mongoTemplate.stream(any(Query.class), eq(Ruta.class))).thenReturn(Stream.of());
+        agendaRutasService.cargar();
+
+        agendaRutasService.reservar(ruta(null, "R-1", "ABC-123", "Ana", OCHO.plusHours(1), 60),
+                () -> ruta("1", "R-1", "ABC-123", "Ana", OCHO.plusHours(1), 60));
+
+        // Justo a continuación de la primera no hay solape
+        agendaRutasService.reservar(ruta(null, "R-2", "ABC-123", "Beto", OCHO.plusHours(2), 30),
+                () -> ruta("2", "R-2", "ABC-123", "Beto", OCHO.plusHours(2), 30));
+        List<Map<String, Object>> libres = agendaRutasService.disponibilidad("ABC-123", null, OCHO, OCHO.plusHours(4), 30);
+        assertEquals(2, libres.size());
+        assertEquals(OCHO, libres.get(0).get("desde"));
+        assertEquals(OCHO.plusHours(1), libres.get(0).get("hasta"));
+        assertEquals(OCHO.plusMinutes(150), libres.get(1).get("desde"));
+        assertEquals(0, agendaRutasService.conflictos().get("conflictos"));
+    }
+
+    @Test
+    void conflictos_informaLasRutasSolapadasCargadas() {
+        when(mongoTemplate.stream(any(Query.class), eq(Ruta.class))).thenReturn(Stream.of(
+                ruta("1", "R-1", "ABC-123", "Ana", OCHO, 120),
+                ruta("2", "R-2", "XYZ-999", "Ana", OCHO.plusHours(1), 60)));
+        agendaRutasService.cargar();
+
+        Map<String, Object> resultado = agendaRutasService.conflictos();
+
+        assertEquals(1, resultado.get("conflictos"));
+        List<?> conductores = (List<?>) resultado.get("conductores");
+        Map<?, ?> conflicto = (Map<?, ?>) conductores.get(0);
+        assertEquals("R-1", conflicto.get("ruta"));
+        assertEquals("R-2", conflicto.get("conRuta"));
+    }
+
+    @Test
+    void sinCargarLaAgendaRechazaReservasHastaQueCargue() {
+        when(mongoTemplate.stream(any(Query.class), eq(Ruta.class)))
+                .thenThrow(new DataAccessResourceFailureException("sin conexión"))
+                .thenThrow(new DataAccessResourceFailureException("sin conexión"))
+                .thenReturn(Stream.of());
+        agendaRutasService.cargar();
+
+        assertThrows(IllegalStateException.class, () -> agendaRutasService.reservar(
+                ruta(null, "R-1", "ABC-123", "Ana", OCHO, 60), () -> fail("no debe guardar")));
+
+        // La siguiente operación reintenta la carga
+        Ruta guardada = agendaRutasService.reservar(ruta(null, "R-1", "ABC-123", "Ana", OCHO, 60),
+                () -> ruta("1", "R-1", "ABC-123", "Ana", OCHO, 60));
+        assertEquals("1", guardada.getId());
+    }
+
+    private static Ruta ruta(String id, String codigo, String vehiculo, String conductor, LocalDateTime inicio,
+                             int minutos) {
+        return Ruta.builder().id(id).codigo(codigo).vehiculoAsignado(vehiculo).conductorAsignado(conductor)
+                .fechaPlanificada(inicio).tiempoEstimadoMinutos(minutos).build();
+    }
+}
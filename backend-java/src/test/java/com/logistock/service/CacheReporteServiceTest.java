@@ -0,0 +1,127 @@
+package com.logistock.service;
+
+import com.logistock.model.Product;
+import com.logistock.report.FiltroReporte;
+import com.logistock.report.FormatoReporte;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class CacheReporteServiceTest {
+
+    @Mock
+    private ReportService reportService;
+
+    @Mock
+    private VersionDatosService versionDatosService;
+
+    @TempDir
+    Path directorio;
+
+    private CacheReporteService cacheReporteService;
+
+    private final AtomicInteger generaciones = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        cacheReporteService = new CacheReporteService(reportService, versionDatosService, directorio.toString(), 256);
+        cacheReporteService.inicializar();
+        doReturn(Product.class).when(reportService).tipoEntidad("productos");
+        lenient().doAnswer(invocacion -> {
+            OutputStream out = invocacion.getArgument(3);
+            out.write(("reporte " + generaciones.incrementAndGet()).getBytes(StandardCharsets.UTF_8));
+            return null;
+        }).when(reportService).generar(eq("productos"), eq(FormatoReporte.PDF), any(), any(OutputStream.class));
+    }
+
+    @Test
+    void preparar_generaUnaVezYLuegoSirveDesdeCache() throws IOException {
+        when(versionDatosService.version(Product.class)).thenReturn("v1");
+
+        assertEquals("reporte 1", descargar());
+        assertEquals("reporte 1", descargar());
+
+        verify(reportService, times(1)).generar(eq("productos"), eq(FormatoReporte.PDF), any(), any(OutputStream.class));
+        assertEquals(1, archivos().size());
+    }
+
+    @Test
+    void archivoReemplazadoSeEliminaAlTerminarLaDescargaEnCurso() throws IOException {
+        when(versionDatosService.version(Product.class)).thenReturn("v1");
+        descargar();
+        Path anterior = archivos().get(0);
+
+        CacheReporteService.EnvioReporte enCurso = cacheReporteService.preparar("productos", FormatoReporte.PDF, FiltroReporte.vacio());
+        ByteArrayOutputStream recibido = new ByteArrayOutputStream();
+        enCurso.escribir(new OutputStream() {
+            private boolean reemplazado;
+
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                if (!reemplazado) {
+                    reemplazado = true;
+                    // Mientras se lee el archivo, los datos cambian y otra descarga lo reemplaza
+                    when(versionDatosService.version(Product.class)).thenReturn("v2");
+                    assertEquals("reporte 2", descargar());
+                    assertTrue(Files.exists(anterior));
+                }
+                recibido.write(b, off, len);
+            }
+        });
+
+        assertEquals("reporte 1", recibido.toString(StandardCharsets.UTF_8));
+        assertFalse(Files.exists(anterior));
+        assertEquals(1, archivos().size());
+    }
+
+    @Test
+    void etagCambiaConLaVersionDeLosDatos() {
+        when(versionDatosService.version(Product.class)).thenReturn("v1", "v2");
+
+        String primero = cacheReporteService.preparar("productos", FormatoReporte.PDF, FiltroReporte.vacio()).getEtag();
+        String segundo = cacheReporteService.preparar("productos", FormatoReporte.PDF, FiltroReporte.vacio()).getEtag();
+
+        assertNotEquals(primero, segundo);
+    }
+
+    private String descargar() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        cacheReporteService.preparar("productos", FormatoReporte.PDF, FiltroReporte.vacio()).escribir(out);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    private List<Path> archivos() throws IOException {
+        try (Stream<Path> lista = Files.list(directorio)) {
+            return lista.toList();
+        }
+    }
+}
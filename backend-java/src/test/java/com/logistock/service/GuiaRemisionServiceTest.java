@@ -0,0 +1,95 @@
+package com.logistock.service;
+
+import com.logistock.model.Pedido;
+import com.logistock.report.FiltroReporte;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class GuiaRemisionServiceTest {
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private ReportService reportService;
+
+    private GuiaRemisionService guiaRemisionService;
+
+    @BeforeEach
+    void setUp() {
+        // Ventana menor que la cantidad de pedidos para que se escriban guías mientras otras se renderizan
+        guiaRemisionService = new GuiaRemisionService(mongoTemplate, reportService, 4, 8);
+        guiaRemisionService.iniciar();
+        when(reportService.consulta(eq("orders"), any())).thenReturn(new Query());
+    }
+
+    @AfterEach
+    void tearDown() {
+        guiaRemisionService.detener();
+    }
+
+    @Test
+    void generarZip_escribeLasGuiasEnElOrdenDelCursor() throws IOException {
+        List<Pedido> pedidos = IntStream.range(0, 40).mapToObj(i -> pedido("P" + i)).collect(Collectors.toList());
+        when(mongoTemplate.stream(any(Query.class), eq(Pedido.class))).thenReturn(pedidos.stream());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        int escritas = guiaRemisionService.generarZip(new FiltroReporte(), out);
+
+        assertEquals(40, escritas);
+        List<String> entradas = new ArrayList<>();
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            ZipEntry entrada;
+            while ((entrada = zip.getNextEntry()) != null) {
+                entradas.add(entrada.getName());
+                assertTrue(new String(zip.readAllBytes(), 0, 5).startsWith("%PDF"));
+            }
+        }
+        assertEquals(IntStream.range(0, 40).mapToObj(i -> "guia-P" + i + ".pdf").collect(Collectors.toList()), entradas);
+    }
+
+    @Test
+    void generarZip_errorAlRenderizarUnaGuiaFallaElLote() {
+        Pedido roto = new Pedido() {
+            @Override
+            public String getClienteNombre() {
+                throw new IllegalStateException("pedido corrupto");
+            }
+        };
+        when(mongoTemplate.stream(any(Query.class), eq(Pedido.class))).thenReturn(Stream.of(pedido("P0"), roto));
+
+        IOException error = assertThrows(IOException.class,
+                () -> guiaRemisionService.generarZip(new FiltroReporte(), new ByteArrayOutputStream()));
+        assertTrue(error.getMessage().contains("pedido corrupto"));
+    }
+
+    private static Pedido pedido(String id) {
+        Pedido pedido = new Pedido();
+        pedido.setId(id);
+        pedido.setClienteNombre("Cliente " + id);
+        return pedido;
+    }
+}
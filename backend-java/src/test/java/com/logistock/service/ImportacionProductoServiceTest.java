@@ -0,0 +1,165 @@
+package com.logistock.service;
+
+import com.logistock.dto.ResultadoImportacion;
+import com.logistock.model.MovimientoStock;
+import com.logistock.model.Product;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.bulk.BulkWriteUpsert;
+import org.bson.BsonObjectId;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class ImportacionProductoServiceTest {
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private MovimientoStockService movimientoStockService;
+
+    @Mock
+    private StockCalienteService stockCalienteService;
+
+    @Mock
+    private VersionDatosService versionDatosService;
+
+    @Mock
+    private BulkOperations bulkOperations;
+
+    private ImportacionProductoService importacionProductoService;
+
+    @BeforeEach
+    void setUp() {
+        importacionProductoService = new ImportacionProductoService(mongoTemplate, movimientoStockService,
+                stockCalienteService, versionDatosService, 1000, 1000);
+        when(mongoTemplate.bulkOps(eq(BulkOperations.BulkMode.UNORDERED), eq(Product.class))).thenReturn(bulkOperations);
+        ejecutarSinCambioDeModo();
+    }
+
+    @Test
+    void importarCsv_productoNuevoSeInsertaConSuMovimiento() throws IOException {
+        when(mongoTemplate.find(any(Query.class), eq(Product.class))).thenReturn(List.of());
+        ObjectId id = new ObjectId();
+        when(bulkOperations.execute()).thenReturn(BulkWriteResult.acknowledged(0, 0, 0, 0,
+                List.of(new BulkWriteUpsert(0, new BsonObjectId(id))), List.of()));
+
+        ResultadoImportacion resultado = importar("code,name,stock\nA1,Caja,10\n");
+
+        assertEquals(1, resultado.getInsertados());
+        assertEquals(0, resultado.getFallidos());
+        verify(bulkOperations).upsert(any(Query.class), any(Update.class));
+        List<MovimientoStock> movimientos = movimientosRegistrados().get(0);
+        assertEquals(1, movimientos.size());
+        assertEquals(id.toHexString(), movimientos.get(0).getProductoId());
+        assertEquals(10, movimientos.get(0).getCantidad());
+    }
+
+    @Test
+    void importarCsv_stockCambiadoDuranteLaEscrituraSeReleeYReintenta() throws IOException {
+        when(mongoTemplate.find(any(Query.class), eq(Product.class)))
+                .thenReturn(List.of(producto("p1", "A1", 5)))  // lectura del lote
+                .thenReturn(List.of())                         // relectura: la escritura no se aplicó
+                .thenReturn(List.of(producto("p1", "A1", 7))); // segunda pasada con el stock nuevo
+        when(bulkOperations.execute())
+                .thenReturn(BulkWriteResult.acknowledged(0, 0, 0, 0, List.of(), List.of()))
+                .thenReturn(BulkWriteResult.acknowledged(0, 1, 0, 1, List.of(), List.of()));
+
+        ResultadoImportacion resultado = importar("code,name,stock\nA1,Caja,10\n");
+
+        assertEquals(1, resultado.getActualizados());
+        assertEquals(0, resultado.getFallidos());
+        verify(bulkOperations, times(2)).updateOne(any(Query.class), any(Update.class));
+        List<List<MovimientoStock>> registrados = movimientosRegistrados();
+        assertTrue(registrados.get(0).isEmpty());
+        assertEquals(1, registrados.get(1).size());
+        assertEquals(3, registrados.get(1).get(0).getCantidad());
+    }
+
+    @Test
+    void importarCsv_filaQueSigueSinAplicarseSeInformaComoError() throws IOException {
+        when(mongoTemplate.find(any(Query.class), eq(Product.class)))
+                .thenReturn(List.of(producto("p1", "A1", 5)))
+                .thenReturn(List.of())
+                .thenReturn(List.of(producto("p1", "A1", 7)))
+                .thenReturn(List.of());
+        when(bulkOperations.execute()).thenReturn(BulkWriteResult.acknowledged(0, 0, 0, 0, List.of(), List.of()));
+
+        ResultadoImportacion resultado = importar("code,name,stock\nA1,Caja,10\n");
+
+        assertEquals(0, resultado.getActualizados());
+        assertEquals(1, resultado.getFallidos());
+        assertEquals("A1", resultado.getErrores().get(0).getCodigo());
+    }
+
+    @Test
+    void importarCsv_filaInvalidaNoDetieneElLote() throws IOException {
+        when(mongoTemplate.find(any(Query.class), eq(Product.class))).thenReturn(List.of(producto("p1", "A1", 5)));
+        when(bulkOperations.execute()).thenReturn(BulkWriteResult.acknowledged(0, 1, 0, 1, List.of(), List.of()));
+
+        ResultadoImportacion resultado = importar("code,name,stock\nA1,Caja,5\nA2,Tornillo,-3\n");
+
+        assertEquals(2, resultado.getTotal());
+        assertEquals(1, resultado.getActualizados());
+        assertEquals(1, resultado.getFallidos());
+        assertTrue(movimientosRegistrados().get(0).isEmpty());
+    }
+
+    private ResultadoImportacion importar(String csv) throws IOException {
+        return importacionProductoService.importarCsv(
+                new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), ',');
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<List<MovimientoStock>> movimientosRegistrados() {
+        ArgumentCaptor<List<MovimientoStock>> captor = ArgumentCaptor.forClass(List.class);
+        verify(movimientoStockService, atLeastOnce()).registrar(captor.capture());
+        return captor.getAllValues();
+    }
+
+    private static Product producto(String id, String code, int stock) {
+        Product producto = new Product();
+        producto.setId(id);
+        producto.setCode(code);
+        producto.setStock(stock);
+        return producto;
+    }
+
+    /**
+     * El mock de StockCalienteService ejecuta directamente las operaciones que recibe
+     */
+    @SuppressWarnings("unchecked")
+    private void ejecutarSinCambioDeModo() {
+        lenient().when(stockCalienteService.sinCambioDeModo(any(Supplier.class)))
+                .thenAnswer(inv -> ((Supplier<Object>) inv.getArgument(0)).get());
+        lenient().doAnswer(inv -> {
+            ((Runnable) inv.getArgument(0)).run();
+            return null;
+        }).when(stockCalienteService).sinCambioDeModo(any(Runnable.class));
+    }
+}
@@ -0,0 +1,130 @@
+package com.logistock.service;
+
+import com.logistock.model.MovimientoStock;
+import com.logistock.model.Product;
+import com.logistock.model.SnapshotStock;
+import com.logistock.repository.MovimientoStockRepository;
+import com.logistock.repository.ProductRepository;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationResults;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalInt;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class MovimientoStockServiceTest {
+
+    @Mock
+    private MovimientoStockRepository movimientoStockRepository;
+
+    @Mock
+    private ProductRepository productRepository;
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private StockCalienteService stockCalienteService;
+
+    @InjectMocks
+    private MovimientoStockService movimientoStockService;
+
+    @Test
+    void stockEn_sumaMovimientosSobreElSnapshot() {
+        LocalDateTime corte = LocalDateTime.now().minusDays(1);
+        SnapshotStock snapshot = SnapshotStock.builder().productoId("p1").stock(40).fecha(corte).build();
+        when(mongoTemplate.findOne(any(Query.class), eq(SnapshotStock.class))).thenReturn(snapshot);
+        when(mongoTemplate.aggregate(any(Aggregation.class), eq(MovimientoStock.class), eq(Document.class)))
+                .thenReturn(resultados(suma("p1", -7, 3)));
+
+        Map<String, Object> resultado = movimientoStockService.stockEn("p1", LocalDateTime.now());
+
+        assertEquals(33, resultado.get("stock"));
+        assertEquals(corte, resultado.get("snapshot"));
+        assertEquals(3, resultado.get("movimientosAplicados"));
+    }
+
+    @Test
+    void consolidar_pliegaDeltasSobreElUltimoSnapshot() {
+        when(mongoTemplate.aggregate(any(Aggregation.class), eq(MovimientoStock.class), eq(Document.class)))
+                .thenReturn(resultados(suma("p1", -5, 2), suma("p2", 12, 1)))
+                .thenReturn(resultados());
+        when(mongoTemplate.aggregate(any(Aggregation.class), eq(SnapshotStock.class), eq(Document.class)))
+                .thenReturn(resultados(new Document("_id", "p1").append("stock", 20)));
+        when(productRepository.findAllById(anyCollection())).thenReturn(List.of(producto("p1", 15), producto("p2", 12)));
+        when(stockCalienteService.disponible(any())).thenReturn(OptionalInt.empty());
+
+        movimientoStockService.consolidar();
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Collection<SnapshotStock>> captor = ArgumentCaptor.forClass(Collection.class);
+        verify(mongoTemplate).insertAll(captor.capture());
+        Map<String, Integer> stocks = new HashMap<>();
+        captor.getValue().forEach(s -> stocks.put(s.getProductoId(), s.getStock()));
+        assertEquals(Map.of("p1", 15, "p2", 12), stocks);
+    }
+
+    @Test
+    void consolidar_productoCalienteSeComparaContraElContador() {
+        when(mongoTemplate.aggregate(any(Aggregation.class), eq(MovimientoStock.class), eq(Document.class)))
+                .thenReturn(resultados(suma("p1", -5, 5)))
+                .thenReturn(resultados());
+        when(mongoTemplate.aggregate(any(Aggregation.class), eq(SnapshotStock.class), eq(Document.class)))
+                .thenReturn(resultados(new Document("_id", "p1").append("stock", 20)));
+        // El documento aún no recibió el volcado del contador
+        Product caliente = producto("p1", 20);
+        caliente.setHotSku(true);
+        when(productRepository.findAllById(anyCollection())).thenReturn(List.of(caliente));
+        when(stockCalienteService.disponible("p1")).thenReturn(OptionalInt.of(15));
+
+        movimientoStockService.consolidar();
+
+        verify(stockCalienteService).disponible("p1");
+    }
+
+    @Test
+    void consolidar_sinMovimientosNuevosNoGuardaSnapshots() {
+        when(mongoTemplate.aggregate(any(Aggregation.class), eq(MovimientoStock.class), eq(Document.class)))
+                .thenReturn(resultados());
+
+        movimientoStockService.consolidar();
+
+        verify(mongoTemplate, never()).insertAll(anyCollection());
+    }
+
+    private static Document suma(String productoId, int total, int movimientos) {
+        return new Document("_id", productoId).append("total", total).append("movimientos", movimientos);
+    }
+
+    private static AggregationResults<Document> resultados(Document... filas) {
+        return new AggregationResults<>(List.of(filas), new Document());
+    }
+
+    private static Product producto(String id, int stock) {
+        Product producto = new Product();
+        producto.setId(id);
+        producto.setStock(stock);
+        return producto;
+    }
+}
@@ -3,18 +3,47 @@ package com.logistock.service;
 import com.logistock.dto.StockValidationResult;
 import com.logistock.model.Product;
 import com.logistock.model.ProductoPedido;
+import com.logistock.model.TipoMovimiento;
 import com.logistock.repository.ProductRepository;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.ServerAddress;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import org.bson.BsonDocument;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 
 import java.math.BigDecimal;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.Set;
+import java.util.function.Supplier;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -23,9 +52,29 @@ public class ProductServiceTest {
     @Mock
     private ProductRepository productRepository;
 
+    @Mock
+    private StockCalienteService stockCalienteService;
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private VersionDatosService versionDatosService;
+
+    @Mock
+    private MovimientoStockService movimientoStockService;
+
+    @Mock
+    private BulkOperations bulkOperations;
+
     @InjectMocks
     private ProductService productService;
 
+    @BeforeEach
+    void setUp() {
+        ejecutarSinCambioDeModo();
+    }
+
     @Test
     void validateStockForOrder_noWarnings() {
         Product p = new Product();
@@ -35,7 +84,7 @@ public class ProductServiceTest {
         p.setMinStock(5);
         p.setPrice(BigDecimal.valueOf(10.0));
 
-        when(productRepository.findById("p1")).thenReturn(Optional.of(p));
+        when(productRepository.findAllById(anyCollection())).thenReturn(List.of(p));
 
         ProductoPedido pp = new ProductoPedido("p1", "Producto A", 3, 10.0);
         StockValidationResult res = productService.validateStockForOrder(List.of(pp));
@@ -54,7 +103,7 @@ public class ProductServiceTest {
         p.setMinStock(5);
         p.setPrice(BigDecimal.valueOf(15.0));
 
-        when(productRepository.findById("p2")).thenReturn(Optional.of(p));
+        when(productRepository.findAllById(anyCollection())).thenReturn(List.of(p));
 
         ProductoPedido pp = new ProductoPedido("p2", "Producto B", 1, 15.0);
         StockValidationResult res = productService.validateStockForOrder(List.of(pp));
@@ -67,7 +116,7 @@ public class ProductServiceTest {
 
     @Test
     void validateStockForOrder_productNotFound() {
-        when(productRepository.findById("missing")).thenReturn(Optional.empty());
+        when(productRepository.findAllById(anyCollection())).thenReturn(List.of());
 
         ProductoPedido pp = new ProductoPedido("missing", "No existe", 1, 1.0);
 
@@ -77,4 +126,120 @@ public class ProductServiceTest {
 
         assertTrue(ex.getMessage().contains("Producto no encontrado"));
     }
+
+    @Test
+    void validateStockForOrder_unaSolaLecturaParaVariasLineas() {
+        Product a = new Product();
+        a.setId("a");
+        a.setName("Producto A");
+        a.setStock(10);
+        a.setMinStock(1);
+        Product b = new Product();
+        b.setId("b");
+        b.setName("Producto B");
+        b.setStock(10);
+        b.setMinStock(1);
+
+        when(productRepository.findAllById(anyCollection())).thenReturn(List.of(a, b));
+
+        StockValidationResult res = productService.validateStockForOrder(List.of(
+            new ProductoPedido("a", "Producto A", 1, 1.0),
+            new ProductoPedido("b", "Producto B", 2, 1.0),
+            new ProductoPedido("a", "Producto A", 3, 1.0)));
+
+        assertFalse(res.isHasLowStockWarnings());
+        verify(productRepository, times(1)).findAllById(anyCollection());
+        verify(productRepository, never()).findById(any());
+    }
+
+    @Test
+    void reservarStockEnLote_sinUpsertYReleeSoloSiFaltanCoincidencias() {
+        when(stockCalienteService.reservar(any(), anyInt())).thenReturn(null);
+        when(mongoTemplate.bulkOps(eq(BulkOperations.BulkMode.UNORDERED), eq(Product.class))).thenReturn(bulkOperations);
+        when(bulkOperations.execute()).thenReturn(BulkWriteResult.acknowledged(1, 1, 0, 1, List.of(), List.of()));
+        Product existente = new Product();
+        existente.setId("a");
+        when(mongoTemplate.find(any(Query.class), eq(Product.class))).thenReturn(List.of(existente));
+
+        Map<String, Integer> cantidades = new LinkedHashMap<>();
+        cantidades.put("a", 2);
+        cantidades.put("inexistente", 1);
+        Set<String> fallidos = productService.reservarStockEnLote(cantidades);
+
+        assertEquals(Set.of("inexistente"), fallidos);
+        verify(bulkOperations, times(2)).updateOne(any(Query.class), any(AggregationUpdate.class));
+        verify(bulkOperations, never()).upsert(any(Query.class), any(Update.class));
+    }
+
+    @Test
+    void reservarStockEnLote_stockInsuficienteSeIdentificaPorIndice() {
+        when(stockCalienteService.reservar(any(), anyInt())).thenReturn(null);
+        when(mongoTemplate.bulkOps(eq(BulkOperations.BulkMode.UNORDERED), eq(Product.class))).thenReturn(bulkOperations);
+        BulkWriteResult parcial = BulkWriteResult.acknowledged(1, 1, 0, 1, List.of(), List.of());
+        BulkWriteError sinStock = new BulkWriteError(241, "Failed to parse number 'stock insuficiente'", new BsonDocument(), 1);
+        when(bulkOperations.execute()).thenThrow(new BulkOperationException("Bulk write operation error",
+                new MongoBulkWriteException(parcial, List.of(sinStock), null, new ServerAddress(), Set.of())));
+
+        Map<String, Integer> cantidades = new LinkedHashMap<>();
+        cantidades.put("a", 2);
+        cantidades.put("b", 5);
+        Set<String> fallidos = productService.reservarStockEnLote(cantidades);
+
+        assertEquals(Set.of("b"), fallidos);
+        verify(mongoTemplate, never()).find(any(Query.class), eq(Product.class));
+    }
+
+    @Test
+    void reservarStockEnLote_todasCoincidenSinReleer() {
+        when(stockCalienteService.reservar(any(), anyInt())).thenReturn(null);
+        when(mongoTemplate.bulkOps(eq(BulkOperations.BulkMode.UNORDERED), eq(Product.class))).thenReturn(bulkOperations);
+        when(bulkOperations.execute()).thenReturn(BulkWriteResult.acknowledged(2, 2, 0, 2, List.of(), List.of()));
+
+        assertTrue(productService.reservarStockEnLote(Map.of("a", 1, "b", 1)).isEmpty());
+        verify(mongoTemplate, never()).find(any(Query.class), eq(Product.class));
+    }
+
+    @Test
+    void update_stockCambiadoDesdeLaLecturaSeRelee() {
+        when(stockCalienteService.disponible("p1")).thenReturn(OptionalInt.empty());
+        Product leido = new Product();
+        leido.setId("p1");
+        leido.setStock(10);
+        Product releido = new Product();
+        releido.setId("p1");
+        releido.setStock(7);
+        when(productRepository.findById("p1")).thenReturn(Optional.of(leido), Optional.of(releido));
+        Product actualizado = new Product();
+        actualizado.setId("p1");
+        actualizado.setStock(15);
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(Product.class)))
+                .thenReturn(null, actualizado);
+
+        Product cambios = new Product();
+        cambios.setName("Producto A");
+        cambios.setStock(15);
+        assertSame(actualizado, productService.update("p1", cambios));
+
+        ArgumentCaptor<Query> consultas = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate, times(2)).findAndModify(consultas.capture(), any(Update.class),
+                any(FindAndModifyOptions.class), eq(Product.class));
+        assertEquals(10, consultas.getAllValues().get(0).getQueryObject().get("stock"));
+        assertEquals(7, consultas.getAllValues().get(1).getQueryObject().get("stock"));
+        // El movimiento es la diferencia con el stock sobre el que se aplicó la escritura
+        verify(movimientoStockService).registrar("p1", 8, TipoMovimiento.AJUSTE_MANUAL, null);
+        verify(productRepository, never()).save(any());
+    }
+
+    /**
+     * El mock de StockCalienteService ejecuta directamente las operaciones que recibe
+     */
+    @SuppressWarnings("unchecked")
+    private void ejecutarSinCambioDeModo() {
+        lenient().when(stockCalienteService.sinCambioDeModo(any(Supplier.class)))
+                .thenAnswer(inv -> ((Supplier<Object>) inv.getArgument(0)).get());
+        lenient().doAnswer(inv -> {
+            ((Runnable) inv.getArgument(0)).run();
+            return null;
+        }).when(stockCalienteService).sinCambioDeModo(any(Runnable.class));
+    }
 }
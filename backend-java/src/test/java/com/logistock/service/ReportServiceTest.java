@@ -0,0 +1,202 @@
+package com.logistock.service;
+
+import com.logistock.model.Cliente;
+import com.logistock.model.EstadoPedido;
+import com.logistock.model.Pedido;
+import com.logistock.model.Product;
+import com.logistock.model.Proveedor;
+import com.logistock.model.Ruta;
+import com.logistock.report.FiltroReporte;
+import com.logistock.report.FormatoReporte;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class ReportServiceTest {
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @InjectMocks
+    private ReportService reportService;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(reportService, "hilosConsolidado", 5);
+        reportService.iniciar();
+    }
+
+    @AfterEach
+    void tearDown() {
+        reportService.detener();
+    }
+
+    @Test
+    void consulta_mapeaRangoYFiltrosACriterios() {
+        FiltroReporte filtro = new FiltroReporte();
+        filtro.setDesde(LocalDate.of(2026, 3, 1));
+        filtro.setHasta(LocalDate.of(2026, 3, 31));
+        filtro.setEstado(" entregado ");
+
+        Document consulta = reportService.consulta("orders", filtro).getQueryObject();
+
+        // El rango es inclusive: hasta el comienzo del día siguiente a 'hasta'
+        assertEquals(List.of(
+                new Document("fechaCreacion", new Document("$gte", LocalDate.of(2026, 3, 1).atStartOfDay())
+                        .append("$lt", LocalDate.of(2026, 4, 1).atStartOfDay())),
+                new Document("estado", EstadoPedido.ENTREGADO)), consulta.get("$and"));
+    }
+
+    @Test
+    void consulta_filtroPropioDeCadaEntidad() {
+        FiltroReporte filtro = new FiltroReporte();
+        filtro.setCategoria("Herramientas");
+
+        assertEquals(new Document("$and", List.of(new Document("category", "Herramientas"))),
+                reportService.consulta("inventory", filtro).getQueryObject());
+        assertEquals(new Document("$and", List.of(new Document("categoria", "Herramientas"))),
+                reportService.consulta("clients", filtro).getQueryObject());
+        assertTrue(reportService.consulta("routes", null).getQueryObject().isEmpty());
+    }
+
+    @Test
+    void consulta_filtrosInvalidosSonError() {
+        FiltroReporte tipo = new FiltroReporte();
+        tipo.setTipo("Nacional");
+        assertThrows(IllegalArgumentException.class, () -> reportService.consulta("inventory", tipo));
+
+        FiltroReporte estado = new FiltroReporte();
+        estado.setEstado("perdido");
+        assertThrows(IllegalArgumentException.class, () -> reportService.consulta("orders", estado));
+
+        FiltroReporte rango = new FiltroReporte();
+        rango.setDesde(LocalDate.of(2026, 3, 2));
+        rango.setHasta(LocalDate.of(2026, 3, 1));
+        assertThrows(IllegalArgumentException.class, () -> reportService.consulta("routes", rango));
+
+        assertThrows(IllegalArgumentException.class, () -> reportService.consulta("usuarios", null));
+    }
+
+    @Test
+    void generar_proyectaSoloLosCamposQueLeenLasColumnas() throws IOException {
+        when(mongoTemplate.stream(any(Query.class), eq(Ruta.class)))
+                .thenReturn(Stream.of(Ruta.builder().codigo("R-1").nombre("Centro, norte").estado("Planificada").build()));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        reportService.generar("routes", FormatoReporte.PDF, null, out);
+
+        ArgumentCaptor<Query> consulta = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).stream(consulta.capture(), eq(Ruta.class));
+        assertEquals(Set.of("codigo", "nombre", "origen", "destino", "estado"),
+                consulta.getValue().getFieldsObject().keySet());
+        assertTrue(out.size() > 0);
+    }
+
+    @Test
+    void generar_columnaDeVariosCamposLosProyectaTodos() throws IOException {
+        when(mongoTemplate.stream(any(Query.class), eq(Ruta.class))).thenReturn(Stream.of());
+
+        reportService.generar("routes", FormatoReporte.EXCEL, null, new ByteArrayOutputStream());
+
+        ArgumentCaptor<Query> consulta = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).stream(consulta.capture(), eq(Ruta.class));
+        // "Costo Total" suma tres campos del documento
+        assertEquals(Set.of("codigo", "nombre", "origen", "destino", "distanciaKm", "estado", "prioridad",
+                "costoCombustible", "costoPeajes", "otrosCostos"), consulta.getValue().getFieldsObject().keySet());
+    }
+
+    @Test
+    void consolidado_escribeCadaHojaCompletaConSuAvance() throws IOException {
+        devolver(Product.class, () -> IntStream.range(0, 1201).mapToObj(i -> {
+            Product producto = new Product();
+            producto.setCode("P" + i);
+            return producto;
+        }));
+        devolver(Ruta.class, () -> Stream.of(Ruta.builder().codigo("R-1").build(), Ruta.builder().codigo("R-2").build()));
+        devolver(Cliente.class, Stream::of);
+        devolver(Proveedor.class, () -> Stream.of(Proveedor.builder().nombre("Acme").build()));
+        devolver(Pedido.class, () -> IntStream.range(0, 600).mapToObj(i -> new Pedido()));
+        Map<String, List<Long>> avance = new LinkedHashMap<>();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        reportService.generar(ReportService.CONSOLIDADO, FormatoReporte.EXCEL, null, out,
+                (hoja, filas) -> avance.computeIfAbsent(hoja, h -> new ArrayList<>()).add(filas));
+
+        try (XSSFWorkbook libro = new XSSFWorkbook(new ByteArrayInputStream(out.toByteArray()))) {
+            assertEquals(1201, libro.getSheet("Inventario").getLastRowNum());
+            assertEquals("P1200", libro.getSheet("Inventario").getRow(1201).getCell(0).getStringCellValue());
+            assertEquals(2, libro.getSheet("Rutas").getLastRowNum());
+            assertEquals(0, libro.getSheet("Clientes").getLastRowNum());
+            assertEquals(1, libro.getSheet("Proveedores").getLastRowNum());
+            assertEquals(600, libro.getSheet("Pedidos").getLastRowNum());
+        }
+        // Un aviso por lote de 500 filas más el lote final de cada hoja
+        assertEquals(List.of(500L, 1000L, 1201L), avance.get("Inventario"));
+        assertEquals(List.of(500L, 600L), avance.get("Pedidos"));
+        assertEquals(List.of(0L), avance.get("Clientes"));
+    }
+
+    @Test
+    void consolidado_errorDeUnaHojaFallaElReporte() {
+        devolver(Product.class, Stream::of);
+        devolver(Ruta.class, Stream::of);
+        devolver(Cliente.class, () -> {
+            throw new IllegalStateException("conexión perdida");
+        });
+        devolver(Proveedor.class, Stream::of);
+        devolver(Pedido.class, Stream::of);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        IOException error = assertThrows(IOException.class,
+                () -> reportService.generar(ReportService.CONSOLIDADO, FormatoReporte.EXCEL, null, out));
+
+        assertTrue(error.getMessage().contains("Clientes"));
+        assertEquals(0, out.size());
+    }
+
+    @Test
+    void consolidado_soloAdmiteExcelYRangoDeFechas() {
+        FiltroReporte categoria = new FiltroReporte();
+        categoria.setCategoria("Herramientas");
+
+        assertThrows(IllegalArgumentException.class, () -> reportService.generar(ReportService.CONSOLIDADO,
+                FormatoReporte.EXCEL, categoria, new ByteArrayOutputStream()));
+        assertThrows(IllegalArgumentException.class, () -> reportService.generar(ReportService.CONSOLIDADO,
+                FormatoReporte.PDF, null, new ByteArrayOutputStream()));
+    }
+
+    private <T> void devolver(Class<T> tipo, Supplier<Stream<T>> filas) {
+        lenient().when(mongoTemplate.stream(any(Query.class), eq(tipo))).thenAnswer(invocacion -> filas.get());
+    }
+}
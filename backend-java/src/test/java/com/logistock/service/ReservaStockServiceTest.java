@@ -0,0 +1,155 @@
+package com.logistock.service;
+
+import com.logistock.model.Product;
+import com.logistock.model.ProductoPedido;
+import com.logistock.model.ReservaStock;
+import com.logistock.repository.ReservaStockRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class ReservaStockServiceTest {
+
+    @Mock
+    private ReservaStockRepository reservaStockRepository;
+
+    @Mock
+    private ProductService productService;
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private IndexOperations indexOperations;
+
+    private ReservaStockService reservaStockService;
+
+    private final AtomicInteger secuencia = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        reservaStockService = new ReservaStockService(reservaStockRepository, productService, mongoTemplate, 15, 120);
+        Product producto = new Product();
+        producto.setId("p1");
+        producto.setName("Producto A");
+        producto.setStock(10);
+        lenient().when(productService.cargarProductos(anyCollection())).thenReturn(Map.of("p1", producto));
+        lenient().when(reservaStockRepository.insert(any(ReservaStock.class))).thenAnswer(invocacion -> {
+            ReservaStock reserva = invocacion.getArgument(0);
+            reserva.setId("r" + secuencia.incrementAndGet());
+            return reserva;
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        reservaStockService.detener();
+    }
+
+    @Test
+    void crearYLiberar_actualizanElReservado() {
+        ReservaStock reserva = reservaStockService.crear(List.of(linea("p1", 4)), null, "ana");
+
+        assertEquals(4, reservaStockService.reservado("p1"));
+        assertTrue(reservaStockService.obtener(reserva.getId()).isPresent());
+
+        assertTrue(reservaStockService.liberar(reserva.getId()));
+        assertEquals(0, reservaStockService.reservado("p1"));
+        assertFalse(reservaStockService.liberar(reserva.getId()));
+        assertEquals(0, reservaStockService.reservado("p1"));
+    }
+
+    @Test
+    void crear_rechazaSiNoHayDisponible() {
+        reservaStockService.crear(List.of(linea("p1", 8)), null, "ana");
+
+        assertThrows(IllegalStateException.class,
+                () -> reservaStockService.crear(List.of(linea("p1", 3)), null, "luis"));
+        assertEquals(8, reservaStockService.reservado("p1"));
+    }
+
+    @Test
+    void retirarYRestaurar_devuelvenElReservado() {
+        ReservaStock reserva = reservaStockService.crear(List.of(linea("p1", 4)), null, "ana");
+
+        ReservaStock retirada = reservaStockService.conBloqueo(reservaStockService.productosDe(reserva.getId()),
+                () -> reservaStockService.retirar(reserva.getId()));
+        assertSame(reserva, retirada);
+        assertEquals(0, reservaStockService.reservado("p1"));
+        assertNull(reservaStockService.retirar(reserva.getId()));
+
+        reservaStockService.restaurar(retirada);
+        assertEquals(4, reservaStockService.reservado("p1"));
+        assertTrue(reservaStockService.obtener(reserva.getId()).isPresent());
+    }
+
+    @Test
+    void reservaVencida_seLiberaSola() throws InterruptedException {
+        ReservaStock vencida = ReservaStock.builder()
+                .id("vencida")
+                .productos(List.of(linea("p1", 5)))
+                .creadaEn(LocalDateTime.now().minusMinutes(20))
+                .expiraEn(LocalDateTime.now())
+                .build();
+        when(mongoTemplate.indexOps(ReservaStock.class)).thenReturn(indexOperations);
+        when(reservaStockRepository.findByExpiraEnAfter(any(LocalDateTime.class))).thenReturn(List.of(vencida));
+
+        reservaStockService.inicializar();
+
+        long limite = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (reservaStockService.obtener("vencida").isPresent() && System.nanoTime() < limite) {
+            Thread.sleep(10);
+        }
+        assertTrue(reservaStockService.obtener("vencida").isEmpty());
+        assertEquals(0, reservaStockService.reservado("p1"));
+    }
+
+    @Test
+    void crearYLiberarConcurrentes_noDejanReservadoHuerfano() throws Exception {
+        ExecutorService hilos = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> tareas = new ArrayList<>();
+            for (int i = 0; i < 400; i++) {
+                tareas.add(hilos.submit(() -> {
+                    ReservaStock reserva = reservaStockService.crear(List.of(linea("p1", 1)), null, "ana");
+                    reservaStockService.liberar(reserva.getId());
+                }));
+            }
+            for (Future<?> tarea : tareas) {
+                tarea.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            hilos.shutdownNow();
+        }
+        assertEquals(0, reservaStockService.reservado("p1"));
+    }
+
+    private static ProductoPedido linea(String productoId, int cantidad) {
+        ProductoPedido linea = new ProductoPedido();
+        linea.setProductoId(productoId);
+        linea.setCantidad(cantidad);
+        return linea;
+    }
+}
@@ -0,0 +1,310 @@
+package com.logistock.service;
+
+import com.logistock.dto.FiltroRutas;
+import com.logistock.model.Ruta;
+import com.logistock.model.Ubicacion;
+import com.logistock.repository.RutaRepository;
+import com.logistock.ruteo.MatrizDistancias;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.result.UpdateResult;
+import org.bson.Document;
+import org.bson.types.Decimal128;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationResults;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+import org.springframework.data.domain.Page;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class RutaServiceTest {
+
+    private static final LocalDate DIA = LocalDate.of(2026, 3, 2);
+    private static final LocalDateTime LEIDA = LocalDateTime.of(2026, 3, 1, 18, 0);
+
+    // Origen y dos paradas: la primera lejos, la segunda cerca. Sin destino fijo el mejor
+    // recorrido es 0 -> 2 -> 1 (10 km) en lugar de 0 -> 1 -> 2 (19 km)
+    private static final double[][] KM = {
+            {0, 10, 1},
+            {10, 0, 9},
+            {1, 9, 0}};
+
+    @Mock
+    private RutaRepository rutaRepository;
+
+    @Mock
+    private VersionDatosService versionDatosService;
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private DistanciasService distanciasService;
+
+    @Mock
+    private AgendaRutasService agendaRutasService;
+
+    @Mock
+    private EtaService etaService;
+
+    @InjectMocks
+    private RutaService rutaService;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(rutaService, "presupuestoMs", 50L);
+        lenient().when(distanciasService.matriz(anyList())).thenReturn(MatrizDistancias.de(KM));
+    }
+
+    @AfterEach
+    void tearDown() {
+        rutaService.detenerPlanificador();
+    }
+
+    @Test
+    void planificarDia_optimizaCadaRutaYOmiteLasQueNoTienenCoordenadas() {
+        Ruta sinCoordenadas = rutaConParadas("2", "R-2");
+        sinCoordenadas.getParadas().get(0).setUbicacion(null);
+        when(rutaRepository.findRutasPlanificadasForDate(DIA.atStartOfDay(), DIA.plusDays(1).atStartOfDay()))
+                .thenReturn(List.of(rutaConParadas("1", "R-1"), sinCoordenadas));
+
+        Map<String, Object> resumen = rutaService.planificarDia(DIA, false);
+
+        assertEquals(2, resumen.get("rutas"));
+        assertEquals(1, resumen.get("optimizadas"));
+        assertEquals(new BigDecimal("19.00"), resumen.get("distanciaAnteriorKm"));
+        assertEquals(new BigDecimal("10.00"), resumen.get("distanciaKm"));
+        assertEquals(new BigDecimal("9.00"), resumen.get("ahorroKm"));
+        List<?> omitidas = (List<?>) resumen.get("omitidas");
+        assertEquals(1, omitidas.size());
+        assertEquals("R-2", ((Map<?, ?>) omitidas.get(0)).get("codigo"));
+        assertEquals("Faltan las coordenadas de la parada 1", ((Map<?, ?>) omitidas.get(0)).get("motivo"));
+        verify(mongoTemplate, never()).bulkOps(any(BulkOperations.BulkMode.class), eq(Ruta.class));
+    }
+
+    @Test
+    void planificarDia_escribeEnUnaOperacionMasivaYOmiteLasRutasQueCambiaron() {
+        when(rutaRepository.findRutasPlanificadasForDate(DIA.atStartOfDay(), DIA.plusDays(1).atStartOfDay()))
+                .thenReturn(List.of(rutaConParadas("1", "R-1"), rutaConParadas("3", "R-3")));
+        BulkOperations bulk = mock(BulkOperations.class);
+        List<Update> escritas = new ArrayList<>();
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Ruta.class)).thenReturn(bulk);
+        when(bulk.updateOne(any(Query.class), any(Update.class))).thenAnswer(invocacion -> {
+            escritas.add(invocacion.getArgument(1));
+            return bulk;
+        });
+        BulkWriteResult resultado = mock(BulkWriteResult.class);
+        when(resultado.getModifiedCount()).thenReturn(1);
+        when(bulk.execute()).thenReturn(resultado);
+        // Al releer, R-1 tiene la marca de esta escritura y R-3 fue editada en el medio
+        when(mongoTemplate.find(any(Query.class), eq(Ruta.class))).thenAnswer(invocacion -> {
+            Ruta r1 = rutaConParadas("1", "R-1");
+            r1.setUpdatedAt((LocalDateTime) escritas.get(0).getUpdateObject().get("$set", Document.class)
+                    .get("updatedAt"));
+            Ruta r3 = rutaConParadas("3", "R-3");
+            r3.setUpdatedAt(LEIDA.plusMinutes(5));
+            return List.of(r1, r3);
+        });
+
+        Map<String, Object> resumen = rutaService.planificarDia(DIA, true);
+
+        assertEquals(2, escritas.size());
+        assertEquals(1L, resumen.get("actualizadas"));
+        assertEquals(1, resumen.get("optimizadas"));
+        List<?> omitidas = (List<?>) resumen.get("omitidas");
+        assertEquals(List.of("R-3"), omitidas.stream().map(o -> ((Map<?, ?>) o).get("codigo")).collect(Collectors.toList()));
+        assertEquals("La ruta cambió durante la planificación", ((Map<?, ?>) omitidas.get(0)).get("motivo"));
+        verify(bulk, times(1)).execute();
+        verify(agendaRutasService, times(2)).registrar(any(Ruta.class));
+        verify(versionDatosService).incrementar(Ruta.class);
+    }
+
+    @Test
+    void getStats_unaAgregacionPorVersionDeLosDatos() {
+        Document resultado = new Document()
+                .append("porEstado", List.of(new Document("_id", "Planificada").append("total", 2),
+                        new Document("_id", "En Proceso").append("total", 1)))
+                .append("porPrioridad", List.of(new Document("_id", "Alta").append("total", 3)))
+                .append("totales", List.of(new Document("totalRutas", 3)
+                        .append("combustible", new Decimal128(new BigDecimal("10.50")))
+                        .append("peajes", 2)
+                        .append("otros", new Decimal128(BigDecimal.ZERO))
+                        .append("distancia", new Decimal128(new BigDecimal("120.5")))
+                        .append("minutos", 150)));
+        when(versionDatosService.version(Ruta.class)).thenReturn("1", "1", "2");
+        when(mongoTemplate.aggregate(any(Aggregation.class), eq(Ruta.class), eq(Document.class)))
+                .thenReturn(new AggregationResults<>(List.of(resultado), new Document()));
+
+        Map<String, Object> stats = rutaService.getStats();
+        rutaService.getStats();
+
+        assertEquals(3L, stats.get("totalRutas"));
+        assertEquals(Map.of("Planificada", 2L, "En Proceso", 1L), stats.get("porEstado"));
+        assertEquals(Map.of("Alta", 3L), stats.get("porPrioridad"));
+        assertEquals(1L, stats.get("rutasEnProceso"));
+        assertEquals(0L, stats.get("rutasCompletadas"));
+        assertEquals(new BigDecimal("12.50"), stats.get("costoTotal"));
+        assertEquals(new BigDecimal("120.5"), stats.get("distanciaTotal"));
+        assertEquals(2.5, stats.get("tiempoTotalHoras"));
+        ArgumentCaptor<Aggregation> agregacion = ArgumentCaptor.forClass(Aggregation.class);
+        verify(mongoTemplate).aggregate(agregacion.capture(), eq(Ruta.class), eq(Document.class));
+        Document facet = agregacion.getValue().toPipeline(Aggregation.DEFAULT_CONTEXT).get(1).get("$facet", Document.class);
+        assertEquals(List.of("porEstado", "porPrioridad", "totales"), new ArrayList<>(facet.keySet()));
+
+        // Con otra versión de los datos se vuelve a agregar
+        rutaService.getStats();
+        verify(mongoTemplate, times(2)).aggregate(any(Aggregation.class), eq(Ruta.class), eq(Document.class));
+    }
+
+    @Test
+    void getStats_sinRutasDevuelveCeros() {
+        when(versionDatosService.version(Ruta.class)).thenReturn("1");
+        Document vacio = new Document("porEstado", List.of()).append("porPrioridad", List.of()).append("totales", List.of());
+        when(mongoTemplate.aggregate(any(Aggregation.class), eq(Ruta.class), eq(Document.class)))
+                .thenReturn(new AggregationResults<>(List.of(vacio), new Document()));
+
+        Map<String, Object> stats = rutaService.getStats();
+
+        assertEquals(0L, stats.get("totalRutas"));
+        assertEquals(BigDecimal.ZERO, stats.get("costoTotal"));
+        assertEquals(0, stats.get("tiempoTotalMinutos"));
+    }
+
+    @Test
+    void findAll_combinaLosFiltrosEnUnaConsultaConPrefijoAnclado() {
+        FiltroRutas filtro = FiltroRutas.builder().estado(" Planificada ").vehiculo("ABC-1").conductor("J. Pérez")
+                .search("norte").build();
+        when(mongoTemplate.find(any(Query.class), eq(Ruta.class))).thenReturn(List.of(Ruta.builder().id("1").build()));
+
+        Page<Ruta> pagina = rutaService.findAll(filtro, 0, 500, "codigo", "asc");
+
+        ArgumentCaptor<Query> consulta = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).find(consulta.capture(), eq(Ruta.class));
+        Document criterios = consulta.getValue().getQueryObject();
+        assertEquals(true, criterios.get("isActive"));
+        assertEquals("Planificada", criterios.get("estado"));
+        assertEquals("^\\QABC-1\\E", criterios.get("vehiculoAsignado").toString());
+        assertEquals("^\\QJ. Pérez\\E", criterios.get("conductorAsignado").toString());
+        assertEquals(2, criterios.getList("$or", Document.class).size());
+        // El id desempata el orden y el tamaño de página se acota
+        assertEquals(new Document("codigo", 1).append("id", 1), consulta.getValue().getSortObject());
+        assertEquals(200, consulta.getValue().getLimit());
+        // La página incompleta ya determina el total: no se cuenta
+        assertEquals(1, pagina.getTotalElements());
+        verify(mongoTemplate, never()).count(any(Query.class), eq(Ruta.class));
+    }
+
+    @Test
+    void findAll_rechazaOrdenarPorUnCampoSinIndice() {
+        assertThrows(IllegalArgumentException.class,
+                () -> rutaService.findAll(new FiltroRutas(), 0, 20, "observaciones", "asc"));
+        verify(mongoTemplate, never()).find(any(Query.class), eq(Ruta.class));
+    }
+
+    @Test
+    void registrarLlegada_escribeSoloLaParadaSinLeerLaRuta() {
+        LocalDateTime llegada = LocalDateTime.of(2026, 3, 2, 9, 15);
+        when(mongoTemplate.updateFirst(any(Query.class), any(UpdateDefinition.class), eq(Ruta.class)))
+                .thenReturn(UpdateResult.acknowledged(1, 1L, null));
+
+        Map<String, Object> resultado = rutaService.registrarLlegada("1", 2, llegada);
+
+        assertEquals(llegada, resultado.get("horaLlegada"));
+        ArgumentCaptor<Query> consulta = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<UpdateDefinition> update = ArgumentCaptor.forClass(UpdateDefinition.class);
+        verify(mongoTemplate).updateFirst(consulta.capture(), update.capture(), eq(Ruta.class));
+        assertEquals("En Proceso", consulta.getValue().getQueryObject().get("estado"));
+        assertEquals(new Document("$exists", true), consulta.getValue().getQueryObject().get("paradas.2"));
+        assertEquals(llegada, update.getValue().getUpdateObject().get("$set", Document.class).get("paradas.2.horaLlegada"));
+        verify(rutaRepository, never()).findById(any());
+        verify(versionDatosService).incrementar(Ruta.class);
+    }
+
+    @Test
+    void registrarSalida_rechazadaSeExplicaLeyendoLaRuta() {
+        when(mongoTemplate.updateFirst(any(Query.class), any(UpdateDefinition.class), eq(Ruta.class)))
+                .thenReturn(UpdateResult.acknowledged(0, 0L, null));
+        Ruta planificada = Ruta.builder().id("1").codigo("R-1").build();
+        Ruta enProceso = Ruta.builder().id("2").codigo("R-2").estado("En Proceso").build();
+        when(rutaRepository.findById("1")).thenReturn(Optional.of(planificada));
+        when(rutaRepository.findById("2")).thenReturn(Optional.of(enProceso));
+        when(rutaRepository.findById("3")).thenReturn(Optional.empty());
+
+        assertThrows(IllegalStateException.class, () -> rutaService.registrarSalida("1", 0, null));
+        NoSuchElementException sinParada = assertThrows(NoSuchElementException.class,
+                () -> rutaService.registrarSalida("2", 7, null));
+        assertTrue(sinParada.getMessage().contains("R-2"));
+        assertThrows(NoSuchElementException.class, () -> rutaService.registrarSalida("3", 0, null));
+        verify(versionDatosService, never()).incrementar(Ruta.class);
+    }
+
+    @Test
+    void cambiarEstado_completarEnElLugarAlimentaElModeloDeEta() {
+        Ruta completada = Ruta.builder().id("1").codigo("R-1").estado("Completada").build();
+        when(mongoTemplate.findAndModify(any(Query.class), any(UpdateDefinition.class), any(FindAndModifyOptions.class),
+                eq(Ruta.class))).thenReturn(completada);
+
+        assertSame(completada, rutaService.cambiarEstado("1", "Completada"));
+
+        ArgumentCaptor<Query> consulta = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).findAndModify(consulta.capture(), any(UpdateDefinition.class),
+                any(FindAndModifyOptions.class), eq(Ruta.class));
+        // Solo una transición real a Completada
+        assertEquals(new Document("$ne", "Completada"), consulta.getValue().getQueryObject().get("estado"));
+        verify(agendaRutasService).registrar(completada);
+        verify(etaService).aprender(completada);
+        verify(rutaRepository, never()).findById(any());
+    }
+
+    @Test
+    void cambiarEstado_estadoInvalidoNoEscribe() {
+        assertThrows(IllegalArgumentException.class, () -> rutaService.cambiarEstado("1", "Perdida"));
+        verify(mongoTemplate, never()).findAndModify(any(Query.class), any(UpdateDefinition.class),
+                any(FindAndModifyOptions.class), eq(Ruta.class));
+    }
+
+    private static Ruta rutaConParadas(String id, String codigo) {
+        List<Ruta.Parada> paradas = new ArrayList<>();
+        paradas.add(Ruta.Parada.builder().direccion("Lejos").ubicacion(ubicacion(-12.0)).build());
+        paradas.add(Ruta.Parada.builder().direccion("Cerca").ubicacion(ubicacion(-12.1)).build());
+        return Ruta.builder().id(id).codigo(codigo).estado("Planificada").fechaPlanificada(DIA.atTime(8, 0))
+                .ubicacionOrigen(ubicacion(-12.2)).paradas(paradas).updatedAt(LEIDA).build();
+    }
+
+    private static Ubicacion ubicacion(double latitud) {
+        return Ubicacion.builder().latitud(latitud).longitud(-77.0).build();
+    }
+}
@@ -0,0 +1,103 @@
+package com.logistock.stock;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ContadorFranjasTest {
+
+    @Test
+    void reservar_concurrenteNuncaSobrevende() throws Exception {
+        ContadorFranjas contador = new ContadorFranjas(8, 10_000);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        List<Callable<Integer>> tareas = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            tareas.add(() -> {
+                int reservadas = 0;
+                for (int i = 0; i < 2_000; i++) {
+                    if (contador.reservar(1)) {
+                        reservadas++;
+                    }
+                }
+                return reservadas;
+            });
+        }
+        int total = 0;
+        for (Future<Integer> resultado : pool.invokeAll(tareas)) {
+            total += resultado.get();
+        }
+        pool.shutdown();
+
+        assertEquals(10_000, total);
+        assertEquals(0, contador.disponible());
+    }
+
+    @Test
+    void reservar_concurrenteSoloFallaCuandoLaSumaNoAlcanza() throws Exception {
+        ContadorFranjas contador = new ContadorFranjas(8, 1_000);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        List<Callable<Integer>> tareas = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            tareas.add(() -> {
+                int reservadas = 0;
+                while (contador.reservar(3)) {
+                    reservadas += 3;
+                }
+                return reservadas;
+            });
+        }
+        int total = 0;
+        for (Future<Integer> resultado : pool.invokeAll(tareas)) {
+            total += resultado.get();
+        }
+        pool.shutdown();
+
+        assertEquals(999, total);
+        assertEquals(1, contador.disponible());
+    }
+
+    @Test
+    void reservar_tomaDeVariasFranjasOFallaSinPerderStock() {
+        ContadorFranjas contador = new ContadorFranjas(4, 10);
+
+        assertFalse(contador.reservar(11));
+        assertEquals(10, contador.disponible());
+
+        assertTrue(contador.reservar(9));
+        assertEquals(1, contador.disponible());
+
+        assertEquals(-1, contador.ajustar(-5));
+        assertEquals(0, contador.disponible());
+    }
+
+    @Test
+    void diario_rotaYAcumulaDeltasPorProducto(@TempDir Path directorio) throws Exception {
+        try (DiarioStock diario = new DiarioStock(directorio)) {
+            diario.registrar("p1", -3);
+            diario.registrar("p1", -2);
+            diario.registrar("p2", 4);
+            assertTrue(diario.rotar());
+            assertFalse(diario.rotar());
+            diario.registrar("p1", 1);
+        }
+
+        // Al reabrir, el archivo actual sin volcar pasa a ser un lote pendiente
+        try (DiarioStock diario = new DiarioStock(directorio)) {
+            List<Path> lotes = diario.lotesPendientes();
+            assertEquals(2, lotes.size());
+            assertTrue(DiarioStock.secuencia(lotes.get(0)) < DiarioStock.secuencia(lotes.get(1)));
+            assertEquals(Map.of("p1", -5L, "p2", 4L), DiarioStock.leer(lotes.get(0)));
+            assertEquals(Map.of("p1", 1L), DiarioStock.leer(lotes.get(1)));
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.logistock.telemetria;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AnilloMpscTest {
+
+    @Test
+    void ofrecer_rechazaAlLlenarseYLiberaAlDrenar() {
+        AnilloMpsc<Integer> anillo = new AnilloMpsc<>(4);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(anillo.ofrecer(i));
+        }
+        assertFalse(anillo.ofrecer(4));
+
+        List<Integer> drenados = new ArrayList<>();
+        assertEquals(2, anillo.drenar(drenados::add, 2));
+        assertTrue(anillo.ofrecer(5));
+        anillo.drenar(drenados::add, Integer.MAX_VALUE);
+        assertEquals(List.of(0, 1, 2, 3, 5), drenados);
+    }
+
+    @Test
+    void ofrecer_variosProductoresNoPierdenNiDuplican() throws Exception {
+        int productores = 8;
+        int porProductor = 10_000;
+        AnilloMpsc<Integer> anillo = new AnilloMpsc<>(1024);
+        ExecutorService pool = Executors.newFixedThreadPool(productores);
+        CountDownLatch salida = new CountDownLatch(1);
+        List<Future<?>> tareas = new ArrayList<>();
+        for (int p = 0; p < productores; p++) {
+            int base = p * porProductor;
+            tareas.add(pool.submit(() -> {
+                salida.await();
+                for (int i = 0; i < porProductor; i++) {
+                    while (!anillo.ofrecer(base + i)) {
+                        Thread.onSpinWait();
+                    }
+                }
+                return null;
+            }));
+        }
+
+        boolean[] vistos = new boolean[productores * porProductor];
+        int[] ultimoPorProductor = new int[productores];
+        Arrays.fill(ultimoPorProductor, -1);
+        salida.countDown();
+        int recibidos = 0;
+        while (recibidos < vistos.length) {
+            recibidos += anillo.drenar(valor -> {
+                assertFalse(vistos[valor]);
+                vistos[valor] = true;
+                // Cada productor se ve en el orden en que publicó
+                int productor = valor / porProductor;
+                assertTrue(valor > ultimoPorProductor[productor]);
+                ultimoPorProductor[productor] = valor;
+            }, 1024);
+        }
+        for (Future<?> tarea : tareas) {
+            tarea.get();
+        }
+        pool.shutdown();
+        assertEquals(0, anillo.pendientes());
+    }
+}